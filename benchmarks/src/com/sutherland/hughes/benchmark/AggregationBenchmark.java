@@ -0,0 +1,168 @@
+package com.sutherland.hughes.benchmark;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.sutherland.helios.data.Aggregation;
+import com.sutherland.helios.data.attributes.DataAttributes;
+import com.sutherland.helios.statistics.Statistics;
+import com.sutherland.helios.util.results.Filter;
+import com.sutherland.hughes.data.GrainPartials;
+import com.sutherland.hughes.report.execution.ParallelAggregator;
+import com.sutherland.hughes.report.execution.RowAggregator;
+
+/**
+ * Bucketing rows into report grains and reducing the buckets: Aggregation and Datum insertion, Statistics.getTotal over a grain's values, 
+ * and Filter.filterTopDrivers over a grain's drivers. The same bucketing into GrainPartials, in one thread and across cores, and the same 
+ * pick of top drivers from the partials' counts, are alongside for comparison. Rows are bucketed by user, so the grain lookups are the 
+ * same as a stack report's.
+ *
+ * @author Jason Diamond
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class AggregationBenchmark implements DataAttributes
+{
+	private final static int NUM_DRIVERS = 10;
+	private final static String DRIVERS_ATTR = "drivers";
+	
+	@Param({"10000", "1000000", "10000000"})
+	public int rowCount;
+	
+	private ArrayList<String[]> salesRows;
+	private ArrayList<String[]> driverRows;
+	private Aggregation sales;
+	private Aggregation drivers;
+	private GrainPartials driverPartials;
+	
+	private final static RowAggregator SALES_AGGREGATOR = new RowAggregator()
+	{
+		@Override
+		public void aggregate(String[] row, GrainPartials partials)
+		{
+			partials.get(row[0], SALES_AMTS_ATTR).addValue(row[2]);
+		}
+	};
+	
+	private final static RowAggregator DRIVER_AGGREGATOR = new RowAggregator()
+	{
+		@Override
+		public void aggregate(String[] row, GrainPartials partials)
+		{
+			partials.get(row[0], DRIVERS_ATTR).addDriver(row[2] + "-" + row[3]);
+		}
+	};
+	
+	@Setup
+	public void setup()
+	{
+		salesRows = SyntheticRows.getSalesRows(rowCount, 1);
+		driverRows = SyntheticRows.getDriverRows(rowCount, 2);
+		
+		sales = aggregateSales();
+		drivers = aggregateDrivers();
+		
+		driverPartials = new GrainPartials();
+		for(String[] row : driverRows)
+		{
+			DRIVER_AGGREGATOR.aggregate(row, driverPartials);
+		}
+	}
+	
+	@Benchmark
+	public Aggregation aggregateSales()
+	{
+		Aggregation retval = new Aggregation();
+		
+		for(String[] row : salesRows)
+		{
+			retval.addDatum(row[0]);
+			retval.getDatum(row[0]).addAttribute(SALES_AMTS_ATTR);
+			retval.getDatum(row[0]).addData(SALES_AMTS_ATTR, row[2]);
+		}
+		
+		return retval;
+	}
+	
+	@Benchmark
+	public Aggregation aggregateDrivers()
+	{
+		Aggregation retval = new Aggregation();
+		
+		String driver;
+		for(String[] row : driverRows)
+		{
+			driver = row[2] + "-" + row[3];
+			
+			retval.addDatum(row[0]);
+			retval.getDatum(row[0]).addAttribute(driver);
+			retval.getDatum(row[0]).addData(driver, row[0]);
+		}
+		
+		return retval;
+	}
+	
+	@Benchmark
+	public void getTotal(Blackhole blackhole)
+	{
+		for(String grain : sales.getDatumIDList())
+		{
+			blackhole.consume(Statistics.getTotal(sales.getDatum(grain).getAttributeData(SALES_AMTS_ATTR)));
+		}
+	}
+	
+	@Benchmark
+	public void filterTopDrivers(Blackhole blackhole)
+	{
+		for(String grain : drivers.getDatumIDList())
+		{
+			blackhole.consume(Filter.filterTopDrivers(drivers.getDatum(grain), NUM_DRIVERS));
+		}
+	}
+	
+	@Benchmark
+	public void filterTopDriversPartials(Blackhole blackhole)
+	{
+		for(String grain : driverPartials.getGrainIDList())
+		{
+			blackhole.consume(driverPartials.get(grain, DRIVERS_ATTR).filterTopDrivers(NUM_DRIVERS));
+		}
+	}
+	
+	@Benchmark
+	public GrainPartials aggregateSalesPartials()
+	{
+		GrainPartials retval = new GrainPartials();
+		
+		for(String[] row : salesRows)
+		{
+			SALES_AGGREGATOR.aggregate(row, retval);
+		}
+		
+		return retval;
+	}
+	
+	@Benchmark
+	public GrainPartials aggregateSalesPartialsInParallel() throws InterruptedException
+	{
+		return ParallelAggregator.aggregate(salesRows, SALES_AGGREGATOR);
+	}
+}
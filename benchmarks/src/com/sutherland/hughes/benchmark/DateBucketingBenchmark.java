@@ -0,0 +1,68 @@
+package com.sutherland.hughes.benchmark;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.sutherland.helios.data.granularity.time.TimeGrains;
+import com.sutherland.helios.date.formatting.DateFormatter;
+import com.sutherland.helios.date.parsing.DateParser;
+
+/**
+ * The time grain bucketing every time trend report does per row: parse the row's SQL date, then format it at the report's time grain.
+ *
+ * @author Jason Diamond
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class DateBucketingBenchmark 
+{
+	@Param({"10000", "1000000", "10000000"})
+	public int rowCount;
+	
+	@Param({"" + TimeGrains.DAILY_GRANULARITY, "" + TimeGrains.MONTHLY_GRANULARITY})
+	public int timeGrain;
+	
+	private ArrayList<String[]> rows;
+	
+	@Setup
+	public void setup()
+	{
+		rows = SyntheticRows.getSalesRows(rowCount, 1);
+	}
+	
+	@Benchmark
+	public void parseDate(Blackhole blackhole)
+	{
+		for(String[] row : rows)
+		{
+			blackhole.consume(DateParser.convertSQLDateToGregorian(row[1]));
+		}
+	}
+	
+	@Benchmark
+	public void parseAndFormatDate(Blackhole blackhole)
+	{
+		for(String[] row : rows)
+		{
+			blackhole.consume(DateFormatter.getFormattedDate(DateParser.convertSQLDateToGregorian(row[1]), timeGrain, DateFormatter.SQL_FORMAT));
+		}
+	}
+}
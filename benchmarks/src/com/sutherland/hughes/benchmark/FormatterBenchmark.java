@@ -0,0 +1,120 @@
+package com.sutherland.hughes.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sutherland.helios.api.format.output.CSVFormatter;
+import com.sutherland.helios.api.format.output.HTMLFormatter;
+import com.sutherland.helios.api.format.output.JSONFormatter;
+import com.sutherland.helios.api.format.output.XMLFormatter;
+import com.sutherland.hughes.api.format.output.StreamingFormatter;
+import com.sutherland.hughes.api.format.output.StreamingFormatterFactory;
+
+/**
+ * Formatting a report's results with the Helios formatters, and with the streaming formatters that stand in for them. The Helios formatters
+ * build the whole document in memory (a jdom tree, for XML), so the largest row set is left out.
+ *
+ * @author Jason Diamond
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class FormatterBenchmark 
+{
+	@Param({"10000", "1000000"})
+	public int rowCount;
+	
+	@Param({StreamingFormatterFactory.CSV_FORMAT, StreamingFormatterFactory.JSON_FORMAT, StreamingFormatterFactory.XML_FORMAT, StreamingFormatterFactory.HTML_FORMAT})
+	public String format;
+	
+	private ArrayList<String> schema;
+	private ArrayList<String[]> rows;
+	
+	/**
+	 * Counts what's written, so the output can't be optimized away.
+	 */
+	private static class CountingOutputStream extends OutputStream
+	{
+		private long count;
+		
+		@Override
+		public void write(int b)
+		{
+			count++;
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len)
+		{
+			count += len;
+		}
+		
+		public long getCount()
+		{
+			return count;
+		}
+	}
+	
+	@Setup
+	public void setup()
+	{
+		schema = new ArrayList<String>(Arrays.asList("User ID", "Date", "Amount"));
+		rows = SyntheticRows.getSalesRows(rowCount, 1);
+	}
+	
+	@Benchmark
+	public ArrayList<String> heliosFormatter()
+	{
+		ArrayList<String> retval;
+		
+		if(StreamingFormatterFactory.JSON_FORMAT.equals(format))
+		{
+			//the schema overload of the Helios JSON formatter never returns, and neither JSON nor XML output has a header
+			retval = new JSONFormatter().formatResults(rows);
+		}
+		else if(StreamingFormatterFactory.XML_FORMAT.equals(format))
+		{
+			retval = new XMLFormatter().formatResults(rows);
+		}
+		else if(StreamingFormatterFactory.HTML_FORMAT.equals(format))
+		{
+			retval = new HTMLFormatter().formatResults(schema, rows);
+		}
+		else
+		{
+			retval = new CSVFormatter().formatResults(schema, rows);
+		}
+		
+		return retval;
+	}
+	
+	@Benchmark
+	public long streamingFormatter() throws IOException
+	{
+		CountingOutputStream out = new CountingOutputStream();
+		
+		StreamingFormatter formatter = StreamingFormatterFactory.getFormatter(format, out);
+		formatter.writeResults(schema, rows);
+		
+		return out.getCount();
+	}
+}
@@ -0,0 +1,100 @@
+package com.sutherland.hughes.benchmark;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.sutherland.helios.data.Aggregation;
+import com.sutherland.helios.data.granularity.user.UserGrains;
+import com.sutherland.hughes.report.HughesRoster;
+
+/**
+ * Roster load, and the per-row roster lookups every report makes. A Helios roster is an Aggregation of user Datums, so the load builds one
+ * from the roster query's rows as HughesRoster.load does, without the database.
+ *
+ * @author Jason Diamond
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class RosterBenchmark 
+{
+	@Param({"10000", "1000000", "10000000"})
+	public int rowCount;
+	
+	private ArrayList<String[]> rosterRows;
+	private Aggregation roster;
+	private ArrayList<String[]> rows;
+	
+	@Setup
+	public void setup()
+	{
+		rosterRows = SyntheticRows.getRosterRows(SyntheticRows.USER_COUNT);
+		roster = loadRoster(rosterRows);
+		
+		rows = SyntheticRows.getSalesRows(rowCount, 1);
+	}
+	
+	private static Aggregation loadRoster(ArrayList<String[]> rosterRows)
+	{
+		Aggregation retval = new Aggregation();
+		
+		String userID;
+		for(String[] row : rosterRows)
+		{
+			userID = row[0].trim();
+			
+			//as Roster.addUser
+			if(!retval.hasDatum(userID))
+			{
+				retval.addDatum(userID, HughesRoster.buildUser(row));
+			}
+		}
+		
+		return retval;
+	}
+	
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public Aggregation rosterLoad()
+	{
+		return loadRoster(rosterRows);
+	}
+	
+	@Benchmark
+	public void hasUser(Blackhole blackhole)
+	{
+		for(String[] row : rows)
+		{
+			blackhole.consume(roster.hasDatum(row[0]));
+		}
+	}
+	
+	@Benchmark
+	public void getUserGrain(Blackhole blackhole)
+	{
+		for(String[] row : rows)
+		{
+			if(roster.hasDatum(row[0]))
+			{
+				blackhole.consume(UserGrains.getUserGrain(UserGrains.TEAM_GRANULARITY, roster.getDatum(row[0])));
+			}
+		}
+	}
+}
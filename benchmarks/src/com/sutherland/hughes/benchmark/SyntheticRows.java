@@ -0,0 +1,190 @@
+package com.sutherland.hughes.benchmark;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.GregorianCalendar;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic row sets shaped like the report queries' results. Column values are drawn from fixed pools, so a row set of
+ * millions of rows costs little more than its row arrays, and the same seed always gives the same rows.
+ *
+ * @author Jason Diamond
+ *
+ */
+public final class SyntheticRows 
+{
+	public final static int USER_COUNT = 2000;
+	public final static int TEAM_COUNT = 40;
+	public final static int DRIVER_REASON_COUNT = 60;
+	public final static int DRIVER_SOURCE_COUNT = 8;
+	
+	private final static int DATE_POOL_SIZE = 100000;
+	private final static int AMOUNT_POOL_SIZE = 10000;
+	private final static int DAYS_SPANNED = 365;
+	
+	private SyntheticRows()
+	{
+	}
+	
+	public static String getUserID(int user)
+	{
+		return "" + (100000 + user);
+	}
+	
+	private static String[] buildUserIDPool()
+	{
+		String[] retval = new String[USER_COUNT];
+		
+		for(int i = 0; i < USER_COUNT; i++)
+		{
+			retval[i] = getUserID(i);
+		}
+		
+		return retval;
+	}
+	
+	/**
+	 * Timestamps spread over a year, in SQL date format.
+	 */
+	private static String[] buildDatePool(Random random)
+	{
+		String[] retval = new String[DATE_POOL_SIZE];
+		
+		SimpleDateFormat sqlFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+		GregorianCalendar date;
+		
+		for(int i = 0; i < DATE_POOL_SIZE; i++)
+		{
+			date = new GregorianCalendar(2014, GregorianCalendar.JANUARY, 1);
+			date.add(GregorianCalendar.SECOND, random.nextInt(DAYS_SPANNED * 24 * 60 * 60));
+			
+			retval[i] = sqlFormat.format(date.getTime());
+		}
+		
+		return retval;
+	}
+	
+	private static String[] buildAmountPool(Random random)
+	{
+		String[] retval = new String[AMOUNT_POOL_SIZE];
+		
+		for(int i = 0; i < AMOUNT_POOL_SIZE; i++)
+		{
+			retval[i] = (random.nextInt(50000) / 100) + "." + (10 + random.nextInt(90));
+		}
+		
+		return retval;
+	}
+	
+	private static String[] buildNamePool(String prefix, int size)
+	{
+		String[] retval = new String[size];
+		
+		for(int i = 0; i < size; i++)
+		{
+			retval[i] = prefix + " " + i;
+		}
+		
+		return retval;
+	}
+	
+	/**
+	 * Rows shaped like the sales queries: user ID, created date, amount.
+	 * 
+	 * @param rowCount	The number of rows.
+	 * @param seed		The random seed.
+	 * 
+	 * @return	The rows.
+	 */
+	public static ArrayList<String[]> getSalesRows(int rowCount, long seed)
+	{
+		Random random = new Random(seed);
+		
+		String[] userIDs = buildUserIDPool();
+		String[] dates = buildDatePool(random);
+		String[] amounts = buildAmountPool(random);
+		
+		ArrayList<String[]> retval = new ArrayList<String[]>(rowCount);
+		
+		for(int i = 0; i < rowCount; i++)
+		{
+			retval.add(new String[]
+			{
+				userIDs[random.nextInt(USER_COUNT)],
+				dates[random.nextInt(DATE_POOL_SIZE)],
+				amounts[random.nextInt(AMOUNT_POOL_SIZE)]
+			});
+		}
+		
+		return retval;
+	}
+	
+	/**
+	 * Rows shaped like the driver queries: user ID, created date, reason, source of charge. Reasons are skewed, a few are much more
+	 * common than the rest, as real drivers are.
+	 * 
+	 * @param rowCount	The number of rows.
+	 * @param seed		The random seed.
+	 * 
+	 * @return	The rows.
+	 */
+	public static ArrayList<String[]> getDriverRows(int rowCount, long seed)
+	{
+		Random random = new Random(seed);
+		
+		String[] userIDs = buildUserIDPool();
+		String[] dates = buildDatePool(random);
+		String[] reasons = buildNamePool("Reason", DRIVER_REASON_COUNT);
+		String[] sources = buildNamePool("Source", DRIVER_SOURCE_COUNT);
+		
+		ArrayList<String[]> retval = new ArrayList<String[]>(rowCount);
+		
+		for(int i = 0; i < rowCount; i++)
+		{
+			retval.add(new String[]
+			{
+				userIDs[random.nextInt(USER_COUNT)],
+				dates[random.nextInt(DATE_POOL_SIZE)],
+				reasons[Math.min(DRIVER_REASON_COUNT - 1, (int)Math.abs(random.nextGaussian() * DRIVER_REASON_COUNT / 4))],
+				sources[random.nextInt(DRIVER_SOURCE_COUNT)]
+			});
+		}
+		
+		return retval;
+	}
+	
+	/**
+	 * Rows shaped like the roster query, one per user.
+	 * 
+	 * @param userCount	The number of users.
+	 * 
+	 * @return	The rows.
+	 */
+	public static ArrayList<String[]> getRosterRows(int userCount)
+	{
+		ArrayList<String[]> retval = new ArrayList<String[]>(userCount);
+		
+		for(int i = 0; i < userCount; i++)
+		{
+			retval.add(new String[]
+			{
+				getUserID(i),
+				"login" + i,
+				"Team " + (i % TEAM_COUNT),
+				"First" + i,
+				"Last" + i,
+				"" + (5000 + i),
+				"151",
+				"e" + i,
+				"user" + i + "@example.com",
+				"lmi" + i,
+				"" + (900000 + i),
+				"NT\\user" + i,
+				"1"
+			});
+		}
+		
+		return retval;
+	}
+}
@@ -0,0 +1,131 @@
+package com.sutherland.hughes.benchmark.load;
+
+import java.util.Arrays;
+
+/**
+ * Collects request latencies for one scenario, and the number of queries each request ran, for percentiles at the end of a stage.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class LatencyRecorder
+{
+	private final static int INITIAL_CAPACITY = 1024;
+
+	private long[] latencies;
+	private int count;
+	private long queries;
+	private int errors;
+
+	public LatencyRecorder()
+	{
+		latencies = new long[INITIAL_CAPACITY];
+		count = 0;
+		queries = 0;
+		errors = 0;
+	}
+
+	/**
+	 * Record a finished request.
+	 *
+	 * @param latencyNanos	The request's latency.
+	 * @param queryCount	The number of queries the request ran.
+	 */
+	public synchronized void record(long latencyNanos, int queryCount)
+	{
+		if(count == latencies.length)
+		{
+			latencies = Arrays.copyOf(latencies, count * 2);
+		}
+
+		latencies[count++] = latencyNanos;
+		queries += queryCount;
+	}
+
+	/**
+	 * Record a failed request. Failures don't count towards the latencies.
+	 */
+	public synchronized void recordError()
+	{
+		errors++;
+	}
+
+	public synchronized int getCount()
+	{
+		return count;
+	}
+
+	public synchronized int getErrors()
+	{
+		return errors;
+	}
+
+	/**
+	 * Accessor for the average number of queries per request.
+	 *
+	 * @return	The average, or 0 if no requests were recorded.
+	 */
+	public synchronized double getQueriesPerRequest()
+	{
+		return count == 0 ? 0 : (double)queries / count;
+	}
+
+	/**
+	 * Accessor for a latency percentile, by the nearest-rank method.
+	 *
+	 * @param percentile	The percentile, ie. 95.
+	 *
+	 * @return	The latency in milliseconds, or 0 if no requests were recorded.
+	 */
+	public synchronized double getPercentileMillis(double percentile)
+	{
+		double retval = 0;
+
+		if(count > 0)
+		{
+			long[] sorted = Arrays.copyOf(latencies, count);
+			Arrays.sort(sorted);
+
+			int rank = (int)Math.ceil(percentile / 100.0 * count);
+
+			retval = sorted[Math.max(0, Math.min(count, rank) - 1)] / 1000000.0;
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Add another recorder's requests to this one, ie. for the totals over all scenarios.
+	 *
+	 * @param other	The other recorder.
+	 */
+	public void add(LatencyRecorder other)
+	{
+		long[] otherLatencies;
+		long otherQueries;
+		int otherErrors;
+
+		synchronized(other)
+		{
+			otherLatencies = Arrays.copyOf(other.latencies, other.count);
+			otherQueries = other.queries;
+			otherErrors = other.errors;
+		}
+
+		synchronized(this)
+		{
+			for(long latency : otherLatencies)
+			{
+				if(count == latencies.length)
+				{
+					latencies = Arrays.copyOf(latencies, count * 2);
+				}
+
+				latencies[count++] = latency;
+			}
+
+			queries += otherQueries;
+			errors += otherErrors;
+		}
+	}
+}
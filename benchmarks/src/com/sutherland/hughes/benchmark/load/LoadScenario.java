@@ -0,0 +1,314 @@
+package com.sutherland.hughes.benchmark.load;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Random;
+
+import com.sutherland.helios.data.granularity.time.TimeGrains;
+import com.sutherland.helios.data.granularity.user.UserGrains;
+import com.sutherland.helios.date.formatting.DateFormatter;
+import com.sutherland.helios.report.Report;
+import com.sutherland.helios.report.ReportTypes;
+import com.sutherland.hughes.api.export.ReportExporter;
+import com.sutherland.hughes.api.format.output.StreamingFormatter;
+import com.sutherland.hughes.api.format.output.StreamingFormatterFactory;
+import com.sutherland.hughes.report.ACWTime;
+import com.sutherland.hughes.report.AverageOrderValue;
+import com.sutherland.hughes.report.CallVolume;
+import com.sutherland.hughes.report.CallsOffered;
+import com.sutherland.hughes.report.CreatedCustomers;
+import com.sutherland.hughes.report.NetRevenue;
+import com.sutherland.hughes.report.NoSaleDrivers;
+import com.sutherland.hughes.report.RealtimeSales;
+import com.sutherland.hughes.report.RealtimeSalesQueue;
+import com.sutherland.hughes.report.RefundTotals;
+import com.sutherland.hughes.report.SalesCount;
+import com.sutherland.hughes.report.TalkTime;
+import com.sutherland.hughes.report.TopCaseDrivers;
+import com.sutherland.hughes.report.TopPINRevenueDrivers;
+import com.sutherland.hughes.report.TopRefundDrivers;
+import com.sutherland.hughes.report.export.StreamableReport;
+
+/**
+ * The kinds of request a supervisor's dashboard makes, each picking one of its reports at random and running it for one team the way
+ * the dashboard would: the realtime widgets refresh today's numbers, the trend charts show a month of CMS data by day, the stack ranks
+ * and drivers show the last week or month by agent, and an export streams a month of customers out as CSV.
+ *
+ * @author Jason Diamond
+ *
+ */
+public enum LoadScenario
+{
+	REALTIME("realtime", 0)
+	{
+		@Override
+		Report buildReport(Random random) throws Exception
+		{
+			Report retval = random.nextBoolean() ? new RealtimeSales() : new RealtimeSalesQueue();
+
+			setStackParameters(retval);
+
+			return retval;
+		}
+	},
+	TREND("trend", 30)
+	{
+		@Override
+		Report buildReport(Random random) throws Exception
+		{
+			Report retval;
+
+			switch(random.nextInt(4))
+			{
+				case 0:
+					retval = new CallVolume();
+					break;
+				case 1:
+					retval = new TalkTime();
+					break;
+				case 2:
+					retval = new ACWTime();
+					break;
+				default:
+					retval = new CallsOffered();
+					break;
+			}
+
+			retval.getParameters().setReportType(ReportTypes.TIME_TREND_REPORT);
+			retval.getParameters().setTimeGrain(TimeGrains.DAILY_GRANULARITY);
+			retval.getParameters().setDateFormat(DateFormatter.SQL_FORMAT);
+
+			return retval;
+		}
+	},
+	STACK("stack", 7)
+	{
+		@Override
+		Report buildReport(Random random) throws Exception
+		{
+			Report retval;
+
+			switch(random.nextInt(4))
+			{
+				case 0:
+					retval = new SalesCount();
+					break;
+				case 1:
+					retval = new RefundTotals();
+					break;
+				case 2:
+					retval = new AverageOrderValue();
+					break;
+				default:
+					//runs its children through a ReportRunner
+					retval = new NetRevenue();
+					break;
+			}
+
+			setStackParameters(retval);
+
+			return retval;
+		}
+	},
+	DRIVERS("drivers", 30)
+	{
+		@Override
+		Report buildReport(Random random) throws Exception
+		{
+			Report retval;
+
+			switch(random.nextInt(4))
+			{
+				case 0:
+					retval = new TopCaseDrivers();
+					break;
+				case 1:
+					retval = new NoSaleDrivers();
+					break;
+				case 2:
+					retval = new TopRefundDrivers();
+					break;
+				default:
+					retval = new TopPINRevenueDrivers();
+					break;
+			}
+
+			setStackParameters(retval);
+			retval.getParameters().setNumDrivers(NUM_DRIVERS);
+
+			return retval;
+		}
+	},
+	EXPORT("export", 30)
+	{
+		@Override
+		Report buildReport(Random random) throws Exception
+		{
+			return new CreatedCustomers();
+		}
+
+		@Override
+		long runReport(Report report) throws Exception
+		{
+			long retval;
+
+			StreamingFormatter formatter = StreamingFormatterFactory.getFormatter(StreamingFormatterFactory.CSV_FORMAT, new DiscardingOutputStream());
+
+			if(report instanceof StreamableReport)
+			{
+				retval = ReportExporter.exportRows((StreamableReport)report, formatter);
+			}
+			else
+			{
+				retval = ReportExporter.exportResults(report, formatter);
+			}
+
+			return retval;
+		}
+	};
+
+	private final static int NUM_DRIVERS = 10;
+	private final static String SQL_DATE_FORMAT = "yyyy-MM-dd HH:mm:ss";
+
+	private final String name;
+	private final int days;
+
+	/**
+	 * @param name	The scenario's name in the load mix.
+	 * @param days	How many days back from today the scenario's reports cover. 0 is today only.
+	 */
+	private LoadScenario(String name, int days)
+	{
+		this.name = name;
+		this.days = days;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * Look up a scenario by its name in the load mix.
+	 *
+	 * @param name	The name.
+	 *
+	 * @return	The scenario.
+	 *
+	 * @throws IllegalArgumentException	If there is no such scenario.
+	 */
+	public static LoadScenario forName(String name)
+	{
+		for(LoadScenario scenario : values())
+		{
+			if(scenario.name.equalsIgnoreCase(name.trim()))
+			{
+				return scenario;
+			}
+		}
+
+		throw new IllegalArgumentException("No load scenario named " + name);
+	}
+
+	/**
+	 * Build one of the scenario's reports with its grain parameters set. Building a report opens its database connection.
+	 *
+	 * @param random	For picking the report.
+	 *
+	 * @return	The report.
+	 *
+	 * @throws Exception	If the report cannot be built.
+	 */
+	abstract Report buildReport(Random random) throws Exception;
+
+	/**
+	 * Run one request of the scenario: build a report for the team, run it and close it.
+	 *
+	 * @param random		For picking the report.
+	 * @param teamName		The supervisor's team.
+	 *
+	 * @return	The number of rows the report returned.
+	 *
+	 * @throws Exception	If the report fails.
+	 */
+	public long run(Random random, String teamName) throws Exception
+	{
+		long retval;
+
+		Report report = buildReport(random);
+
+		try
+		{
+			GregorianCalendar end = new GregorianCalendar();
+			end.set(Calendar.HOUR_OF_DAY, 0);
+			end.set(Calendar.MINUTE, 0);
+			end.set(Calendar.SECOND, 0);
+			end.set(Calendar.MILLISECOND, 0);
+			end.add(Calendar.DAY_OF_MONTH, 1);
+
+			GregorianCalendar start = (GregorianCalendar)end.clone();
+			start.add(Calendar.DAY_OF_MONTH, -Math.max(1, days));
+
+			SimpleDateFormat dateFormat = new SimpleDateFormat(SQL_DATE_FORMAT);
+
+			report.getParameters().setStartDate(dateFormat.format(start.getTime()));
+			report.getParameters().setEndDate(dateFormat.format(end.getTime()));
+			report.getParameters().addTeamName(teamName);
+
+			retval = runReport(report);
+		}
+		finally
+		{
+			report.close();
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Run a report whose parameters are set.
+	 *
+	 * @param report	The report.
+	 *
+	 * @return	The number of rows the report returned.
+	 *
+	 * @throws Exception	If the report fails or returns no results.
+	 */
+	long runReport(Report report) throws Exception
+	{
+		ArrayList<String[]> results = report.startReport();
+
+		if(results == null)
+		{
+			throw new Exception("Report " + report.getReportName() + " failed: " + report.getErrorMessage());
+		}
+
+		return results.size();
+	}
+
+	private static void setStackParameters(Report report)
+	{
+		report.getParameters().setReportType(ReportTypes.STACK_REPORT);
+		report.getParameters().setUserGrain(UserGrains.AGENT_GRANULARITY);
+	}
+
+	/**
+	 * Stands in for the client of an export.
+	 */
+	private static class DiscardingOutputStream extends OutputStream
+	{
+		@Override
+		public void write(int b) throws IOException
+		{
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+		}
+	}
+}
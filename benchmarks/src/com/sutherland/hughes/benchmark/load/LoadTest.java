@@ -0,0 +1,440 @@
+package com.sutherland.hughes.benchmark.load;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sutherland.hughes.config.ReportingConfig;
+import com.sutherland.hughes.datasources.DataSourceProvider;
+import com.sutherland.hughes.datasources.DataSources;
+import com.sutherland.hughes.datasources.PropertyFileDataSourceProvider;
+import com.sutherland.hughes.datasources.standin.StandInDataGenerator;
+import com.sutherland.hughes.datasources.standin.StandInDataSourceProvider;
+import com.sutherland.hughes.datasources.standin.StandInSchema;
+
+/**
+ * Simulates concurrent supervisors on one node. Each supervisor is a thread that repeatedly makes a dashboard request picked from the
+ * load mix, then waits its think time. The load is run in stages of increasing concurrency; for each stage the throughput, the latency
+ * percentiles and queries per request of each scenario, the peak heap and the GC time are printed, and at the end the highest
+ * concurrency that kept the 95th percentile within its target without errors.
+ *
+ * Reports run against the stand-in database unless hughes.datasource.provider names another stand-in, ie. a replay of a capture. The
+ * production data sources are refused. Settings are read through ReportingConfig, so any can be given as a system property:
+ * 	hughes.loadtest.concurrency		- the supervisors in each stage, ie. 10,25,50,100
+ * 	hughes.loadtest.stageSeconds	- how long each stage runs
+ * 	hughes.loadtest.warmupSeconds	- how long to run the first stage's load, unmeasured, before starting
+ * 	hughes.loadtest.thinkMillis		- how long a supervisor waits between requests
+ * 	hughes.loadtest.mix				- scenario weights, ie. realtime:40,trend:20,stack:20,drivers:15,export:5
+ * 	hughes.loadtest.p95TargetMillis	- the 95th percentile a stage has to stay within to count as handled
+ * 	hughes.loadtest.teams			- the number of stand-in teams the supervisors are spread over
+ * 	hughes.loadtest.generateAgents	- agents to generate into an empty stand-in database first, 0 to use it as it is
+ * 	hughes.loadtest.generateYears	- years of data to generate
+ * 	hughes.loadtest.seed			- seed for the supervisors' choices
+ *
+ * @author Jason Diamond
+ *
+ */
+public class LoadTest
+{
+	public final static String CONCURRENCY = "hughes.loadtest.concurrency";
+	public final static String STAGE_SECONDS = "hughes.loadtest.stageSeconds";
+	public final static String WARMUP_SECONDS = "hughes.loadtest.warmupSeconds";
+	public final static String THINK_MILLIS = "hughes.loadtest.thinkMillis";
+	public final static String MIX = "hughes.loadtest.mix";
+	public final static String P95_TARGET_MILLIS = "hughes.loadtest.p95TargetMillis";
+	public final static String TEAMS = "hughes.loadtest.teams";
+	public final static String GENERATE_AGENTS = "hughes.loadtest.generateAgents";
+	public final static String GENERATE_YEARS = "hughes.loadtest.generateYears";
+	public final static String SEED = "hughes.loadtest.seed";
+
+	private final static String DEFAULT_CONCURRENCY = "10,25,50,100";
+	private final static String DEFAULT_MIX = "realtime:40,trend:20,stack:20,drivers:15,export:5";
+	private final static int HEAP_SAMPLE_MILLIS = 50;
+
+	private final DataSourceProvider provider;
+	private final LinkedHashMap<LoadScenario, Integer> mix;
+	private final int totalWeight;
+	private final long thinkMillis;
+	private final int teams;
+	private final long seed;
+
+	/**
+	 * Build a load test.
+	 *
+	 * @param provider		The data source the reports run against.
+	 * @param mix			The scenarios and their weights.
+	 * @param thinkMillis	How long a supervisor waits between requests.
+	 * @param teams			The number of teams the supervisors are spread over.
+	 * @param seed			Seed for the supervisors' choices.
+	 */
+	public LoadTest(DataSourceProvider provider, LinkedHashMap<LoadScenario, Integer> mix, long thinkMillis, int teams, long seed)
+	{
+		this.provider = provider;
+		this.mix = mix;
+		this.thinkMillis = thinkMillis;
+		this.teams = teams;
+		this.seed = seed;
+
+		int weight = 0;
+		for(int scenarioWeight : mix.values())
+		{
+			weight += scenarioWeight;
+		}
+
+		totalWeight = weight;
+	}
+
+	/**
+	 * Parse a load mix.
+	 *
+	 * @param mix	Comma separated scenario:weight pairs.
+	 *
+	 * @return	The scenarios and their weights.
+	 *
+	 * @throws IllegalArgumentException	If the mix names an unknown scenario, or has no positive weights.
+	 */
+	public static LinkedHashMap<LoadScenario, Integer> parseMix(String mix)
+	{
+		LinkedHashMap<LoadScenario, Integer> retval = new LinkedHashMap<LoadScenario, Integer>();
+
+		String[] pair;
+		int weight;
+		for(String entry : mix.split(","))
+		{
+			pair = entry.split(":");
+
+			weight = pair.length > 1 ? Integer.parseInt(pair[1].trim()) : 1;
+
+			if(weight > 0)
+			{
+				retval.put(LoadScenario.forName(pair[0]), weight);
+			}
+		}
+
+		if(retval.isEmpty())
+		{
+			throw new IllegalArgumentException("Empty load mix: " + mix);
+		}
+
+		return retval;
+	}
+
+	private LoadScenario pickScenario(Random random)
+	{
+		LoadScenario retval = null;
+
+		int pick = random.nextInt(totalWeight);
+
+		for(Entry<LoadScenario, Integer> entry : mix.entrySet())
+		{
+			pick -= entry.getValue();
+
+			if(pick < 0)
+			{
+				retval = entry.getKey();
+				break;
+			}
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Run one stage of load.
+	 *
+	 * @param concurrency	The number of supervisors.
+	 * @param seconds		How long to run.
+	 *
+	 * @return	The stage's results.
+	 *
+	 * @throws InterruptedException	If interrupted while waiting for the supervisors.
+	 */
+	public StageResult runStage(int concurrency, int seconds) throws InterruptedException
+	{
+		final StageResult retval = new StageResult(concurrency, mix.keySet());
+
+		final long deadline = System.nanoTime() + seconds * 1000000000L;
+
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		HeapSampler sampler = new HeapSampler(memory);
+
+		long gcStartMillis = getGCMillis();
+		long gcStartCount = getGCCount();
+		long stageStart = System.nanoTime();
+
+		sampler.start();
+
+		ArrayList<Thread> supervisors = new ArrayList<Thread>(concurrency);
+
+		for(int i = 0; i < concurrency; i++)
+		{
+			final Random random = new Random(seed + i);
+			final String teamName = StandInDataGenerator.getTeamName(1 + i % teams);
+
+			Thread supervisor = new Thread("supervisor-" + i)
+			{
+				@Override
+				public void run()
+				{
+					LoadScenario scenario;
+					QueryCountingProvider counter;
+					long requestStart;
+
+					while(System.nanoTime() < deadline)
+					{
+						scenario = pickScenario(random);
+						counter = new QueryCountingProvider(provider);
+
+						//a request's own provider, so its roster and child reports are counted with it
+						DataSources.setRequestProvider(counter);
+
+						requestStart = System.nanoTime();
+
+						try
+						{
+							scenario.run(random, teamName);
+
+							retval.getRecorder(scenario).record(System.nanoTime() - requestStart, counter.getQueryCount());
+						}
+						catch(Exception e)
+						{
+							retval.getRecorder(scenario).recordError();
+							retval.setLastError(scenario.getName() + ": " + e);
+						}
+						finally
+						{
+							DataSources.setRequestProvider(null);
+						}
+
+						if(thinkMillis > 0)
+						{
+							try
+							{
+								Thread.sleep(thinkMillis);
+							}
+							catch(InterruptedException e)
+							{
+								break;
+							}
+						}
+					}
+				}
+			};
+
+			supervisors.add(supervisor);
+			supervisor.start();
+		}
+
+		for(Thread supervisor : supervisors)
+		{
+			supervisor.join();
+		}
+
+		sampler.interrupt();
+		sampler.join();
+
+		retval.setElapsedMillis((System.nanoTime() - stageStart) / 1000000);
+		retval.setPeakHeapBytes(sampler.getPeakBytes());
+		retval.setGCMillis(getGCMillis() - gcStartMillis);
+		retval.setGCCount(getGCCount() - gcStartCount);
+
+		return retval;
+	}
+
+	private static long getGCMillis()
+	{
+		long retval = 0;
+
+		for(GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+		{
+			retval += Math.max(0, collector.getCollectionTime());
+		}
+
+		return retval;
+	}
+
+	private static long getGCCount()
+	{
+		long retval = 0;
+
+		for(GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+		{
+			retval += Math.max(0, collector.getCollectionCount());
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Samples the used heap while a stage runs, keeping the highest.
+	 */
+	private static class HeapSampler extends Thread
+	{
+		private final MemoryMXBean memory;
+		private final AtomicLong peakBytes;
+
+		public HeapSampler(MemoryMXBean memory)
+		{
+			super("heap-sampler");
+
+			this.memory = memory;
+
+			peakBytes = new AtomicLong();
+			setDaemon(true);
+		}
+
+		@Override
+		public void run()
+		{
+			try
+			{
+				while(!isInterrupted())
+				{
+					sample();
+					Thread.sleep(HEAP_SAMPLE_MILLIS);
+				}
+			}
+			catch(InterruptedException e)
+			{
+				//stage over
+			}
+
+			sample();
+		}
+
+		private void sample()
+		{
+			long used = memory.getHeapMemoryUsage().getUsed();
+
+			if(used > peakBytes.get())
+			{
+				peakBytes.set(used);
+			}
+		}
+
+		public long getPeakBytes()
+		{
+			return peakBytes.get();
+		}
+	}
+
+	private static DataSourceProvider getStandInProvider() throws Exception
+	{
+		DataSourceProvider retval;
+
+		if(ReportingConfig.getString(ReportingConfig.DATASOURCE_PROVIDER, null) == null)
+		{
+			retval = new StandInDataSourceProvider();
+			DataSources.setProvider(retval);
+		}
+		else
+		{
+			retval = DataSources.getProvider();
+
+			if(retval instanceof PropertyFileDataSourceProvider)
+			{
+				throw new IllegalStateException("Refusing to load test the production data sources");
+			}
+		}
+
+		return retval;
+	}
+
+	private static void generateStandInData(StandInDataSourceProvider provider, int agents, int years) throws Exception
+	{
+		StandInDataGenerator generator = new StandInDataGenerator();
+		generator.setAgents(agents);
+		generator.setYears(years);
+
+		//through today, so the realtime reports have data
+		GregorianCalendar tomorrow = new GregorianCalendar();
+		tomorrow.add(Calendar.DAY_OF_MONTH, 1);
+		generator.setEndDate(tomorrow);
+
+		System.out.println("Generating " + years + " years of stand-in data for " + agents + " agents into " + provider.getUrl());
+
+		Connection con = provider.openConnection();
+
+		try
+		{
+			StandInSchema.create(con);
+			generator.generate(con);
+		}
+		finally
+		{
+			con.close();
+		}
+	}
+
+	/**
+	 * Run the load test.
+	 *
+	 * @param args	Unused, see the class comment for the settings.
+	 *
+	 * @throws Exception	If the stand-in database cannot be set up.
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		DataSourceProvider provider = getStandInProvider();
+
+		int generateAgents = ReportingConfig.getInt(GENERATE_AGENTS, StandInDataGenerator.DEFAULT_AGENTS);
+
+		if(provider instanceof StandInDataSourceProvider && generateAgents > 0)
+		{
+			generateStandInData((StandInDataSourceProvider)provider, generateAgents, ReportingConfig.getInt(GENERATE_YEARS, 1));
+		}
+
+		int rosterAgents = generateAgents > 0 ? generateAgents : StandInDataGenerator.DEFAULT_AGENTS;
+
+		LoadTest loadTest = new LoadTest
+		(
+			provider,
+			parseMix(ReportingConfig.getString(MIX, DEFAULT_MIX)),
+			ReportingConfig.getLong(THINK_MILLIS, 1000),
+			ReportingConfig.getInt(TEAMS, StandInDataGenerator.getTeamCount(rosterAgents)),
+			ReportingConfig.getLong(SEED, 1)
+		);
+
+		ArrayList<Integer> stages = new ArrayList<Integer>();
+		for(String concurrency : ReportingConfig.getString(CONCURRENCY, DEFAULT_CONCURRENCY).split(","))
+		{
+			stages.add(Integer.parseInt(concurrency.trim()));
+		}
+
+		int stageSeconds = ReportingConfig.getInt(STAGE_SECONDS, 120);
+		int warmupSeconds = ReportingConfig.getInt(WARMUP_SECONDS, 30);
+		double p95TargetMillis = ReportingConfig.getLong(P95_TARGET_MILLIS, 5000);
+
+		if(warmupSeconds > 0)
+		{
+			System.out.println("Warming up with " + stages.get(0) + " supervisors for " + warmupSeconds + " s");
+
+			loadTest.runStage(stages.get(0), warmupSeconds);
+		}
+
+		int handled = 0;
+
+		for(int concurrency : stages)
+		{
+			StageResult result = loadTest.runStage(concurrency, stageSeconds);
+
+			result.print(System.out);
+
+			if(result.getTotal().getErrors() == 0 && result.getTotal().getPercentileMillis(95) <= p95TargetMillis)
+			{
+				handled = concurrency;
+			}
+		}
+
+		System.out.println();
+		System.out.println("Highest concurrency with p95 within " + (long)p95TargetMillis + " ms and no errors: " + (handled > 0 ? handled + " supervisors" : "none"));
+	}
+}
@@ -0,0 +1,88 @@
+package com.sutherland.hughes.benchmark.load;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
+import com.sutherland.hughes.datasources.DataSourceProvider;
+import com.sutherland.hughes.datasources.JDBCConnection;
+import com.sutherland.hughes.datasources.RowHandler;
+
+/**
+ * Counts the queries of one request, including those of its roster and child reports. Set as the request's provider in DataSources.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class QueryCountingProvider implements DataSourceProvider
+{
+	private final DataSourceProvider delegate;
+	private final AtomicInteger queryCount;
+
+	public QueryCountingProvider(DataSourceProvider delegate)
+	{
+		this.delegate = delegate;
+
+		queryCount = new AtomicInteger();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.DataSourceProvider#getConnection(java.lang.String)
+	 */
+	@Override
+	public JDBCConnection getConnection(String dbPropFile) throws DatabaseConnectionCreationException
+	{
+		return new CountingConnection(delegate.getConnection(dbPropFile), queryCount);
+	}
+
+	public int getQueryCount()
+	{
+		return queryCount.get();
+	}
+
+	private static class CountingConnection extends JDBCConnection
+	{
+		private final JDBCConnection delegate;
+		private final AtomicInteger queryCount;
+
+		public CountingConnection(JDBCConnection delegate, AtomicInteger queryCount) throws DatabaseConnectionCreationException
+		{
+			super("Counting");
+
+			this.delegate = delegate;
+			this.queryCount = queryCount;
+		}
+
+		@Override
+		public void setFetchSize(int fetchSize)
+		{
+			delegate.setFetchSize(fetchSize);
+		}
+
+		@Override
+		public long streamQuery(String query, RowHandler handler) throws SQLException, IOException
+		{
+			queryCount.incrementAndGet();
+
+			long retval = delegate.streamQuery(query, handler);
+
+			statistics.put(query, delegate.getStatistics().get(query));
+
+			return retval;
+		}
+
+		@Override
+		public ArrayList<String> getSchemaInfo(String tableName)
+		{
+			return delegate.getSchemaInfo(tableName);
+		}
+
+		@Override
+		public void close()
+		{
+			delegate.close();
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package com.sutherland.hughes.benchmark.load;
+
+import java.io.PrintStream;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+/**
+ * The measurements of one stage of a load test.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class StageResult
+{
+	private final static String ROW_FORMAT = "%-10s %9s %7s %9s %10s %10s %10s %9s%n";
+
+	private final int concurrency;
+	private final LinkedHashMap<LoadScenario, LatencyRecorder> recorders;
+
+	private long elapsedMillis;
+	private long peakHeapBytes;
+	private long gcMillis;
+	private long gcCount;
+	private volatile String lastError;
+
+	public StageResult(int concurrency, Collection<LoadScenario> scenarios)
+	{
+		this.concurrency = concurrency;
+
+		recorders = new LinkedHashMap<LoadScenario, LatencyRecorder>();
+
+		for(LoadScenario scenario : scenarios)
+		{
+			recorders.put(scenario, new LatencyRecorder());
+		}
+	}
+
+	public LatencyRecorder getRecorder(LoadScenario scenario)
+	{
+		return recorders.get(scenario);
+	}
+
+	/**
+	 * Accessor for the requests of every scenario together.
+	 *
+	 * @return	A recorder holding all the stage's requests.
+	 */
+	public LatencyRecorder getTotal()
+	{
+		LatencyRecorder retval = new LatencyRecorder();
+
+		for(LatencyRecorder recorder : recorders.values())
+		{
+			retval.add(recorder);
+		}
+
+		return retval;
+	}
+
+	public int getConcurrency()
+	{
+		return concurrency;
+	}
+
+	public void setElapsedMillis(long elapsedMillis)
+	{
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	public void setPeakHeapBytes(long peakHeapBytes)
+	{
+		this.peakHeapBytes = peakHeapBytes;
+	}
+
+	public void setGCMillis(long gcMillis)
+	{
+		this.gcMillis = gcMillis;
+	}
+
+	public void setGCCount(long gcCount)
+	{
+		this.gcCount = gcCount;
+	}
+
+	public void setLastError(String lastError)
+	{
+		this.lastError = lastError;
+	}
+
+	/**
+	 * Accessor for the stage's throughput.
+	 *
+	 * @return	Completed requests per second.
+	 */
+	public double getThroughput()
+	{
+		return elapsedMillis == 0 ? 0 : getTotal().getCount() * 1000.0 / elapsedMillis;
+	}
+
+	/**
+	 * Print the stage's results as a table.
+	 *
+	 * @param out	Where to print.
+	 */
+	public void print(PrintStream out)
+	{
+		LatencyRecorder total = getTotal();
+
+		out.println();
+		out.printf("=== %d supervisors, %.1f s ===%n", concurrency, elapsedMillis / 1000.0);
+		out.printf(ROW_FORMAT, "scenario", "requests", "errors", "req/s", "p50 ms", "p95 ms", "p99 ms", "queries");
+
+		for(Entry<LoadScenario, LatencyRecorder> entry : recorders.entrySet())
+		{
+			printRow(out, entry.getKey().getName(), entry.getValue());
+		}
+
+		printRow(out, "total", total);
+
+		out.printf("throughput %.2f req/s, peak heap %d MB, GC %d ms in %d collections (%.1f%% of the stage)%n", getThroughput(), peakHeapBytes / (1024 * 1024), gcMillis, gcCount, elapsedMillis == 0 ? 0 : gcMillis * 100.0 / elapsedMillis);
+
+		if(lastError != null)
+		{
+			out.println("last error: " + lastError);
+		}
+	}
+
+	private void printRow(PrintStream out, String name, LatencyRecorder recorder)
+	{
+		out.printf
+		(
+			ROW_FORMAT,
+			name,
+			recorder.getCount(),
+			recorder.getErrors(),
+			String.format("%.2f", elapsedMillis == 0 ? 0 : recorder.getCount() * 1000.0 / elapsedMillis),
+			String.format("%.1f", recorder.getPercentileMillis(50)),
+			String.format("%.1f", recorder.getPercentileMillis(95)),
+			String.format("%.1f", recorder.getPercentileMillis(99)),
+			String.format("%.1f", recorder.getQueriesPerRequest())
+		);
+	}
+}
@@ -0,0 +1,8 @@
+/**
+ * 
+ */
+/**
+ * @author Jason Diamond
+ *
+ */
+package com.sutherland.hughes.benchmark;
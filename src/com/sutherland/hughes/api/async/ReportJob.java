@@ -0,0 +1,382 @@
+package com.sutherland.hughes.api.async;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.log4j.Logger;
+
+import com.sutherland.helios.exceptions.ExceptionFormatter;
+import com.sutherland.helios.report.Report;
+import com.sutherland.hughes.api.export.ReportExporter;
+import com.sutherland.hughes.report.cache.ReportResultCache;
+import com.sutherland.hughes.report.execution.AdmissionLane;
+import com.sutherland.hughes.report.execution.AdmissionRejectedException;
+import com.sutherland.hughes.report.execution.BudgetExceededException;
+import com.sutherland.hughes.report.execution.ReportRequest;
+import com.sutherland.hughes.report.execution.RequestCancelledException;
+import com.sutherland.hughes.report.execution.RequestContext;
+import com.sutherland.hughes.report.execution.ResourceBudget;
+import com.sutherland.hughes.trace.TraceNode;
+import com.sutherland.hughes.util.results.ResultBuffer;
+
+/**
+ * One report submitted to run in the background. It's run to completion into a disk-backed ResultBuffer, the same as a paged export,
+ * and served from there a page at a time until it's removed or expires.
+ *
+ * A running job is a request of its own, with its own metrics, trace and ResourceBudget, in the bulk admission lane since nobody is
+ * holding a connection open for it. Its progress is the rows its budget has counted so far.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class ReportJob implements Runnable
+{
+	private final static Logger logger = Logger.getLogger(ReportJob.class);
+
+	public enum State
+	{
+		QUEUED("queued"),
+		RUNNING("running"),
+		SUCCEEDED("succeeded"),
+		FAILED("failed"),
+		CANCELLED("cancelled");
+
+		private final String label;
+
+		private State(String label)
+		{
+			this.label = label;
+		}
+
+		public String getLabel()
+		{
+			return label;
+		}
+
+		public boolean isFinished()
+		{
+			return this == SUCCEEDED || this == FAILED || this == CANCELLED;
+		}
+	}
+
+	private final String id;
+	private final Class<?> reportClass;
+	private final LinkedHashMap<String, String[]> parameters;
+	private final long submittedMillis;
+
+	private State state;
+	private long startedMillis;
+	private long finishedMillis;
+	private ResourceBudget budget;
+	private String traceId;
+	private ResultBuffer results;
+	private ArrayList<String> schema;
+	private String errorMessage;
+	private int readers;
+	private boolean discarded;
+
+	/**
+	 * Build a job.
+	 *
+	 * @param reportClass	The report to run.
+	 * @param parameters	The report parameters, by their http names (startDate, endDate, ...).
+	 */
+	public ReportJob(Class<?> reportClass, Map<String, String[]> parameters)
+	{
+		this.reportClass = reportClass;
+		this.parameters = new LinkedHashMap<String, String[]>(parameters);
+
+		id = UUID.randomUUID().toString();
+		submittedMillis = System.currentTimeMillis();
+		state = State.QUEUED;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run()
+	{
+		String reportName = reportClass.getSimpleName();
+
+		synchronized(this)
+		{
+			//cancelled while it was queued
+			if(state != State.QUEUED)
+			{
+				return;
+			}
+
+			state = State.RUNNING;
+			startedMillis = System.currentTimeMillis();
+
+			budget = ResourceBudget.forReport(reportName);
+			budget.setLane(AdmissionLane.BULK);
+		}
+
+		//nothing the thread picked up from another request, ie. its data source provider, applies to this job
+		RequestContext.clear();
+
+		ReportRequest request = ReportRequest.begin(reportName, budget);
+
+		if(request.getTraceId() != null)
+		{
+			synchronized(this)
+			{
+				traceId = request.getTraceId();
+			}
+		}
+
+		ResultBuffer buffered = null;
+		ArrayList<String> bufferedSchema = new ArrayList<String>();
+		State finalState = State.FAILED;
+		String error = null;
+
+		try
+		{
+			Report report = request.newReport(reportClass);
+
+			for(Map.Entry<String, String[]> parameter : parameters.entrySet())
+			{
+				for(String value : parameter.getValue())
+				{
+					report.getParameters().addParameter(parameter.getKey(), value);
+				}
+			}
+
+			buffered = ReportExporter.bufferReport(report, ReportResultCache.getInstance(), System.currentTimeMillis(), bufferedSchema);
+			request.setRows(buffered.size());
+
+			if(ReportExporter.succeeded(report))
+			{
+				finalState = State.SUCCEEDED;
+			}
+			else
+			{
+				error = report.getErrorMessage();
+			}
+		}
+		catch(RequestCancelledException e)
+		{
+			finalState = State.CANCELLED;
+			error = e.getMessage();
+		}
+		catch(AdmissionRejectedException e)
+		{
+			error = e.getMessage();
+		}
+		catch(BudgetExceededException e)
+		{
+			error = e.getMessage();
+		}
+		catch(Exception e)
+		{
+			error = ExceptionFormatter.asString(e);
+		}
+		finally
+		{
+			request.setErrorMessage(error);
+			request.end();
+		}
+
+		if(finalState == State.SUCCEEDED)
+		{
+			logger.info("Report job " + id + " ran " + reportName + " into " + buffered.size() + " rows");
+		}
+		else
+		{
+			logger.warn("Report job " + id + " for " + reportName + " " + finalState.getLabel() + ": " + error);
+		}
+
+		finish(finalState, finalState == State.SUCCEEDED ? buffered : null, bufferedSchema, error);
+
+		if(finalState != State.SUCCEEDED && buffered != null)
+		{
+			buffered.close();
+		}
+	}
+
+	private synchronized void finish(State finalState, ResultBuffer buffered, ArrayList<String> bufferedSchema, String error)
+	{
+		state = finalState;
+		finishedMillis = System.currentTimeMillis();
+		schema = bufferedSchema;
+		errorMessage = error;
+
+		if(buffered != null)
+		{
+			if(discarded)
+			{
+				buffered.close();
+			}
+			else
+			{
+				results = buffered;
+			}
+		}
+	}
+
+	/**
+	 * Cancel the job. A queued job never runs, and a running one is stopped, along with its queries.
+	 *
+	 * @param reason	Why it was cancelled.
+	 *
+	 * @return	True if the job hadn't finished, false otherwise.
+	 */
+	public synchronized boolean cancel(String reason)
+	{
+		boolean retval = !state.isFinished();
+
+		if(state == State.QUEUED)
+		{
+			state = State.CANCELLED;
+			finishedMillis = System.currentTimeMillis();
+			errorMessage = reason;
+		}
+		else if(state == State.RUNNING)
+		{
+			budget.cancel(reason);
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Cancel the job if it's unfinished, and release its results once nobody is reading them.
+	 */
+	public synchronized void discard()
+	{
+		cancel("Job removed");
+
+		discarded = true;
+
+		if(results != null && readers == 0)
+		{
+			results.close();
+			results = null;
+		}
+	}
+
+	/**
+	 * Start reading the job's results. Every non-null return must be matched by a call to closeResults once done.
+	 *
+	 * @return	The results, or null if the job hasn't succeeded or has been discarded.
+	 */
+	public synchronized ResultBuffer openResults()
+	{
+		ResultBuffer retval = null;
+
+		if(!discarded && results != null)
+		{
+			readers++;
+			retval = results;
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Finish reading the job's results.
+	 */
+	public synchronized void closeResults()
+	{
+		readers--;
+
+		if(discarded && readers == 0 && results != null)
+		{
+			results.close();
+			results = null;
+		}
+	}
+
+	/**
+	 * Determine if the job has been finished for longer than it's kept.
+	 *
+	 * @param nowMillis			The current time.
+	 * @param retentionMillis	How long finished jobs are kept.
+	 *
+	 * @return	True if it has expired, false otherwise.
+	 */
+	public synchronized boolean isExpired(long nowMillis, long retentionMillis)
+	{
+		return state.isFinished() && nowMillis - finishedMillis > retentionMillis;
+	}
+
+	public String getId()
+	{
+		return id;
+	}
+
+	public String getReportName()
+	{
+		return reportClass.getSimpleName();
+	}
+
+	public synchronized State getState()
+	{
+		return state;
+	}
+
+	public synchronized String getErrorMessage()
+	{
+		return errorMessage;
+	}
+
+	/**
+	 * Accessor for the report's column names.
+	 *
+	 * @return	The columns, or null if the job hasn't finished.
+	 */
+	public synchronized ArrayList<String> getSchema()
+	{
+		return schema;
+	}
+
+	/**
+	 * Accessor for the job's progress.
+	 *
+	 * @return	The rows fetched so far, or the rows produced once it has succeeded.
+	 */
+	public synchronized long getRows()
+	{
+		long retval = 0;
+
+		if(results != null)
+		{
+			retval = results.size();
+		}
+		else if(budget != null)
+		{
+			retval = budget.getRows();
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Append the job's status as a JSON object.
+	 *
+	 * @param out	Where to append it.
+	 */
+	public synchronized void appendJSON(StringBuilder out)
+	{
+		long now = System.currentTimeMillis();
+
+		out.append("{\"id\":");
+		TraceNode.appendString(out, id);
+		out.append(",\"report\":");
+		TraceNode.appendString(out, getReportName());
+		out.append(",\"state\":");
+		TraceNode.appendString(out, state.getLabel());
+		out.append(",\"rows\":").append(getRows());
+		out.append(",\"queuedMillis\":").append((startedMillis == 0 ? (finishedMillis == 0 ? now : finishedMillis) : startedMillis) - submittedMillis);
+		out.append(",\"runMillis\":").append(startedMillis == 0 ? 0 : (finishedMillis == 0 ? now : finishedMillis) - startedMillis);
+		out.append(",\"trace\":");
+		TraceNode.appendString(out, traceId);
+		out.append(",\"error\":");
+		TraceNode.appendString(out, errorMessage);
+		out.append('}');
+	}
+}
@@ -0,0 +1,297 @@
+package com.sutherland.hughes.api.async;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import com.sutherland.hughes.config.ReportingConfig;
+import com.sutherland.hughes.report.execution.AdmissionRejectedException;
+import com.sutherland.hughes.report.execution.RequestContext;
+
+/**
+ * Runs ReportJobs on a fixed pool of worker threads, so a long export or a multi-month report doesn't hold a request thread, or a proxy's
+ * connection, for as long as it runs. Jobs past the pool wait in a bounded queue, and a job submitted behind a full queue is turned away.
+ * Finished jobs, and their results, are kept for a retention period after they finish, and then dropped.
+ *
+ * Configured by hughes.reportJobs.threads, maxQueued and retentionSeconds. Disabled by setting hughes.reportJobs.enabled to false. Its
+ * counts are scraped by writeText.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class ReportJobQueue
+{
+	public final static int DEFAULT_THREADS = 4;
+	public final static int DEFAULT_MAX_QUEUED = 100;
+	public final static long DEFAULT_RETENTION_SECONDS = 3600;
+
+	private final static String THREAD_NAME_PREFIX = "hughes-report-jobs-";
+	private final static String METRIC_PREFIX = "hughes_report_jobs";
+	private final static long STOP_WAIT_MILLIS = 5000;
+
+	private final static Logger logger = Logger.getLogger(ReportJobQueue.class);
+
+	private static ReportJobQueue instance;
+
+	private final ThreadPoolExecutor executor;
+	private final long retentionMillis;
+	private final LinkedHashMap<String, ReportJob> jobs;
+	private long submitted;
+	private long rejected;
+
+	/**
+	 * Build a queue.
+	 *
+	 * @param threads			The most jobs to run at once.
+	 * @param maxQueued			The most jobs waiting to run.
+	 * @param retentionMillis	How long finished jobs are kept.
+	 */
+	public ReportJobQueue(int threads, int maxQueued, long retentionMillis)
+	{
+		this.retentionMillis = retentionMillis;
+
+		jobs = new LinkedHashMap<String, ReportJob>();
+
+		//the workers are started from whichever request submits first, and must not keep its state
+		executor = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads), 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(Math.max(1, maxQueued)), RequestContext.pooledThreads(THREAD_NAME_PREFIX));
+	}
+
+	/**
+	 * Accessor for the site-wide queue, built from the configuration on first use.
+	 *
+	 * @return	The queue, or null if it's disabled.
+	 */
+	public static synchronized ReportJobQueue getInstance()
+	{
+		if(instance == null && ReportingConfig.getBoolean(ReportingConfig.REPORT_JOBS_ENABLED, true))
+		{
+			int threads = ReportingConfig.getInt(ReportingConfig.REPORT_JOBS_THREADS, DEFAULT_THREADS);
+
+			instance = new ReportJobQueue
+			(
+				threads,
+				ReportingConfig.getInt(ReportingConfig.REPORT_JOBS_MAX_QUEUED, DEFAULT_MAX_QUEUED),
+				ReportingConfig.getLong(ReportingConfig.REPORT_JOBS_RETENTION_SECONDS, DEFAULT_RETENTION_SECONDS) * 1000
+			);
+
+			logger.info("Running report jobs on " + threads + " threads");
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Stop the site-wide queue, if it was started. Queued jobs are dropped and running ones cancelled.
+	 */
+	public static void shutdownInstance()
+	{
+		ReportJobQueue current;
+
+		synchronized(ReportJobQueue.class)
+		{
+			current = instance;
+			instance = null;
+		}
+
+		if(current != null)
+		{
+			current.shutdown(STOP_WAIT_MILLIS);
+		}
+	}
+
+	/**
+	 * Queue a job to run.
+	 *
+	 * @param job	The job.
+	 *
+	 * @throws AdmissionRejectedException	If the queue is full.
+	 */
+	public void submit(ReportJob job)
+	{
+		prune(System.currentTimeMillis());
+
+		synchronized(this)
+		{
+			try
+			{
+				executor.execute(job);
+			}
+			catch(RejectedExecutionException e)
+			{
+				rejected++;
+
+				throw new AdmissionRejectedException(executor.getQueue().size() + " report jobs are waiting already");
+			}
+
+			jobs.put(job.getId(), job);
+			submitted++;
+		}
+	}
+
+	/**
+	 * Accessor for a job.
+	 *
+	 * @param id	The job's id.
+	 *
+	 * @return	The job, or null if there's no such job or it has expired.
+	 */
+	public ReportJob getJob(String id)
+	{
+		prune(System.currentTimeMillis());
+
+		synchronized(this)
+		{
+			return id == null ? null : jobs.get(id);
+		}
+	}
+
+	/**
+	 * Accessor for every job that hasn't expired, in the order they were submitted.
+	 *
+	 * @return	A copy of the jobs.
+	 */
+	public ArrayList<ReportJob> getJobs()
+	{
+		prune(System.currentTimeMillis());
+
+		synchronized(this)
+		{
+			return new ArrayList<ReportJob>(jobs.values());
+		}
+	}
+
+	/**
+	 * Remove a job, cancelling it if it hasn't finished and releasing its results.
+	 *
+	 * @param id	The job's id.
+	 *
+	 * @return	The job, or null if there's no such job.
+	 */
+	public ReportJob remove(String id)
+	{
+		ReportJob retval;
+
+		synchronized(this)
+		{
+			retval = id == null ? null : jobs.remove(id);
+		}
+
+		if(retval != null)
+		{
+			//a queued job is left in the executor's queue, and returns as soon as it's taken
+			retval.discard();
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Drop the jobs that have been finished for longer than they're kept.
+	 *
+	 * @param nowMillis	The current time.
+	 *
+	 * @return	The number of jobs dropped.
+	 */
+	public int prune(long nowMillis)
+	{
+		ArrayList<ReportJob> expired = new ArrayList<ReportJob>();
+
+		synchronized(this)
+		{
+			for(Iterator<ReportJob> i = jobs.values().iterator(); i.hasNext(); )
+			{
+				ReportJob job = i.next();
+
+				if(job.isExpired(nowMillis, retentionMillis))
+				{
+					i.remove();
+					expired.add(job);
+				}
+			}
+		}
+
+		for(ReportJob job : expired)
+		{
+			job.discard();
+		}
+
+		return expired.size();
+	}
+
+	/**
+	 * Stop running jobs. Queued jobs are dropped and running ones cancelled.
+	 *
+	 * @param waitMillis	How long to wait for the running jobs to stop.
+	 */
+	public void shutdown(long waitMillis)
+	{
+		for(ReportJob job : getJobs())
+		{
+			job.discard();
+		}
+
+		executor.shutdownNow();
+
+		try
+		{
+			if(!executor.awaitTermination(waitMillis, TimeUnit.MILLISECONDS))
+			{
+				logger.warn("Report jobs still running after " + waitMillis + " ms");
+			}
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Accessor for the number of jobs waiting for a thread.
+	 *
+	 * @return	The number of jobs.
+	 */
+	public int getQueued()
+	{
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * Accessor for the number of jobs running.
+	 *
+	 * @return	The number of jobs.
+	 */
+	public int getRunning()
+	{
+		return executor.getActiveCount();
+	}
+
+	/**
+	 * Write the queue's counts in the Prometheus text exposition format.
+	 *
+	 * @param out	Where to write them. It is not flushed or closed.
+	 *
+	 * @throws IOException	If they cannot be written.
+	 */
+	public synchronized void writeText(Writer out) throws IOException
+	{
+		writeSample(out, "_submitted_total", "counter", submitted);
+		writeSample(out, "_rejected_total", "counter", rejected);
+		writeSample(out, "_queued", "gauge", getQueued());
+		writeSample(out, "_running", "gauge", getRunning());
+		writeSample(out, "_retained", "gauge", jobs.size());
+	}
+
+	private static void writeSample(Writer out, String metric, String type, long value) throws IOException
+	{
+		out.write("# TYPE " + METRIC_PREFIX + metric + " " + type + "\n");
+		out.write(METRIC_PREFIX + metric + " " + value + "\n");
+	}
+}
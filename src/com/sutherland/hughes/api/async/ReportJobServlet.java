@@ -0,0 +1,269 @@
+package com.sutherland.hughes.api.async;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.sutherland.hughes.api.export.ReportExporter;
+import com.sutherland.hughes.report.execution.AdmissionRejectedException;
+import com.sutherland.hughes.util.results.ResultBuffer;
+
+/**
+ * Runs reports in the background with a ReportJobQueue, for reports too long to wait on in a single request.
+ *
+ * POST submits a report, with the same report parameters as ExportServlet, and answers 202 with the new job's status as soon as it's
+ * queued. GET with an id polls the job's status: its state, rows fetched so far, time queued and running, and error. GET with an id and
+ * results=true fetches a succeeded job's results, in any of ExportServlet's formats and optionally a page at a time, as many times as
+ * needed until the job expires. DELETE with an id cancels the job, if it's unfinished, and drops it. GET with no id lists every job.
+ *
+ * Request parameters:
+ * 	report	- the report class name, for POST, either fully qualified or relative to com.sutherland.hughes.report.
+ * 	id		- the job, for GET and DELETE.
+ * 	results	- true to fetch the job's results, for GET.
+ * 	format	- csv, json, xml or html, for fetching results. Defaults to csv.
+ * 	gzip	- false to disable compression, for fetching results. Defaults to true.
+ * 	offset	- the first row to fetch. Defaults to 0.
+ * 	limit	- the maximum number of rows to fetch. Defaults to all of them.
+ * Any other parameters are passed to the report as report parameters, when it's submitted.
+ *
+ * A job submitted while the queue is full gets a 503 with a Retry-After, and fetching the results of a job that hasn't succeeded gets a 409.
+ *
+ * Mapped to /reportJobs in the webapp's WEB.xml, from conf/webapp/WEB-entries.xml.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class ReportJobServlet extends HttpServlet
+{
+	private static final long serialVersionUID = 1L;
+
+	private final static String REPORT_PARAM = "report";
+	private final static String ID_PARAM = "id";
+	private final static String RESULTS_PARAM = "results";
+	private final static String FORMAT_PARAM = "format";
+	private final static String GZIP_PARAM = "gzip";
+	private final static String OFFSET_PARAM = "offset";
+	private final static String LIMIT_PARAM = "limit";
+	private final static String CONTENT_TYPE = "application/json; charset=UTF-8";
+	private final static int RETRY_AFTER_SECONDS = 30;
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.http.HttpServlet#doPost(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
+	 */
+	@Override
+	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+	{
+		ReportJobQueue queue = ReportJobQueue.getInstance();
+
+		if(queue == null)
+		{
+			response.sendError(HttpServletResponse.SC_NOT_FOUND, "Report jobs are disabled");
+			return;
+		}
+
+		String reportClassName = ReportExporter.getReportClassName(request.getParameter(REPORT_PARAM));
+
+		if(reportClassName == null)
+		{
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid report class name");
+			return;
+		}
+
+		Class<?> reportClass;
+
+		try
+		{
+			reportClass = ReportExporter.getReportClass(reportClassName);
+		}
+		catch(ClassNotFoundException e)
+		{
+			response.sendError(HttpServletResponse.SC_NOT_FOUND, "No such report");
+			return;
+		}
+
+		LinkedHashMap<String, String[]> parameters = new LinkedHashMap<String, String[]>();
+
+		String paramName;
+		for(Enumeration<?> paramNames = request.getParameterNames(); paramNames.hasMoreElements(); )
+		{
+			paramName = (String)paramNames.nextElement();
+
+			if(!paramName.equals(REPORT_PARAM))
+			{
+				parameters.put(paramName, request.getParameterValues(paramName));
+			}
+		}
+
+		ReportJob job = new ReportJob(reportClass, parameters);
+
+		try
+		{
+			queue.submit(job);
+		}
+		catch(AdmissionRejectedException e)
+		{
+			response.setHeader("Retry-After", "" + RETRY_AFTER_SECONDS);
+			response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, e.getMessage());
+			return;
+		}
+
+		response.setStatus(HttpServletResponse.SC_ACCEPTED);
+		response.setHeader("Location", request.getRequestURI() + "?" + ID_PARAM + "=" + job.getId());
+
+		writeJSON(response, job);
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.http.HttpServlet#doGet(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
+	 */
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+	{
+		ReportJobQueue queue = ReportJobQueue.getInstance();
+		String id = request.getParameter(ID_PARAM);
+
+		if(queue != null && id == null)
+		{
+			StringBuilder json = new StringBuilder();
+			json.append('[');
+
+			boolean first = true;
+			for(ReportJob job : queue.getJobs())
+			{
+				if(!first)
+				{
+					json.append(',');
+				}
+
+				job.appendJSON(json);
+
+				first = false;
+			}
+
+			json.append(']');
+
+			writeJSON(response, json);
+			return;
+		}
+
+		ReportJob job = queue == null ? null : queue.getJob(id);
+
+		if(job == null)
+		{
+			response.sendError(HttpServletResponse.SC_NOT_FOUND, "No such job");
+		}
+		else if("true".equalsIgnoreCase(request.getParameter(RESULTS_PARAM)))
+		{
+			writeResults(request, response, job);
+		}
+		else
+		{
+			writeJSON(response, job);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.http.HttpServlet#doDelete(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
+	 */
+	@Override
+	protected void doDelete(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+	{
+		ReportJobQueue queue = ReportJobQueue.getInstance();
+
+		ReportJob job = queue == null ? null : queue.remove(request.getParameter(ID_PARAM));
+
+		if(job == null)
+		{
+			response.sendError(HttpServletResponse.SC_NOT_FOUND, "No such job");
+			return;
+		}
+
+		writeJSON(response, job);
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.GenericServlet#destroy()
+	 */
+	@Override
+	public void destroy()
+	{
+		ReportJobQueue.shutdownInstance();
+	}
+
+	private static void writeResults(HttpServletRequest request, HttpServletResponse response, ReportJob job) throws IOException
+	{
+		long offset;
+		long limit;
+
+		try
+		{
+			offset = parseRowCount(request.getParameter(OFFSET_PARAM), 0);
+			limit = parseRowCount(request.getParameter(LIMIT_PARAM), Long.MAX_VALUE);
+		}
+		catch(NumberFormatException e)
+		{
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid offset or limit");
+			return;
+		}
+
+		ResultBuffer results = job.openResults();
+
+		if(results == null)
+		{
+			response.sendError(HttpServletResponse.SC_CONFLICT, "Job is " + job.getState().getLabel());
+			return;
+		}
+
+		try
+		{
+			boolean gzip = !"false".equalsIgnoreCase(request.getParameter(GZIP_PARAM));
+
+			ReportExporter.export(results, job.getSchema(), request.getParameter(FORMAT_PARAM), offset, limit, gzip, request, response);
+		}
+		finally
+		{
+			job.closeResults();
+		}
+	}
+
+	private static long parseRowCount(String value, long defaultValue)
+	{
+		long retval = defaultValue;
+
+		if(value != null)
+		{
+			retval = Long.parseLong(value);
+
+			if(retval < 0)
+			{
+				throw new NumberFormatException("Negative row count: " + value);
+			}
+		}
+
+		return retval;
+	}
+
+	private static void writeJSON(HttpServletResponse response, ReportJob job) throws IOException
+	{
+		StringBuilder json = new StringBuilder();
+		job.appendJSON(json);
+
+		writeJSON(response, json);
+	}
+
+	private static void writeJSON(HttpServletResponse response, StringBuilder json) throws IOException
+	{
+		response.setContentType(CONTENT_TYPE);
+		response.setHeader("Cache-Control", "no-cache");
+
+		PrintWriter out = response.getWriter();
+		out.write(json.toString());
+		out.flush();
+	}
+}
@@ -0,0 +1,274 @@
+/**
+ *
+ */
+package com.sutherland.hughes.api.async.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map.Entry;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.sutherland.helios.data.granularity.user.UserGrains;
+import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
+import com.sutherland.helios.exceptions.ReportSetupException;
+import com.sutherland.helios.report.Report;
+import com.sutherland.helios.report.ReportTypes;
+import com.sutherland.helios.report.parameters.groups.ReportParameterGroups;
+import com.sutherland.hughes.api.async.ReportJob;
+import com.sutherland.hughes.api.async.ReportJobQueue;
+import com.sutherland.hughes.datasources.DataSourceProvider;
+import com.sutherland.hughes.datasources.DataSources;
+import com.sutherland.hughes.datasources.JDBCConnection;
+import com.sutherland.hughes.report.execution.AdmissionRejectedException;
+import com.sutherland.hughes.util.results.ResultBuffer;
+
+/**
+ * @author Jason Diamond
+ *
+ */
+public class ReportJobQueueTest extends TestCase
+{
+	/**
+	 * Holds up every run of DatedReport until it's counted down.
+	 */
+	private static volatile CountDownLatch release = new CountDownLatch(0);
+
+	/**
+	 * The request provider DatedReport's last run saw.
+	 */
+	private static volatile DataSourceProvider runProvider;
+
+	/**
+	 * Returns its start date three times, without a database, once it's released. The start date is left for the job to set.
+	 */
+	public static class DatedReport extends Report
+	{
+		public DatedReport() throws ReportSetupException
+		{
+			super();
+
+			getParameters().setEndDate("2014-10-02 00:00:00");
+			getParameters().setReportType(ReportTypes.STACK_REPORT);
+			getParameters().setUserGrain(UserGrains.AGENT_GRANULARITY);
+			getParameters().addTeamName("Team 1");
+		}
+
+		@Override
+		protected ArrayList<String[]> runReport() throws Exception
+		{
+			release.await();
+			runProvider = DataSources.getRequestProvider();
+
+			ArrayList<String[]> retval = new ArrayList<String[]>();
+
+			for(int i = 0; i < 3; i++)
+			{
+				retval.add(new String[]{getParameters().getStartDate(), "" + i});
+			}
+
+			return retval;
+		}
+
+		@Override
+		protected boolean setupDataSourceConnections()
+		{
+			return true;
+		}
+
+		@Override
+		protected boolean setupReport()
+		{
+			for(Entry<String, ArrayList<String>> reportType : ReportParameterGroups.BASIC_METRIC_REPORT_PARAMETERS.entrySet())
+			{
+				for(String paramName : reportType.getValue())
+				{
+					getParameters().addSupportedParameter(paramName);
+				}
+			}
+
+			return true;
+		}
+
+		@Override
+		protected boolean setupLogger()
+		{
+			return true;
+		}
+
+		@Override
+		public ArrayList<String> getReportSchema()
+		{
+			ArrayList<String> retval = new ArrayList<String>();
+			retval.add("Start");
+			retval.add("Index");
+
+			return retval;
+		}
+
+		@Override
+		protected void logInfoMessage(String message)
+		{
+		}
+
+		@Override
+		protected void logWarnMessage(String message)
+		{
+		}
+
+		@Override
+		protected void logErrorMessage(String message)
+		{
+		}
+	}
+
+	private static ReportJob job()
+	{
+		return new ReportJob(DatedReport.class, Collections.singletonMap("startDate", new String[]{"2014-10-01 00:00:00"}));
+	}
+
+	private static void waitFor(ReportJob job, ReportJob.State state) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + 5000;
+
+		while(job.getState() != state && System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(5);
+		}
+
+		assertEquals(job.getErrorMessage(), state, job.getState());
+	}
+
+	public void tearDown()
+	{
+		release = new CountDownLatch(0);
+	}
+
+	@Test
+	public void testResultsAreKeptUntilRemoved() throws Exception
+	{
+		ReportJobQueue queue = new ReportJobQueue(1, 10, 60000);
+		ReportJob job = job();
+
+		queue.submit(job);
+		waitFor(job, ReportJob.State.SUCCEEDED);
+
+		assertSame(job, queue.getJob(job.getId()));
+		assertEquals(3, job.getRows());
+		assertEquals(2, job.getSchema().size());
+
+		ResultBuffer results = job.openResults();
+		assertEquals("2014-10-01 00:00:00", results.getRows(2, 1).get(0)[0]);
+
+		//still being read, so removing it leaves the rows until they're done with
+		assertSame(job, queue.remove(job.getId()));
+		assertEquals(1, results.getRows(2, 1).size());
+		job.closeResults();
+
+		assertEquals(0, results.size());
+		assertNull(job.openResults());
+		assertNull(queue.getJob(job.getId()));
+
+		StringBuilder json = new StringBuilder();
+		job.appendJSON(json);
+		assertTrue(json.toString(), json.toString().startsWith("{\"id\":\"" + job.getId() + "\",\"report\":\"DatedReport\",\"state\":\"succeeded\",\"rows\":0"));
+
+		queue.shutdown(1000);
+	}
+
+	@Test
+	public void testWorkersDontKeepSubmittersProvider() throws Exception
+	{
+		DataSources.setRequestProvider(new DataSourceProvider()
+		{
+			@Override
+			public JDBCConnection getConnection(String dbPropFile) throws DatabaseConnectionCreationException
+			{
+				throw new DatabaseConnectionCreationException("Submitter's provider");
+			}
+		});
+
+		try
+		{
+			ReportJobQueue queue = new ReportJobQueue(1, 10, 60000);
+			ReportJob job = job();
+
+			//the worker is started by this submit, from a thread with a provider set
+			queue.submit(job);
+			waitFor(job, ReportJob.State.SUCCEEDED);
+
+			assertNull(runProvider);
+
+			queue.shutdown(1000);
+		}
+		finally
+		{
+			DataSources.setRequestProvider(null);
+		}
+	}
+
+	@Test
+	public void testRemovingARunningJobCancelsIt() throws Exception
+	{
+		release = new CountDownLatch(1);
+
+		ReportJobQueue queue = new ReportJobQueue(1, 10, 60000);
+		ReportJob running = job();
+		ReportJob queued = job();
+
+		queue.submit(running);
+		queue.submit(queued);
+		waitFor(running, ReportJob.State.RUNNING);
+
+		queue.remove(queued.getId());
+		assertEquals(ReportJob.State.CANCELLED, queued.getState());
+
+		queue.remove(running.getId());
+		release.countDown();
+
+		waitFor(running, ReportJob.State.CANCELLED);
+		assertEquals("Job removed", running.getErrorMessage());
+		assertNull(running.openResults());
+
+		queue.shutdown(1000);
+	}
+
+	@Test
+	public void testFullQueueIsRejectedAndFinishedJobsExpire() throws Exception
+	{
+		release = new CountDownLatch(1);
+
+		ReportJobQueue queue = new ReportJobQueue(1, 1, 1000);
+		ReportJob running = job();
+		ReportJob queued = job();
+
+		queue.submit(running);
+		waitFor(running, ReportJob.State.RUNNING);
+		queue.submit(queued);
+
+		try
+		{
+			queue.submit(job());
+			fail();
+		}
+		catch(AdmissionRejectedException e)
+		{
+		}
+
+		assertEquals(1, queue.getQueued());
+		assertEquals(2, queue.getJobs().size());
+
+		release.countDown();
+		waitFor(queued, ReportJob.State.SUCCEEDED);
+
+		assertEquals(0, queue.prune(System.currentTimeMillis()));
+		assertEquals(2, queue.prune(System.currentTimeMillis() + 2000));
+		assertNull(queued.openResults());
+		assertTrue(queue.getJobs().isEmpty());
+
+		queue.shutdown(1000);
+	}
+}
@@ -0,0 +1,175 @@
+package com.sutherland.hughes.api.batch;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+
+import com.sutherland.helios.exceptions.ExceptionFormatter;
+import com.sutherland.hughes.api.export.ReportExporter;
+import com.sutherland.hughes.config.ReportingConfig;
+import com.sutherland.hughes.report.execution.AdmissionRejectedException;
+import com.sutherland.hughes.report.execution.BudgetExceededException;
+import com.sutherland.hughes.report.execution.RequestCancelledException;
+
+/**
+ * Runs several reports with the same parameters as a ReportBatch, and returns all of their results in one JSON response:
+ * {"reports":[{"report":"CallVolume","schema":[...],"rows":[[...],...],"error":null},...]}, in the order the reports were asked for. A
+ * report that fails has its error and no rows, and doesn't fail the others.
+ *
+ * Request parameters:
+ * 	reports	- the report class names, either fully qualified or relative to com.sutherland.hughes.report, comma separated or repeated. At most
+ * 			  hughes.batch.maxReports of them, 20 by default.
+ * Any other parameters are passed to every report as report parameters, by their http names (startDate, endDate, ...).
+ *
+ * The batch's request id is returned in the X-Report-Request header, for cancelling it with RequestServlet. A batch shed by the database's
+ * AdmissionController, cancelled, or run past its time limit gets a 503, and one that goes past its ResourceBudget a 500 naming the budget.
+ *
+ * Mapped to /batch in the webapp's WEB.xml, from conf/webapp/WEB-entries.xml.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class BatchServlet extends HttpServlet
+{
+	private static final long serialVersionUID = 1L;
+
+	public final static int DEFAULT_MAX_REPORTS = 20;
+
+	private final static String REPORTS_PARAM = "reports";
+	private final static String REQUEST_HEADER = "X-Report-Request";
+	private final static String CONTENT_TYPE = "application/json; charset=UTF-8";
+	private final static int RETRY_AFTER_SECONDS = 30;
+
+	private final static Logger logger = Logger.getLogger(BatchServlet.class);
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.http.HttpServlet#doGet(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
+	 */
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+	{
+		ArrayList<String> reportClassNames = new ArrayList<String>();
+
+		String[] reportsParam = request.getParameterValues(REPORTS_PARAM);
+
+		if(reportsParam != null)
+		{
+			for(String value : reportsParam)
+			{
+				for(String reportName : value.split(","))
+				{
+					if(!reportName.trim().isEmpty())
+					{
+						reportClassNames.add(ReportExporter.getReportClassName(reportName.trim()));
+					}
+				}
+			}
+		}
+
+		if(reportClassNames.isEmpty() || reportClassNames.contains(null))
+		{
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid report class name");
+			return;
+		}
+
+		if(reportClassNames.size() > ReportingConfig.getInt(ReportingConfig.BATCH_MAX_REPORTS, DEFAULT_MAX_REPORTS))
+		{
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Too many reports");
+			return;
+		}
+
+		ArrayList<Class<?>> reportClasses = new ArrayList<Class<?>>();
+
+		for(String reportClassName : reportClassNames)
+		{
+			try
+			{
+				reportClasses.add(ReportExporter.getReportClass(reportClassName));
+			}
+			catch(ClassNotFoundException e)
+			{
+				response.sendError(HttpServletResponse.SC_NOT_FOUND, "No such report: " + reportClassName);
+				return;
+			}
+		}
+
+		LinkedHashMap<String, String[]> parameters = new LinkedHashMap<String, String[]>();
+
+		String paramName;
+		for(Enumeration<?> paramNames = request.getParameterNames(); paramNames.hasMoreElements(); )
+		{
+			paramName = (String)paramNames.nextElement();
+
+			if(!paramName.equals(REPORTS_PARAM))
+			{
+				parameters.put(paramName, request.getParameterValues(paramName));
+			}
+		}
+
+		ReportBatch batch = new ReportBatch(reportClasses, parameters);
+		response.setHeader(REQUEST_HEADER, batch.getId());
+
+		try
+		{
+			StringBuilder json = new StringBuilder();
+			json.append("{\"reports\":[");
+
+			boolean first = true;
+			for(ReportBatch.Result result : batch.run())
+			{
+				if(!first)
+				{
+					json.append(',');
+				}
+
+				result.appendJSON(json);
+
+				first = false;
+			}
+
+			json.append("]}");
+
+			response.setContentType(CONTENT_TYPE);
+			response.setHeader("Cache-Control", "no-cache");
+
+			PrintWriter out = response.getWriter();
+			out.write(json.toString());
+			out.flush();
+		}
+		catch(AdmissionRejectedException e)
+		{
+			logger.warn("Batch of " + reportClassNames + " shed: " + e.getMessage());
+
+			response.setHeader("Retry-After", "" + RETRY_AFTER_SECONDS);
+			response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, e.getMessage());
+		}
+		catch(RequestCancelledException e)
+		{
+			logger.warn("Batch of " + reportClassNames + " cancelled: " + e.getMessage());
+
+			response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, e.getMessage());
+		}
+		catch(BudgetExceededException e)
+		{
+			logger.error("Batch of " + reportClassNames + " aborted: " + e.getMessage());
+
+			response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+		}
+		catch(Exception e)
+		{
+			logger.error("Batch of " + reportClassNames + " failed");
+			logger.error(ExceptionFormatter.asString(e));
+
+			response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Batch failed");
+		}
+	}
+}
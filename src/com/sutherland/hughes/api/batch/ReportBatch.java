@@ -0,0 +1,283 @@
+package com.sutherland.hughes.api.batch;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import com.sutherland.helios.exceptions.ExceptionFormatter;
+import com.sutherland.helios.report.Report;
+import com.sutherland.helios.report.ReportRunner;
+import com.sutherland.hughes.api.export.ReportExporter;
+import com.sutherland.hughes.datasources.DataSources;
+import com.sutherland.hughes.datasources.session.SessionDataSourceProvider;
+import com.sutherland.hughes.report.execution.AdmissionLane;
+import com.sutherland.hughes.report.execution.ReportRequest;
+import com.sutherland.hughes.report.execution.ReportSession;
+import com.sutherland.hughes.report.execution.ResourceBudget;
+import com.sutherland.hughes.trace.TraceNode;
+
+/**
+ * Runs several reports with the same parameters as one request, ie. the reports behind a dashboard, and returns their results together.
+ * 
+ * The reports run at once, on a ReportRunner, in one ReportSession: a child report that more than one of them runs, like HandleTime under
+ * AverageHandleTime and RevenuePerCall, is run once for the batch, and so are the roster snapshot and the reference dictionaries. Their 
+ * queries share the batch's connections through a SessionDataSourceProvider. The batch is one request with one ResourceBudget, named 
+ * ReportBatch, in the lowest admission lane of any of its reports, so cancelling it or running past its time limit stops every report.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class ReportBatch
+{
+	public final static String BUDGET_NAME = "ReportBatch";
+	
+	private final static Logger logger = Logger.getLogger(ReportBatch.class);
+	
+	/**
+	 * One report's outcome.
+	 */
+	public static class Result
+	{
+		private final String reportName;
+		private final ArrayList<String> schema;
+		private final ArrayList<String[]> rows;
+		private final String errorMessage;
+		
+		private Result(String reportName, ArrayList<String> schema, ArrayList<String[]> rows, String errorMessage)
+		{
+			this.reportName = reportName;
+			this.schema = schema;
+			this.rows = rows;
+			this.errorMessage = errorMessage;
+		}
+		
+		public String getReportName()
+		{
+			return reportName;
+		}
+		
+		public ArrayList<String> getSchema()
+		{
+			return schema;
+		}
+		
+		/**
+		 * Accessor for the report's rows.
+		 * 
+		 * @return	The rows, or null if the report failed.
+		 */
+		public ArrayList<String[]> getRows()
+		{
+			return rows;
+		}
+		
+		/**
+		 * Accessor for why the report failed.
+		 * 
+		 * @return	The error, or null if the report succeeded.
+		 */
+		public String getErrorMessage()
+		{
+			return errorMessage;
+		}
+		
+		/**
+		 * Append the report's outcome as a JSON object.
+		 * 
+		 * @param out	Where to append it.
+		 */
+		public void appendJSON(StringBuilder out)
+		{
+			out.append("{\"report\":");
+			TraceNode.appendString(out, reportName);
+			out.append(",\"schema\":[");
+			
+			for(int i = 0; i < schema.size(); i++)
+			{
+				if(i > 0)
+				{
+					out.append(',');
+				}
+				
+				TraceNode.appendString(out, schema.get(i));
+			}
+			
+			out.append("],\"rows\":[");
+			
+			if(rows != null)
+			{
+				for(int i = 0; i < rows.size(); i++)
+				{
+					if(i > 0)
+					{
+						out.append(',');
+					}
+					
+					out.append('[');
+					
+					String[] row = rows.get(i);
+					for(int j = 0; j < row.length; j++)
+					{
+						if(j > 0)
+						{
+							out.append(',');
+						}
+						
+						TraceNode.appendString(out, row[j]);
+					}
+					
+					out.append(']');
+				}
+			}
+			
+			out.append("],\"error\":");
+			TraceNode.appendString(out, errorMessage);
+			out.append('}');
+		}
+	}
+	
+	private final ArrayList<Class<?>> reportClasses;
+	private final LinkedHashMap<String, String[]> parameters;
+	private final ResourceBudget budget;
+	
+	/**
+	 * Build a batch.
+	 * 
+	 * @param reportClasses	The reports to run, in the order their results are returned.
+	 * @param parameters	The report parameters every report is run with, by their http names (startDate, endDate, ...).
+	 */
+	public ReportBatch(List<Class<?>> reportClasses, Map<String, String[]> parameters)
+	{
+		this.reportClasses = new ArrayList<Class<?>>(reportClasses);
+		this.parameters = new LinkedHashMap<String, String[]>(parameters);
+		
+		budget = ResourceBudget.forReport(BUDGET_NAME);
+	}
+	
+	/**
+	 * Accessor for the batch's request id, for cancelling it with RequestServlet.
+	 * 
+	 * @return	The id.
+	 */
+	public String getId()
+	{
+		return budget.getId();
+	}
+	
+	/**
+	 * Run the reports. A report that fails doesn't stop the others, its result carries the error instead.
+	 * 
+	 * @return	Every report's result, in the order the reports were given.
+	 * 
+	 * @throws Exception	If a report cannot be built, or the batch is cancelled or runs past its time limit.
+	 */
+	public ArrayList<Result> run() throws Exception
+	{
+		ArrayList<Result> retval = new ArrayList<Result>();
+		
+		ReportRequest request = ReportRequest.begin(BUDGET_NAME, budget);
+		
+		ReportSession session = new ReportSession();
+		ReportSession.setCurrent(session);
+		
+		ArrayList<Report> reports = new ArrayList<Report>();
+		long rows = 0;
+		
+		try
+		{
+			//set before the reports are built, their constructors open their connections
+			SessionDataSourceProvider sessionProvider = new SessionDataSourceProvider(DataSources.getProvider());
+			request.closeOnEnd(sessionProvider);
+			request.setProvider(sessionProvider);
+			
+			AdmissionLane lane = AdmissionLane.REALTIME;
+			
+			for(Class<?> reportClass : reportClasses)
+			{
+				Report report = request.newReport(reportClass);
+				reports.add(report);
+				
+				for(Map.Entry<String, String[]> parameter : parameters.entrySet())
+				{
+					for(String value : parameter.getValue())
+					{
+						report.getParameters().addParameter(parameter.getKey(), value);
+					}
+				}
+				
+				//a batch waits as long as its least urgent report would have
+				AdmissionLane reportLane = AdmissionLane.forReport(report);
+				
+				if(reportLane.compareTo(lane) > 0)
+				{
+					lane = reportLane;
+				}
+			}
+			
+			budget.setLane(lane);
+			
+			ReportRunner runner = new ReportRunner();
+			
+			for(int i = 0; i < reports.size(); i++)
+			{
+				runner.addReport(getRunnerName(i), reports.get(i));
+			}
+			
+			runner.runReports();
+			
+			//a report cut off by the batch being cancelled isn't a result
+			budget.getCancellation().check();
+			
+			ArrayList<String[]> results;
+			String error;
+			for(int i = 0; i < reports.size(); i++)
+			{
+				results = runner.getResults(getRunnerName(i));
+				error = null;
+				
+				if(!ReportExporter.succeeded(reports.get(i)))
+				{
+					error = reports.get(i).getErrorMessage();
+					results = null;
+				}
+				else if(results == null)
+				{
+					error = "Report failed";
+				}
+				else
+				{
+					rows += results.size();
+				}
+				
+				retval.add(new Result(reportClasses.get(i).getSimpleName(), reports.get(i).getReportSchema(), results, error));
+			}
+			
+			logger.info("Ran a batch of " + reports.size() + " reports into " + rows + " rows on " + sessionProvider.getOpened() + " connections");
+		}
+		catch(Exception e)
+		{
+			request.setErrorMessage(e.getMessage() == null ? ExceptionFormatter.asString(e) : e.getMessage());
+			
+			throw e;
+		}
+		finally
+		{
+			request.setRows(rows);
+			request.end();
+			
+			session.clear();
+			ReportSession.setCurrent(null);
+		}
+		
+		return retval;
+	}
+	
+	private String getRunnerName(int index)
+	{
+		//the same report can be in the batch twice
+		return index + ":" + reportClasses.get(index).getName();
+	}
+}
@@ -0,0 +1,303 @@
+package com.sutherland.hughes.api.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+
+import com.sutherland.helios.exceptions.ExceptionFormatter;
+import com.sutherland.helios.report.Report;
+import com.sutherland.hughes.config.ReportingConfig;
+import com.sutherland.hughes.datasources.DataSources;
+import com.sutherland.hughes.datasources.capture.QueryRecorder;
+import com.sutherland.hughes.report.cache.ReportResultCache;
+import com.sutherland.hughes.report.execution.AdmissionLane;
+import com.sutherland.hughes.report.execution.AdmissionRejectedException;
+import com.sutherland.hughes.report.execution.BudgetExceededException;
+import com.sutherland.hughes.report.execution.ReportRequest;
+import com.sutherland.hughes.report.execution.RequestCancelledException;
+import com.sutherland.hughes.util.results.ResultBuffer;
+
+/**
+ * Streams a report's output straight to the client. Reports implementing StreamableReport never have their full output in memory;
+ * any other report is run normally and its results encoded on the way out. Paged requests, and closed periods the ReportResultCache
+ * keeps, are buffered to disk and the report closed before the client is served.
+ *
+ * Request parameters:
+ * 	report	- the report class name, either fully qualified or relative to com.sutherland.hughes.report.
+ * 	format	- csv, json, xml or html. Defaults to csv.
+ * 	gzip	- false to disable compression. Defaults to true.
+ * 	offset	- the first row to return. Defaults to 0.
+ * 	limit	- the maximum number of rows to return. Defaults to all of them.
+ * 	capture	- true to capture the request's queries to the hughes.datasource.capture.dir directory for offline replay.
+ * Any other parameters are passed to the report as report parameters, by their http names (startDate, endDate, ...).
+ *
+ * Each export is a ReportRequest, whose id and trace id are returned in the X-Report-Request and X-Report-Trace headers. A request shed
+ * by admission control or cancelled gets a 503, and one over its budget a 500.
+ *
+ * Mapped to /export in the webapp's WEB.xml, from conf/webapp/WEB-entries.xml.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class ExportServlet extends HttpServlet
+{
+	private static final long serialVersionUID = 1L;
+
+	private final static String REPORT_PARAM = "report";
+	private final static String FORMAT_PARAM = "format";
+	private final static String GZIP_PARAM = "gzip";
+	private final static String OFFSET_PARAM = "offset";
+	private final static String LIMIT_PARAM = "limit";
+	private final static String CAPTURE_PARAM = "capture";
+	private final static String CAPTURE_FILE_SUFFIX = ".capture.gz";
+	private final static String TRACE_HEADER = "X-Report-Trace";
+	private final static String REQUEST_HEADER = "X-Report-Request";
+	private final static int RETRY_AFTER_SECONDS = 30;
+
+	private final static Logger logger = Logger.getLogger(ExportServlet.class);
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.http.HttpServlet#doGet(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
+	 */
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+	{
+		String reportClassName = ReportExporter.getReportClassName(request.getParameter(REPORT_PARAM));
+
+		if(reportClassName == null)
+		{
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid report class name");
+			return;
+		}
+
+		long offset;
+		long limit;
+
+		try
+		{
+			offset = parseRowCount(request.getParameter(OFFSET_PARAM), 0);
+			limit = parseRowCount(request.getParameter(LIMIT_PARAM), Long.MAX_VALUE);
+		}
+		catch(NumberFormatException e)
+		{
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid offset or limit");
+			return;
+		}
+
+		boolean paged = request.getParameter(OFFSET_PARAM) != null || request.getParameter(LIMIT_PARAM) != null;
+
+		Class<?> reportClass;
+
+		try
+		{
+			reportClass = ReportExporter.getReportClass(reportClassName);
+		}
+		catch(ClassNotFoundException e)
+		{
+			response.sendError(HttpServletResponse.SC_NOT_FOUND, "No such report");
+			return;
+		}
+
+		//begun before the report is built, its constructor opens its connection
+		ReportRequest reportRequest = ReportRequest.begin(reportClass.getSimpleName());
+
+		response.setHeader(REQUEST_HEADER, reportRequest.getId());
+
+		if(reportRequest.getTraceId() != null)
+		{
+			response.setHeader(TRACE_HEADER, reportRequest.getTraceId());
+		}
+
+		try
+		{
+			boolean captured = startCapture(request, reportClassName, reportRequest);
+
+			Report report = reportRequest.newReport(reportClass);
+
+			String paramName;
+			for(Enumeration<?> paramNames = request.getParameterNames(); paramNames.hasMoreElements(); )
+			{
+				paramName = (String)paramNames.nextElement();
+
+				if(!isExportParam(paramName))
+				{
+					for(String value : request.getParameterValues(paramName))
+					{
+						report.getParameters().addParameter(paramName, value);
+					}
+				}
+			}
+
+			//the lane depends on the report's dates, so it's only known once they're set
+			reportRequest.getBudget().setLane(AdmissionLane.forReport(report));
+
+			boolean gzip = !"false".equalsIgnoreCase(request.getParameter(GZIP_PARAM));
+
+			//captures record the real queries, so they're never served from the result cache
+			ReportResultCache resultCache = captured ? null : ReportResultCache.getInstance();
+			long now = System.currentTimeMillis();
+
+			if(resultCache != null && !ReportResultCache.isClosedPeriod(report.getParameters(), now))
+			{
+				resultCache = null;
+			}
+
+			long rows;
+
+			if(paged || resultCache != null)
+			{
+				ArrayList<String> schema = new ArrayList<String>();
+
+				ResultBuffer results = ReportExporter.bufferReport(report, resultCache, now, schema);
+				reportRequest.closeOnEnd(results);
+				ReportExporter.checkSucceeded(report);
+
+				//done with the database before the client is served
+				reportRequest.closeReports();
+
+				rows = ReportExporter.export(results, schema, request.getParameter(FORMAT_PARAM), offset, limit, gzip, request, response);
+			}
+			else
+			{
+				rows = ReportExporter.export(report, request.getParameter(FORMAT_PARAM), gzip, request, response);
+			}
+
+			reportRequest.setRows(rows);
+
+			logger.info("Exported " + rows + " rows of " + reportClassName);
+		}
+		catch(AdmissionRejectedException e)
+		{
+			reportRequest.setErrorMessage(e.getMessage());
+
+			logger.warn("Export of " + reportClassName + " shed: " + e.getMessage());
+
+			if(!response.isCommitted())
+			{
+				response.setHeader("Retry-After", "" + RETRY_AFTER_SECONDS);
+				response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, e.getMessage());
+			}
+		}
+		catch(RequestCancelledException e)
+		{
+			reportRequest.setErrorMessage(e.getMessage());
+
+			logger.warn("Export of " + reportClassName + " cancelled: " + e.getMessage());
+
+			if(!response.isCommitted())
+			{
+				response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, e.getMessage());
+			}
+		}
+		catch(BudgetExceededException e)
+		{
+			reportRequest.setErrorMessage(e.getMessage());
+
+			logger.error("Export of " + reportClassName + " aborted: " + e.getMessage());
+
+			if(!response.isCommitted())
+			{
+				response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+			}
+		}
+		catch(ReportFailedException e)
+		{
+			reportRequest.setErrorMessage(e.getMessage());
+
+			logger.error("Export of " + reportClassName + " failed: " + e.getMessage());
+
+			if(!response.isCommitted())
+			{
+				response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Report failed");
+			}
+		}
+		catch(Exception e)
+		{
+			String requestError = ExceptionFormatter.asString(e);
+			reportRequest.setErrorMessage(requestError);
+
+			logger.error("Export of " + reportClassName + " failed");
+			logger.error(requestError);
+
+			if(!response.isCommitted())
+			{
+				response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Export failed");
+			}
+		}
+		finally
+		{
+			reportRequest.end();
+		}
+	}
+
+	/**
+	 * Start capturing the request's queries, if it asks for it and captures are enabled.
+	 *
+	 * @param request			The request being served.
+	 * @param reportClassName	The report being run, to name the capture file.
+	 * @param reportRequest		The request's ReportRequest, which serves its queries from the capture and closes it when it ends.
+	 *
+	 * @return	True if the request is captured.
+	 *
+	 * @throws Exception	If the capture file cannot be created.
+	 */
+	private static boolean startCapture(HttpServletRequest request, String reportClassName, ReportRequest reportRequest) throws Exception
+	{
+		boolean retval = false;
+
+		String captureDir = ReportingConfig.getString(ReportingConfig.CAPTURE_DIR, null);
+
+		if("true".equalsIgnoreCase(request.getParameter(CAPTURE_PARAM)))
+		{
+			if(captureDir == null)
+			{
+				logger.warn("Capture requested for " + reportClassName + " but no capture directory is set");
+			}
+			else
+			{
+				String reportName = reportClassName.substring(reportClassName.lastIndexOf('.') + 1);
+				File captureFile = new File(captureDir, reportName + "-" + System.currentTimeMillis() + CAPTURE_FILE_SUFFIX);
+
+				QueryRecorder recorder = new QueryRecorder(DataSources.getDatabaseProvider(), captureFile);
+				reportRequest.closeOnEnd(recorder);
+				reportRequest.setProvider(recorder);
+
+				logger.info("Capturing " + reportClassName + " queries to " + captureFile);
+
+				retval = true;
+			}
+		}
+
+		return retval;
+	}
+
+	private static boolean isExportParam(String paramName)
+	{
+		return paramName.equals(REPORT_PARAM) || paramName.equals(FORMAT_PARAM) || paramName.equals(GZIP_PARAM) || paramName.equals(OFFSET_PARAM) || paramName.equals(LIMIT_PARAM) || paramName.equals(CAPTURE_PARAM);
+	}
+
+	private static long parseRowCount(String value, long defaultValue)
+	{
+		long retval = defaultValue;
+
+		if(value != null)
+		{
+			retval = Long.parseLong(value);
+
+			if(retval < 0)
+			{
+				throw new NumberFormatException("Negative row count: " + value);
+			}
+		}
+
+		return retval;
+	}
+}
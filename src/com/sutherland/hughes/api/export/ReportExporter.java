@@ -0,0 +1,411 @@
+package com.sutherland.hughes.api.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.sutherland.helios.report.Report;
+import com.sutherland.hughes.api.format.output.StreamingFormatter;
+import com.sutherland.hughes.api.format.output.StreamingFormatterFactory;
+import com.sutherland.hughes.datasources.RowHandler;
+import com.sutherland.hughes.metrics.ReportMetricSet;
+import com.sutherland.hughes.metrics.ReportMetrics;
+import com.sutherland.hughes.metrics.ReportPhase;
+import com.sutherland.hughes.report.cache.ReportResultCache;
+import com.sutherland.hughes.report.execution.BudgetExceededException;
+import com.sutherland.hughes.report.execution.RequestCancelledException;
+import com.sutherland.hughes.report.execution.ResourceBudget;
+import com.sutherland.hughes.report.export.StreamableReport;
+import com.sutherland.hughes.util.results.ResultBuffer;
+
+/**
+ * Writes a report's formatted output to an output stream as it is produced. No Content-Length is set on servlet responses, so the
+ * container sends the body with chunked transfer encoding, optionally gzipped.
+ *
+ * StreamableReports are formatted a row at a time straight off the database cursor. Any other report is run to completion first, but its
+ * rows are still encoded directly to the stream rather than into a second list of formatted lines. Alternatively a report can be run into
+ * a disk-backed ResultBuffer first, and served a page at a time from there, or served from a ReportResultCache.
+ *
+ * @author Jason Diamond
+ *
+ */
+public final class ReportExporter
+{
+	private final static String REPORT_CLASS_PREFIX = "com.sutherland.hughes.report.";
+	private final static int OUTPUT_BUFFER_SIZE = 8192;
+	private final static int FLUSH_INTERVAL_ROWS = 500;
+
+	private ReportExporter()
+	{
+	}
+
+	/**
+	 * Qualify a report class name from a request.
+	 *
+	 * @param reportClassName	The report class name, either fully qualified or relative to com.sutherland.hughes.report.
+	 *
+	 * @return	The fully qualified name, or null if it isn't a valid class name.
+	 */
+	public static String getReportClassName(String reportClassName)
+	{
+		String retval = null;
+
+		if(reportClassName != null && reportClassName.matches("[A-Za-z0-9_\\.]+"))
+		{
+			retval = reportClassName.contains(".") ? reportClassName : REPORT_CLASS_PREFIX + reportClassName;
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Load a report class. Only the reports in com.sutherland.hughes.report are served, and a name from anywhere else is turned down
+	 * before it's loaded, so a request can't have any other class initialized.
+	 *
+	 * @param reportClassName	The fully qualified report class name.
+	 *
+	 * @return	The class.
+	 *
+	 * @throws ClassNotFoundException	If there is no such class, or it isn't a report in com.sutherland.hughes.report.
+	 */
+	public static Class<?> getReportClass(String reportClassName) throws ClassNotFoundException
+	{
+		if(!reportClassName.startsWith(REPORT_CLASS_PREFIX) || reportClassName.indexOf('.', REPORT_CLASS_PREFIX.length()) >= 0)
+		{
+			throw new ClassNotFoundException(reportClassName + " is not a report");
+		}
+
+		Class<?> retval = Class.forName(reportClassName);
+
+		if(!Report.class.isAssignableFrom(retval))
+		{
+			throw new ClassNotFoundException(reportClassName + " is not a report");
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Run the report and write its formatted output to the servlet response.
+	 *
+	 * @param report		The report to run. Its parameters are expected to already be set.
+	 * @param format		The output format, as understood by StreamingFormatterFactory.
+	 * @param gzip			Whether to gzip the response, if the client accepts it.
+	 * @param request		The request being served.
+	 * @param response		The response to write to.
+	 *
+	 * @return	The number of rows written.
+	 *
+	 * @throws Exception	If the report fails, or the client goes away.
+	 */
+	public static long export(Report report, String format, boolean gzip, HttpServletRequest request, HttpServletResponse response) throws Exception
+	{
+		long retval;
+
+		OutputStream out = openOutput(gzip, request, response);
+		StreamingFormatter formatter = StreamingFormatterFactory.getFormatter(format, out);
+
+		response.setContentType(formatter.getContentType() + "; charset=" + StreamingFormatter.CHARSET);
+
+		if(report instanceof StreamableReport)
+		{
+			retval = exportRows((StreamableReport)report, formatter);
+		}
+		else
+		{
+			retval = exportResults(report, formatter);
+		}
+
+		closeOutput(out, response);
+
+		return retval;
+	}
+
+	/**
+	 * Write a page of buffered results to the servlet response.
+	 *
+	 * @param results		The buffered rows.
+	 * @param schema		The report's column names.
+	 * @param format		The output format, as understood by StreamingFormatterFactory.
+	 * @param offset		The index of the first row to write.
+	 * @param limit			The maximum number of rows to write.
+	 * @param gzip			Whether to gzip the response, if the client accepts it.
+	 * @param request		The request being served.
+	 * @param response		The response to write to.
+	 *
+	 * @return	The number of rows written.
+	 *
+	 * @throws IOException	If the buffer cannot be read, or the client goes away.
+	 */
+	public static long export(ResultBuffer results, ArrayList<String> schema, String format, long offset, long limit, boolean gzip, HttpServletRequest request, HttpServletResponse response) throws IOException
+	{
+		OutputStream out = openOutput(gzip, request, response);
+		StreamingFormatter formatter = StreamingFormatterFactory.getFormatter(format, out);
+
+		response.setContentType(formatter.getContentType() + "; charset=" + StreamingFormatter.CHARSET);
+
+		long formatStart = System.nanoTime();
+
+		formatter.begin(schema);
+		results.replay(formatter, offset, limit);
+		formatter.end();
+
+		addFormatTime(System.nanoTime() - formatStart);
+
+		closeOutput(out, response);
+
+		return formatter.getRowCount();
+	}
+
+	/**
+	 * Run the report to completion into a ResultBuffer, which spills to disk past its memory budget. Once this returns the report can be
+	 * closed, so its database connection isn't held while the output is written to a slow client, and a failure is known before any
+	 * output has been committed.
+	 *
+	 * @param report	The report to run. Its parameters are expected to already be set.
+	 *
+	 * @return	The buffered rows. The caller is responsible for closing the buffer.
+	 *
+	 * @throws Exception	If the report fails.
+	 */
+	public static ResultBuffer bufferReport(Report report) throws Exception
+	{
+		ResultBuffer retval = new ResultBuffer();
+
+		try
+		{
+			if(report instanceof StreamableReport)
+			{
+				((StreamableReport)report).streamReport(retval);
+			}
+			else
+			{
+				for(String[] row : report.startReport())
+				{
+					retval.add(row);
+				}
+			}
+
+			checkBudget();
+		}
+		catch(Exception e)
+		{
+			retval.close();
+
+			throw e;
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Buffer the report's results as bufferReport does, serving them from a ReportResultCache instead if the request is for a closed
+	 * period and they're cached, and caching them if not.
+	 *
+	 * @param report	The report to run. Its parameters are expected to already be set.
+	 * @param cache		The cache, or null to always run the report.
+	 * @param nowMillis	The current time, to judge if the period is closed.
+	 * @param schema	Receives the report's column names.
+	 *
+	 * @return	The buffered rows. The caller is responsible for closing the buffer.
+	 *
+	 * @throws Exception	If the report fails.
+	 */
+	public static ResultBuffer bufferReport(Report report, ReportResultCache cache, long nowMillis, ArrayList<String> schema) throws Exception
+	{
+		ResultBuffer retval = null;
+
+		String key = null;
+
+		if(cache != null && ReportResultCache.isClosedPeriod(report.getParameters(), nowMillis))
+		{
+			key = ReportResultCache.key(report.getClass().getName(), report.getParameters());
+			retval = cache.get(key, schema, nowMillis);
+		}
+
+		if(retval == null)
+		{
+			schema.addAll(report.getReportSchema());
+
+			retval = bufferReport(report);
+
+			if(key != null && succeeded(report))
+			{
+				cache.put(key, schema, retval, nowMillis);
+			}
+		}
+
+		return retval;
+	}
+
+	private static OutputStream openOutput(boolean gzip, HttpServletRequest request, HttpServletResponse response) throws IOException
+	{
+		response.setBufferSize(OUTPUT_BUFFER_SIZE);
+
+		OutputStream retval = response.getOutputStream();
+
+		if(gzip && acceptsGzip(request))
+		{
+			response.setHeader("Content-Encoding", "gzip");
+			response.addHeader("Vary", "Accept-Encoding");
+
+			//sync flush so each periodic flush puts a chunk on the wire
+			retval = new GZIPOutputStream(retval, OUTPUT_BUFFER_SIZE, true);
+		}
+
+		return retval;
+	}
+
+	private static void closeOutput(OutputStream out, HttpServletResponse response) throws IOException
+	{
+		if(out instanceof GZIPOutputStream)
+		{
+			((GZIPOutputStream)out).finish();
+		}
+
+		response.flushBuffer();
+	}
+
+	/**
+	 * Run the report and write its rows through the formatter as they are produced. The formatter's stream is flushed but not closed.
+	 *
+	 * @param report		The report to run. Its parameters are expected to already be set.
+	 * @param formatter		The output formatter.
+	 *
+	 * @return	The number of rows written.
+	 *
+	 * @throws Exception	If the report fails, or the stream cannot be written.
+	 */
+	public static long exportRows(StreamableReport report, final StreamingFormatter formatter) throws Exception
+	{
+		formatter.begin(report.getReportSchema());
+
+		report.streamReport(new RowHandler()
+		{
+			@Override
+			public void handleRow(String[] row) throws IOException
+			{
+				formatter.writeRow(row);
+
+				if(formatter.getRowCount() % FLUSH_INTERVAL_ROWS == 0)
+				{
+					formatter.flush();
+				}
+			}
+		});
+
+		formatter.end();
+
+		return formatter.getRowCount();
+	}
+
+	/**
+	 * Run the report to completion and write its results through the formatter. The formatter's stream is flushed but not closed.
+	 *
+	 * @param report		The report to run. Its parameters are expected to already be set.
+	 * @param formatter		The output formatter.
+	 *
+	 * @return	The number of rows written.
+	 *
+	 * @throws IOException				If the stream cannot be written.
+	 * @throws BudgetExceededException	If the report was aborted for going over the request's budget. Nothing has been written.
+	 * @throws ReportFailedException	If the report failed. Nothing has been written.
+	 */
+	public static long exportResults(Report report, StreamingFormatter formatter) throws IOException
+	{
+		ArrayList<String[]> results = report.startReport();
+
+		checkBudget();
+		checkSucceeded(report);
+
+		long formatStart = System.nanoTime();
+
+		formatter.writeResults(report.getReportSchema(), results);
+
+		addFormatTime(System.nanoTime() - formatStart);
+
+		return formatter.getRowCount();
+	}
+
+	/**
+	 * Determine if a report that has run succeeded. Helios sets every report's error message to "" when it's built, so only a message that
+	 * isn't empty is a failure.
+	 *
+	 * @param report	The report, after it has run.
+	 *
+	 * @return	True if the report succeeded, false otherwise.
+	 */
+	public static boolean succeeded(Report report)
+	{
+		String errorMessage = report.getErrorMessage();
+
+		return errorMessage == null || errorMessage.isEmpty();
+	}
+
+	/**
+	 * Fail the request if the report failed. Helios reports catch their own failures and return no rows, which would otherwise be served
+	 * as an empty result.
+	 *
+	 * @param report	The report, after it has run.
+	 *
+	 * @throws ReportFailedException	If the report has an error message.
+	 */
+	public static void checkSucceeded(Report report)
+	{
+		if(!succeeded(report))
+		{
+			throw new ReportFailedException(report.getErrorMessage());
+		}
+	}
+
+	/**
+	 * Fail the request if the report was aborted for going over its budget, or cancelled. A report catches its own failures, so without
+	 * this its partial results would be served as if it had succeeded.
+	 *
+	 * @throws BudgetExceededException		If the request's budget has been exceeded.
+	 * @throws RequestCancelledException	If the request was cancelled or ran out of time.
+	 */
+	private static void checkBudget()
+	{
+		ResourceBudget budget = ResourceBudget.getCurrent();
+
+		if(budget != null)
+		{
+			budget.check();
+		}
+	}
+
+	/**
+	 * Record time spent writing output to the metrics of the request being served, if any. A StreamableReport's rows are written as they
+	 * are fetched, so its formatting is counted in the fetch time instead.
+	 *
+	 * @param nanos	The time, in nanoseconds.
+	 */
+	private static void addFormatTime(long nanos)
+	{
+		ReportMetricSet requestMetrics = ReportMetrics.getCurrentRequest();
+
+		if(requestMetrics != null)
+		{
+			requestMetrics.addPhaseTime(ReportPhase.FORMAT, nanos);
+		}
+	}
+
+	/**
+	 * Determine if the client will take a gzipped response.
+	 *
+	 * @param request	The request being served.
+	 *
+	 * @return	True if gzip is listed in the request's Accept-Encoding header, false otherwise.
+	 */
+	public static boolean acceptsGzip(HttpServletRequest request)
+	{
+		String acceptEncoding = request.getHeader("Accept-Encoding");
+
+		return acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+	}
+}
@@ -0,0 +1,21 @@
+package com.sutherland.hughes.api.export;
+
+/**
+ * Thrown when a report caught its own failure, so its empty or partial results aren't served as if it had succeeded. It's unchecked for
+ * the same reason as BudgetExceededException.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class ReportFailedException extends RuntimeException
+{
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * @param message	The report's error message.
+	 */
+	public ReportFailedException(String message)
+	{
+		super(message);
+	}
+}
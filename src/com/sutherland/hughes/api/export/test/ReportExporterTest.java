@@ -0,0 +1,116 @@
+/**
+ *
+ */
+package com.sutherland.hughes.api.export.test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.sutherland.helios.exceptions.ReportSetupException;
+import com.sutherland.hughes.api.export.ReportExporter;
+import com.sutherland.hughes.api.export.ReportFailedException;
+import com.sutherland.hughes.api.format.output.StreamingFormatter;
+import com.sutherland.hughes.api.format.output.StreamingFormatterFactory;
+import com.sutherland.hughes.api.warmup.WarmupTemplate;
+import com.sutherland.hughes.api.warmup.test.WarmupTest;
+
+/**
+ * @author Jason Diamond
+ *
+ */
+public class ReportExporterTest extends TestCase
+{
+	/**
+	 * Fails the way a report losing its connection would, which Helios catches.
+	 */
+	public static class FailingReport extends WarmupTest.DailyReport
+	{
+		public FailingReport() throws ReportSetupException
+		{
+			super();
+		}
+
+		@Override
+		protected ArrayList<String[]> runReport() throws Exception
+		{
+			throw new Exception("Connection lost");
+		}
+	}
+
+	private static void setParameters(WarmupTest.DailyReport report)
+	{
+		WarmupTemplate.YESTERDAY_BY_TEAM.apply(report.getParameters(), System.currentTimeMillis());
+	}
+
+	@Test
+	public void testReportIsExported() throws Exception
+	{
+		WarmupTest.DailyReport report = new WarmupTest.DailyReport();
+		setParameters(report);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		StreamingFormatter formatter = StreamingFormatterFactory.getFormatter("csv", out);
+
+		assertEquals(1, ReportExporter.exportResults(report, formatter));
+
+		formatter.flush();
+		assertTrue(out.size() > 0);
+	}
+
+	@Test
+	public void testFailedReportIsNotExported() throws Exception
+	{
+		FailingReport report = new FailingReport();
+		setParameters(report);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		StreamingFormatter formatter = StreamingFormatterFactory.getFormatter("csv", out);
+
+		try
+		{
+			ReportExporter.exportResults(report, formatter);
+
+			fail("Expected the report's failure");
+		}
+		catch(ReportFailedException e)
+		{
+			assertTrue(e.getMessage(), e.getMessage().contains("Connection lost"));
+		}
+
+		formatter.flush();
+		assertEquals(0, out.size());
+	}
+
+	@Test
+	public void testOnlySiteReportsAreLoaded() throws Exception
+	{
+		assertEquals("com.sutherland.hughes.report.Teams", ReportExporter.getReportClass(ReportExporter.getReportClassName("Teams")).getName());
+
+		String[] notReports =
+		{
+			WarmupTest.DailyReport.class.getName(),
+			"com.sutherland.hughes.report.execution.ReportRequest",
+			"com.sutherland.hughes.reportx.Teams",
+			"java.lang.String",
+			"com.sutherland.hughes.report.NoSuchReport"
+		};
+
+		for(String notReport : notReports)
+		{
+			try
+			{
+				ReportExporter.getReportClass(notReport);
+
+				fail("Expected " + notReport + " to be turned down");
+			}
+			catch(ClassNotFoundException e)
+			{
+				//turned down
+			}
+		}
+	}
+}
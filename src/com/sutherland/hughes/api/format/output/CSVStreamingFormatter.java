@@ -0,0 +1,124 @@
+package com.sutherland.hughes.api.format.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+
+/**
+ * Streaming equivalent of the Helios CSVFormatter. Output is byte for byte the same: every value is followed by the delimiter, values are
+ * optionally wrapped in double quotes but never escaped, and the header line is on by default.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class CSVStreamingFormatter extends StreamingFormatter
+{
+	private final static String DEFAULT_DELIM = ",";
+	private final static char QUOTE = '"';
+	private final static char LINE_SEPARATOR = '\n';
+
+	private boolean enquote;
+	private boolean enableHeaders;
+	private String delim;
+
+	public CSVStreamingFormatter(OutputStream out)
+	{
+		this(out, DEFAULT_BUFFER_SIZE);
+	}
+
+	public CSVStreamingFormatter(OutputStream out, int bufferSize)
+	{
+		super(out, bufferSize);
+
+		enquote = false;
+		enableHeaders = true;
+		delim = DEFAULT_DELIM;
+	}
+
+	public void setEnquote(boolean enquote)
+	{
+		this.enquote = enquote;
+	}
+
+	public void enableHeaders(boolean enableHeaders)
+	{
+		this.enableHeaders = enableHeaders;
+	}
+
+	public void setDelim(String delim)
+	{
+		this.delim = delim;
+	}
+
+	public String getDelim()
+	{
+		return delim;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.api.format.output.StreamingFormatter#getContentType()
+	 */
+	@Override
+	public String getContentType()
+	{
+		return "text/csv";
+	}
+
+	@Override
+	protected int getLineOverhead()
+	{
+		return 1;
+	}
+
+	@Override
+	protected int getCellOverhead()
+	{
+		return 2 + delim.length();
+	}
+
+	@Override
+	protected void writeHeader(ArrayList<String> schema) throws IOException
+	{
+		if(enableHeaders && schema != null)
+		{
+			for(String columnName : schema)
+			{
+				writeValue(columnName);
+			}
+
+			buffer.append(LINE_SEPARATOR);
+		}
+	}
+
+	@Override
+	protected void writeLine(String[] row, long rowIndex) throws IOException
+	{
+		for(String value : row)
+		{
+			writeValue(value);
+		}
+
+		buffer.append(LINE_SEPARATOR);
+	}
+
+	@Override
+	protected void writeFooter(long rowCount)
+	{
+	}
+
+	private void writeValue(String value) throws IOException
+	{
+		if(enquote)
+		{
+			buffer.append(QUOTE);
+			buffer.append(value);
+			buffer.append(QUOTE);
+		}
+		else
+		{
+			buffer.append(value);
+		}
+
+		buffer.append(delim);
+	}
+}
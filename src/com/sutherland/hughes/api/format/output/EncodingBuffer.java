@@ -0,0 +1,226 @@
+package com.sutherland.hughes.api.format.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A reusable byte buffer that UTF-8 encodes characters as they are appended, and drains to an output stream when full. Formatters write
+ * cell values into it directly rather than building an intermediate String per cell or per line.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class EncodingBuffer
+{
+	private final static int MAX_BYTES_PER_CHAR = 3;
+	private final static char REPLACEMENT_CHAR = '?';
+
+	private final OutputStream out;
+	private byte[] buffer;
+	private int position;
+	private char pendingHighSurrogate;
+
+	/**
+	 * Build the buffer.
+	 *
+	 * @param out				The stream to drain to.
+	 * @param initialCapacity	The initial size of the buffer, in bytes.
+	 */
+	public EncodingBuffer(OutputStream out, int initialCapacity)
+	{
+		this.out = out;
+
+		buffer = new byte[Math.max(initialCapacity, 16)];
+		position = 0;
+		pendingHighSurrogate = 0;
+	}
+
+	/**
+	 * Make sure the next byteCount bytes can be appended without draining part way through. Drains the buffer if there isn't room, and
+	 * grows it if it's too small to hold that many bytes at all.
+	 *
+	 * @param byteCount	The number of bytes about to be appended.
+	 *
+	 * @throws IOException	If the buffer could not be drained.
+	 */
+	public void reserve(int byteCount) throws IOException
+	{
+		if(buffer.length - position < byteCount)
+		{
+			drain();
+
+			if(buffer.length < byteCount)
+			{
+				int newCapacity = buffer.length;
+				while(newCapacity < byteCount && newCapacity > 0)
+				{
+					newCapacity <<= 1;
+				}
+
+				buffer = new byte[newCapacity > 0 ? newCapacity : byteCount];
+			}
+		}
+	}
+
+	/**
+	 * Encode and append a string. Null is appended as "null", the same as StringBuilder.
+	 *
+	 * @param value	The string to append.
+	 *
+	 * @throws IOException	If the buffer had to be drained and could not be.
+	 */
+	public void append(String value) throws IOException
+	{
+		if(value == null)
+		{
+			value = "null";
+		}
+
+		int length = value.length();
+		for(int i = 0; i < length; i++)
+		{
+			append(value.charAt(i));
+		}
+	}
+
+	/**
+	 * Encode and append a character. A surrogate pair may be appended one half at a time.
+	 *
+	 * @param c	The character to append.
+	 *
+	 * @throws IOException	If the buffer had to be drained and could not be.
+	 */
+	public void append(char c) throws IOException
+	{
+		if(buffer.length - position < MAX_BYTES_PER_CHAR + 1)
+		{
+			drain();
+		}
+
+		if(pendingHighSurrogate != 0)
+		{
+			char high = pendingHighSurrogate;
+			pendingHighSurrogate = 0;
+
+			if(Character.isLowSurrogate(c))
+			{
+				int codePoint = Character.toCodePoint(high, c);
+
+				buffer[position++] = (byte)(0xF0 | (codePoint >> 18));
+				buffer[position++] = (byte)(0x80 | ((codePoint >> 12) & 0x3F));
+				buffer[position++] = (byte)(0x80 | ((codePoint >> 6) & 0x3F));
+				buffer[position++] = (byte)(0x80 | (codePoint & 0x3F));
+
+				return;
+			}
+
+			buffer[position++] = (byte)REPLACEMENT_CHAR;
+		}
+
+		if(c < 0x80)
+		{
+			buffer[position++] = (byte)c;
+		}
+		else if(c < 0x800)
+		{
+			buffer[position++] = (byte)(0xC0 | (c >> 6));
+			buffer[position++] = (byte)(0x80 | (c & 0x3F));
+		}
+		else if(Character.isHighSurrogate(c))
+		{
+			pendingHighSurrogate = c;
+		}
+		else if(Character.isLowSurrogate(c))
+		{
+			buffer[position++] = (byte)REPLACEMENT_CHAR;
+		}
+		else
+		{
+			buffer[position++] = (byte)(0xE0 | (c >> 12));
+			buffer[position++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+			buffer[position++] = (byte)(0x80 | (c & 0x3F));
+		}
+	}
+
+	/**
+	 * Append the decimal digits of a number, without going through Integer.toString.
+	 *
+	 * @param value	The number to append.
+	 *
+	 * @throws IOException	If the buffer had to be drained and could not be.
+	 */
+	public void append(long value) throws IOException
+	{
+		if(value < 0)
+		{
+			if(value == Long.MIN_VALUE)
+			{
+				append(Long.toString(value));
+				return;
+			}
+
+			append('-');
+			value = -value;
+		}
+
+		//at most 19 digits
+		reserve(20);
+
+		int digitCount = 1;
+		for(long remaining = value / 10; remaining > 0; remaining /= 10)
+		{
+			digitCount++;
+		}
+
+		for(int i = position + digitCount - 1; i >= position; i--)
+		{
+			buffer[i] = (byte)('0' + (value % 10));
+			value /= 10;
+		}
+
+		position += digitCount;
+	}
+
+	/**
+	 * Write the buffered bytes to the output stream, without flushing the stream.
+	 *
+	 * @throws IOException	If the stream could not be written.
+	 */
+	public void drain() throws IOException
+	{
+		if(position > 0)
+		{
+			out.write(buffer, 0, position);
+			position = 0;
+		}
+	}
+
+	/**
+	 * Write the buffered bytes to the output stream and flush it. A dangling high surrogate is written as a replacement character.
+	 *
+	 * @throws IOException	If the stream could not be written.
+	 */
+	public void flush() throws IOException
+	{
+		if(pendingHighSurrogate != 0)
+		{
+			pendingHighSurrogate = 0;
+
+			reserve(1);
+			buffer[position++] = (byte)REPLACEMENT_CHAR;
+		}
+
+		drain();
+		out.flush();
+	}
+
+	/**
+	 * Accessor for the current buffer size.
+	 *
+	 * @return	The capacity of the buffer, in bytes.
+	 */
+	public int getCapacity()
+	{
+		return buffer.length;
+	}
+}
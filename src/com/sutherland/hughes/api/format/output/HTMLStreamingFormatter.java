@@ -0,0 +1,187 @@
+package com.sutherland.hughes.api.format.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+
+import com.sutherland.helios.report.parameters.sanitize.StringSanitizer;
+
+/**
+ * Streaming equivalent of the Helios HTMLFormatter: the same page framing, tablesorter table and one table row per line. The Helios
+ * formatter picks the column sorters from the first row, so they are worked out as that row goes by and written with the closing script.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class HTMLStreamingFormatter extends StreamingFormatter
+{
+	private final static int REFRESH_INTERVAL = 600;
+	private final static char LINE_SEPARATOR = '\n';
+
+	private final static String[] PAGE_HEAD =
+	{
+		"<!DOCTYPE HTML PUBLIC \"-//W3C//DTD HTML 4.0 Transitional//EN\">",
+		"<HTML><HEAD><TITLE>Helios Data Analysis</TITLE>",
+		"<META http-equiv=Content-Type content=\"text/html; charset=utf-8\">"
+	};
+
+	private final static String[] PAGE_BANNER =
+	{
+		"<STYLE>.warningMessage { color:red; } html body, td { font-family: arial,verdana,helvetica; font-size:10pt;\t}</STYLE></HEAD>",
+		"<body bgcolor=\"#ededed\"><link rel=\"stylesheet\" href=\"css/tablesorter.css\" type=\"text/css\" media=\"print, projection, screen\" />",
+		"<TABLE cellSpacing=0 border=0 cellpadding=\"2\" width=\"100%\">\t<TBODY>\t<TR><td align=\"left\" valign=\"top\"><img height=\"93\" width=\"400\" src=\"images/helios_banner.jpg\"/></a>\t</td>",
+		"</tr></TBODY></TABLE>",
+		"<script type=\"text/javascript\" src=\"js/jquery-1.10.2.min.js\"></script>",
+		"<script type=\"text/javascript\" src= \"js/jquery.tablesorter.min.js\"></script>",
+		"<script type=\"text/javascript\" src=\"js/excelDateSorter.js\"></script>",
+		"<div id=\"data_table_div\"><table id=\"data\" class=\"tablesorter\" border=\"0\" cellpadding=\"0\" cellspacing=\"1\">",
+		"<thead>",
+		"<tr>"
+	};
+
+	private boolean autoRefresh;
+	private StringBuilder columnSorters;
+
+	public HTMLStreamingFormatter(OutputStream out)
+	{
+		this(out, DEFAULT_BUFFER_SIZE);
+	}
+
+	public HTMLStreamingFormatter(OutputStream out, int bufferSize)
+	{
+		super(out, bufferSize);
+
+		autoRefresh = false;
+		columnSorters = new StringBuilder();
+	}
+
+	public boolean isAutoRefresh()
+	{
+		return autoRefresh;
+	}
+
+	public void setAutoRefresh(boolean autoRefresh)
+	{
+		this.autoRefresh = autoRefresh;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.api.format.output.StreamingFormatter#getContentType()
+	 */
+	@Override
+	public String getContentType()
+	{
+		return "text/html";
+	}
+
+	@Override
+	protected int getLineOverhead()
+	{
+		return 10;
+	}
+
+	@Override
+	protected int getCellOverhead()
+	{
+		return 9;
+	}
+
+	@Override
+	protected void writeHeader(ArrayList<String> schema) throws IOException
+	{
+		for(String line : PAGE_HEAD)
+		{
+			writeMarkup(line);
+		}
+
+		if(autoRefresh)
+		{
+			buffer.append("<META http-equiv=\"refresh\" content=\"");
+			buffer.append(REFRESH_INTERVAL);
+			buffer.append("\">");
+			buffer.append(LINE_SEPARATOR);
+		}
+
+		//cache busting, as in the Helios formatter
+		writeMarkup("<link rel=\"shortcut icon\" href=\"images/favicon.ico?v=" + Math.random() * 1000 + "\" type=\"image/x-icon\">");
+		writeMarkup("<link rel=\"icon\" href=\"images/favicon.ico?v=" + Math.random() * 1000 + "\" type=\"image/x-icon\">");
+
+		for(String line : PAGE_BANNER)
+		{
+			writeMarkup(line);
+		}
+
+		if(schema != null)
+		{
+			for(String columnName : schema)
+			{
+				buffer.append("<th>");
+				buffer.append(columnName);
+				buffer.append("</th>");
+				buffer.append(LINE_SEPARATOR);
+			}
+		}
+
+		writeMarkup("</tr>");
+		writeMarkup("</thead>");
+		writeMarkup("<tbody>");
+	}
+
+	@Override
+	protected void writeLine(String[] row, long rowIndex) throws IOException
+	{
+		if(rowIndex == 0)
+		{
+			for(int i = 0; i < row.length; i++)
+			{
+				if(StringSanitizer.isValidExcelDate(row[i]))
+				{
+					columnSorters.append(i);
+					columnSorters.append(": {sorter: 'excelDateSorter'},");
+				}
+			}
+		}
+
+		buffer.append("<tr>");
+
+		for(String value : row)
+		{
+			buffer.append("<td>");
+			buffer.append(value);
+			buffer.append("</td>");
+		}
+
+		buffer.append("</tr>");
+		buffer.append(LINE_SEPARATOR);
+	}
+
+	@Override
+	protected void writeFooter(long rowCount) throws IOException
+	{
+		writeMarkup("</tbody>");
+		writeMarkup("</table></div>");
+
+		if(columnSorters.length() > 0)
+		{
+			//drop the trailing comma
+			columnSorters.setLength(columnSorters.length() - 1);
+		}
+		else
+		{
+			columnSorters.append("0: {sorter: 'text'}");
+		}
+
+		buffer.append("<script type=\"text/javascript\" >$(document).ready(function() {  $(\"#data\").tablesorter({      sortList: [[0,0]], widgets: ['zebra'],headers:{ ");
+		buffer.append(columnSorters.toString());
+		buffer.append(" }    }); }); </script>");
+		buffer.append(LINE_SEPARATOR);
+
+		writeMarkup("</body></html>");
+	}
+
+	private void writeMarkup(String line) throws IOException
+	{
+		buffer.append(line);
+		buffer.append(LINE_SEPARATOR);
+	}
+}
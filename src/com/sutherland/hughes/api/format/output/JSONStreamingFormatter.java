@@ -0,0 +1,152 @@
+package com.sutherland.hughes.api.format.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+
+/**
+ * Streaming equivalent of the Helios JSONFormatter: one JSON array of strings per line, escaped the way Gson's default configuration
+ * escapes them (including its html-safe escapes of &lt; &gt; &amp; = and '). As with the Helios formatter, the schema is not written.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class JSONStreamingFormatter extends StreamingFormatter
+{
+	private final static char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+	private final static char LINE_SEPARATOR = '\n';
+
+	public JSONStreamingFormatter(OutputStream out)
+	{
+		this(out, DEFAULT_BUFFER_SIZE);
+	}
+
+	public JSONStreamingFormatter(OutputStream out, int bufferSize)
+	{
+		super(out, bufferSize);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.api.format.output.StreamingFormatter#getContentType()
+	 */
+	@Override
+	public String getContentType()
+	{
+		return "application/json";
+	}
+
+	@Override
+	protected int getLineOverhead()
+	{
+		return 3;
+	}
+
+	@Override
+	protected int getCellOverhead()
+	{
+		return 3;
+	}
+
+	@Override
+	protected void writeHeader(ArrayList<String> schema)
+	{
+	}
+
+	@Override
+	protected void writeLine(String[] row, long rowIndex) throws IOException
+	{
+		buffer.append('[');
+
+		for(int i = 0; i < row.length; i++)
+		{
+			if(i > 0)
+			{
+				buffer.append(',');
+			}
+
+			writeValue(row[i]);
+		}
+
+		buffer.append(']');
+		buffer.append(LINE_SEPARATOR);
+	}
+
+	@Override
+	protected void writeFooter(long rowCount)
+	{
+	}
+
+	private void writeValue(String value) throws IOException
+	{
+		if(value == null)
+		{
+			buffer.append("null");
+		}
+		else
+		{
+			buffer.append('"');
+
+			char c;
+			for(int i = 0; i < value.length(); i++)
+			{
+				c = value.charAt(i);
+
+				switch(c)
+				{
+					case '"':
+						buffer.append("\\\"");
+						break;
+					case '\\':
+						buffer.append("\\\\");
+						break;
+					case '\t':
+						buffer.append("\\t");
+						break;
+					case '\b':
+						buffer.append("\\b");
+						break;
+					case '\n':
+						buffer.append("\\n");
+						break;
+					case '\r':
+						buffer.append("\\r");
+						break;
+					case '\f':
+						buffer.append("\\f");
+						break;
+					case '<':
+					case '>':
+					case '&':
+					case '=':
+					case '\'':
+					case '\u2028':
+					case '\u2029':
+						writeUnicodeEscape(c);
+						break;
+					default:
+						if(c < 0x20)
+						{
+							writeUnicodeEscape(c);
+						}
+						else
+						{
+							buffer.append(c);
+						}
+						break;
+				}
+			}
+
+			buffer.append('"');
+		}
+	}
+
+	private void writeUnicodeEscape(char c) throws IOException
+	{
+		buffer.append('\\');
+		buffer.append('u');
+		buffer.append(HEX_DIGITS[(c >> 12) & 0xF]);
+		buffer.append(HEX_DIGITS[(c >> 8) & 0xF]);
+		buffer.append(HEX_DIGITS[(c >> 4) & 0xF]);
+		buffer.append(HEX_DIGITS[c & 0xF]);
+	}
+}
@@ -0,0 +1,190 @@
+package com.sutherland.hughes.api.format.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+
+import com.sutherland.hughes.datasources.RowHandler;
+
+/**
+ * Writer-side counterpart of the Helios ResultsFormatter. Rather than returning the formatted lines for the whole result, rows are encoded
+ * one at a time into a reusable buffer that drains to an output stream, so a report's output is never held in memory a second time.
+ *
+ * Usage is begin(schema), any number of writeRow(row), then end(). Since a formatter is a RowHandler, it can be handed straight to a
+ * StreamableReport or StreamingConnection.
+ *
+ * @author Jason Diamond
+ *
+ */
+public abstract class StreamingFormatter implements RowHandler
+{
+	public final static String CHARSET = "UTF-8";
+	public final static int DEFAULT_BUFFER_SIZE = 8192;
+
+	//worst case UTF-8 expansion of a java char, ignoring escaping
+	private final static int BYTES_PER_CHAR_ESTIMATE = 3;
+	private final static int NULL_LENGTH = 4;
+
+	protected final EncodingBuffer buffer;
+	private long rowCount;
+
+	/**
+	 * Build the formatter.
+	 *
+	 * @param out			The stream to write to.
+	 * @param bufferSize	The initial encoding buffer size, in bytes.
+	 */
+	protected StreamingFormatter(OutputStream out, int bufferSize)
+	{
+		buffer = new EncodingBuffer(out, bufferSize);
+		rowCount = 0;
+	}
+
+	/**
+	 * Write any output that precedes the rows.
+	 *
+	 * @param schema	The report's column names. May be null.
+	 *
+	 * @throws IOException	If the output could not be written.
+	 */
+	public void begin(ArrayList<String> schema) throws IOException
+	{
+		writeHeader(schema);
+	}
+
+	/**
+	 * Encode one row. The buffer is sized for the row up front, so a row is never split across two drains unless it is larger than the
+	 * buffer can grow to.
+	 *
+	 * @param row	The row's column values.
+	 *
+	 * @throws IOException	If the output could not be written.
+	 */
+	public void writeRow(String[] row) throws IOException
+	{
+		buffer.reserve(estimateRowSize(row));
+
+		writeLine(row, rowCount);
+
+		rowCount++;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.RowHandler#handleRow(java.lang.String[])
+	 */
+	@Override
+	public void handleRow(String[] row) throws IOException
+	{
+		writeRow(row);
+	}
+
+	/**
+	 * Write any output that follows the rows, and flush everything to the stream. The stream is not closed.
+	 *
+	 * @throws IOException	If the output could not be written.
+	 */
+	public void end() throws IOException
+	{
+		writeFooter(rowCount);
+
+		buffer.flush();
+	}
+
+	/**
+	 * Push what has been encoded so far out to the stream.
+	 *
+	 * @throws IOException	If the output could not be written.
+	 */
+	public void flush() throws IOException
+	{
+		buffer.flush();
+	}
+
+	/**
+	 * Format a result that has already been collected, for frontends that still receive their rows as a list from Report.startReport.
+	 *
+	 * @param schema	The report's column names. May be null.
+	 * @param rows		The report's rows.
+	 *
+	 * @throws IOException	If the output could not be written.
+	 */
+	public void writeResults(ArrayList<String> schema, ArrayList<String[]> rows) throws IOException
+	{
+		begin(schema);
+
+		if(rows != null)
+		{
+			for(String[] row : rows)
+			{
+				writeRow(row);
+			}
+		}
+
+		end();
+	}
+
+	/**
+	 * Accessor for the number of rows written so far.
+	 *
+	 * @return	The row count.
+	 */
+	public long getRowCount()
+	{
+		return rowCount;
+	}
+
+	/**
+	 * Estimate the encoded size of a row, so the buffer can be presized before encoding it.
+	 *
+	 * @param row	The row's column values.
+	 *
+	 * @return	The estimated size, in bytes.
+	 */
+	protected int estimateRowSize(String[] row)
+	{
+		int retval = getLineOverhead();
+
+		for(String value : row)
+		{
+			retval += getCellOverhead();
+
+			if(value != null)
+			{
+				retval += value.length() * BYTES_PER_CHAR_ESTIMATE;
+			}
+			else
+			{
+				retval += NULL_LENGTH;
+			}
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Accessor for the mime type of the output.
+	 *
+	 * @return	The mime type.
+	 */
+	public abstract String getContentType();
+
+	/**
+	 * Accessor for the fixed number of bytes written per line, outside the cells.
+	 *
+	 * @return	The overhead, in bytes.
+	 */
+	protected abstract int getLineOverhead();
+
+	/**
+	 * Accessor for the fixed number of bytes written around each cell value.
+	 *
+	 * @return	The overhead, in bytes.
+	 */
+	protected abstract int getCellOverhead();
+
+	protected abstract void writeHeader(ArrayList<String> schema) throws IOException;
+
+	protected abstract void writeLine(String[] row, long rowIndex) throws IOException;
+
+	protected abstract void writeFooter(long rowCount) throws IOException;
+}
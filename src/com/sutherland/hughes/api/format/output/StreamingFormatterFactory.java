@@ -0,0 +1,53 @@
+package com.sutherland.hughes.api.format.output;
+
+import java.io.OutputStream;
+
+/**
+ * Builds the streaming formatter for an output format name, as passed by the report frontends.
+ *
+ * @author Jason Diamond
+ *
+ */
+public final class StreamingFormatterFactory
+{
+	public final static String CSV_FORMAT = "csv";
+	public final static String JSON_FORMAT = "json";
+	public final static String XML_FORMAT = "xml";
+	public final static String HTML_FORMAT = "html";
+
+	private StreamingFormatterFactory()
+	{
+	}
+
+	/**
+	 * Build a formatter.
+	 *
+	 * @param format	The output format: csv, json, xml or html. Anything else gets csv.
+	 * @param out		The stream the formatter writes to.
+	 *
+	 * @return	The formatter.
+	 */
+	public static StreamingFormatter getFormatter(String format, OutputStream out)
+	{
+		StreamingFormatter retval;
+
+		if(JSON_FORMAT.equalsIgnoreCase(format))
+		{
+			retval = new JSONStreamingFormatter(out);
+		}
+		else if(XML_FORMAT.equalsIgnoreCase(format))
+		{
+			retval = new XMLStreamingFormatter(out);
+		}
+		else if(HTML_FORMAT.equalsIgnoreCase(format))
+		{
+			retval = new HTMLStreamingFormatter(out);
+		}
+		else
+		{
+			retval = new CSVStreamingFormatter(out);
+		}
+
+		return retval;
+	}
+}
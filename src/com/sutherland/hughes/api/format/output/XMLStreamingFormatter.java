@@ -0,0 +1,215 @@
+package com.sutherland.hughes.api.format.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+
+/**
+ * Streaming equivalent of the Helios XMLFormatter, matching the jdom pretty-printed document it builds: a report element holding one row
+ * element per row, with the values in col0, col1, ... elements. Values are trimmed and escaped as jdom does. jdom refuses characters that
+ * are not legal in XML and fails the whole document; here they are dropped instead, since the output may already be on the wire.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class XMLStreamingFormatter extends StreamingFormatter
+{
+	private final static String DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
+	private final static String ROOT_ELEMENT = "report";
+	private final static String ROW_ELEMENT = "row";
+	private final static String COLUMN_ELEMENT = "col";
+	private final static String INDENT = "  ";
+
+	//jdom's pretty format separates lines with CRLF
+	private final static String LINE_SEPARATOR = "\r\n";
+
+	public XMLStreamingFormatter(OutputStream out)
+	{
+		this(out, DEFAULT_BUFFER_SIZE);
+	}
+
+	public XMLStreamingFormatter(OutputStream out, int bufferSize)
+	{
+		super(out, bufferSize);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.api.format.output.StreamingFormatter#getContentType()
+	 */
+	@Override
+	public String getContentType()
+	{
+		return "text/xml";
+	}
+
+	@Override
+	protected int getLineOverhead()
+	{
+		return 32;
+	}
+
+	@Override
+	protected int getCellOverhead()
+	{
+		return 32;
+	}
+
+	@Override
+	protected void writeHeader(ArrayList<String> schema) throws IOException
+	{
+		buffer.append(DECLARATION);
+		buffer.append(LINE_SEPARATOR);
+	}
+
+	@Override
+	protected void writeLine(String[] row, long rowIndex) throws IOException
+	{
+		if(rowIndex == 0)
+		{
+			buffer.append('<');
+			buffer.append(ROOT_ELEMENT);
+			buffer.append('>');
+			buffer.append(LINE_SEPARATOR);
+		}
+
+		buffer.append(INDENT);
+		buffer.append('<');
+		buffer.append(ROW_ELEMENT);
+		buffer.append(" id=\"");
+		buffer.append(rowIndex);
+		buffer.append('"');
+
+		if(row.length == 0)
+		{
+			buffer.append(" />");
+			buffer.append(LINE_SEPARATOR);
+		}
+		else
+		{
+			buffer.append('>');
+			buffer.append(LINE_SEPARATOR);
+
+			for(int i = 0; i < row.length; i++)
+			{
+				writeColumn(i, row[i]);
+			}
+
+			buffer.append(INDENT);
+			buffer.append("</");
+			buffer.append(ROW_ELEMENT);
+			buffer.append('>');
+			buffer.append(LINE_SEPARATOR);
+		}
+	}
+
+	@Override
+	protected void writeFooter(long rowCount) throws IOException
+	{
+		if(rowCount == 0)
+		{
+			buffer.append('<');
+			buffer.append(ROOT_ELEMENT);
+			buffer.append(" />");
+		}
+		else
+		{
+			buffer.append("</");
+			buffer.append(ROOT_ELEMENT);
+			buffer.append('>');
+		}
+
+		buffer.append(LINE_SEPARATOR);
+	}
+
+	private void writeColumn(int columnIndex, String value) throws IOException
+	{
+		buffer.append(INDENT);
+		buffer.append(INDENT);
+		buffer.append('<');
+		buffer.append(COLUMN_ELEMENT);
+		buffer.append(columnIndex);
+
+		int start = 0;
+		int end = 0;
+
+		if(value != null)
+		{
+			end = value.length();
+
+			while(start < end && isWhitespace(value.charAt(start)))
+			{
+				start++;
+			}
+
+			while(end > start && isWhitespace(value.charAt(end - 1)))
+			{
+				end--;
+			}
+		}
+
+		if(start == end)
+		{
+			buffer.append(" />");
+		}
+		else
+		{
+			buffer.append('>');
+
+			char c;
+			for(int i = start; i < end; i++)
+			{
+				c = value.charAt(i);
+
+				switch(c)
+				{
+					case '&':
+						buffer.append("&amp;");
+						break;
+					case '<':
+						buffer.append("&lt;");
+						break;
+					case '>':
+						buffer.append("&gt;");
+						break;
+					case '\r':
+						buffer.append("&#xD;");
+						break;
+					case '\n':
+						//jdom writes embedded newlines with the format's line separator
+						buffer.append(LINE_SEPARATOR);
+						break;
+					default:
+						if(Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(value.charAt(i + 1)))
+						{
+							//jdom writes characters outside the BMP as character references
+							buffer.append("&#x");
+							buffer.append(Integer.toHexString(Character.toCodePoint(c, value.charAt(++i))));
+							buffer.append(';');
+						}
+						else if(isLegal(c))
+						{
+							buffer.append(c);
+						}
+						break;
+				}
+			}
+
+			buffer.append("</");
+			buffer.append(COLUMN_ELEMENT);
+			buffer.append(columnIndex);
+			buffer.append('>');
+		}
+
+		buffer.append(LINE_SEPARATOR);
+	}
+
+	private static boolean isWhitespace(char c)
+	{
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+	}
+
+	private static boolean isLegal(char c)
+	{
+		return c == '\t' || (c >= 0x20 && c <= 0xFFFD && !Character.isSurrogate(c));
+	}
+}
@@ -0,0 +1,161 @@
+/**
+ *
+ */
+package com.sutherland.hughes.api.format.output.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.sutherland.helios.api.format.output.CSVFormatter;
+import com.sutherland.helios.api.format.output.HTMLFormatter;
+import com.sutherland.helios.api.format.output.XMLFormatter;
+import com.sutherland.hughes.api.format.output.CSVStreamingFormatter;
+import com.sutherland.hughes.api.format.output.EncodingBuffer;
+import com.sutherland.hughes.api.format.output.HTMLStreamingFormatter;
+import com.sutherland.hughes.api.format.output.JSONStreamingFormatter;
+import com.sutherland.hughes.api.format.output.StreamingFormatter;
+import com.sutherland.hughes.api.format.output.XMLStreamingFormatter;
+
+/**
+ * Checks the streaming formatters against the Helios formatters they stand in for.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class StreamingFormatterTest extends TestCase
+{
+	//small enough that the rows below force the buffer to drain and grow
+	private final static int SMALL_BUFFER_SIZE = 16;
+
+	private ArrayList<String> schema;
+	private ArrayList<String[]> rows;
+
+	public void setUp()
+	{
+		schema = new ArrayList<String>(Arrays.asList("Date", "Agent", "Notes"));
+
+		rows = new ArrayList<String[]>();
+		rows.add(new String[]{"2014-10-01", "Jos\u00e9 & <Co>", "  padded  "});
+		rows.add(new String[]{"2014-10-02", null, "line\r\nbreak \"quoted\" 'single'"});
+		rows.add(new String[]{"2014-10-03", "\u65e5\u672c \ud83d\ude00", ""});
+	}
+
+	private static String join(ArrayList<String> lines, String separator)
+	{
+		StringBuilder retval = new StringBuilder();
+
+		for(String line : lines)
+		{
+			retval.append(line);
+			retval.append(separator);
+		}
+
+		return retval.toString();
+	}
+
+	private static String render(StreamingFormatter formatter, ByteArrayOutputStream out, ArrayList<String> schema, ArrayList<String[]> rows) throws IOException
+	{
+		formatter.writeResults(schema, rows);
+
+		return out.toString(StreamingFormatter.CHARSET);
+	}
+
+	@Test
+	public void testCSVMatchesHelios() throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		assertEquals(join(new CSVFormatter().formatResults(schema, rows), "\n"), render(new CSVStreamingFormatter(out, SMALL_BUFFER_SIZE), out, schema, rows));
+	}
+
+	@Test
+	public void testEnquotedCSVWithoutHeadersMatchesHelios() throws IOException
+	{
+		CSVFormatter helios = new CSVFormatter();
+		helios.setEnquote(true);
+		helios.enableHeaders(false);
+		helios.setDelim("|");
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		CSVStreamingFormatter streaming = new CSVStreamingFormatter(out, SMALL_BUFFER_SIZE);
+		streaming.setEnquote(true);
+		streaming.enableHeaders(false);
+		streaming.setDelim("|");
+
+		assertEquals(join(helios.formatResults(schema, rows), "\n"), render(streaming, out, schema, rows));
+	}
+
+	@Test
+	public void testXMLMatchesHelios() throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		assertEquals(join(new XMLFormatter().formatResults(rows), "\n"), render(new XMLStreamingFormatter(out, SMALL_BUFFER_SIZE), out, schema, rows));
+	}
+
+	@Test
+	public void testEmptyXMLMatchesHelios() throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ArrayList<String[]> noRows = new ArrayList<String[]>();
+
+		assertEquals(join(new XMLFormatter().formatResults(noRows), "\n"), render(new XMLStreamingFormatter(out), out, schema, noRows));
+	}
+
+	@Test
+	public void testHTMLMatchesHelios() throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		//the favicon links carry a random cache buster
+		String expected = join(new HTMLFormatter().formatResults(schema, rows), "\n").replaceAll("favicon\\.ico\\?v=[0-9.E]+", "");
+		String actual = render(new HTMLStreamingFormatter(out, SMALL_BUFFER_SIZE), out, schema, rows).replaceAll("favicon\\.ico\\?v=[0-9.E]+", "");
+
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testJSONEscaping() throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		String expected =
+				"[\"2014-10-01\",\"Jos\u00e9 \\u0026 \\u003cCo\\u003e\",\"  padded  \"]\n" +
+				"[\"2014-10-02\",null,\"line\\r\\nbreak \\\"quoted\\\" \\u0027single\\u0027\"]\n" +
+				"[\"2014-10-03\",\"\u65e5\u672c \ud83d\ude00\",\"\"]\n";
+
+		assertEquals(expected, render(new JSONStreamingFormatter(out, SMALL_BUFFER_SIZE), out, schema, rows));
+	}
+
+	@Test
+	public void testEncodingMatchesJDK() throws IOException
+	{
+		String value = "a\u00e9\u0800\uffff\ud83d\ude00z";
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		EncodingBuffer buffer = new EncodingBuffer(out, SMALL_BUFFER_SIZE);
+
+		for(int i = 0; i < 10; i++)
+		{
+			buffer.append(value);
+			buffer.append(-1234567890123L);
+		}
+
+		buffer.flush();
+
+		StringBuilder expected = new StringBuilder();
+		for(int i = 0; i < 10; i++)
+		{
+			expected.append(value);
+			expected.append(-1234567890123L);
+		}
+
+		assertTrue(Arrays.equals(expected.toString().getBytes(StreamingFormatter.CHARSET), out.toByteArray()));
+	}
+}
@@ -0,0 +1,64 @@
+package com.sutherland.hughes.api.jobs;
+
+import org.apache.log4j.Logger;
+
+import com.sutherland.hughes.api.async.ReportJobQueue;
+import com.sutherland.hughes.datasources.cache.QueryCache;
+import com.sutherland.hughes.jobs.Job;
+import com.sutherland.hughes.report.cache.ReportResultCache;
+
+/**
+ * Drops expired entries from the QueryCache and the ReportResultCache, so they give their memory and disk back between requests rather
+ * than only when they fill up. Also drops expired ReportJobs, whose results are otherwise only dropped when the next job is looked up.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class CachePruneJob implements Job
+{
+	public final static String NAME = "pruneCaches";
+
+	private final static Logger logger = Logger.getLogger(CachePruneJob.class);
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.jobs.Job#getName()
+	 */
+	@Override
+	public String getName()
+	{
+		return NAME;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.jobs.Job#run(int)
+	 */
+	@Override
+	public void run(int attempt) throws Exception
+	{
+		long now = System.currentTimeMillis();
+
+		int queries = 0;
+		int results = 0;
+		int jobs = 0;
+
+		QueryCache queryCache = QueryCache.getInstance();
+		if(queryCache != null)
+		{
+			queries = queryCache.prune(now);
+		}
+
+		ReportResultCache resultCache = ReportResultCache.getInstance();
+		if(resultCache != null)
+		{
+			results = resultCache.prune(now);
+		}
+
+		ReportJobQueue jobQueue = ReportJobQueue.getInstance();
+		if(jobQueue != null)
+		{
+			jobs = jobQueue.prune(now);
+		}
+
+		logger.info("Pruned " + queries + " cached queries, " + results + " cached results and " + jobs + " report jobs");
+	}
+}
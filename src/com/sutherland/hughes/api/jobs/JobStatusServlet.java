@@ -0,0 +1,100 @@
+package com.sutherland.hughes.api.jobs;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.sutherland.hughes.jobs.JobScheduler;
+import com.sutherland.hughes.jobs.ScheduledJob;
+
+/**
+ * Serves the background jobs' status as JSON, and runs a job on demand.
+ *
+ * GET lists every job with its schedule, state, last run and next run. POST runs a job now, unless it's already running.
+ *
+ * Request parameters:
+ * 	name	- the job to run, for POST.
+ *
+ * Mapped to /jobs in the webapp's WEB.xml, from conf/webapp/WEB-entries.xml.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class JobStatusServlet extends HttpServlet
+{
+	private static final long serialVersionUID = 1L;
+
+	private final static String NAME_PARAM = "name";
+	private final static String CONTENT_TYPE = "application/json; charset=UTF-8";
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.http.HttpServlet#doGet(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
+	 */
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+	{
+		StringBuilder json = new StringBuilder();
+		json.append('[');
+
+		JobScheduler scheduler = PrecomputeJobs.getScheduler();
+
+		if(scheduler != null)
+		{
+			boolean first = true;
+			for(ScheduledJob job : scheduler.getJobs())
+			{
+				if(!first)
+				{
+					json.append(',');
+				}
+
+				job.appendJSON(json);
+
+				first = false;
+			}
+		}
+
+		json.append(']');
+
+		writeJSON(response, json);
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.http.HttpServlet#doPost(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
+	 */
+	@Override
+	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+	{
+		JobScheduler scheduler = PrecomputeJobs.getScheduler();
+		String name = request.getParameter(NAME_PARAM);
+
+		ScheduledJob job = scheduler == null || name == null ? null : scheduler.getJob(name);
+
+		if(job == null)
+		{
+			response.sendError(HttpServletResponse.SC_NOT_FOUND, "No such job");
+			return;
+		}
+
+		job.runNow();
+
+		StringBuilder json = new StringBuilder();
+		job.appendJSON(json);
+
+		writeJSON(response, json);
+	}
+
+	private static void writeJSON(HttpServletResponse response, StringBuilder json) throws IOException
+	{
+		response.setContentType(CONTENT_TYPE);
+		response.setHeader("Cache-Control", "no-cache");
+
+		PrintWriter out = response.getWriter();
+		out.write(json.toString());
+		out.flush();
+	}
+}
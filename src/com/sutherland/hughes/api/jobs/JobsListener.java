@@ -0,0 +1,33 @@
+package com.sutherland.hughes.api.jobs;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * Starts the PrecomputeJobs when the webapp starts, and stops them when the webapp stops.
+ *
+ * Registered in the webapp's WEB.xml after LoggingListener, from conf/webapp/WEB-entries.xml.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class JobsListener implements ServletContextListener
+{
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletContextListener#contextInitialized(javax.servlet.ServletContextEvent)
+	 */
+	@Override
+	public void contextInitialized(ServletContextEvent event)
+	{
+		PrecomputeJobs.startConfigured();
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletContextListener#contextDestroyed(javax.servlet.ServletContextEvent)
+	 */
+	@Override
+	public void contextDestroyed(ServletContextEvent event)
+	{
+		PrecomputeJobs.stopConfigured();
+	}
+}
@@ -0,0 +1,203 @@
+package com.sutherland.hughes.api.jobs;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import com.sutherland.hughes.api.warmup.TemplatedReport;
+import com.sutherland.hughes.config.ReportingConfig;
+import com.sutherland.hughes.jobs.CronSchedule;
+import com.sutherland.hughes.jobs.Job;
+import com.sutherland.hughes.jobs.JobScheduler;
+import com.sutherland.hughes.jobs.ScheduledJob;
+import com.sutherland.hughes.metrics.ReportMetrics;
+
+/**
+ * The site-wide background jobs, which do the heavy lifting off the request path:
+ *
+ * 	closedDays	- overnight, reruns the basic metric reports for yesterday by team and by agent, so the morning's requests for them are
+ * 				  served from the ReportResultCache.
+ * 	stackRanks	- overnight, reruns the stack rank reports for the last 7 days and last month by agent.
+ * 	pruneCaches	- hourly, drops expired entries from the query and result caches.
+ *
+ * Each job's schedule, reports and templates are set under hughes.jobs.&lt;job&gt;, and a job with an empty schedule is left off. Jobs run one
+ * at a time by default on low priority threads, see hughes.jobs.threads, and a failed job is retried hughes.jobs.maxRetries times, waiting
+ * hughes.jobs.retryDelaySeconds longer each time. Their status is registered as MBeans under com.sutherland.hughes:type=Job, served by
+ * JobStatusServlet and scraped by writeText. Disabled by setting hughes.jobs.enabled to false.
+ *
+ * @author Jason Diamond
+ *
+ */
+public final class PrecomputeJobs
+{
+	public final static String CLOSED_DAYS = "closedDays";
+	public final static String STACK_RANKS = "stackRanks";
+
+	public final static String DEFAULT_CLOSED_DAYS_SCHEDULE = "30 1 * * *";
+	public final static String DEFAULT_CLOSED_DAYS_REPORTS = "ACWTime, AbandonedCalls, AverageACWTime, AverageHandleTime, " +
+			"AverageOrderValue, AverageTalkTime, CallVolume, CallsOffered, Conversion, CreatedCases, CreatedCustomerVolume, HandleTime, " +
+			"NetRevenue, NetSalesConversion, NetSalesCount, OpenedCases, RealtimeSales, RefundCount, RefundTotals, RevenuePerCall, " +
+			"SalesCount, TalkTime, UpdatedCases";
+	public final static String DEFAULT_CLOSED_DAYS_TEMPLATES = "yesterdayByTeam, yesterdayByAgent";
+
+	public final static String DEFAULT_STACK_RANKS_SCHEDULE = "30 3 * * *";
+	public final static String DEFAULT_STACK_RANKS_REPORTS = "SalesCount, NetSalesCount, NetRevenue, AverageHandleTime, Conversion, " +
+			"RefundTotals, RevenuePerCall, HughesScorecard";
+	public final static String DEFAULT_STACK_RANKS_TEMPLATES = "last7DaysByAgent, lastMonthByAgent";
+
+	public final static String DEFAULT_PRUNE_CACHES_SCHEDULE = "0 * * * *";
+
+	public final static int DEFAULT_THREADS = 1;
+	public final static int DEFAULT_MAX_RETRIES = 2;
+	public final static long DEFAULT_RETRY_DELAY_SECONDS = 600;
+	public final static String JMX_TYPE = "Job";
+
+	private final static String METRIC_PREFIX = "hughes_job";
+	private final static long STOP_WAIT_MILLIS = 5000;
+
+	private final static Logger logger = Logger.getLogger(PrecomputeJobs.class);
+
+	private static JobScheduler scheduler;
+
+	private PrecomputeJobs()
+	{
+	}
+
+	/**
+	 * Start the site-wide jobs from the configuration, unless they're disabled or already started.
+	 */
+	public static synchronized void startConfigured()
+	{
+		if(scheduler == null && ReportingConfig.getBoolean(ReportingConfig.JOBS_ENABLED, true))
+		{
+			scheduler = new JobScheduler
+			(
+				ReportingConfig.getInt(ReportingConfig.JOBS_THREADS, DEFAULT_THREADS),
+				ReportingConfig.getInt(ReportingConfig.JOBS_MAX_RETRIES, DEFAULT_MAX_RETRIES),
+				ReportingConfig.getLong(ReportingConfig.JOBS_RETRY_DELAY_SECONDS, DEFAULT_RETRY_DELAY_SECONDS) * 1000
+			);
+
+			List<TemplatedReport> closedDays = TemplatedReport.parseProduct
+			(
+				ReportingConfig.getString(ReportingConfig.JOBS_CLOSED_DAYS_REPORTS, DEFAULT_CLOSED_DAYS_REPORTS),
+				ReportingConfig.getString(ReportingConfig.JOBS_CLOSED_DAYS_TEMPLATES, DEFAULT_CLOSED_DAYS_TEMPLATES)
+			);
+
+			List<TemplatedReport> stackRanks = TemplatedReport.parseProduct
+			(
+				ReportingConfig.getString(ReportingConfig.JOBS_STACK_RANKS_REPORTS, DEFAULT_STACK_RANKS_REPORTS),
+				ReportingConfig.getString(ReportingConfig.JOBS_STACK_RANKS_TEMPLATES, DEFAULT_STACK_RANKS_TEMPLATES)
+			);
+
+			schedule(new ReportRefreshJob(CLOSED_DAYS, closedDays), ReportingConfig.getString(ReportingConfig.JOBS_CLOSED_DAYS_SCHEDULE, DEFAULT_CLOSED_DAYS_SCHEDULE));
+			schedule(new ReportRefreshJob(STACK_RANKS, stackRanks), ReportingConfig.getString(ReportingConfig.JOBS_STACK_RANKS_SCHEDULE, DEFAULT_STACK_RANKS_SCHEDULE));
+			schedule(new CachePruneJob(), ReportingConfig.getString(ReportingConfig.JOBS_PRUNE_CACHES_SCHEDULE, DEFAULT_PRUNE_CACHES_SCHEDULE));
+		}
+	}
+
+	private static void schedule(Job job, String expression)
+	{
+		if(expression.trim().isEmpty())
+		{
+			logger.info("Job " + job.getName() + " has no schedule, leaving it off");
+			return;
+		}
+
+		try
+		{
+			ScheduledJob scheduled = scheduler.schedule(job, CronSchedule.parse(expression));
+
+			ReportMetrics.register(JMX_TYPE, job.getName(), scheduled);
+		}
+		catch(IllegalArgumentException e)
+		{
+			logger.error("Not scheduling job " + job.getName() + ": " + e.getMessage());
+		}
+		catch(IllegalStateException e)
+		{
+			logger.error("Not scheduling job " + job.getName() + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Stop the site-wide jobs, if they were started. Running jobs are interrupted.
+	 */
+	public static synchronized void stopConfigured()
+	{
+		if(scheduler != null)
+		{
+			scheduler.shutdown(STOP_WAIT_MILLIS);
+			scheduler = null;
+		}
+	}
+
+	/**
+	 * Accessor for the site-wide scheduler.
+	 *
+	 * @return	The scheduler, or null if the jobs haven't been started.
+	 */
+	public static synchronized JobScheduler getScheduler()
+	{
+		return scheduler;
+	}
+
+	/**
+	 * Write every job's status in the Prometheus text exposition format.
+	 *
+	 * @param out	Where to write it. It is not flushed or closed.
+	 *
+	 * @throws IOException	If it cannot be written.
+	 */
+	public static void writeText(Writer out) throws IOException
+	{
+		JobScheduler current = getScheduler();
+
+		if(current != null)
+		{
+			List<ScheduledJob> jobs = current.getJobs();
+			ArrayList<String> names = new ArrayList<String>(jobs.size());
+
+			for(ScheduledJob job : jobs)
+			{
+				names.add("job=\"" + job.getName().replace("\\", "\\\\").replace("\"", "\\\"") + "\"");
+			}
+
+			writeType(out, METRIC_PREFIX + "_runs_total", "counter");
+			for(int i = 0; i < jobs.size(); i++)
+			{
+				writeSample(out, METRIC_PREFIX + "_runs_total", names.get(i), jobs.get(i).getRuns());
+			}
+
+			writeType(out, METRIC_PREFIX + "_failures_total", "counter");
+			for(int i = 0; i < jobs.size(); i++)
+			{
+				writeSample(out, METRIC_PREFIX + "_failures_total", names.get(i), jobs.get(i).getFailures());
+			}
+
+			writeType(out, METRIC_PREFIX + "_consecutive_failures", "gauge");
+			for(int i = 0; i < jobs.size(); i++)
+			{
+				writeSample(out, METRIC_PREFIX + "_consecutive_failures", names.get(i), jobs.get(i).getConsecutiveFailures());
+			}
+
+			writeType(out, METRIC_PREFIX + "_last_duration_seconds", "gauge");
+			for(int i = 0; i < jobs.size(); i++)
+			{
+				writeSample(out, METRIC_PREFIX + "_last_duration_seconds", names.get(i), jobs.get(i).getLastDurationMillis() / 1000.0);
+			}
+		}
+	}
+
+	private static void writeType(Writer out, String metric, String type) throws IOException
+	{
+		out.write("# TYPE " + metric + " " + type + "\n");
+	}
+
+	private static void writeSample(Writer out, String metric, String labels, Object value) throws IOException
+	{
+		out.write(metric + "{" + labels + "} " + value + "\n");
+	}
+}
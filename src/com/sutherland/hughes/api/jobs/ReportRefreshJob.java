@@ -0,0 +1,106 @@
+package com.sutherland.hughes.api.jobs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import com.sutherland.helios.exceptions.ExceptionFormatter;
+import com.sutherland.hughes.api.warmup.TemplatedReport;
+import com.sutherland.hughes.jobs.Job;
+
+/**
+ * Runs a list of TemplatedReports again, one after another, replacing their closed period results in the ReportResultCache so requests for
+ * them are served from disk. A retry runs only the reports that failed last time.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class ReportRefreshJob implements Job
+{
+	private final static Logger logger = Logger.getLogger(ReportRefreshJob.class);
+
+	private final String name;
+	private final List<TemplatedReport> reports;
+
+	private List<TemplatedReport> failed;
+
+	/**
+	 * Build a refresh job.
+	 *
+	 * @param name		The job's name.
+	 * @param reports	The reports to run, in order.
+	 */
+	public ReportRefreshJob(String name, List<TemplatedReport> reports)
+	{
+		this.name = name;
+		this.reports = reports;
+
+		failed = new ArrayList<TemplatedReport>();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.jobs.Job#getName()
+	 */
+	@Override
+	public String getName()
+	{
+		return name;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.jobs.Job#run(int)
+	 */
+	@Override
+	public void run(int attempt) throws Exception
+	{
+		List<TemplatedReport> toRun = attempt == 0 ? reports : failed;
+		ArrayList<TemplatedReport> failedNow = new ArrayList<TemplatedReport>();
+
+		long rows = 0;
+		for(TemplatedReport report : toRun)
+		{
+			if(Thread.currentThread().isInterrupted())
+			{
+				throw new InterruptedException("Job " + name + " stopped");
+			}
+
+			try
+			{
+				rows += report.run(true);
+			}
+			catch(Exception e)
+			{
+				failedNow.add(report);
+
+				logger.warn("Job " + name + " report " + report.getName() + " failed: " + ExceptionFormatter.asString(e));
+			}
+		}
+
+		failed = failedNow;
+
+		logger.info("Job " + name + " refreshed " + (toRun.size() - failedNow.size()) + "/" + toRun.size() + " reports, " + rows + " rows");
+
+		if(!failedNow.isEmpty())
+		{
+			ArrayList<String> names = new ArrayList<String>(failedNow.size());
+
+			for(TemplatedReport report : failedNow)
+			{
+				names.add(report.getName());
+			}
+
+			throw new Exception(failedNow.size() + " of " + toRun.size() + " reports failed: " + names);
+		}
+	}
+
+	/**
+	 * Accessor for the reports the job runs.
+	 *
+	 * @return	The reports, in order.
+	 */
+	public List<TemplatedReport> getReports()
+	{
+		return reports;
+	}
+}
@@ -0,0 +1,54 @@
+/**
+ *
+ */
+package com.sutherland.hughes.api.jobs.test;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.sutherland.hughes.api.jobs.ReportRefreshJob;
+import com.sutherland.hughes.api.warmup.TemplatedReport;
+import com.sutherland.hughes.api.warmup.WarmupTemplate;
+import com.sutherland.hughes.api.warmup.test.WarmupTest;
+import com.sutherland.hughes.report.cache.ReportResultCache;
+
+/**
+ * @author Jason Diamond
+ *
+ */
+public class ReportRefreshJobTest extends TestCase
+{
+	@Test
+	public void testPrecomputedResultsAreCached() throws Exception
+	{
+		ReportResultCache cache = WarmupTest.openCache();
+
+		try
+		{
+			ReportRefreshJob job = new ReportRefreshJob("stackRanks", Arrays.asList
+			(
+				new TemplatedReport(WarmupTest.DailyReport.class, WarmupTemplate.YESTERDAY_BY_TEAM),
+				new TemplatedReport(WarmupTest.DailyReport.class, WarmupTemplate.LAST_7_DAYS_BY_AGENT)
+			));
+
+			job.run(0);
+
+			assertEquals(2, cache.getEntries());
+			assertEquals(2, cache.getWrites());
+
+			//the next night's run replaces them rather than serving them
+			job.run(0);
+
+			assertEquals(2, cache.getEntries());
+			assertEquals(4, cache.getWrites());
+			assertEquals(0, cache.getHits());
+		}
+		finally
+		{
+			WarmupTest.closeCache(cache);
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package com.sutherland.hughes.api.logging;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+import com.sutherland.hughes.logging.AsyncLogging;
+
+/**
+ * Switches the webapp's logging to AsyncLogging when it starts, once log4j has been configured, and writes out anything still queued when
+ * it stops.
+ *
+ * Registered first in the webapp's WEB.xml, from conf/webapp/WEB-entries.xml.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class LoggingListener implements ServletContextListener
+{
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletContextListener#contextInitialized(javax.servlet.ServletContextEvent)
+	 */
+	@Override
+	public void contextInitialized(ServletContextEvent event)
+	{
+		AsyncLogging.install();
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletContextListener#contextDestroyed(javax.servlet.ServletContextEvent)
+	 */
+	@Override
+	public void contextDestroyed(ServletContextEvent event)
+	{
+		AsyncLogging.shutdown();
+	}
+}
@@ -0,0 +1,78 @@
+package com.sutherland.hughes.api.metrics;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.sutherland.hughes.api.async.ReportJobQueue;
+import com.sutherland.hughes.api.jobs.PrecomputeJobs;
+import com.sutherland.hughes.api.warmup.ReportWarmup;
+import com.sutherland.hughes.datasources.admission.AdmissionController;
+import com.sutherland.hughes.datasources.cache.QueryCache;
+import com.sutherland.hughes.metrics.ReportMetrics;
+import com.sutherland.hughes.report.cache.ReportResultCache;
+
+/**
+ * Serves every report's and request's metrics, the query and result caches', each database's admission control, the startup warm-up's
+ * progress, the background jobs' status and the report job queue's counts, as plain text in the Prometheus exposition format, for scraping.
+ * All but the report job queue's are also available over JMX under com.sutherland.hughes.
+ *
+ * Mapped to /metrics in the webapp's WEB.xml, from conf/webapp/WEB-entries.xml.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class MetricsServlet extends HttpServlet
+{
+	private static final long serialVersionUID = 1L;
+
+	private final static String CONTENT_TYPE = "text/plain; version=0.0.4; charset=UTF-8";
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.http.HttpServlet#doGet(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
+	 */
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+	{
+		response.setContentType(CONTENT_TYPE);
+		response.setHeader("Cache-Control", "no-cache");
+
+		PrintWriter out = response.getWriter();
+
+		ReportMetrics.writeText(out);
+
+		QueryCache cache = QueryCache.getInstance();
+		if(cache != null)
+		{
+			cache.writeText(out);
+		}
+
+		ReportResultCache resultCache = ReportResultCache.getInstance();
+		if(resultCache != null)
+		{
+			resultCache.writeText(out);
+		}
+
+		ReportWarmup warmup = ReportWarmup.getInstance();
+		if(warmup != null)
+		{
+			warmup.writeText(out);
+		}
+
+		AdmissionController.writeText(out);
+
+		PrecomputeJobs.writeText(out);
+
+		ReportJobQueue jobQueue = ReportJobQueue.getInstance();
+		if(jobQueue != null)
+		{
+			jobQueue.writeText(out);
+		}
+
+		out.flush();
+	}
+}
@@ -0,0 +1,94 @@
+package com.sutherland.hughes.api.requests;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.sutherland.hughes.report.execution.ResourceBudget;
+
+/**
+ * Serves the requests in progress as JSON, and cancels one on demand.
+ *
+ * GET lists every running request with its id, report, lane, elapsed time and rows fetched so far. POST cancels a request, stopping its
+ * child reports and cancelling its queries on the database. A client that gives up on an export, because the user navigated away or its
+ * own timeout passed, posts the id it was given in the export's X-Report-Request header, since the servlet container can't tell that the
+ * client has gone until the export tries to write to it.
+ *
+ * Request parameters:
+ * 	id	- the request to cancel, for POST.
+ *
+ * Mapped to /requests in the webapp's WEB.xml, from conf/webapp/WEB-entries.xml.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class RequestServlet extends HttpServlet
+{
+	private static final long serialVersionUID = 1L;
+
+	private final static String ID_PARAM = "id";
+	private final static String CONTENT_TYPE = "application/json; charset=UTF-8";
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.http.HttpServlet#doGet(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
+	 */
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+	{
+		StringBuilder json = new StringBuilder();
+		json.append('[');
+
+		boolean first = true;
+		for(ResourceBudget budget : ResourceBudget.getActive())
+		{
+			if(!first)
+			{
+				json.append(',');
+			}
+
+			budget.appendJSON(json);
+
+			first = false;
+		}
+
+		json.append(']');
+
+		writeJSON(response, json);
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.http.HttpServlet#doPost(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
+	 */
+	@Override
+	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+	{
+		ResourceBudget budget = ResourceBudget.getActive(request.getParameter(ID_PARAM));
+
+		if(budget == null)
+		{
+			response.sendError(HttpServletResponse.SC_NOT_FOUND, "No such request");
+			return;
+		}
+
+		budget.cancel("Cancelled by " + request.getRemoteAddr());
+
+		StringBuilder json = new StringBuilder();
+		budget.appendJSON(json);
+
+		writeJSON(response, json);
+	}
+
+	private static void writeJSON(HttpServletResponse response, StringBuilder json) throws IOException
+	{
+		response.setContentType(CONTENT_TYPE);
+		response.setHeader("Cache-Control", "no-cache");
+
+		PrintWriter out = response.getWriter();
+		out.write(json.toString());
+		out.flush();
+	}
+}
@@ -0,0 +1,82 @@
+package com.sutherland.hughes.api.trace;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.sutherland.hughes.trace.ExecutionTrace;
+import com.sutherland.hughes.trace.Tracer;
+
+/**
+ * Serves execution traces as JSON.
+ *
+ * Request parameters:
+ * 	id	- the id of a recent trace, ie. from an export's X-Report-Trace header. Without it, the recent slow traces are listed, most recent
+ * 		  first.
+ *
+ * Mapped to /trace in the webapp's WEB.xml, from conf/webapp/WEB-entries.xml.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class TraceServlet extends HttpServlet
+{
+	private static final long serialVersionUID = 1L;
+
+	private final static String ID_PARAM = "id";
+	private final static String CONTENT_TYPE = "application/json; charset=UTF-8";
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.http.HttpServlet#doGet(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
+	 */
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+	{
+		String id = request.getParameter(ID_PARAM);
+
+		StringBuilder json = new StringBuilder();
+
+		if(id != null)
+		{
+			ExecutionTrace trace = Tracer.getTrace(id);
+
+			if(trace == null)
+			{
+				response.sendError(HttpServletResponse.SC_NOT_FOUND, "No such trace");
+				return;
+			}
+
+			json.append(trace.toJSON());
+		}
+		else
+		{
+			json.append('[');
+
+			boolean first = true;
+			for(ExecutionTrace trace : Tracer.getSlowTraces())
+			{
+				if(!first)
+				{
+					json.append(',');
+				}
+
+				json.append(trace.toJSON());
+
+				first = false;
+			}
+
+			json.append(']');
+		}
+
+		response.setContentType(CONTENT_TYPE);
+		response.setHeader("Cache-Control", "no-cache");
+
+		PrintWriter out = response.getWriter();
+		out.write(json.toString());
+		out.flush();
+	}
+}
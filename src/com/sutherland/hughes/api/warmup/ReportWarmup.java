@@ -0,0 +1,354 @@
+package com.sutherland.hughes.api.warmup;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import com.sutherland.helios.exceptions.ExceptionFormatter;
+import com.sutherland.hughes.config.ReportingConfig;
+import com.sutherland.hughes.datasources.DataSources;
+import com.sutherland.hughes.datasources.DatabaseConfigs;
+import com.sutherland.hughes.datasources.JDBCConnection;
+import com.sutherland.hughes.metrics.ReportMetrics;
+import com.sutherland.hughes.report.CreatedCustomers;
+import com.sutherland.hughes.report.HughesRoster;
+
+/**
+ * Runs what the first users after a restart would otherwise wait for, one step at a time on a low priority background thread: the roster,
+ * the refval dictionary, then each report and WarmupTemplate listed in hughes.warmup.reports, ie.
+ * "CallVolume:yesterdayByTeam, SalesCount:monthToDateByAgent". Their queries land in the QueryCache, and closed period results in the
+ * ReportResultCache, through the same paths requests use. Steps run one after another, so the warm-up never puts more than one report's
+ * load on the database.
+ *
+ * Each step is logged as it finishes, and the progress is registered as an MBean under com.sutherland.hughes:type=Warmup and scraped by
+ * writeText. Disabled by setting hughes.warmup.enabled to false; hughes.warmup.delaySeconds gives the webapp time to finish starting.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class ReportWarmup implements Runnable, ReportWarmupMBean
+{
+	public final static String DEFAULT_REPORTS = "CallVolume:yesterdayByTeam, CallVolume:monthToDateByAgent, " +
+			"AverageHandleTime:yesterdayByTeam, AverageHandleTime:monthToDateByAgent, " +
+			"SalesCount:yesterdayByTeam, SalesCount:monthToDateByAgent, " +
+			"RealtimeSales:yesterdayByTeam, RealtimeSales:monthToDateByAgent";
+	public final static long DEFAULT_DELAY_SECONDS = 10;
+	public final static String JMX_TYPE = "Warmup";
+
+	private final static String METRIC_PREFIX = "hughes_warmup";
+	private final static String THREAD_NAME = "hughes-warmup";
+	private final static long STOP_WAIT_MILLIS = 5000;
+
+	private final static Logger logger = Logger.getLogger(ReportWarmup.class);
+
+	private static ReportWarmup instance;
+
+	/**
+	 * One thing to warm up.
+	 */
+	private abstract static class Step
+	{
+		private final String name;
+
+		private Step(String name)
+		{
+			this.name = name;
+		}
+
+		abstract void run() throws Exception;
+	}
+
+	private final ArrayList<Step> steps;
+	private final long delayMillis;
+	private final AtomicInteger completedSteps;
+	private final AtomicInteger failedSteps;
+
+	private volatile Thread thread;
+	private volatile boolean stopped;
+	private volatile String currentStep;
+	private volatile long startNanos;
+	private volatile long elapsedNanos;
+	private volatile boolean finished;
+
+	/**
+	 * Build a warm-up.
+	 *
+	 * @param reports		The reports to run, as a comma separated list of report class name and template label pairs, ie.
+	 * 						"CallVolume:yesterdayByTeam". Class names are relative to com.sutherland.hughes.report unless fully qualified.
+	 * 						Malformed entries are logged and skipped.
+	 * @param delayMillis	How long to wait before the first step.
+	 */
+	public ReportWarmup(String reports, long delayMillis)
+	{
+		this.delayMillis = delayMillis;
+
+		completedSteps = new AtomicInteger();
+		failedSteps = new AtomicInteger();
+
+		steps = new ArrayList<Step>();
+
+		steps.add(new Step("roster")
+		{
+			@Override
+			void run() throws Exception
+			{
+				HughesRoster roster = new HughesRoster();
+
+				try
+				{
+					roster.load();
+
+					TemplatedReport.checkError(roster);
+				}
+				finally
+				{
+					roster.close();
+				}
+			}
+		});
+
+		steps.add(new Step("refvals")
+		{
+			@Override
+			void run() throws Exception
+			{
+				JDBCConnection dbConnection = DataSources.getConnection(DatabaseConfigs.PRIVATE_LABEL_PROD_DB);
+
+				try
+				{
+					dbConnection.runQuery(CreatedCustomers.REFVAL_QUERY);
+				}
+				finally
+				{
+					dbConnection.close();
+				}
+			}
+		});
+
+		for(final TemplatedReport report : TemplatedReport.parsePairs(reports))
+		{
+			steps.add(new Step(report.getName())
+			{
+				@Override
+				void run() throws Exception
+				{
+					report.run(false);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Start the site-wide warm-up from the configuration, unless it's disabled or already started.
+	 */
+	public static synchronized void startConfigured()
+	{
+		if(instance == null && ReportingConfig.getBoolean(ReportingConfig.WARMUP_ENABLED, true))
+		{
+			instance = new ReportWarmup(ReportingConfig.getString(ReportingConfig.WARMUP_REPORTS, DEFAULT_REPORTS), ReportingConfig.getLong(ReportingConfig.WARMUP_DELAY_SECONDS, DEFAULT_DELAY_SECONDS) * 1000);
+
+			ReportMetrics.register(JMX_TYPE, "Startup", instance);
+
+			instance.start();
+		}
+	}
+
+	/**
+	 * Stop the site-wide warm-up, if it was started.
+	 */
+	public static synchronized void stopConfigured()
+	{
+		if(instance != null)
+		{
+			instance.stop();
+		}
+	}
+
+	/**
+	 * Accessor for the site-wide warm-up.
+	 *
+	 * @return	The warm-up, or null if it hasn't been started.
+	 */
+	public static synchronized ReportWarmup getInstance()
+	{
+		return instance;
+	}
+
+	/**
+	 * Start running the steps on a background thread.
+	 */
+	public synchronized void start()
+	{
+		if(thread == null)
+		{
+			thread = new Thread(this, THREAD_NAME);
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Stop after the step that's running, ie. when the webapp is stopped. Waits a few seconds for it to finish.
+	 */
+	public void stop()
+	{
+		stopped = true;
+
+		Thread running = thread;
+
+		if(running != null)
+		{
+			running.interrupt();
+
+			try
+			{
+				running.join(STOP_WAIT_MILLIS);
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run()
+	{
+		try
+		{
+			Thread.sleep(delayMillis);
+		}
+		catch(InterruptedException e)
+		{
+			stopped = true;
+		}
+
+		logger.info("Warming up " + steps.size() + " steps");
+
+		startNanos = System.nanoTime();
+
+		long stepStart;
+		for(int i = 0; i < steps.size() && !stopped; i++)
+		{
+			currentStep = steps.get(i).name;
+			stepStart = System.nanoTime();
+
+			try
+			{
+				steps.get(i).run();
+
+				completedSteps.incrementAndGet();
+
+				logger.info("Warm-up step " + (i + 1) + "/" + steps.size() + " " + currentStep + " took " + (System.nanoTime() - stepStart) / 1000000 + " ms");
+			}
+			catch(Exception e)
+			{
+				failedSteps.incrementAndGet();
+
+				logger.warn("Warm-up step " + (i + 1) + "/" + steps.size() + " " + currentStep + " failed: " + ExceptionFormatter.asString(e));
+			}
+
+			elapsedNanos = System.nanoTime() - startNanos;
+		}
+
+		currentStep = null;
+		finished = true;
+
+		logger.info("Warm-up " + (stopped ? "stopped" : "finished") + " in " + elapsedNanos / 1000000 + " ms, " + completedSteps.get() + " steps completed, " + failedSteps.get() + " failed");
+	}
+
+	/**
+	 * Accessor for the names of the steps, in the order they run.
+	 *
+	 * @return	The names, ie. "roster" or "CallVolume:yesterdayByTeam".
+	 */
+	public List<String> getStepNames()
+	{
+		ArrayList<String> retval = new ArrayList<String>(steps.size());
+
+		for(Step step : steps)
+		{
+			retval.add(step.name);
+		}
+
+		return Collections.unmodifiableList(retval);
+	}
+
+	@Override
+	public int getSteps()
+	{
+		return steps.size();
+	}
+
+	@Override
+	public int getCompletedSteps()
+	{
+		return completedSteps.get();
+	}
+
+	@Override
+	public int getFailedSteps()
+	{
+		return failedSteps.get();
+	}
+
+	@Override
+	public String getCurrentStep()
+	{
+		return currentStep;
+	}
+
+	@Override
+	public boolean isFinished()
+	{
+		return finished;
+	}
+
+	@Override
+	public long getElapsedMillis()
+	{
+		long retval = 0;
+
+		if(finished)
+		{
+			retval = elapsedNanos / 1000000;
+		}
+		else if(startNanos != 0)
+		{
+			retval = (System.nanoTime() - startNanos) / 1000000;
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Write the warm-up's progress in the Prometheus text exposition format.
+	 *
+	 * @param out	Where to write it. It is not flushed or closed.
+	 *
+	 * @throws IOException	If it cannot be written.
+	 */
+	public void writeText(Writer out) throws IOException
+	{
+		writeSample(out, "_steps", steps.size());
+		writeSample(out, "_steps_completed", completedSteps.get());
+		writeSample(out, "_steps_failed", failedSteps.get());
+		writeSample(out, "_finished", finished ? 1 : 0);
+		writeSample(out, "_elapsed_millis", getElapsedMillis());
+	}
+
+	private static void writeSample(Writer out, String metric, long value) throws IOException
+	{
+		out.write("# TYPE " + METRIC_PREFIX + metric + " gauge\n");
+		out.write(METRIC_PREFIX + metric + " " + value + "\n");
+	}
+}
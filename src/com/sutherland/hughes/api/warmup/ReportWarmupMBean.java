@@ -0,0 +1,28 @@
+package com.sutherland.hughes.api.warmup;
+
+/**
+ * The JMX view of the ReportWarmup's progress.
+ *
+ * @author Jason Diamond
+ *
+ */
+public interface ReportWarmupMBean
+{
+	int getSteps();
+
+	int getCompletedSteps();
+
+	int getFailedSteps();
+
+	/**
+	 * @return	The name of the step running now, or null if none is.
+	 */
+	String getCurrentStep();
+
+	boolean isFinished();
+
+	/**
+	 * @return	The time the steps have taken so far, or took in all once finished.
+	 */
+	long getElapsedMillis();
+}
@@ -0,0 +1,250 @@
+package com.sutherland.hughes.api.warmup;
+
+import java.util.ArrayList;
+
+import org.apache.log4j.Logger;
+
+import com.sutherland.helios.report.Report;
+import com.sutherland.hughes.api.export.ReportExporter;
+import com.sutherland.hughes.report.cache.ReportResultCache;
+import com.sutherland.hughes.report.execution.AdmissionLane;
+import com.sutherland.hughes.report.execution.ReportRequest;
+import com.sutherland.hughes.report.execution.ResourceBudget;
+import com.sutherland.hughes.util.results.ResultBuffer;
+
+/**
+ * A report to run in the background with a WarmupTemplate's parameters, as listed in the warm-up and precompute job settings. It's run the
+ * way ExportServlet would, within its ResourceBudget, and its results are kept in the ReportResultCache if they're for a closed period.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class TemplatedReport
+{
+	private final static String REPORT_CLASS_PREFIX = "com.sutherland.hughes.report.";
+
+	private final static Logger logger = Logger.getLogger(TemplatedReport.class);
+
+	private final Class<?> reportClass;
+	private final WarmupTemplate template;
+
+	/**
+	 * Build a templated report.
+	 *
+	 * @param reportClass	The report class.
+	 * @param template		The parameters to run it with.
+	 */
+	public TemplatedReport(Class<?> reportClass, WarmupTemplate template)
+	{
+		this.reportClass = reportClass;
+		this.template = template;
+	}
+
+	/**
+	 * Parse a list of report and template pairs, ie. "CallVolume:yesterdayByTeam, SalesCount:monthToDateByAgent". Class names are relative
+	 * to com.sutherland.hughes.report unless fully qualified. Malformed entries are logged and skipped.
+	 *
+	 * @param pairs		The comma separated pairs.
+	 *
+	 * @return	The templated reports, in the order listed.
+	 */
+	public static ArrayList<TemplatedReport> parsePairs(String pairs)
+	{
+		ArrayList<TemplatedReport> retval = new ArrayList<TemplatedReport>();
+
+		String[] parts;
+		for(String entry : pairs.split(","))
+		{
+			entry = entry.trim();
+
+			if(!entry.isEmpty())
+			{
+				parts = entry.split(":");
+
+				if(parts.length == 2)
+				{
+					add(retval, entry, parts[0].trim(), parts[1].trim());
+				}
+				else
+				{
+					logger.warn("Skipping " + entry + ", expected a report and one of the templates " + templateLabels());
+				}
+			}
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Parse a list of reports and a list of templates, and pair every report with every template. Malformed entries are logged and
+	 * skipped.
+	 *
+	 * @param reports		The comma separated report class names.
+	 * @param templates		The comma separated template labels.
+	 *
+	 * @return	The templated reports, each report with each template in turn.
+	 */
+	public static ArrayList<TemplatedReport> parseProduct(String reports, String templates)
+	{
+		ArrayList<TemplatedReport> retval = new ArrayList<TemplatedReport>();
+
+		for(String reportName : reports.split(","))
+		{
+			reportName = reportName.trim();
+
+			if(!reportName.isEmpty())
+			{
+				for(String label : templates.split(","))
+				{
+					label = label.trim();
+
+					if(!label.isEmpty())
+					{
+						add(retval, reportName + ":" + label, reportName, label);
+					}
+				}
+			}
+		}
+
+		return retval;
+	}
+
+	private static void add(ArrayList<TemplatedReport> list, String entry, String reportClassName, String label)
+	{
+		WarmupTemplate template = WarmupTemplate.forLabel(label);
+
+		if(template == null)
+		{
+			logger.warn("Skipping " + entry + ", expected one of the templates " + templateLabels());
+			return;
+		}
+
+		if(!reportClassName.contains("."))
+		{
+			reportClassName = REPORT_CLASS_PREFIX + reportClassName;
+		}
+
+		Class<?> reportClass;
+
+		try
+		{
+			reportClass = Class.forName(reportClassName);
+		}
+		catch(ClassNotFoundException e)
+		{
+			logger.warn("Skipping " + entry + ", no such report");
+			return;
+		}
+
+		if(!Report.class.isAssignableFrom(reportClass))
+		{
+			logger.warn("Skipping " + entry + ", " + reportClassName + " is not a report");
+			return;
+		}
+
+		list.add(new TemplatedReport(reportClass, template));
+	}
+
+	private static String templateLabels()
+	{
+		ArrayList<String> retval = new ArrayList<String>();
+
+		for(WarmupTemplate template : WarmupTemplate.values())
+		{
+			retval.add(template.getLabel());
+		}
+
+		return retval.toString();
+	}
+
+	/**
+	 * Accessor for the templated report's name.
+	 *
+	 * @return	The report's simple class name and the template's label, ie. "CallVolume:yesterdayByTeam".
+	 */
+	public String getName()
+	{
+		return reportClass.getSimpleName() + ":" + template.getLabel();
+	}
+
+	/**
+	 * Run the report.
+	 *
+	 * @param refresh	True to run it even if its results are cached, replacing them, false to leave cached results as they are.
+	 *
+	 * @return	The number of rows the report returned.
+	 *
+	 * @throws Exception	If the report cannot be built, fails or goes over its budget.
+	 */
+	public long run(boolean refresh) throws Exception
+	{
+		long retval;
+
+		Report report = null;
+		ResultBuffer results = null;
+
+		ResourceBudget budget = ResourceBudget.forReport(reportClass.getSimpleName());
+
+		//nobody is waiting on it, it gives way to the requests that are
+		budget.setLane(AdmissionLane.BULK);
+		ResourceBudget.setCurrent(budget);
+
+		try
+		{
+			report = ReportRequest.buildReport(reportClass);
+
+			long now = System.currentTimeMillis();
+			template.apply(report.getParameters(), now);
+
+			ReportResultCache cache = ReportResultCache.getInstance();
+
+			if(refresh && cache != null && ReportResultCache.isClosedPeriod(report.getParameters(), now))
+			{
+				ArrayList<String> schema = report.getReportSchema();
+
+				results = ReportExporter.bufferReport(report);
+				checkError(report);
+
+				cache.put(ReportResultCache.key(reportClass.getName(), report.getParameters()), schema, results, now);
+			}
+			else
+			{
+				results = ReportExporter.bufferReport(report, cache, now, new ArrayList<String>());
+				checkError(report);
+			}
+
+			retval = results.size();
+		}
+		finally
+		{
+			if(report != null)
+			{
+				report.close();
+			}
+
+			if(results != null)
+			{
+				results.close();
+			}
+
+			ResourceBudget.setCurrent(null);
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Fail a report that caught its own failure.
+	 *
+	 * @param report	The report, after it has run.
+	 *
+	 * @throws Exception	If the report has an error message.
+	 */
+	static void checkError(Report report) throws Exception
+	{
+		if(!ReportExporter.succeeded(report))
+		{
+			throw new Exception(report.getErrorMessage());
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package com.sutherland.hughes.api.warmup;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * Starts the ReportWarmup in the background when the webapp starts, and stops it when the webapp stops.
+ *
+ * Registered in the webapp's WEB.xml after LoggingListener, from conf/webapp/WEB-entries.xml.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class WarmupListener implements ServletContextListener
+{
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletContextListener#contextInitialized(javax.servlet.ServletContextEvent)
+	 */
+	@Override
+	public void contextInitialized(ServletContextEvent event)
+	{
+		ReportWarmup.startConfigured();
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletContextListener#contextDestroyed(javax.servlet.ServletContextEvent)
+	 */
+	@Override
+	public void contextDestroyed(ServletContextEvent event)
+	{
+		ReportWarmup.stopConfigured();
+	}
+}
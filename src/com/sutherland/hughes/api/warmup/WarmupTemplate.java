@@ -0,0 +1,177 @@
+package com.sutherland.hughes.api.warmup;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+
+import com.sutherland.helios.data.granularity.time.TimeGrains;
+import com.sutherland.helios.data.granularity.user.UserGrains;
+import com.sutherland.helios.date.formatting.DateFormatter;
+import com.sutherland.helios.date.parsing.DateParser;
+import com.sutherland.helios.report.ReportTypes;
+import com.sutherland.helios.report.parameters.ReportParameters;
+
+/**
+ * The parameters the dashboards ask for most, relative to the day they're applied, for ReportWarmup and the precompute jobs to run their
+ * reports with. Each is named in their settings by its label. The yesterday, last 7 days and last month templates are closed periods, so
+ * their results land in the ReportResultCache.
+ *
+ * @author Jason Diamond
+ *
+ */
+public enum WarmupTemplate
+{
+	YESTERDAY_BY_TEAM("yesterdayByTeam")
+	{
+		@Override
+		public void apply(ReportParameters parameters, long nowMillis)
+		{
+			GregorianCalendar today = startOfDay(nowMillis);
+			GregorianCalendar yesterday = (GregorianCalendar)today.clone();
+			yesterday.add(Calendar.DAY_OF_MONTH, -1);
+
+			setStack(parameters, UserGrains.TEAM_GRANULARITY);
+			setRange(parameters, yesterday, today);
+		}
+	},
+	YESTERDAY_BY_AGENT("yesterdayByAgent")
+	{
+		@Override
+		public void apply(ReportParameters parameters, long nowMillis)
+		{
+			GregorianCalendar today = startOfDay(nowMillis);
+			GregorianCalendar yesterday = (GregorianCalendar)today.clone();
+			yesterday.add(Calendar.DAY_OF_MONTH, -1);
+
+			setStack(parameters, UserGrains.AGENT_GRANULARITY);
+			setRange(parameters, yesterday, today);
+		}
+	},
+	LAST_7_DAYS_BY_AGENT("last7DaysByAgent")
+	{
+		@Override
+		public void apply(ReportParameters parameters, long nowMillis)
+		{
+			GregorianCalendar today = startOfDay(nowMillis);
+			GregorianCalendar weekAgo = (GregorianCalendar)today.clone();
+			weekAgo.add(Calendar.DAY_OF_MONTH, -7);
+
+			setStack(parameters, UserGrains.AGENT_GRANULARITY);
+			setRange(parameters, weekAgo, today);
+		}
+	},
+	LAST_MONTH_BY_AGENT("lastMonthByAgent")
+	{
+		@Override
+		public void apply(ReportParameters parameters, long nowMillis)
+		{
+			GregorianCalendar monthStart = startOfDay(nowMillis);
+			monthStart.set(Calendar.DAY_OF_MONTH, 1);
+			GregorianCalendar lastMonthStart = (GregorianCalendar)monthStart.clone();
+			lastMonthStart.add(Calendar.MONTH, -1);
+
+			setStack(parameters, UserGrains.AGENT_GRANULARITY);
+			setRange(parameters, lastMonthStart, monthStart);
+		}
+	},
+	MONTH_TO_DATE_BY_AGENT("monthToDateByAgent")
+	{
+		@Override
+		public void apply(ReportParameters parameters, long nowMillis)
+		{
+			setStack(parameters, UserGrains.AGENT_GRANULARITY);
+			setMonthToDate(parameters, nowMillis);
+		}
+	},
+	MONTH_TO_DATE_BY_DAY("monthToDateByDay")
+	{
+		@Override
+		public void apply(ReportParameters parameters, long nowMillis)
+		{
+			parameters.setReportType(ReportTypes.TIME_TREND_REPORT);
+			parameters.setTimeGrain(TimeGrains.DAILY_GRANULARITY);
+			parameters.setDateFormat(DateFormatter.SQL_FORMAT);
+
+			setMonthToDate(parameters, nowMillis);
+		}
+	};
+
+	private final String label;
+
+	private WarmupTemplate(String label)
+	{
+		this.label = label;
+	}
+
+	public String getLabel()
+	{
+		return label;
+	}
+
+	/**
+	 * Set a report's parameters from the template.
+	 *
+	 * @param parameters	The report's parameters.
+	 * @param nowMillis		The time the warm-up runs, which the dates are relative to.
+	 */
+	public abstract void apply(ReportParameters parameters, long nowMillis);
+
+	/**
+	 * Look up a template by its label.
+	 *
+	 * @param label		The template's label, ie. yesterdayByTeam.
+	 *
+	 * @return	The template, or null if there's none by that label.
+	 */
+	public static WarmupTemplate forLabel(String label)
+	{
+		WarmupTemplate retval = null;
+
+		for(WarmupTemplate template : values())
+		{
+			if(template.label.equalsIgnoreCase(label))
+			{
+				retval = template;
+			}
+		}
+
+		return retval;
+	}
+
+	private static GregorianCalendar startOfDay(long nowMillis)
+	{
+		GregorianCalendar retval = new GregorianCalendar();
+		retval.setTimeInMillis(nowMillis);
+		retval.set(Calendar.HOUR_OF_DAY, 0);
+		retval.set(Calendar.MINUTE, 0);
+		retval.set(Calendar.SECOND, 0);
+		retval.set(Calendar.MILLISECOND, 0);
+
+		return retval;
+	}
+
+	private static void setStack(ReportParameters parameters, int userGrain)
+	{
+		parameters.setReportType(ReportTypes.STACK_REPORT);
+		parameters.setUserGrain(userGrain);
+	}
+
+	/*
+	 * From the first of the month through the end of today, so the report includes today's rows so far.
+	 */
+	private static void setMonthToDate(ReportParameters parameters, long nowMillis)
+	{
+		GregorianCalendar tomorrow = startOfDay(nowMillis);
+		tomorrow.add(Calendar.DAY_OF_MONTH, 1);
+
+		GregorianCalendar monthStart = startOfDay(nowMillis);
+		monthStart.set(Calendar.DAY_OF_MONTH, 1);
+
+		setRange(parameters, monthStart, tomorrow);
+	}
+
+	private static void setRange(ReportParameters parameters, GregorianCalendar start, GregorianCalendar end)
+	{
+		parameters.setStartDate(DateParser.toSQLDateFormat(start));
+		parameters.setEndDate(DateParser.toSQLDateFormat(end));
+	}
+}
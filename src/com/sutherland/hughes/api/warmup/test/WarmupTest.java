@@ -0,0 +1,199 @@
+/**
+ *
+ */
+package com.sutherland.hughes.api.warmup.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Map.Entry;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.sutherland.helios.exceptions.ReportSetupException;
+import com.sutherland.helios.report.Report;
+import com.sutherland.helios.report.parameters.ReportParameters;
+import com.sutherland.helios.report.parameters.groups.ReportParameterGroups;
+import com.sutherland.hughes.api.warmup.ReportWarmup;
+import com.sutherland.hughes.api.warmup.TemplatedReport;
+import com.sutherland.hughes.api.warmup.WarmupTemplate;
+import com.sutherland.hughes.report.CallVolume;
+import com.sutherland.hughes.report.cache.ReportResultCache;
+
+/**
+ * @author Jason Diamond
+ *
+ */
+public class WarmupTest extends TestCase
+{
+	/**
+	 * Returns a row per day of its range, without a database. Its dates and grain are left for the template to set.
+	 */
+	public static class DailyReport extends Report
+	{
+		public DailyReport() throws ReportSetupException
+		{
+			super();
+
+			getParameters().addTeamName("Team 1");
+		}
+
+		@Override
+		protected ArrayList<String[]> runReport() throws Exception
+		{
+			ArrayList<String[]> retval = new ArrayList<String[]>();
+			retval.add(new String[]{getParameters().getStartDate(), "1"});
+
+			return retval;
+		}
+
+		@Override
+		protected boolean setupDataSourceConnections()
+		{
+			return true;
+		}
+
+		@Override
+		protected boolean setupReport()
+		{
+			for(Entry<String, ArrayList<String>> reportType : ReportParameterGroups.BASIC_METRIC_REPORT_PARAMETERS.entrySet())
+			{
+				for(String paramName : reportType.getValue())
+				{
+					getParameters().addSupportedParameter(paramName);
+				}
+			}
+
+			return true;
+		}
+
+		@Override
+		protected boolean setupLogger()
+		{
+			return true;
+		}
+
+		@Override
+		public ArrayList<String> getReportSchema()
+		{
+			ArrayList<String> retval = new ArrayList<String>();
+			retval.add("Date");
+			retval.add("Count");
+
+			return retval;
+		}
+
+		@Override
+		protected void logInfoMessage(String message)
+		{
+		}
+
+		@Override
+		protected void logWarnMessage(String message)
+		{
+		}
+
+		@Override
+		protected void logErrorMessage(String message)
+		{
+		}
+	}
+
+	/**
+	 * Open a result cache in a new temporary directory, as the site-wide cache.
+	 */
+	public static ReportResultCache openCache() throws Exception
+	{
+		File dir = File.createTempFile("hughes-warmup-cache-", "");
+		dir.delete();
+
+		ReportResultCache retval = new ReportResultCache(dir, ReportResultCache.DEFAULT_MAX_BYTES, 60 * 60 * 1000);
+		ReportResultCache.setInstance(retval);
+
+		return retval;
+	}
+
+	/**
+	 * Put back the configured cache, and delete a test's cache.
+	 */
+	public static void closeCache(ReportResultCache cache)
+	{
+		ReportResultCache.setInstance(null);
+
+		cache.clear();
+	}
+
+	private static ReportParameters applied(WarmupTemplate template, long nowMillis) throws Exception
+	{
+		ReportParameters retval = new ReportParameters();
+
+		for(String paramName : CallVolume.uiReportParameters.get("Stack"))
+		{
+			retval.addSupportedParameter(paramName);
+		}
+
+		template.apply(retval, nowMillis);
+
+		return retval;
+	}
+
+	@Test
+	public void testTemplatesAreRelativeToToday() throws Exception
+	{
+		Calendar now = Calendar.getInstance();
+		now.set(2014, Calendar.OCTOBER, 8, 14, 30, 0);
+
+		ReportParameters yesterday = applied(WarmupTemplate.YESTERDAY_BY_TEAM, now.getTimeInMillis());
+		assertEquals("2014-10-07 00:00:00", yesterday.getStartDate());
+		assertEquals("2014-10-08 00:00:00", yesterday.getEndDate());
+		assertEquals("1", yesterday.getUserGrain());
+
+		//closed, so it lands in the result cache
+		assertTrue(ReportResultCache.isClosedPeriod(yesterday, now.getTimeInMillis()));
+
+		ReportParameters monthToDate = applied(WarmupTemplate.MONTH_TO_DATE_BY_AGENT, now.getTimeInMillis());
+		assertEquals("2014-10-01 00:00:00", monthToDate.getStartDate());
+		assertEquals("2014-10-09 00:00:00", monthToDate.getEndDate());
+		assertEquals("0", monthToDate.getUserGrain());
+		assertFalse(ReportResultCache.isClosedPeriod(monthToDate, now.getTimeInMillis()));
+
+		assertEquals(WarmupTemplate.MONTH_TO_DATE_BY_DAY, WarmupTemplate.forLabel("monthtodatebyday"));
+		assertNull(WarmupTemplate.forLabel("lastYear"));
+	}
+
+	@Test
+	public void testMalformedEntriesAreSkipped() throws Exception
+	{
+		ReportWarmup warmup = new ReportWarmup("CallVolume:yesterdayByTeam, NoSuchReport:yesterdayByTeam, SalesCount, com.sutherland.hughes.report.SalesCount:monthToDateByAgent, TalkTime:lastYear, ", 0);
+
+		assertEquals(Arrays.asList("roster", "refvals", "CallVolume:yesterdayByTeam", "SalesCount:monthToDateByAgent"), warmup.getStepNames());
+		assertEquals(0, warmup.getCompletedSteps());
+		assertFalse(warmup.isFinished());
+	}
+
+	@Test
+	public void testClosedPeriodReportIsCached() throws Exception
+	{
+		ReportResultCache cache = openCache();
+
+		try
+		{
+			TemplatedReport report = new TemplatedReport(DailyReport.class, WarmupTemplate.YESTERDAY_BY_TEAM);
+
+			assertEquals(1, report.run(false));
+			assertEquals(1, cache.getEntries());
+
+			//served from the cache the second time
+			assertEquals(1, report.run(false));
+			assertEquals(1, cache.getHits());
+			assertEquals(1, cache.getWrites());
+		}
+		finally
+		{
+			closeCache(cache);
+		}
+	}
+}
@@ -0,0 +1,225 @@
+package com.sutherland.hughes.config;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import org.apache.log4j.Logger;
+
+import com.sutherland.helios.exceptions.ExceptionFormatter;
+
+/**
+ * Site-wide tuning settings for the reporting engine. Values are read once from the reporting properties file, and any setting can be
+ * overridden with a JVM system property of the same name. Settings missing from both fall back to the caller's default.
+ *
+ * @author Jason Diamond
+ *
+ */
+public final class ReportingConfig 
+{
+	public final static String REPORTING_PROPERTIES = "/opt/tomcat/HughesReporting/conf/reporting.properties";
+	
+	public final static String RESULT_BUFFER_MEMORY_BYTES = "hughes.resultBuffer.memoryBytes";
+	public final static String RESULT_BUFFER_SPILL_DIR = "hughes.resultBuffer.spillDir";
+	
+	public final static String CHUNK_DAYS = "hughes.chunking.chunkDays";
+	public final static String CHUNK_PARALLELISM = "hughes.chunking.parallelism";
+	
+	public final static String AGGREGATION_THREADS = "hughes.aggregation.threads";
+	public final static String AGGREGATION_BATCH_ROWS = "hughes.aggregation.batchRows";
+	
+	public final static String PUSHDOWN_TIME_GRAIN = "hughes.pushdown.timeGrain";
+	public final static String PUSHDOWN_USER_GRAIN = "hughes.pushdown.userGrain";
+	public final static String PUSHDOWN_MAX_ROSTER_USERS = "hughes.pushdown.maxRosterUsers";
+	
+	public final static String ROSTER_SNAPSHOT_MAX_AGE_SECONDS = "hughes.roster.snapshotMaxAgeSeconds";
+	
+	public final static String ADMISSION_ENABLED = "hughes.admission.enabled";
+	public final static String ADMISSION_MAX_CONCURRENT = "hughes.admission.maxConcurrent";
+	public final static String ADMISSION_RESERVED_REALTIME = "hughes.admission.reservedRealtime";
+	public final static String ADMISSION_MAX_BULK = "hughes.admission.maxBulk";
+	public final static String ADMISSION_MAX_QUEUED = "hughes.admission.maxQueued";
+	public final static String ADMISSION_MAX_WAIT_SECONDS = "hughes.admission.maxWaitSeconds";
+	public final static String ADMISSION_REALTIME_REPORTS = "hughes.admission.realtimeReports";
+	public final static String ADMISSION_BULK_REPORTS = "hughes.admission.bulkReports";
+	public final static String ADMISSION_BULK_DRIVER_DAYS = "hughes.admission.bulkDriverDays";
+	
+	public final static String DATASOURCE_PROVIDER = "hughes.datasource.provider";
+	public final static String STAND_IN_URL = "hughes.datasource.standin.url";
+	public final static String STAND_IN_DRIVER = "hughes.datasource.standin.driver";
+	public final static String STAND_IN_USER = "hughes.datasource.standin.user";
+	public final static String STAND_IN_PASS = "hughes.datasource.standin.pass";
+	public final static String CAPTURE_DIR = "hughes.datasource.capture.dir";
+	public final static String REPLAY_FILE = "hughes.datasource.replay.file";
+	
+	public final static String QUERY_CACHE_ENABLED = "hughes.queryCache.enabled";
+	public final static String QUERY_CACHE_MAX_BYTES = "hughes.queryCache.maxBytes";
+	public final static String QUERY_CACHE_MAX_ENTRY_BYTES = "hughes.queryCache.maxEntryBytes";
+	public final static String QUERY_CACHE_HISTORICAL_TTL_SECONDS = "hughes.queryCache.ttlSeconds.historical";
+	public final static String QUERY_CACHE_UNDATED_TTL_SECONDS = "hughes.queryCache.ttlSeconds.undated";
+	public final static String QUERY_CACHE_CURRENT_TTL_SECONDS = "hughes.queryCache.ttlSeconds.current";
+	
+	public final static String RESULT_CACHE_DIR = "hughes.resultCache.dir";
+	public final static String RESULT_CACHE_MAX_BYTES = "hughes.resultCache.maxBytes";
+	public final static String RESULT_CACHE_MAX_AGE_HOURS = "hughes.resultCache.maxAgeHours";
+	
+	public final static String METRICS_JMX = "hughes.metrics.jmx";
+	
+	public final static String TRACE_ENABLED = "hughes.trace.enabled";
+	public final static String TRACE_RECENT = "hughes.trace.recent";
+	public final static String TRACE_SLOW_MILLIS = "hughes.trace.slowMillis";
+	public final static String TRACE_SLOW_COUNT = "hughes.trace.slowCount";
+	
+	public final static String BUDGET_MAX_ROWS = "hughes.budget.maxRows";
+	public final static String BUDGET_MAX_ALLOCATED_BYTES = "hughes.budget.maxAllocatedBytes";
+	public final static String BUDGET_MAX_SECONDS = "hughes.budget.maxSeconds";
+	
+	public final static String QUERY_TIMEOUT_SECONDS = "hughes.query.timeoutSeconds";
+	
+	public final static String WARMUP_ENABLED = "hughes.warmup.enabled";
+	public final static String WARMUP_REPORTS = "hughes.warmup.reports";
+	public final static String WARMUP_DELAY_SECONDS = "hughes.warmup.delaySeconds";
+	
+	public final static String JOBS_ENABLED = "hughes.jobs.enabled";
+	public final static String JOBS_THREADS = "hughes.jobs.threads";
+	public final static String JOBS_MAX_RETRIES = "hughes.jobs.maxRetries";
+	public final static String JOBS_RETRY_DELAY_SECONDS = "hughes.jobs.retryDelaySeconds";
+	public final static String JOBS_CLOSED_DAYS_SCHEDULE = "hughes.jobs.closedDays.schedule";
+	public final static String JOBS_CLOSED_DAYS_REPORTS = "hughes.jobs.closedDays.reports";
+	public final static String JOBS_CLOSED_DAYS_TEMPLATES = "hughes.jobs.closedDays.templates";
+	public final static String JOBS_STACK_RANKS_SCHEDULE = "hughes.jobs.stackRanks.schedule";
+	public final static String JOBS_STACK_RANKS_REPORTS = "hughes.jobs.stackRanks.reports";
+	public final static String JOBS_STACK_RANKS_TEMPLATES = "hughes.jobs.stackRanks.templates";
+	public final static String JOBS_PRUNE_CACHES_SCHEDULE = "hughes.jobs.pruneCaches.schedule";
+	
+	public final static String REPORT_JOBS_ENABLED = "hughes.reportJobs.enabled";
+	public final static String REPORT_JOBS_THREADS = "hughes.reportJobs.threads";
+	public final static String REPORT_JOBS_MAX_QUEUED = "hughes.reportJobs.maxQueued";
+	public final static String REPORT_JOBS_RETENTION_SECONDS = "hughes.reportJobs.retentionSeconds";
+	
+	public final static String BATCH_MAX_REPORTS = "hughes.batch.maxReports";
+	
+	public final static String LOGGING_ASYNC = "hughes.logging.async";
+	public final static String LOGGING_ASYNC_BUFFER_SIZE = "hughes.logging.async.bufferSize";
+
+	private final static Logger logger = Logger.getLogger(ReportingConfig.class);
+	
+	private static Properties properties;
+	
+	private ReportingConfig()
+	{
+	}
+	
+	private static synchronized Properties getProperties()
+	{
+		if(properties == null)
+		{
+			properties = new Properties();
+			
+			InputStream in = null;
+			try
+			{
+				in = new FileInputStream(REPORTING_PROPERTIES);
+				properties.load(in);
+			}
+			catch(IOException e)
+			{
+				logger.warn("Could not load " + REPORTING_PROPERTIES + ", using defaults");
+			}
+			finally
+			{
+				if(in != null)
+				{
+					try
+					{
+						in.close();
+					}
+					catch(IOException e)
+					{
+						logger.warn(ExceptionFormatter.asString(e));
+					}
+				}
+			}
+		}
+		
+		return properties;
+	}
+	
+	/**
+	 * Accessor for a setting.
+	 * 
+	 * @param key			The setting's name.
+	 * @param defaultValue	The value to use if the setting is not configured.
+	 * 
+	 * @return	The setting's value.
+	 */
+	public static String getString(String key, String defaultValue)
+	{
+		String retval = System.getProperty(key);
+		
+		if(retval == null)
+		{
+			retval = getProperties().getProperty(key, defaultValue);
+		}
+		
+		return retval;
+	}
+	
+	/**
+	 * Accessor for a numeric setting. Malformed values are logged and ignored.
+	 * 
+	 * @param key			The setting's name.
+	 * @param defaultValue	The value to use if the setting is not configured.
+	 * 
+	 * @return	The setting's value.
+	 */
+	public static long getLong(String key, long defaultValue)
+	{
+		long retval = defaultValue;
+		
+		String value = getString(key, null);
+		
+		if(value != null)
+		{
+			try
+			{
+				retval = Long.parseLong(value.trim());
+			}
+			catch(NumberFormatException e)
+			{
+				logger.warn("Ignoring malformed value for " + key + ": " + value);
+			}
+		}
+		
+		return retval;
+	}
+	
+	/**
+	 * Accessor for a numeric setting. Malformed values are logged and ignored.
+	 * 
+	 * @param key			The setting's name.
+	 * @param defaultValue	The value to use if the setting is not configured.
+	 * 
+	 * @return	The setting's value.
+	 */
+	public static int getInt(String key, int defaultValue)
+	{
+		return (int)getLong(key, defaultValue);
+	}
+	
+	/**
+	 * Accessor for a boolean setting.
+	 * 
+	 * @param key			The setting's name.
+	 * @param defaultValue	The value to use if the setting is not configured.
+	 * 
+	 * @return	The setting's value.
+	 */
+	public static boolean getBoolean(String key, boolean defaultValue)
+	{
+		String value = getString(key, null);
+		
+		return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+	}
+}
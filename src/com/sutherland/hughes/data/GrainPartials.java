@@ -0,0 +1,142 @@
+package com.sutherland.hughes.data;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+/**
+ * Per-grain, per-attribute PartialAggregates; the mergeable counterpart of a Helios Aggregation. Partials built from different slices of
+ * a report's rows (ie. date range chunks, or worker threads) are merged into one before the report's output is produced.
+ * 
+ * Grains are kept in the order they first occurred, so partials merged in row order end up with the grains in the same order as if the
+ * rows had been aggregated in one pass.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class GrainPartials 
+{
+	private LinkedHashMap<String, HashMap<String, PartialAggregate>> data;
+	private long rowCount;
+	
+	public GrainPartials()
+	{
+		data = new LinkedHashMap<String, HashMap<String, PartialAggregate>>();
+	}
+	
+	/**
+	 * Accessor for a grain's aggregate of an attribute, created empty if it doesn't exist yet.
+	 * 
+	 * @param grain		The report grain.
+	 * @param attribute	The attribute.
+	 * 
+	 * @return	The partial aggregate.
+	 */
+	public PartialAggregate get(String grain, String attribute)
+	{
+		HashMap<String, PartialAggregate> attributes = data.get(grain);
+		
+		if(attributes == null)
+		{
+			attributes = new HashMap<String, PartialAggregate>();
+			data.put(grain, attributes);
+		}
+		
+		PartialAggregate retval = attributes.get(attribute);
+		
+		if(retval == null)
+		{
+			retval = new PartialAggregate();
+			attributes.put(attribute, retval);
+		}
+		
+		return retval;
+	}
+	
+	/**
+	 * Determine if an attribute has been aggregated for a grain.
+	 * 
+	 * @param grain		The report grain.
+	 * @param attribute	The attribute.
+	 * 
+	 * @return	True if the grain has the attribute, false otherwise.
+	 */
+	public boolean has(String grain, String attribute)
+	{
+		return data.containsKey(grain) && data.get(grain).containsKey(attribute);
+	}
+	
+	public boolean hasGrain(String grain)
+	{
+		return data.containsKey(grain);
+	}
+	
+	/**
+	 * Fold another set of partials, built from a disjoint set of rows, into this one.
+	 * 
+	 * @param other	The partials to merge in. They are not modified.
+	 */
+	public void merge(GrainPartials other)
+	{
+		for(Entry<String, HashMap<String, PartialAggregate>> grain : other.data.entrySet())
+		{
+			for(Entry<String, PartialAggregate> attribute : grain.getValue().entrySet())
+			{
+				get(grain.getKey(), attribute.getKey()).merge(attribute.getValue());
+			}
+		}
+		
+		rowCount += other.rowCount;
+	}
+	
+	/**
+	 * Count a row as folded into these partials, ie. one that passed the roster check.
+	 */
+	public void addRow()
+	{
+		rowCount++;
+	}
+	
+	/**
+	 * Count rows as folded into these partials, ie. a row grouped by the database that passed the roster check, by the rows it stands for.
+	 * 
+	 * @param rows	The number of rows.
+	 */
+	public void addRows(long rows)
+	{
+		rowCount += rows;
+	}
+	
+	/**
+	 * Accessor for the number of rows folded into these partials, including any merged in.
+	 * 
+	 * @return	The row count.
+	 */
+	public long getRowCount()
+	{
+		return rowCount;
+	}
+	
+	public int getSize()
+	{
+		return data.size();
+	}
+	
+	/**
+	 * Accessor for the grains, in the same order an Aggregation with the same grains lists them.
+	 * 
+	 * @return	The grain names.
+	 */
+	public String[] getGrainIDList()
+	{
+		//an Aggregation is a default sized HashMap of the grains, inserted in the order they first occurred
+		HashMap<String, Boolean> aggregationOrder = new HashMap<String, Boolean>();
+		
+		for(String grain : data.keySet())
+		{
+			aggregationOrder.put(grain, Boolean.TRUE);
+		}
+		
+		return aggregationOrder.keySet().toArray(new String[aggregationOrder.size()]);
+	}
+}
@@ -0,0 +1,390 @@
+package com.sutherland.hughes.data;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+import com.sutherland.helios.report.parameters.sanitize.StringSanitizer;
+
+/**
+ * The running aggregate of one attribute within one report grain. Unlike a Helios Datum, which keeps every raw value, only what is needed
+ * to produce the final figure is kept, and two partials built from disjoint sets of rows can be merged without losing exactness: sums are
+ * kept as decimals, distinct values as a set, and driver occurrences as full per-driver counts so a top-K can be taken after merging.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class PartialAggregate 
+{
+	//what a Helios Datum does to an attribute name before keying it, and the one name its filter passes over
+	private final static int DATUM_NAME_LENGTH = 100;
+	private final static String DATUM_NAME_ATTR = "name";
+	
+	private BigDecimal sum;
+	private long count;
+	private HashSet<String> distinctValues;
+	private LinkedHashMap<String, long[]> driverCounts;
+	
+	public PartialAggregate()
+	{
+		sum = BigDecimal.ZERO;
+		count = 0;
+	}
+	
+	/**
+	 * Add a numeric value to the sum and count. Values that are not numbers are ignored.
+	 * 
+	 * @param value	The value to add.
+	 * 
+	 * @return	True if the value was added, false otherwise.
+	 */
+	public boolean addValue(String value)
+	{
+		boolean retval = false;
+		
+		if(value != null)
+		{
+			try
+			{
+				sum = sum.add(new BigDecimal(value.trim()));
+				count++;
+				
+				retval = true;
+			}
+			catch(NumberFormatException e)
+			{
+				//not a number, not counted
+			}
+		}
+		
+		return retval;
+	}
+	
+	/**
+	 * Count an occurrence without adding to the sum.
+	 */
+	public void addOccurrence()
+	{
+		count++;
+	}
+	
+	/**
+	 * Count occurrences without adding to the sum, ie. for a row that stands for several.
+	 * 
+	 * @param occurrences	The number of occurrences.
+	 */
+	public void addOccurrences(long occurrences)
+	{
+		count += occurrences;
+	}
+	
+	/**
+	 * Add the sum of several numeric values to the sum and count, ie. a row summed by the database. Sums that are not numbers are ignored.
+	 * 
+	 * @param valueSum		The sum of the values.
+	 * @param valueCount	The number of values summed.
+	 * 
+	 * @return	True if the sum was added, false otherwise.
+	 */
+	public boolean addValues(String valueSum, long valueCount)
+	{
+		boolean retval = false;
+		
+		if(valueSum != null)
+		{
+			try
+			{
+				sum = sum.add(new BigDecimal(valueSum.trim()));
+				count += valueCount;
+				
+				retval = true;
+			}
+			catch(NumberFormatException e)
+			{
+				//not a number, not counted
+			}
+		}
+		
+		return retval;
+	}
+	
+	/**
+	 * Add a numeric value to the sum and count.
+	 * 
+	 * @param value	The value to add.
+	 */
+	public void addValue(long value)
+	{
+		sum = sum.add(BigDecimal.valueOf(value));
+		count++;
+	}
+	
+	/**
+	 * Note a value for the distinct count.
+	 * 
+	 * @param value	The value.
+	 */
+	public void addDistinct(String value)
+	{
+		if(distinctValues == null)
+		{
+			distinctValues = new HashSet<String>();
+		}
+		
+		distinctValues.add(value);
+	}
+	
+	/**
+	 * Note an occurrence of a driver.
+	 * 
+	 * @param driver	The driver.
+	 */
+	public void addDriver(String driver)
+	{
+		addDriver(driver, 1);
+	}
+	
+	/**
+	 * Note occurrences of a driver.
+	 * 
+	 * @param driver		The driver.
+	 * @param occurrences	The number of occurrences.
+	 */
+	public void addDriver(String driver, long occurrences)
+	{
+		if(driverCounts == null)
+		{
+			driverCounts = new LinkedHashMap<String, long[]>();
+		}
+		
+		long[] driverCount = driverCounts.get(driver);
+		
+		if(driverCount == null)
+		{
+			driverCounts.put(driver, new long[]{occurrences});
+		}
+		else
+		{
+			driverCount[0] += occurrences;
+		}
+	}
+	
+	/**
+	 * Fold another partial, built from a disjoint set of rows, into this one.
+	 * 
+	 * @param other	The partial to merge in. It is not modified.
+	 */
+	public void merge(PartialAggregate other)
+	{
+		sum = sum.add(other.sum);
+		count += other.count;
+		
+		if(other.distinctValues != null)
+		{
+			if(distinctValues == null)
+			{
+				distinctValues = new HashSet<String>(other.distinctValues);
+			}
+			else
+			{
+				distinctValues.addAll(other.distinctValues);
+			}
+		}
+		
+		if(other.driverCounts != null)
+		{
+			for(Entry<String, long[]> driverCount : other.driverCounts.entrySet())
+			{
+				addDriver(driverCount.getKey(), driverCount.getValue()[0]);
+			}
+		}
+	}
+	
+	public BigDecimal getSum()
+	{
+		return sum;
+	}
+	
+	public long getCount()
+	{
+		return count;
+	}
+	
+	/**
+	 * Accessor for the mean of the added values.
+	 * 
+	 * @return	The mean, or 0 if no values were added.
+	 */
+	public double getAverage()
+	{
+		double retval = 0;
+		
+		if(count > 0)
+		{
+			retval = sum.doubleValue() / count;
+		}
+		
+		return retval;
+	}
+	
+	public int getDistinctCount()
+	{
+		return distinctValues == null ? 0 : distinctValues.size();
+	}
+	
+	/**
+	 * Accessor for the drivers seen, in the order they first occurred. Partials merged in row order keep the order of the rows.
+	 * 
+	 * @return	The driver names.
+	 */
+	public ArrayList<String> getDriverNames()
+	{
+		return driverCounts == null ? new ArrayList<String>() : new ArrayList<String>(driverCounts.keySet());
+	}
+	
+	/**
+	 * Accessor for the number of occurrences of a driver.
+	 * 
+	 * @param driver	The driver.
+	 * 
+	 * @return	The occurrence count, or 0 if the driver hasn't been seen.
+	 */
+	public long getDriverCount(String driver)
+	{
+		long retval = 0;
+		
+		if(driverCounts != null && driverCounts.containsKey(driver))
+		{
+			retval = driverCounts.get(driver)[0];
+		}
+		
+		return retval;
+	}
+	
+	/**
+	 * Accessor for the most frequent drivers, most frequent first. Ties are broken by driver name so the result is stable.
+	 * 
+	 * @param numDrivers	The maximum number of drivers to return.
+	 * 
+	 * @return	Rows of driver name and occurrence count.
+	 */
+	public ArrayList<String[]> getTopDrivers(int numDrivers)
+	{
+		ArrayList<String[]> retval = new ArrayList<String[]>();
+		
+		if(driverCounts != null)
+		{
+			ArrayList<Entry<String, long[]>> drivers = new ArrayList<Entry<String, long[]>>(driverCounts.entrySet());
+			
+			Collections.sort(drivers, new Comparator<Entry<String, long[]>>()
+			{
+				@Override
+				public int compare(Entry<String, long[]> a, Entry<String, long[]> b)
+				{
+					int retval = Long.compare(b.getValue()[0], a.getValue()[0]);
+					
+					if(retval == 0)
+					{
+						retval = a.getKey().compareTo(b.getKey());
+					}
+					
+					return retval;
+				}
+			});
+			
+			for(int i = 0; i < numDrivers && i < drivers.size(); i++)
+			{
+				retval.add(new String[]{drivers.get(i).getKey(), "" + drivers.get(i).getValue()[0]});
+			}
+		}
+		
+		return retval;
+	}
+	
+	/**
+	 * Accessor for the drivers Helios' Filter.filterTopDrivers would pick from a Datum holding these occurrences, in the order it would 
+	 * return them, without building the Datum. Like the filter, this does not always pick the most frequent drivers when there are more 
+	 * than numDrivers of them: once numDrivers are kept, a driver displaces the last kept one if it occurs at least as often as any kept 
+	 * one ahead of it.
+	 * 
+	 * @param numDrivers	The maximum number of drivers to return.
+	 * 
+	 * @return	Rows of driver name and occurrence count, most frequent first.
+	 */
+	public ArrayList<String[]> filterTopDrivers(int numDrivers)
+	{
+		ArrayList<Entry<String, long[]>> kept = new ArrayList<Entry<String, long[]>>();
+		
+		if(driverCounts != null)
+		{
+			//keyed and filled the way a Datum is, so the drivers are visited in the same order as the filter visits the Datum's attributes
+			HashMap<String, long[]> drivers = new HashMap<String, long[]>();
+			
+			String driver;
+			long[] count;
+			for(Entry<String, long[]> driverCount : driverCounts.entrySet())
+			{
+				driver = StringSanitizer.sanitize(driverCount.getKey(), DATUM_NAME_LENGTH);
+				count = drivers.get(driver);
+				
+				if(count == null)
+				{
+					drivers.put(driver, new long[]{driverCount.getValue()[0]});
+				}
+				else
+				{
+					count[0] += driverCount.getValue()[0];
+				}
+			}
+			
+			for(Entry<String, long[]> candidate : drivers.entrySet())
+			{
+				if(candidate.getKey().equals(DATUM_NAME_ATTR))
+				{
+					//not a driver
+				}
+				else if(kept.size() < numDrivers)
+				{
+					kept.add(candidate);
+				}
+				else
+				{
+					for(int i = 0; i < kept.size(); i++)
+					{
+						if(kept.get(i).getValue()[0] <= candidate.getValue()[0])
+						{
+							kept.add(i, candidate);
+							kept.remove(kept.size() - 1);
+							
+							break;
+						}
+					}
+				}
+			}
+			
+			//stable, so equal counts stay in the order they were kept
+			Collections.sort(kept, new Comparator<Entry<String, long[]>>()
+			{
+				@Override
+				public int compare(Entry<String, long[]> a, Entry<String, long[]> b)
+				{
+					return Long.compare(b.getValue()[0], a.getValue()[0]);
+				}
+			});
+		}
+		
+		ArrayList<String[]> retval = new ArrayList<String[]>(kept.size());
+		
+		for(Entry<String, long[]> driverCount : kept)
+		{
+			retval.add(new String[]{driverCount.getKey(), "" + driverCount.getValue()[0]});
+		}
+		
+		return retval;
+	}
+}
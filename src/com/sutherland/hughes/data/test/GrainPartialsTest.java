@@ -0,0 +1,176 @@
+/**
+ *
+ */
+package com.sutherland.hughes.data.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.sutherland.helios.data.Datum;
+import com.sutherland.helios.util.results.Filter;
+import com.sutherland.hughes.data.GrainPartials;
+import com.sutherland.hughes.data.PartialAggregate;
+
+/**
+ * Merging partials built from slices of the rows must give the same figures as aggregating every row at once.
+ * 
+ * @author Jason Diamond
+ *
+ */
+public class GrainPartialsTest extends TestCase
+{
+	private final static String SUM_ATTR = "sum";
+	private final static String DRIVER_ATTR = "driver";
+	private final static int ROW_COUNT = 10000;
+	private final static int CHUNK_COUNT = 7;
+	private final static String[] GRAINS = {"2014-01", "2014-02", "2014-03"};
+
+	private ArrayList<String[]> rows;
+
+	public void setUp()
+	{
+		Random random = new Random(42);
+
+		rows = new ArrayList<String[]>(ROW_COUNT);
+
+		for(int i = 0; i < ROW_COUNT; i++)
+		{
+			rows.add(new String[]
+			{
+				GRAINS[random.nextInt(GRAINS.length)],
+				"" + random.nextInt(10000) / 100.0,
+				"user" + random.nextInt(50),
+				"driver" + (int)Math.abs(random.nextGaussian() * 10)
+			});
+		}
+	}
+
+	private static void aggregate(String[] row, GrainPartials partials)
+	{
+		partials.get(row[0], SUM_ATTR).addValue(row[1]);
+		partials.get(row[0], SUM_ATTR).addDistinct(row[2]);
+		partials.get(row[0], DRIVER_ATTR).addDriver(row[3]);
+	}
+
+	@Test
+	public void testMergeIsExact()
+	{
+		GrainPartials whole = new GrainPartials();
+		
+		GrainPartials[] chunks = new GrainPartials[CHUNK_COUNT];
+		for(int i = 0; i < CHUNK_COUNT; i++)
+		{
+			chunks[i] = new GrainPartials();
+		}
+
+		for(int i = 0; i < rows.size(); i++)
+		{
+			aggregate(rows.get(i), whole);
+			aggregate(rows.get(i), chunks[i % CHUNK_COUNT]);
+		}
+
+		GrainPartials merged = new GrainPartials();
+		for(GrainPartials chunk : chunks)
+		{
+			merged.merge(chunk);
+		}
+
+		assertEquals(whole.getSize(), merged.getSize());
+
+		PartialAggregate expected, actual;
+		for(String grain : whole.getGrainIDList())
+		{
+			expected = whole.get(grain, SUM_ATTR);
+			actual = merged.get(grain, SUM_ATTR);
+
+			assertEquals(0, expected.getSum().compareTo(actual.getSum()));
+			assertEquals(expected.getCount(), actual.getCount());
+			assertEquals(expected.getAverage(), actual.getAverage());
+			assertEquals(expected.getDistinctCount(), actual.getDistinctCount());
+
+			ArrayList<String[]> expectedDrivers = whole.get(grain, DRIVER_ATTR).getTopDrivers(5);
+			ArrayList<String[]> actualDrivers = merged.get(grain, DRIVER_ATTR).getTopDrivers(5);
+
+			assertEquals(5, actualDrivers.size());
+
+			for(int i = 0; i < expectedDrivers.size(); i++)
+			{
+				assertEquals(expectedDrivers.get(i)[0], actualDrivers.get(i)[0]);
+				assertEquals(expectedDrivers.get(i)[1], actualDrivers.get(i)[1]);
+			}
+		}
+	}
+
+	@Test
+	public void testTopDriversOrdering()
+	{
+		PartialAggregate drivers = new PartialAggregate();
+
+		drivers.addDriver("b", 3);
+		drivers.addDriver("a", 3);
+		drivers.addDriver("c", 5);
+		drivers.addDriver("d");
+
+		ArrayList<String[]> top = drivers.getTopDrivers(3);
+
+		assertEquals(3, top.size());
+		assertEquals("c", top.get(0)[0]);
+		assertEquals("5", top.get(0)[1]);
+		assertEquals("a", top.get(1)[0]);
+		assertEquals("b", top.get(2)[0]);
+	}
+
+	@Test
+	public void testFilterTopDriversMatchesHelios()
+	{
+		Random random = new Random(11);
+
+		//few occurrences over many drivers for plenty of ties, and long names that only differ once Helios has cut them short
+		String longName = String.format("%0120d", 0);
+
+		PartialAggregate drivers = new PartialAggregate();
+		Datum datum = new Datum(GRAINS[0]);
+
+		String driver;
+		for(int i = 0; i < 400; i++)
+		{
+			driver = random.nextInt(8) == 0 ? longName + random.nextInt(3) : " driver" + random.nextInt(60);
+
+			drivers.addDriver(driver);
+			datum.addData(driver, "");
+		}
+
+		ArrayList<String[]> expected, actual;
+		for(int numDrivers = 0; numDrivers <= 70; numDrivers++)
+		{
+			expected = Filter.filterTopDrivers(datum, numDrivers);
+			actual = drivers.filterTopDrivers(numDrivers);
+
+			assertEquals(expected.size(), actual.size());
+
+			for(int i = 0; i < expected.size(); i++)
+			{
+				assertTrue(Arrays.equals(expected.get(i), actual.get(i)));
+			}
+		}
+	}
+
+	@Test
+	public void testNonNumericValuesIgnored()
+	{
+		PartialAggregate sum = new PartialAggregate();
+
+		assertTrue(sum.addValue("1.10"));
+		assertTrue(sum.addValue(" 2.20 "));
+		assertFalse(sum.addValue("n/a"));
+		assertFalse(sum.addValue(null));
+
+		assertEquals("3.30", sum.getSum().toPlainString());
+		assertEquals(2, sum.getCount());
+	}
+}
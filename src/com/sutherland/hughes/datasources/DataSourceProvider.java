@@ -0,0 +1,24 @@
+package com.sutherland.hughes.datasources;
+
+import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
+
+/**
+ * Supplies the database connections reports run their queries on. Reports name the database they want by its property file, and the 
+ * provider decides what actually serves it.
+ *
+ * @author Jason Diamond
+ *
+ */
+public interface DataSourceProvider
+{
+	/**
+	 * Open a connection.
+	 * 
+	 * @param dbPropFile	The property file of the database the report wants, ie. one of DatabaseConfigs.
+	 * 
+	 * @return	The connection. The caller is responsible for closing it.
+	 * 
+	 * @throws DatabaseConnectionCreationException	If the connection cannot be opened.
+	 */
+	JDBCConnection getConnection(String dbPropFile) throws DatabaseConnectionCreationException;
+}
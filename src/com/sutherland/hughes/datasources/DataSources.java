@@ -0,0 +1,224 @@
+package com.sutherland.hughes.datasources;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.log4j.Logger;
+
+import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
+import com.sutherland.hughes.config.ReportingConfig;
+import com.sutherland.hughes.datasources.admission.AdmittingDataSourceProvider;
+import com.sutherland.hughes.datasources.cache.CachingDataSourceProvider;
+import com.sutherland.hughes.datasources.cache.QueryCache;
+import com.sutherland.hughes.datasources.capture.ReplayDataSourceProvider;
+import com.sutherland.hughes.datasources.standin.StandInDataSourceProvider;
+import com.sutherland.hughes.metrics.MeteredConnection;
+import com.sutherland.hughes.metrics.ReportMetricSet;
+
+/**
+ * Where reports get their database connections. By default each database's property file is used, as before. The hughes.datasource.provider
+ * setting swaps that out for the stand-in database ("standin"), or for any DataSourceProvider by class name, so reports can be run and 
+ * measured without the production SQL Server.
+ * 
+ * A provider can also be set for a single request, ie. to capture its queries. It applies to the thread that sets it and to any thread
+ * started from there while it is set, which covers the ReportRunner threads of child reports.
+ * 
+ * Unless hughes.admission.enabled is false, requests wait their turn with each database's AdmissionController before their first query,
+ * and unless hughes.queryCache.enabled is false they're put behind the QueryCache, so cached results don't wait at all. A provider set
+ * with setProvider is used as is.
+ *
+ * @author Jason Diamond
+ *
+ */
+public final class DataSources 
+{
+	public final static String STAND_IN_PROVIDER = "standin";
+	public final static String REPLAY_PROVIDER = "replay";
+	
+	private final static Logger logger = Logger.getLogger(DataSources.class);
+	
+	private static DataSourceProvider provider;
+	
+	private final static InheritableThreadLocal<DataSourceProvider> requestProvider = new InheritableThreadLocal<DataSourceProvider>();
+	
+	private DataSources()
+	{
+	}
+	
+	/**
+	 * Open a connection to a database through the current provider.
+	 * 
+	 * @param dbPropFile	The property file of the database, ie. one of DatabaseConfigs.
+	 * 
+	 * @return	The connection. The caller is responsible for closing it.
+	 * 
+	 * @throws DatabaseConnectionCreationException	If the connection cannot be opened, or the configured provider cannot be built.
+	 */
+	public static JDBCConnection getConnection(String dbPropFile) throws DatabaseConnectionCreationException
+	{
+		return getProvider().getConnection(dbPropFile);
+	}
+	
+	/**
+	 * Open a connection to a database through the current provider, recording its connect and query timings to a report's metrics.
+	 * 
+	 * @param dbPropFile	The property file of the database, ie. one of DatabaseConfigs.
+	 * @param metrics		The report's metrics.
+	 * 
+	 * @return	The connection. The caller is responsible for closing it.
+	 * 
+	 * @throws DatabaseConnectionCreationException	If the connection cannot be opened, or the configured provider cannot be built.
+	 */
+	public static JDBCConnection getConnection(String dbPropFile, ReportMetricSet metrics) throws DatabaseConnectionCreationException
+	{
+		return MeteredConnection.connect(getProvider(), dbPropFile, metrics);
+	}
+	
+	/**
+	 * Accessor for the current provider: the request's provider if one is set, otherwise the site-wide one, built from the configuration
+	 * on first use.
+	 * 
+	 * @return	The provider.
+	 * 
+	 * @throws DatabaseConnectionCreationException	If the configured provider cannot be built.
+	 */
+	public static DataSourceProvider getProvider() throws DatabaseConnectionCreationException
+	{
+		DataSourceProvider retval = requestProvider.get();
+		
+		if(retval == null)
+		{
+			retval = getSiteProvider();
+		}
+		
+		return retval;
+	}
+	
+	private static synchronized DataSourceProvider getSiteProvider() throws DatabaseConnectionCreationException
+	{
+		if(provider == null)
+		{
+			provider = buildProvider(ReportingConfig.getString(ReportingConfig.DATASOURCE_PROVIDER, null));
+			
+			logger.info("Using data source provider " + provider.getClass().getName());
+			
+			if(ReportingConfig.getBoolean(ReportingConfig.ADMISSION_ENABLED, true))
+			{
+				provider = new AdmittingDataSourceProvider(provider);
+			}
+			
+			QueryCache cache = QueryCache.getInstance();
+			
+			if(cache != null)
+			{
+				provider = new CachingDataSourceProvider(provider, cache);
+			}
+		}
+		
+		return provider;
+	}
+	
+	/**
+	 * Accessor for the site-wide provider of real database connections, bypassing the query cache, ie. so a capture records what the 
+	 * database actually returned and how long it took.
+	 * 
+	 * @return	The provider.
+	 * 
+	 * @throws DatabaseConnectionCreationException	If the configured provider cannot be built.
+	 */
+	public static DataSourceProvider getDatabaseProvider() throws DatabaseConnectionCreationException
+	{
+		DataSourceProvider retval = getSiteProvider();
+		
+		if(retval instanceof CachingDataSourceProvider)
+		{
+			retval = ((CachingDataSourceProvider)retval).getDelegate();
+		}
+		
+		return retval;
+	}
+	
+	/**
+	 * Replace the provider, ie. with a stand-in for a benchmark or test run.
+	 * 
+	 * @param provider	The provider, or null to go back to the configured one.
+	 */
+	public static synchronized void setProvider(DataSourceProvider provider)
+	{
+		DataSources.provider = provider;
+	}
+	
+	/**
+	 * Replace the provider for the current request. The caller is responsible for clearing it when the request is done, since servlet
+	 * threads are reused.
+	 * 
+	 * @param provider	The provider, or null to go back to the site-wide one.
+	 */
+	public static void setRequestProvider(DataSourceProvider provider)
+	{
+		if(provider == null)
+		{
+			requestProvider.remove();
+		}
+		else
+		{
+			requestProvider.set(provider);
+		}
+	}
+	
+	/**
+	 * Accessor for the provider set for the current request, ie. so it can be put back after replacing it for part of the request.
+	 * 
+	 * @return	The provider, or null if the request uses the site-wide one.
+	 */
+	public static DataSourceProvider getRequestProvider()
+	{
+		return requestProvider.get();
+	}
+	
+	private static DataSourceProvider buildProvider(String providerName) throws DatabaseConnectionCreationException
+	{
+		DataSourceProvider retval;
+		
+		if(providerName == null || providerName.trim().isEmpty())
+		{
+			retval = new PropertyFileDataSourceProvider();
+		}
+		else if(STAND_IN_PROVIDER.equalsIgnoreCase(providerName.trim()))
+		{
+			retval = new StandInDataSourceProvider();
+		}
+		else if(REPLAY_PROVIDER.equalsIgnoreCase(providerName.trim()))
+		{
+			String replayFile = ReportingConfig.getString(ReportingConfig.REPLAY_FILE, null);
+			
+			if(replayFile == null)
+			{
+				throw new DatabaseConnectionCreationException("No capture file set for replay");
+			}
+			
+			try
+			{
+				retval = new ReplayDataSourceProvider(new File(replayFile));
+			}
+			catch(IOException e)
+			{
+				throw new DatabaseConnectionCreationException("Could not load capture file " + replayFile, e);
+			}
+		}
+		else
+		{
+			//never fall back to the property files here, a misconfigured stand-in shouldn't quietly run against production
+			try
+			{
+				retval = (DataSourceProvider)Class.forName(providerName.trim()).getDeclaredConstructor().newInstance();
+			}
+			catch(Exception e)
+			{
+				throw new DatabaseConnectionCreationException("Could not build data source provider " + providerName, e);
+			}
+		}
+		
+		return retval;
+	}
+}
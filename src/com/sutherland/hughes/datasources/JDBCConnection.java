@@ -0,0 +1,375 @@
+package com.sutherland.hughes.datasources;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import com.sutherland.helios.database.connection.DatabaseConnection;
+import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
+import com.sutherland.helios.exceptions.ExceptionFormatter;
+import com.sutherland.hughes.config.ReportingConfig;
+import com.sutherland.hughes.report.execution.Cancellation;
+import com.sutherland.hughes.report.execution.RequestCancelledException;
+import com.sutherland.hughes.report.execution.ResourceBudget;
+
+/**
+ * A SQL connection that reads results through a forward-only, read-only cursor. Unlike RemoteConnection, which scrolls to the end of the
+ * result set to size its output, rows can be handed to a RowHandler as they are fetched so the full result never has to be held in memory.
+ *
+ * Each query is given a timeout of hughes.query.timeoutSeconds, or less if the request it's for has less time left, and is cancelled on
+ * the database as soon as its request is cancelled, so the statement and its connection are freed rather than left running for nobody.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class JDBCConnection extends DatabaseConnection implements StreamingConnection
+{
+	public final static int DEFAULT_FETCH_SIZE = 1000;
+	private final static int DEFAULT_QUERY_TIMEOUT_SECONDS = 600;
+
+	private final static Logger logger = Logger.getLogger(JDBCConnection.class);
+
+	private String url;
+	private String password;
+	private String userName;
+	private String driverClassName;
+	private Connection con;
+	private int fetchSize;
+
+	/**
+	 * Build the connection.
+	 *
+	 * @param url				The JDBC url of the database.
+	 * @param userName			The user to connect as.
+	 * @param password			The user's password.
+	 * @param driverClassName	The JDBC driver class.
+	 *
+	 * @throws DatabaseConnectionCreationException	If the connection could not be established.
+	 */
+	public JDBCConnection(String url, String userName, String password, String driverClassName) throws DatabaseConnectionCreationException
+	{
+		super();
+
+		this.url = url;
+		this.userName = userName;
+		this.password = password;
+		this.driverClassName = driverClassName;
+
+		dbType = "SQL";
+		name = url;
+		fetchSize = DEFAULT_FETCH_SIZE;
+
+		if(!setupConnection())
+		{
+			throw new DatabaseConnectionCreationException("Could not build a DB connection");
+		}
+	}
+
+	/**
+	 * Build a connection with no database behind it, for subclasses that serve their results from somewhere else.
+	 *
+	 * @param name	The name of the connection, for logging.
+	 *
+	 * @throws DatabaseConnectionCreationException	Never, but required by DatabaseConnection.
+	 */
+	protected JDBCConnection(String name) throws DatabaseConnectionCreationException
+	{
+		super();
+
+		dbType = "SQL";
+		this.name = name;
+		fetchSize = DEFAULT_FETCH_SIZE;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.helios.database.connection.DatabaseConnection#setupConnection()
+	 */
+	@Override
+	protected boolean setupConnection()
+	{
+		boolean retval = false;
+
+		try
+		{
+			Class.forName(driverClassName);
+
+			con = DriverManager.getConnection(url, userName, password);
+
+			retval = (con != null);
+		}
+		catch (ClassNotFoundException e)
+		{
+			errorMessage = ExceptionFormatter.asString(e);
+		}
+		catch (SQLException e)
+		{
+			errorMessage = ExceptionFormatter.asString(e);
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Set the number of rows the driver should fetch from the server per round trip.
+	 *
+	 * @param fetchSize	The fetch size.
+	 */
+	public void setFetchSize(int fetchSize)
+	{
+		if(fetchSize > 0)
+		{
+			this.fetchSize = fetchSize;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.StreamingConnection#streamQuery(java.lang.String, com.sutherland.hughes.datasources.RowHandler)
+	 */
+	@Override
+	public long streamQuery(String query, RowHandler handler) throws SQLException, IOException
+	{
+		long rowCount = 0;
+
+		ResourceBudget budget = ResourceBudget.getCurrent();
+		Cancellation cancellation = budget == null ? null : budget.getCancellation();
+
+		if(cancellation != null)
+		{
+			cancellation.check();
+		}
+
+		final Statement stmt = con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		ResultSet rs = null;
+		Runnable cancelHook = null;
+
+		try
+		{
+			stmt.setFetchSize(fetchSize);
+			stmt.setQueryTimeout(getQueryTimeoutSeconds(cancellation));
+
+			if(cancellation != null)
+			{
+				cancelHook = new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						try
+						{
+							stmt.cancel();
+						}
+						catch(SQLException e)
+						{
+							logger.warn("Could not cancel query: " + ExceptionFormatter.asString(e));
+						}
+					}
+				};
+
+				cancellation.addHook(cancelHook);
+			}
+
+			long queryStart = System.currentTimeMillis();
+			rs = stmt.executeQuery(query);
+			long queryEnd = System.currentTimeMillis();
+
+			int columnCount = rs.getMetaData().getColumnCount();
+			String[] row;
+
+			while(rs.next())
+			{
+				row = new String[columnCount];
+
+				for(int i = 1; i <= columnCount; i++)
+				{
+					row[i-1] = rs.getString(i);
+				}
+
+				handler.handleRow(row);
+				rowCount++;
+			}
+
+			long resultsEnd = System.currentTimeMillis();
+
+			statistics.put(query, "Query returned rows: " + rowCount + "; Query time: " + (queryEnd - queryStart) + " ms; Results time: " + (resultsEnd - queryEnd) + " ms");
+		}
+		catch(SQLException e)
+		{
+			//a statement cancelled for its request fails however the driver likes, report it as the cancellation
+			if(cancellation != null && cancellation.isCancelled())
+			{
+				throw new RequestCancelledException(cancellation.getReason());
+			}
+
+			throw e;
+		}
+		finally
+		{
+			if(cancelHook != null)
+			{
+				cancellation.removeHook(cancelHook);
+			}
+
+			if(rs != null)
+			{
+				try
+				{
+					rs.close();
+				}
+				catch(SQLException e)
+				{
+					errorMessage = ExceptionFormatter.asString(e);
+				}
+			}
+
+			try
+			{
+				stmt.close();
+			}
+			catch(SQLException e)
+			{
+				errorMessage = ExceptionFormatter.asString(e);
+			}
+		}
+
+		return rowCount;
+	}
+
+	/**
+	 * @return	The configured query timeout, cut to the time the request has left.
+	 */
+	private static int getQueryTimeoutSeconds(Cancellation cancellation)
+	{
+		int retval = ReportingConfig.getInt(ReportingConfig.QUERY_TIMEOUT_SECONDS, DEFAULT_QUERY_TIMEOUT_SECONDS);
+
+		long remainingMillis = cancellation == null ? 0 : cancellation.getRemainingMillis();
+
+		if(remainingMillis > 0)
+		{
+			int remainingSeconds = (int)Math.min(Integer.MAX_VALUE, (remainingMillis + 999) / 1000);
+
+			retval = retval > 0 ? Math.min(retval, remainingSeconds) : remainingSeconds;
+		}
+
+		return Math.max(0, retval);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.helios.database.connection.DatabaseConnection#runQuery(java.lang.String)
+	 */
+	@Override
+	public ArrayList<String[]> runQuery(String query)
+	{
+		final ArrayList<String[]> rows = new ArrayList<String[]>();
+		ArrayList<String[]> retval = null;
+
+		try
+		{
+			streamQuery(query, new RowHandler()
+			{
+				@Override
+				public void handleRow(String[] row)
+				{
+					rows.add(row);
+				}
+			});
+
+			retval = rows;
+		}
+		catch (SQLException e)
+		{
+			errorMessage = ExceptionFormatter.asString(e);
+		}
+		catch (IOException e)
+		{
+			errorMessage = ExceptionFormatter.asString(e);
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Run each query in turn on this connection. A single JDBC connection executes one statement at a time, so there is nothing to gain by
+	 * running them on separate threads.
+	 *
+	 * @see com.sutherland.helios.database.connection.DatabaseConnection#runParallelQueries(java.util.ArrayList)
+	 */
+	@Override
+	public Map<String, ArrayList<String[]>> runParallelQueries(ArrayList<String> queries)
+	{
+		Map<String, ArrayList<String[]>> retval = new LinkedHashMap<String, ArrayList<String[]>>(queries.size());
+
+		for(String query : queries)
+		{
+			retval.put(query, runQuery(query));
+		}
+
+		return retval;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.helios.database.connection.DatabaseConnection#getSchemaInfo(java.lang.String)
+	 */
+	@Override
+	public ArrayList<String> getSchemaInfo(String tableName)
+	{
+		ArrayList<String> retval = new ArrayList<String>();
+		ResultSet rs = null;
+
+		try
+		{
+			rs = con.getMetaData().getColumns(null, null, tableName, null);
+
+			while(rs.next())
+			{
+				retval.add(rs.getString("COLUMN_NAME"));
+			}
+		}
+		catch (SQLException e)
+		{
+			errorMessage = ExceptionFormatter.asString(e);
+		}
+		finally
+		{
+			if(rs != null)
+			{
+				try
+				{
+					rs.close();
+				}
+				catch (SQLException e)
+				{
+					errorMessage = ExceptionFormatter.asString(e);
+				}
+			}
+		}
+
+		return retval;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.helios.database.connection.DatabaseConnection#close()
+	 */
+	@Override
+	public void close()
+	{
+		try
+		{
+			if(con != null && !con.isClosed())
+			{
+				con.close();
+			}
+		}
+		catch (SQLException e)
+		{
+			errorMessage = ExceptionFormatter.asString(e);
+		}
+	}
+}
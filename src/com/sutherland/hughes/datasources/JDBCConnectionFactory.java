@@ -0,0 +1,45 @@
+package com.sutherland.hughes.datasources;
+
+import com.sutherland.helios.database.connection.DatabaseConnectionFactory;
+import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
+
+/**
+ * Builds JDBCConnections from the same database property files used by the Helios ConnectionFactory.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class JDBCConnectionFactory extends DatabaseConnectionFactory
+{
+	private final static String URL_PARAM = "url";
+	private final static String DRIVER_PARAM = "driver";
+	private final static String USER_PARAM = "user";
+	private final static String PASS_PARAM = "pass";
+
+	public JDBCConnectionFactory()
+	{
+		super();
+
+		requiredParameters = new String[]{URL_PARAM, DRIVER_PARAM, USER_PARAM, PASS_PARAM};
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.helios.database.connection.DatabaseConnectionFactory#getConnection()
+	 */
+	@Override
+	public JDBCConnection getConnection() throws DatabaseConnectionCreationException
+	{
+		JDBCConnection retval = null;
+
+		if(hasValidParams())
+		{
+			retval = new JDBCConnection(parameters.get(URL_PARAM), parameters.get(USER_PARAM), parameters.get(PASS_PARAM), parameters.get(DRIVER_PARAM));
+		}
+		else
+		{
+			throw new DatabaseConnectionCreationException("Invalid Parameters for connection creation");
+		}
+
+		return retval;
+	}
+}
@@ -0,0 +1,25 @@
+package com.sutherland.hughes.datasources;
+
+import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
+
+/**
+ * Connects to the database described by the property file, as the reports always have.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class PropertyFileDataSourceProvider implements DataSourceProvider
+{
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.DataSourceProvider#getConnection(java.lang.String)
+	 */
+	@Override
+	public JDBCConnection getConnection(String dbPropFile) throws DatabaseConnectionCreationException
+	{
+		JDBCConnectionFactory factory = new JDBCConnectionFactory();
+		
+		factory.load(dbPropFile);
+		
+		return factory.getConnection();
+	}
+}
@@ -0,0 +1,22 @@
+package com.sutherland.hughes.datasources;
+
+import java.io.IOException;
+
+/**
+ * Receives query results one row at a time, as they come off of the datasource's cursor. Used in place of 
+ * runQuery when a result set is too large to be held in memory.
+ * 
+ * @author Jason Diamond
+ *
+ */
+public interface RowHandler 
+{
+	/**
+	 * Process a single result row. The caller does not keep a reference to the row, so the handler is free to keep or modify it.
+	 * 
+	 * @param row	The column values of the row, in select order.
+	 * 
+	 * @throws IOException	If the row could not be passed along, ie. the client went away mid-export.
+	 */
+	public void handleRow(String[] row) throws IOException;
+}
@@ -0,0 +1,26 @@
+package com.sutherland.hughes.datasources;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * A database connection that can hand result rows to a caller as they are read, instead of materializing the entire result set.
+ * 
+ * @author Jason Diamond
+ *
+ */
+public interface StreamingConnection 
+{
+	/**
+	 * Run a query and pass each row of the result to the handler as it is read from the cursor.
+	 * 
+	 * @param query		The query to run.
+	 * @param handler	The handler receiving each row.
+	 * 
+	 * @return	The number of rows passed to the handler.
+	 * 
+	 * @throws SQLException	If the query could not be run, or the cursor could not be read.
+	 * @throws IOException	If the handler could not process a row.
+	 */
+	public long streamQuery(String query, RowHandler handler) throws SQLException, IOException;
+}
@@ -0,0 +1,701 @@
+package com.sutherland.hughes.datasources.admission;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+
+import org.apache.log4j.Logger;
+
+import com.sutherland.hughes.config.ReportingConfig;
+import com.sutherland.hughes.metrics.ReportMetrics;
+import com.sutherland.hughes.report.execution.AdmissionLane;
+import com.sutherland.hughes.report.execution.AdmissionRejectedException;
+import com.sutherland.hughes.report.execution.Cancellation;
+import com.sutherland.hughes.report.execution.RequestCancelledException;
+import com.sutherland.hughes.report.execution.ResourceBudget;
+
+/**
+ * Caps the requests querying one database at once, so a burst of heavy reports queues in the application rather than piling onto the CRM.
+ * A request is admitted on its first query to the database, in its AdmissionLane, and holds its slot until it's done, however many
+ * connections, child reports, rosters and chunks it queries from, so it never gives up its place and queues again mid-run. Queries run
+ * outside of any request are admitted one at a time instead.
+ *
+ * 	- waiting requests are admitted highest lane first, and in arrival order within a lane.
+ * 	- interactive and bulk requests together leave reservedRealtime slots free, so a realtime request never waits behind an export.
+ * 	- bulk requests also never take more than maxBulk slots.
+ * 	- a request arriving behind a full queue, or still waiting after its lane's maximum wait, is shed with an AdmissionRejectedException.
+ * 	  Bulk has the shortest queue and interactive the next shortest, so lower lanes are deferred first and shed first.
+ * 	- a request cancelled while it waits leaves the queue at once, without counting as shed.
+ *
+ * One controller per database, by property file, configured by hughes.admission.maxConcurrent, reservedRealtime and maxBulk, any of which
+ * can be set for a single database by suffixing the property file's name, ie. hughes.admission.maxConcurrent.rocjfsdbs27, and by
+ * hughes.admission.maxQueued.&lt;lane&gt; and hughes.admission.maxWaitSeconds.&lt;lane&gt;. Disabled by setting hughes.admission.enabled to false.
+ * Counters are registered as MBeans under com.sutherland.hughes:type=Admission, and scraped by writeText.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class AdmissionController implements AdmissionControllerMBean
+{
+	public final static int DEFAULT_MAX_CONCURRENT = 12;
+	public final static int DEFAULT_RESERVED_REALTIME = 2;
+	public final static int DEFAULT_MAX_BULK = 3;
+	public final static int[] DEFAULT_MAX_QUEUED = {100, 50, 20};
+	public final static long[] DEFAULT_MAX_WAIT_SECONDS = {5, 30, 600};
+	public final static String JMX_TYPE = "Admission";
+
+	private final static String METRIC_PREFIX = "hughes_admission";
+
+	private final static Logger logger = Logger.getLogger(AdmissionController.class);
+
+	private final static LinkedHashMap<String, AdmissionController> instances = new LinkedHashMap<String, AdmissionController>();
+
+	private final static AdmissionLane[] LANES = AdmissionLane.values();
+
+	/**
+	 * A query waiting for its turn.
+	 */
+	private final static class Waiter
+	{
+		private boolean admitted;
+	}
+
+	/**
+	 * A request's slot, from its first query until it's done. The request's other threads wait on it while the first is admitted.
+	 */
+	private final static class RequestSlot
+	{
+		private boolean decided;
+		private RuntimeException failure;
+
+		private synchronized void decide(RuntimeException failure)
+		{
+			this.failure = failure;
+			decided = true;
+
+			notifyAll();
+		}
+
+		private synchronized void await()
+		{
+			boolean interrupted = false;
+
+			while(!decided)
+			{
+				try
+				{
+					wait();
+				}
+				catch(InterruptedException e)
+				{
+					interrupted = true;
+				}
+			}
+
+			if(interrupted)
+			{
+				Thread.currentThread().interrupt();
+			}
+
+			if(failure instanceof RequestCancelledException)
+			{
+				throw new RequestCancelledException(failure.getMessage());
+			}
+			else if(failure != null)
+			{
+				throw new AdmissionRejectedException(failure.getMessage());
+			}
+		}
+	}
+
+	private final String name;
+	private final int maxConcurrent;
+	private final int reservedRealtime;
+	private final int maxBulk;
+	private final int[] maxQueued;
+	private final long[] maxWaitMillis;
+
+	private final ArrayList<ArrayDeque<Waiter>> queues;
+	private final HashMap<String, RequestSlot> requestSlots;
+	private final int[] running;
+	private final long[] admitted;
+	private final long[] shed;
+	private final long[] waitNanos;
+	private int runningTotal;
+
+	/**
+	 * Build a controller.
+	 *
+	 * @param name				The database, for logging and metrics.
+	 * @param maxConcurrent		The most queries run at once.
+	 * @param reservedRealtime	The slots only realtime queries can take.
+	 * @param maxBulk			The most bulk queries run at once.
+	 * @param maxQueued			The most queries waiting in each lane, by AdmissionLane ordinal.
+	 * @param maxWaitMillis		The longest a query waits in each lane before it's shed, by AdmissionLane ordinal.
+	 */
+	public AdmissionController(String name, int maxConcurrent, int reservedRealtime, int maxBulk, int[] maxQueued, long[] maxWaitMillis)
+	{
+		this.name = name;
+		this.maxConcurrent = Math.max(1, maxConcurrent);
+		this.reservedRealtime = Math.max(0, Math.min(this.maxConcurrent - 1, reservedRealtime));
+		this.maxBulk = Math.max(1, maxBulk);
+		this.maxQueued = maxQueued.clone();
+		this.maxWaitMillis = maxWaitMillis.clone();
+
+		queues = new ArrayList<ArrayDeque<Waiter>>(LANES.length);
+		for(int i = 0; i < LANES.length; i++)
+		{
+			queues.add(new ArrayDeque<Waiter>());
+		}
+
+		requestSlots = new HashMap<String, RequestSlot>();
+		running = new int[LANES.length];
+		admitted = new long[LANES.length];
+		shed = new long[LANES.length];
+		waitNanos = new long[LANES.length];
+	}
+
+	/**
+	 * Accessor for a database's controller, built from the configuration on first use.
+	 *
+	 * @param dbPropFile	The property file of the database, ie. one of DatabaseConfigs.
+	 *
+	 * @return	The controller, or null if admission control is disabled.
+	 */
+	public static AdmissionController forDataSource(String dbPropFile)
+	{
+		AdmissionController retval = null;
+
+		if(ReportingConfig.getBoolean(ReportingConfig.ADMISSION_ENABLED, true))
+		{
+			synchronized(instances)
+			{
+				retval = instances.get(dbPropFile);
+
+				if(retval == null)
+				{
+					String name = getName(dbPropFile);
+
+					int[] maxQueued = new int[LANES.length];
+					long[] maxWaitMillis = new long[LANES.length];
+
+					for(AdmissionLane lane : LANES)
+					{
+						maxQueued[lane.ordinal()] = ReportingConfig.getInt(ReportingConfig.ADMISSION_MAX_QUEUED + "." + lane.getLabel(), DEFAULT_MAX_QUEUED[lane.ordinal()]);
+						maxWaitMillis[lane.ordinal()] = ReportingConfig.getLong(ReportingConfig.ADMISSION_MAX_WAIT_SECONDS + "." + lane.getLabel(), DEFAULT_MAX_WAIT_SECONDS[lane.ordinal()]) * 1000;
+					}
+
+					retval = new AdmissionController
+					(
+						name,
+						getInt(ReportingConfig.ADMISSION_MAX_CONCURRENT, name, DEFAULT_MAX_CONCURRENT),
+						getInt(ReportingConfig.ADMISSION_RESERVED_REALTIME, name, DEFAULT_RESERVED_REALTIME),
+						getInt(ReportingConfig.ADMISSION_MAX_BULK, name, DEFAULT_MAX_BULK),
+						maxQueued,
+						maxWaitMillis
+					);
+
+					instances.put(dbPropFile, retval);
+
+					ReportMetrics.register(JMX_TYPE, name, retval);
+
+					logger.info("Admitting at most " + retval.maxConcurrent + " queries at once to " + name);
+				}
+			}
+		}
+
+		return retval;
+	}
+
+	private static int getInt(String key, String name, int defaultValue)
+	{
+		return ReportingConfig.getInt(key + "." + name, ReportingConfig.getInt(key, defaultValue));
+	}
+
+	/**
+	 * @return	The property file's name, without its directory or extension.
+	 */
+	private static String getName(String dbPropFile)
+	{
+		String retval = dbPropFile.substring(Math.max(dbPropFile.lastIndexOf('/'), dbPropFile.lastIndexOf('\\')) + 1);
+
+		if(retval.lastIndexOf('.') > 0)
+		{
+			retval = retval.substring(0, retval.lastIndexOf('.'));
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Wait for a request's turn, if it isn't already holding a slot. The slot is given back when the request's cancellation is cancelled,
+	 * which every request's is once it's done.
+	 *
+	 * @param budget	The budget of the request about to query the database.
+	 *
+	 * @throws AdmissionRejectedException	If the lane's queue is full, the request waited too long, or the thread was interrupted.
+	 * @throws RequestCancelledException	If the request was cancelled before it was admitted.
+	 */
+	public void admit(ResourceBudget budget)
+	{
+		final String id = budget.getId();
+		RequestSlot slot;
+		boolean first = false;
+
+		synchronized(requestSlots)
+		{
+			slot = requestSlots.get(id);
+
+			if(slot == null)
+			{
+				slot = new RequestSlot();
+				requestSlots.put(id, slot);
+				first = true;
+			}
+		}
+
+		if(first)
+		{
+			final AdmissionLane lane = budget.getLane();
+
+			try
+			{
+				acquire(lane, budget.getCancellation());
+			}
+			catch(RuntimeException e)
+			{
+				synchronized(requestSlots)
+				{
+					requestSlots.remove(id);
+				}
+
+				slot.decide(e);
+
+				throw e;
+			}
+
+			slot.decide(null);
+
+			//runs at once if the request finished while it waited
+			budget.getCancellation().addHook(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					synchronized(requestSlots)
+					{
+						requestSlots.remove(id);
+					}
+
+					release(lane);
+				}
+			});
+		}
+		else
+		{
+			slot.await();
+		}
+	}
+
+	/**
+	 * Wait for a query's turn. Every successful call must be matched by a call to release once the query is done.
+	 *
+	 * @param lane	The lane of the request the query is for.
+	 *
+	 * @throws AdmissionRejectedException	If the lane's queue is full, the query waited too long, or the thread was interrupted.
+	 */
+	public void acquire(AdmissionLane lane)
+	{
+		acquire(lane, null);
+	}
+
+	/**
+	 * Wait for a query's turn, unless its request is cancelled first. Every successful call must be matched by a call to release once the
+	 * query is done.
+	 *
+	 * @param lane			The lane of the request the query is for.
+	 * @param cancellation	The request's cancellation, or null if it can't be cancelled.
+	 *
+	 * @throws AdmissionRejectedException	If the lane's queue is full, the query waited too long, or the thread was interrupted.
+	 * @throws RequestCancelledException	If the request was cancelled before the query was admitted.
+	 */
+	public void acquire(AdmissionLane lane, Cancellation cancellation)
+	{
+		Runnable wakeUp = null;
+
+		if(cancellation != null)
+		{
+			cancellation.check();
+
+			wakeUp = new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					synchronized(AdmissionController.this)
+					{
+						AdmissionController.this.notifyAll();
+					}
+				}
+			};
+
+			cancellation.addHook(wakeUp);
+		}
+
+		try
+		{
+			waitForTurn(lane, cancellation);
+		}
+		finally
+		{
+			if(wakeUp != null)
+			{
+				cancellation.removeHook(wakeUp);
+			}
+		}
+	}
+
+	private synchronized void waitForTurn(AdmissionLane lane, Cancellation cancellation)
+	{
+		int laneIndex = lane.ordinal();
+
+		if(!isWaitingAhead(laneIndex) && canRun(laneIndex))
+		{
+			start(laneIndex);
+			return;
+		}
+
+		ArrayDeque<Waiter> queue = queues.get(laneIndex);
+
+		if(queue.size() >= maxQueued[laneIndex])
+		{
+			throw reject(laneIndex, name + " has " + queue.size() + " " + lane.getLabel() + " queries waiting already");
+		}
+
+		Waiter waiter = new Waiter();
+		queue.addLast(waiter);
+
+		long waitStart = System.nanoTime();
+		long deadline = waitStart + maxWaitMillis[laneIndex] * 1000000;
+
+		try
+		{
+			long remaining;
+
+			while(!waiter.admitted)
+			{
+				if(cancellation != null && cancellation.isCancelled())
+				{
+					queue.remove(waiter);
+
+					throw new RequestCancelledException(cancellation.getReason());
+				}
+
+				remaining = deadline - System.nanoTime();
+
+				if(remaining <= 0)
+				{
+					queue.remove(waiter);
+
+					throw reject(laneIndex, "Waited " + maxWaitMillis[laneIndex] / 1000 + "s for a " + lane.getLabel() + " query slot on " + name);
+				}
+
+				if(cancellation != null && cancellation.getRemainingMillis() > 0)
+				{
+					//wake for the request's own deadline too
+					remaining = Math.min(remaining, cancellation.getRemainingMillis() * 1000000);
+				}
+
+				wait(remaining / 1000000, (int)(remaining % 1000000));
+			}
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+
+			if(waiter.admitted)
+			{
+				//admitted just as it was interrupted, the slot goes to the next in line
+				finish(laneIndex);
+			}
+			else
+			{
+				queue.remove(waiter);
+			}
+
+			throw reject(laneIndex, "Interrupted waiting for a " + lane.getLabel() + " query slot on " + name);
+		}
+
+		waitNanos[laneIndex] += System.nanoTime() - waitStart;
+	}
+
+	/**
+	 * Give back a query's slot, and admit whoever's next.
+	 *
+	 * @param lane	The lane the query was admitted in.
+	 */
+	public synchronized void release(AdmissionLane lane)
+	{
+		finish(lane.ordinal());
+	}
+
+	private void start(int laneIndex)
+	{
+		running[laneIndex]++;
+		runningTotal++;
+		admitted[laneIndex]++;
+	}
+
+	private void finish(int laneIndex)
+	{
+		running[laneIndex]--;
+		runningTotal--;
+
+		boolean admittedAny = false;
+
+		for(int i = 0; i < LANES.length; i++)
+		{
+			ArrayDeque<Waiter> queue = queues.get(i);
+
+			while(!queue.isEmpty() && canRun(i))
+			{
+				queue.pollFirst().admitted = true;
+				start(i);
+
+				admittedAny = true;
+			}
+		}
+
+		if(admittedAny)
+		{
+			notifyAll();
+		}
+	}
+
+	/**
+	 * @return	True if a query in the lane or a higher one is already waiting, and should go first.
+	 */
+	private boolean isWaitingAhead(int laneIndex)
+	{
+		boolean retval = false;
+
+		for(int i = 0; i <= laneIndex && !retval; i++)
+		{
+			retval = !queues.get(i).isEmpty();
+		}
+
+		return retval;
+	}
+
+	private boolean canRun(int laneIndex)
+	{
+		boolean retval = runningTotal < maxConcurrent;
+
+		if(retval && laneIndex != AdmissionLane.REALTIME.ordinal())
+		{
+			retval = runningTotal - running[AdmissionLane.REALTIME.ordinal()] < maxConcurrent - reservedRealtime;
+
+			if(retval && laneIndex == AdmissionLane.BULK.ordinal())
+			{
+				retval = running[laneIndex] < maxBulk;
+			}
+		}
+
+		return retval;
+	}
+
+	private AdmissionRejectedException reject(int laneIndex, String message)
+	{
+		shed[laneIndex]++;
+
+		return new AdmissionRejectedException(message);
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.admission.AdmissionControllerMBean#getMaxConcurrent()
+	 */
+	@Override
+	public int getMaxConcurrent()
+	{
+		return maxConcurrent;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.admission.AdmissionControllerMBean#getRunning()
+	 */
+	@Override
+	public synchronized int getRunning()
+	{
+		return runningTotal;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.admission.AdmissionControllerMBean#getRunningRealtime()
+	 */
+	@Override
+	public synchronized int getRunningRealtime()
+	{
+		return running[AdmissionLane.REALTIME.ordinal()];
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.admission.AdmissionControllerMBean#getRunningInteractive()
+	 */
+	@Override
+	public synchronized int getRunningInteractive()
+	{
+		return running[AdmissionLane.INTERACTIVE.ordinal()];
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.admission.AdmissionControllerMBean#getRunningBulk()
+	 */
+	@Override
+	public synchronized int getRunningBulk()
+	{
+		return running[AdmissionLane.BULK.ordinal()];
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.admission.AdmissionControllerMBean#getQueued()
+	 */
+	@Override
+	public synchronized int getQueued()
+	{
+		int retval = 0;
+
+		for(ArrayDeque<Waiter> queue : queues)
+		{
+			retval += queue.size();
+		}
+
+		return retval;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.admission.AdmissionControllerMBean#getAdmitted()
+	 */
+	@Override
+	public synchronized long getAdmitted()
+	{
+		long retval = 0;
+
+		for(long laneAdmitted : admitted)
+		{
+			retval += laneAdmitted;
+		}
+
+		return retval;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.admission.AdmissionControllerMBean#getShed()
+	 */
+	@Override
+	public synchronized long getShed()
+	{
+		long retval = 0;
+
+		for(long laneShed : shed)
+		{
+			retval += laneShed;
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Write every database's admission counters in the Prometheus text exposition format.
+	 *
+	 * @param out	Where to write it. It is not flushed or closed.
+	 *
+	 * @throws IOException	If it cannot be written.
+	 */
+	public static void writeText(Writer out) throws IOException
+	{
+		ArrayList<AdmissionController> controllers;
+
+		synchronized(instances)
+		{
+			controllers = new ArrayList<AdmissionController>(instances.values());
+		}
+
+		if(!controllers.isEmpty())
+		{
+			out.write("# TYPE " + METRIC_PREFIX + "_admitted_total counter\n");
+			for(AdmissionController controller : controllers)
+			{
+				controller.writeLanes(out, "_admitted_total", controller.admitted);
+			}
+
+			out.write("# TYPE " + METRIC_PREFIX + "_shed_total counter\n");
+			for(AdmissionController controller : controllers)
+			{
+				controller.writeLanes(out, "_shed_total", controller.shed);
+			}
+
+			out.write("# TYPE " + METRIC_PREFIX + "_wait_seconds_total counter\n");
+			for(AdmissionController controller : controllers)
+			{
+				controller.writeWaitSeconds(out);
+			}
+
+			out.write("# TYPE " + METRIC_PREFIX + "_running gauge\n");
+			for(AdmissionController controller : controllers)
+			{
+				controller.writeLanes(out, "_running", controller.running);
+			}
+
+			out.write("# TYPE " + METRIC_PREFIX + "_queued gauge\n");
+			for(AdmissionController controller : controllers)
+			{
+				controller.writeQueued(out);
+			}
+		}
+	}
+
+	private synchronized void writeLanes(Writer out, String metric, long[] values) throws IOException
+	{
+		for(AdmissionLane lane : LANES)
+		{
+			writeSample(out, metric, lane, values[lane.ordinal()]);
+		}
+	}
+
+	private synchronized void writeWaitSeconds(Writer out) throws IOException
+	{
+		for(AdmissionLane lane : LANES)
+		{
+			writeSample(out, "_wait_seconds_total", lane, waitNanos[lane.ordinal()] / 1e9);
+		}
+	}
+
+	private synchronized void writeLanes(Writer out, String metric, int[] values) throws IOException
+	{
+		for(AdmissionLane lane : LANES)
+		{
+			writeSample(out, metric, lane, values[lane.ordinal()]);
+		}
+	}
+
+	private synchronized void writeQueued(Writer out) throws IOException
+	{
+		for(AdmissionLane lane : LANES)
+		{
+			writeSample(out, "_queued", lane, queues.get(lane.ordinal()).size());
+		}
+	}
+
+	private void writeSample(Writer out, String metric, AdmissionLane lane, Object value) throws IOException
+	{
+		out.write(METRIC_PREFIX + metric + "{datasource=\"" + name + "\",lane=\"" + lane.getLabel() + "\"} " + value + "\n");
+	}
+}
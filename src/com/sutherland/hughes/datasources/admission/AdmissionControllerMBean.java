@@ -0,0 +1,35 @@
+package com.sutherland.hughes.datasources.admission;
+
+/**
+ * The JMX view of a database's AdmissionController.
+ *
+ * @author Jason Diamond
+ *
+ */
+public interface AdmissionControllerMBean
+{
+	int getMaxConcurrent();
+
+	/**
+	 * @return	The number of queries running on the database.
+	 */
+	int getRunning();
+
+	int getRunningRealtime();
+
+	int getRunningInteractive();
+
+	int getRunningBulk();
+
+	/**
+	 * @return	The number of queries waiting for their turn, in every lane.
+	 */
+	int getQueued();
+
+	long getAdmitted();
+
+	/**
+	 * @return	The number of queries turned away, because their lane's queue was full or they waited too long.
+	 */
+	long getShed();
+}
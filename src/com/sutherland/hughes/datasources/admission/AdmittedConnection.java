@@ -0,0 +1,113 @@
+package com.sutherland.hughes.datasources.admission;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+
+import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
+import com.sutherland.hughes.datasources.JDBCConnection;
+import com.sutherland.hughes.datasources.RowHandler;
+import com.sutherland.hughes.report.execution.AdmissionLane;
+import com.sutherland.hughes.report.execution.AdmissionRejectedException;
+import com.sutherland.hughes.report.execution.ResourceBudget;
+
+/**
+ * A connection that waits for its database's AdmissionController to admit the request running on the calling thread before its first query,
+ * in the request's lane. A query run outside of any request is admitted on its own, and holds its slot until its last row has been handled.
+ * A request turned away is shed as a whole.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class AdmittedConnection extends JDBCConnection
+{
+	private final JDBCConnection delegate;
+	private final AdmissionController controller;
+
+	/**
+	 * Wrap a connection.
+	 *
+	 * @param delegate		The real connection.
+	 * @param controller	The controller of the database it's connected to.
+	 *
+	 * @throws DatabaseConnectionCreationException	Never, but required by DatabaseConnection.
+	 */
+	public AdmittedConnection(JDBCConnection delegate, AdmissionController controller) throws DatabaseConnectionCreationException
+	{
+		super("Admitted " + controller.getName());
+
+		this.delegate = delegate;
+		this.controller = controller;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.JDBCConnection#setFetchSize(int)
+	 */
+	@Override
+	public void setFetchSize(int fetchSize)
+	{
+		delegate.setFetchSize(fetchSize);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.JDBCConnection#streamQuery(java.lang.String, com.sutherland.hughes.datasources.RowHandler)
+	 */
+	@Override
+	public long streamQuery(String query, RowHandler handler) throws SQLException, IOException
+	{
+		long retval;
+
+		ResourceBudget budget = ResourceBudget.getCurrent();
+
+		if(budget == null)
+		{
+			controller.acquire(AdmissionLane.INTERACTIVE);
+
+			try
+			{
+				retval = delegate.streamQuery(query, handler);
+			}
+			finally
+			{
+				controller.release(AdmissionLane.INTERACTIVE);
+			}
+		}
+		else
+		{
+			try
+			{
+				controller.admit(budget);
+			}
+			catch(AdmissionRejectedException e)
+			{
+				budget.shed(e.getMessage());
+
+				throw e;
+			}
+
+			retval = delegate.streamQuery(query, handler);
+		}
+
+		statistics.put(query, delegate.getStatistics().get(query));
+
+		return retval;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.JDBCConnection#getSchemaInfo(java.lang.String)
+	 */
+	@Override
+	public ArrayList<String> getSchemaInfo(String tableName)
+	{
+		return delegate.getSchemaInfo(tableName);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.JDBCConnection#close()
+	 */
+	@Override
+	public void close()
+	{
+		delegate.close();
+	}
+}
@@ -0,0 +1,52 @@
+package com.sutherland.hughes.datasources.admission;
+
+import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
+import com.sutherland.hughes.datasources.DataSourceProvider;
+import com.sutherland.hughes.datasources.JDBCConnection;
+
+/**
+ * Hands out AdmittedConnections in front of another provider's connections, each behind its database's AdmissionController.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class AdmittingDataSourceProvider implements DataSourceProvider
+{
+	private final DataSourceProvider delegate;
+
+	/**
+	 * @param delegate	The provider of the real connections.
+	 */
+	public AdmittingDataSourceProvider(DataSourceProvider delegate)
+	{
+		this.delegate = delegate;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.DataSourceProvider#getConnection(java.lang.String)
+	 */
+	@Override
+	public JDBCConnection getConnection(String dbPropFile) throws DatabaseConnectionCreationException
+	{
+		JDBCConnection retval = delegate.getConnection(dbPropFile);
+
+		AdmissionController controller = AdmissionController.forDataSource(dbPropFile);
+
+		if(controller != null)
+		{
+			retval = new AdmittedConnection(retval, controller);
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Accessor for the provider of the real connections.
+	 *
+	 * @return	The provider.
+	 */
+	public DataSourceProvider getDelegate()
+	{
+		return delegate;
+	}
+}
@@ -0,0 +1,225 @@
+/**
+ *
+ */
+package com.sutherland.hughes.datasources.admission.test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.sutherland.hughes.datasources.admission.AdmissionController;
+import com.sutherland.hughes.report.execution.AdmissionLane;
+import com.sutherland.hughes.report.execution.AdmissionRejectedException;
+import com.sutherland.hughes.report.execution.ResourceBudget;
+
+/**
+ * @author Jason Diamond
+ *
+ */
+public class AdmissionControllerTest extends TestCase
+{
+	private static AdmissionController controller(int maxConcurrent, int reservedRealtime, int maxBulk, int maxQueued, long maxWaitMillis)
+	{
+		return new AdmissionController("test", maxConcurrent, reservedRealtime, maxBulk, new int[]{maxQueued, maxQueued, maxQueued}, new long[]{maxWaitMillis, maxWaitMillis, maxWaitMillis});
+	}
+
+	/**
+	 * Start a thread that waits its turn in a lane, records that it was admitted, and holds its slot.
+	 */
+	private static Thread waitInLane(final AdmissionController controller, final AdmissionLane lane, final List<AdmissionLane> admitted) throws InterruptedException
+	{
+		int queued = controller.getQueued();
+
+		Thread retval = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				controller.acquire(lane);
+				admitted.add(lane);
+			}
+		};
+		retval.start();
+
+		//queued in arrival order
+		long deadline = System.currentTimeMillis() + 5000;
+		while(controller.getQueued() == queued && System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(5);
+		}
+
+		return retval;
+	}
+
+	@Test
+	public void testRealtimeSlotsAreReserved()
+	{
+		AdmissionController controller = controller(3, 1, 1, 0, 1000);
+
+		controller.acquire(AdmissionLane.BULK);
+		controller.acquire(AdmissionLane.INTERACTIVE);
+
+		//the last slot is realtime's, and there's no queue to wait in
+		try
+		{
+			controller.acquire(AdmissionLane.INTERACTIVE);
+			fail();
+		}
+		catch(AdmissionRejectedException e)
+		{
+		}
+
+		controller.acquire(AdmissionLane.REALTIME);
+
+		assertEquals(3, controller.getRunning());
+		assertEquals(1, controller.getRunningRealtime());
+		assertEquals(1, controller.getShed());
+
+		controller.release(AdmissionLane.INTERACTIVE);
+
+		//room for interactive again, but bulk is at its own cap
+		try
+		{
+			controller.acquire(AdmissionLane.BULK);
+			fail();
+		}
+		catch(AdmissionRejectedException e)
+		{
+		}
+
+		controller.acquire(AdmissionLane.INTERACTIVE);
+
+		assertEquals(4, controller.getAdmitted());
+		assertEquals(2, controller.getShed());
+	}
+
+	@Test
+	public void testHigherLanesAreAdmittedFirst() throws Exception
+	{
+		AdmissionController controller = controller(1, 0, 1, 10, 5000);
+		List<AdmissionLane> admitted = new CopyOnWriteArrayList<AdmissionLane>();
+
+		controller.acquire(AdmissionLane.INTERACTIVE);
+
+		Thread bulk = waitInLane(controller, AdmissionLane.BULK, admitted);
+		Thread interactive = waitInLane(controller, AdmissionLane.INTERACTIVE, admitted);
+		Thread realtime = waitInLane(controller, AdmissionLane.REALTIME, admitted);
+
+		assertEquals(3, controller.getQueued());
+
+		for(int i = 0; i < 3; i++)
+		{
+			controller.release(i == 0 ? AdmissionLane.INTERACTIVE : admitted.get(i - 1));
+
+			long deadline = System.currentTimeMillis() + 5000;
+			while(admitted.size() == i && System.currentTimeMillis() < deadline)
+			{
+				Thread.sleep(5);
+			}
+		}
+
+		bulk.join(5000);
+		interactive.join(5000);
+		realtime.join(5000);
+
+		assertEquals(Arrays.asList(AdmissionLane.REALTIME, AdmissionLane.INTERACTIVE, AdmissionLane.BULK), admitted);
+		assertEquals(0, controller.getQueued());
+		assertEquals(1, controller.getRunning());
+	}
+
+	@Test
+	public void testWaitingTooLongIsShed() throws Exception
+	{
+		AdmissionController controller = controller(1, 0, 1, 10, 50);
+
+		controller.acquire(AdmissionLane.INTERACTIVE);
+
+		long start = System.currentTimeMillis();
+
+		try
+		{
+			controller.acquire(AdmissionLane.INTERACTIVE);
+			fail();
+		}
+		catch(AdmissionRejectedException e)
+		{
+			assertTrue(e.getMessage(), e.getMessage().contains("interactive"));
+		}
+
+		assertTrue(System.currentTimeMillis() - start >= 50);
+		assertEquals(0, controller.getQueued());
+		assertEquals(1, controller.getShed());
+
+		//the slot it never got isn't lost
+		controller.release(AdmissionLane.INTERACTIVE);
+		controller.acquire(AdmissionLane.BULK);
+
+		assertEquals(1, controller.getRunningBulk());
+	}
+
+	@Test
+	public void testRequestHoldsOneSlotUntilItsDone() throws Exception
+	{
+		final AdmissionController controller = controller(1, 0, 1, 10, 5000);
+
+		final ResourceBudget first = new ResourceBudget("First", 0, 0);
+		first.setLane(AdmissionLane.INTERACTIVE);
+
+		controller.admit(first);
+
+		//the request's other threads, ie. its child reports and chunks, share its slot
+		Thread child = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				controller.admit(first);
+			}
+		};
+		child.start();
+		child.join(5000);
+
+		assertFalse(child.isAlive());
+		assertEquals(1, controller.getRunning());
+		assertEquals(1, controller.getAdmitted());
+
+		final ResourceBudget second = new ResourceBudget("Second", 0, 0);
+		second.setLane(AdmissionLane.INTERACTIVE);
+		final List<AdmissionLane> admitted = new CopyOnWriteArrayList<AdmissionLane>();
+
+		Thread waiting = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				controller.admit(second);
+				admitted.add(second.getLane());
+			}
+		};
+		waiting.start();
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while(controller.getQueued() == 0 && System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(5);
+		}
+
+		//between the first request's queries, its slot is still its own
+		assertTrue(admitted.isEmpty());
+
+		first.getCancellation().cancel("Request finished");
+		waiting.join(5000);
+
+		assertEquals(1, admitted.size());
+		assertEquals(1, controller.getRunning());
+
+		second.getCancellation().cancel("Request finished");
+
+		assertEquals(0, controller.getRunning());
+		assertEquals(2, controller.getAdmitted());
+	}
+}
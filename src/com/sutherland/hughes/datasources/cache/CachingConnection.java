@@ -0,0 +1,141 @@
+package com.sutherland.hughes.datasources.cache;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+
+import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
+import com.sutherland.hughes.datasources.JDBCConnection;
+import com.sutherland.hughes.datasources.RowHandler;
+import com.sutherland.hughes.trace.Tracer;
+
+/**
+ * A connection that serves its queries from the QueryCache when it can, and otherwise runs them on a real connection and offers the
+ * results to the cache.
+ *
+ * The cache keeps its own copy of each row, and hands every handler a fresh copy, since handlers are free to keep or modify the rows they
+ * are given.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class CachingConnection extends JDBCConnection
+{
+	private final JDBCConnection delegate;
+	private final String dbPropFile;
+	private final QueryCache cache;
+
+	/**
+	 * Wrap a connection.
+	 *
+	 * @param delegate		The real connection.
+	 * @param dbPropFile	The property file of the database it's connected to, ie. one of DatabaseConfigs.
+	 * @param cache			The cache.
+	 *
+	 * @throws DatabaseConnectionCreationException	Never, but required by DatabaseConnection.
+	 */
+	public CachingConnection(JDBCConnection delegate, String dbPropFile, QueryCache cache) throws DatabaseConnectionCreationException
+	{
+		super("Caching " + dbPropFile);
+
+		this.delegate = delegate;
+		this.dbPropFile = dbPropFile;
+		this.cache = cache;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.JDBCConnection#setFetchSize(int)
+	 */
+	@Override
+	public void setFetchSize(int fetchSize)
+	{
+		delegate.setFetchSize(fetchSize);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.JDBCConnection#streamQuery(java.lang.String, com.sutherland.hughes.datasources.RowHandler)
+	 */
+	@Override
+	public long streamQuery(String query, final RowHandler handler) throws SQLException, IOException
+	{
+		long retval;
+
+		String key = QueryCache.key(dbPropFile, query);
+		long now = System.currentTimeMillis();
+
+		ArrayList<String[]> cached = cache.get(key, now);
+
+		if(cached != null)
+		{
+			for(String[] row : cached)
+			{
+				handler.handleRow(row.clone());
+			}
+
+			retval = cached.size();
+
+			statistics.put(query, "Query returned rows: " + retval + "; served from the query cache");
+			Tracer.addCacheHit();
+		}
+		else
+		{
+			final ArrayList<String[]> rows = new ArrayList<String[]>();
+			final long[] rowBytes = {0};
+			final long maxEntryBytes = cache.getMaxEntryBytes();
+
+			retval = delegate.streamQuery(query, new RowHandler()
+			{
+				@Override
+				public void handleRow(String[] row) throws IOException
+				{
+					//past the largest entry the cache takes, stop keeping rows it won't
+					if(rowBytes[0] <= maxEntryBytes)
+					{
+						rowBytes[0] += QueryCache.weigh(row);
+
+						if(rowBytes[0] <= maxEntryBytes)
+						{
+							//the handler may modify its row after it's passed along
+							rows.add(row.clone());
+						}
+						else
+						{
+							rows.clear();
+						}
+					}
+
+					handler.handleRow(row);
+				}
+			});
+
+			statistics.put(query, delegate.getStatistics().get(query));
+
+			if(rowBytes[0] <= maxEntryBytes)
+			{
+				rows.trimToSize();
+
+				cache.put(key, rows, rowBytes[0], Freshness.classify(query, now), now);
+			}
+		}
+
+		return retval;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.JDBCConnection#getSchemaInfo(java.lang.String)
+	 */
+	@Override
+	public ArrayList<String> getSchemaInfo(String tableName)
+	{
+		return delegate.getSchemaInfo(tableName);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.JDBCConnection#close()
+	 */
+	@Override
+	public void close()
+	{
+		delegate.close();
+	}
+}
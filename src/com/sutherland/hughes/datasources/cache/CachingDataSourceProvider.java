@@ -0,0 +1,46 @@
+package com.sutherland.hughes.datasources.cache;
+
+import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
+import com.sutherland.hughes.datasources.DataSourceProvider;
+import com.sutherland.hughes.datasources.JDBCConnection;
+
+/**
+ * Hands out CachingConnections in front of another provider's connections.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class CachingDataSourceProvider implements DataSourceProvider
+{
+	private final DataSourceProvider delegate;
+	private final QueryCache cache;
+
+	/**
+	 * @param delegate	The provider of the real connections.
+	 * @param cache		The cache.
+	 */
+	public CachingDataSourceProvider(DataSourceProvider delegate, QueryCache cache)
+	{
+		this.delegate = delegate;
+		this.cache = cache;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.DataSourceProvider#getConnection(java.lang.String)
+	 */
+	@Override
+	public JDBCConnection getConnection(String dbPropFile) throws DatabaseConnectionCreationException
+	{
+		return new CachingConnection(delegate.getConnection(dbPropFile), dbPropFile, cache);
+	}
+
+	/**
+	 * Accessor for the provider of the real connections.
+	 *
+	 * @return	The provider.
+	 */
+	public DataSourceProvider getDelegate()
+	{
+		return delegate;
+	}
+}
@@ -0,0 +1,104 @@
+package com.sutherland.hughes.datasources.cache;
+
+/**
+ * Roughly how often each query has been asked for recently, in a fixed amount of memory: a count-min sketch of small counters that are all
+ * halved once enough requests have been counted, so old popularity fades. Used by QueryCache to decide whether a new result is worth
+ * evicting an older one for. Not thread safe, the cache calls it under its own lock.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class FrequencySketch
+{
+	private final static int DEPTH = 4;
+	private final static int MAX_COUNT = 15;
+	private final static int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+	private final int[][] counters;
+	private final int mask;
+	private final int sampleSize;
+	private int additions;
+
+	/**
+	 * Build a sketch.
+	 *
+	 * @param expectedEntries	About how many distinct queries the cache holds. The sketch is sized to a power of two at least this big.
+	 */
+	public FrequencySketch(int expectedEntries)
+	{
+		int width = Integer.highestOneBit(Math.max(16, expectedEntries - 1)) << 1;
+
+		counters = new int[DEPTH][width];
+		mask = width - 1;
+		sampleSize = width * 10;
+		additions = 0;
+	}
+
+	/**
+	 * Count a request for a query.
+	 *
+	 * @param hash	The hash of the query's cache key.
+	 */
+	public void increment(int hash)
+	{
+		boolean added = false;
+
+		int slot;
+		for(int i = 0; i < DEPTH; i++)
+		{
+			slot = indexOf(hash, i);
+
+			if(counters[i][slot] < MAX_COUNT)
+			{
+				counters[i][slot]++;
+				added = true;
+			}
+		}
+
+		if(added && ++additions >= sampleSize)
+		{
+			reset();
+		}
+	}
+
+	/**
+	 * Estimate how often a query has been requested.
+	 *
+	 * @param hash	The hash of the query's cache key.
+	 *
+	 * @return	The estimate, which can be too high but never too low, up to the counters' limit.
+	 */
+	public int frequency(int hash)
+	{
+		int retval = MAX_COUNT;
+
+		for(int i = 0; i < DEPTH; i++)
+		{
+			retval = Math.min(retval, counters[i][indexOf(hash, i)]);
+		}
+
+		return retval;
+	}
+
+	private void reset()
+	{
+		for(int i = 0; i < DEPTH; i++)
+		{
+			for(int j = 0; j < counters[i].length; j++)
+			{
+				counters[i][j] >>>= 1;
+			}
+		}
+
+		additions /= 2;
+	}
+
+	private int indexOf(int hash, int row)
+	{
+		int retval = hash * SEEDS[row];
+
+		retval ^= retval >>> 16;
+
+		return retval & mask;
+	}
+}
@@ -0,0 +1,125 @@
+package com.sutherland.hughes.datasources.cache;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sutherland.hughes.config.ReportingConfig;
+
+/**
+ * How long a query's results stay good, judged from the dates in its text. Rows for days that are over don't change, so a query whose
+ * every date literal is at or before the start of today can be cached for a long time. A query reaching into today, or asking the
+ * database for the current time, is still filling up and is only cached briefly. A query with no dates at all, like the roster's, changes
+ * whenever someone edits the data, so it gets a TTL in between.
+ *
+ * @author Jason Diamond
+ *
+ */
+public enum Freshness
+{
+	HISTORICAL("historical", ReportingConfig.QUERY_CACHE_HISTORICAL_TTL_SECONDS, 6 * 60 * 60),
+	UNDATED("undated", ReportingConfig.QUERY_CACHE_UNDATED_TTL_SECONDS, 5 * 60),
+	CURRENT("current", ReportingConfig.QUERY_CACHE_CURRENT_TTL_SECONDS, 30);
+
+	private final static Pattern DATE_LITERAL = Pattern.compile("'(\\d{4}-\\d{2}-\\d{2})(?:[ T](\\d{2}:\\d{2}(?::\\d{2})?))?[^']*'");
+	private final static Pattern CURRENT_TIME = Pattern.compile("\\b(?:NOW|GETDATE|SYSDATE|CURDATE|CURRENT_TIMESTAMP|CURRENT_DATE)\\b", Pattern.CASE_INSENSITIVE);
+
+	private final String label;
+	private final String ttlKey;
+	private final long defaultTTLSeconds;
+
+	private Freshness(String label, String ttlKey, long defaultTTLSeconds)
+	{
+		this.label = label;
+		this.ttlKey = ttlKey;
+		this.defaultTTLSeconds = defaultTTLSeconds;
+	}
+
+	public String getLabel()
+	{
+		return label;
+	}
+
+	/**
+	 * Accessor for how long results of this class are cached.
+	 *
+	 * @return	The TTL, in milliseconds. 0 if they aren't cached.
+	 */
+	public long getTTLMillis()
+	{
+		return Math.max(0, ReportingConfig.getLong(ttlKey, defaultTTLSeconds)) * 1000;
+	}
+
+	/**
+	 * Classify a query.
+	 *
+	 * @param query		The query text.
+	 * @param nowMillis	The current time.
+	 *
+	 * @return	The query's freshness class.
+	 */
+	public static Freshness classify(String query, long nowMillis)
+	{
+		Freshness retval;
+
+		if(CURRENT_TIME.matcher(query).find())
+		{
+			retval = CURRENT;
+		}
+		else
+		{
+			Calendar today = Calendar.getInstance();
+			today.setTimeInMillis(nowMillis);
+			today.set(Calendar.HOUR_OF_DAY, 0);
+			today.set(Calendar.MINUTE, 0);
+			today.set(Calendar.SECOND, 0);
+			today.set(Calendar.MILLISECOND, 0);
+
+			long latest = Long.MIN_VALUE;
+
+			SimpleDateFormat dayFormat = new SimpleDateFormat("yyyy-MM-dd");
+			SimpleDateFormat timeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+
+			Matcher dates = DATE_LITERAL.matcher(query);
+			String time;
+			while(dates.find())
+			{
+				time = dates.group(2);
+
+				try
+				{
+					if(time == null)
+					{
+						latest = Math.max(latest, dayFormat.parse(dates.group(1)).getTime());
+					}
+					else
+					{
+						latest = Math.max(latest, timeFormat.parse(dates.group(1) + " " + (time.length() == 5 ? time + ":00" : time)).getTime());
+					}
+				}
+				catch(ParseException e)
+				{
+					//not a date after all
+				}
+			}
+
+			if(latest == Long.MIN_VALUE)
+			{
+				retval = UNDATED;
+			}
+			else if(latest > today.getTimeInMillis())
+			{
+				retval = CURRENT;
+			}
+			else
+			{
+				//ranges end exclusively, so one ending at midnight this morning is all in the past
+				retval = HISTORICAL;
+			}
+		}
+
+		return retval;
+	}
+}
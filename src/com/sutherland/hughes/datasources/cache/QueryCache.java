@@ -0,0 +1,438 @@
+package com.sutherland.hughes.datasources.cache;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.apache.log4j.Logger;
+
+import com.sutherland.hughes.config.ReportingConfig;
+import com.sutherland.hughes.metrics.ReportMetrics;
+
+/**
+ * Query results shared by every report, keyed by database and query text, so the same day range asked for by several pages or child
+ * reports is only run once. The query text has no bind parameters in this codebase, its literals are part of the key.
+ *
+ * The cache holds at most a fixed number of bytes, estimated from the rows' strings. It's kept in least recently used order, but a new
+ * result only evicts the least recently used one if it has been asked for more often recently, going by a FrequencySketch, so a one-off
+ * export can't flush out the results every dashboard is using. Each result expires after the TTL of its Freshness class.
+ *
+ * Configured by hughes.queryCache.enabled, maxBytes and maxEntryBytes, and hughes.queryCache.ttlSeconds.historical, undated and current.
+ * Its counters are registered as an MBean under com.sutherland.hughes:type=QueryCache, and scraped by writeText.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class QueryCache implements QueryCacheMBean
+{
+	public final static long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+	public final static String JMX_TYPE = "QueryCache";
+
+	private final static String METRIC_PREFIX = "hughes_query_cache";
+
+	/**
+	 * A rough average result size, to size the frequency sketch for about as many queries as the cache can hold.
+	 */
+	private final static long TYPICAL_ENTRY_BYTES = 16 * 1024;
+
+	private final static Logger logger = Logger.getLogger(QueryCache.class);
+
+	private static QueryCache instance;
+
+	private final static class Entry
+	{
+		private final String key;
+		private final ArrayList<String[]> rows;
+		private final long bytes;
+		private final Freshness freshness;
+		private final long expires;
+
+		private Entry(String key, ArrayList<String[]> rows, long bytes, Freshness freshness, long expires)
+		{
+			this.key = key;
+			this.rows = rows;
+			this.bytes = bytes;
+			this.freshness = freshness;
+			this.expires = expires;
+		}
+	}
+
+	private final long maxBytes;
+	private final long maxEntryBytes;
+	private final LinkedHashMap<String, Entry> entries;
+	private final FrequencySketch sketch;
+	private final EnumMap<Freshness, long[]> hitsByFreshness;
+	private long bytes;
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long expirations;
+	private long rejections;
+
+	/**
+	 * Build a cache.
+	 *
+	 * @param maxBytes		The most the cache holds.
+	 * @param maxEntryBytes	The largest single result the cache takes.
+	 */
+	public QueryCache(long maxBytes, long maxEntryBytes)
+	{
+		this.maxBytes = maxBytes;
+		this.maxEntryBytes = Math.min(maxBytes, maxEntryBytes);
+
+		//access ordered, the first entry is the least recently used
+		entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+		sketch = new FrequencySketch((int)Math.min(1 << 20, Math.max(1024, maxBytes / TYPICAL_ENTRY_BYTES)));
+
+		hitsByFreshness = new EnumMap<Freshness, long[]>(Freshness.class);
+		for(Freshness freshness : Freshness.values())
+		{
+			hitsByFreshness.put(freshness, new long[1]);
+		}
+	}
+
+	/**
+	 * Accessor for the site-wide cache, built from the configuration on first use.
+	 *
+	 * @return	The cache, or null if it's disabled.
+	 */
+	public static synchronized QueryCache getInstance()
+	{
+		if(instance == null && ReportingConfig.getBoolean(ReportingConfig.QUERY_CACHE_ENABLED, true))
+		{
+			long maxBytes = ReportingConfig.getLong(ReportingConfig.QUERY_CACHE_MAX_BYTES, DEFAULT_MAX_BYTES);
+
+			instance = new QueryCache(maxBytes, ReportingConfig.getLong(ReportingConfig.QUERY_CACHE_MAX_ENTRY_BYTES, maxBytes / 8));
+
+			ReportMetrics.register(JMX_TYPE, "Queries", instance);
+
+			logger.info("Caching query results, up to " + maxBytes + " bytes");
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Build the cache key of a query: the database plus the query text with its whitespace collapsed, so the same query built with
+	 * different line breaks or indenting is still recognized. Whitespace inside quoted literals is left alone.
+	 *
+	 * @param dbPropFile	The property file of the database the query runs on.
+	 * @param query			The query text.
+	 *
+	 * @return	The key.
+	 */
+	public static String key(String dbPropFile, String query)
+	{
+		StringBuilder retval = new StringBuilder(dbPropFile.length() + 1 + query.length());
+
+		retval.append(dbPropFile).append('\n');
+
+		boolean quoted = false;
+		boolean space = false;
+
+		char c;
+		for(int i = 0; i < query.length(); i++)
+		{
+			c = query.charAt(i);
+
+			if(!quoted && Character.isWhitespace(c))
+			{
+				space = true;
+			}
+			else
+			{
+				if(space && retval.charAt(retval.length() - 1) != '\n')
+				{
+					retval.append(' ');
+				}
+
+				space = false;
+
+				if(c == '\'')
+				{
+					quoted = !quoted;
+				}
+
+				retval.append(c);
+			}
+		}
+
+		return retval.toString();
+	}
+
+	/**
+	 * Estimate the heap taken by a row: the array, and each string's object and characters.
+	 *
+	 * @param row	The row.
+	 *
+	 * @return	The estimate, in bytes.
+	 */
+	public static long weigh(String[] row)
+	{
+		long retval = 16 + 8 * row.length;
+
+		for(String value : row)
+		{
+			if(value != null)
+			{
+				retval += 40 + 2 * value.length();
+			}
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Look up a query's results.
+	 *
+	 * @param key		The query's key.
+	 * @param nowMillis	The current time.
+	 *
+	 * @return	The rows, which must not be modified, or null if they aren't cached or have expired.
+	 */
+	public synchronized ArrayList<String[]> get(String key, long nowMillis)
+	{
+		ArrayList<String[]> retval = null;
+
+		sketch.increment(key.hashCode());
+
+		Entry entry = entries.get(key);
+
+		if(entry != null && entry.expires <= nowMillis)
+		{
+			remove(entry);
+			expirations++;
+
+			entry = null;
+		}
+
+		if(entry == null)
+		{
+			misses++;
+		}
+		else
+		{
+			hits++;
+			hitsByFreshness.get(entry.freshness)[0]++;
+
+			retval = entry.rows;
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Offer a query's results to the cache. They're taken if they fit, and either there's room or they've been asked for more often than
+	 * the results they would evict.
+	 *
+	 * @param key			The query's key.
+	 * @param rows			The rows. They must not be modified afterwards.
+	 * @param rowBytes		The rows' weight, as summed from weigh().
+	 * @param freshness		The query's freshness class, for its TTL.
+	 * @param nowMillis		The current time.
+	 *
+	 * @return	True if the rows were cached, false otherwise.
+	 */
+	public synchronized boolean put(String key, ArrayList<String[]> rows, long rowBytes, Freshness freshness, long nowMillis)
+	{
+		boolean retval = false;
+
+		long ttl = freshness.getTTLMillis();
+
+		if(ttl > 0 && rowBytes <= maxEntryBytes)
+		{
+			Entry existing = entries.get(key);
+			if(existing != null)
+			{
+				remove(existing);
+			}
+
+			if(bytes + rowBytes > maxBytes)
+			{
+				removeExpired(nowMillis);
+			}
+
+			retval = true;
+
+			int frequency = sketch.frequency(key.hashCode());
+
+			Entry victim;
+			Iterator<Entry> leastRecent = entries.values().iterator();
+			while(retval && bytes + rowBytes > maxBytes)
+			{
+				victim = leastRecent.next();
+
+				if(frequency > sketch.frequency(victim.key.hashCode()))
+				{
+					leastRecent.remove();
+					bytes -= victim.bytes;
+					evictions++;
+				}
+				else
+				{
+					rejections++;
+					retval = false;
+				}
+			}
+
+			if(retval)
+			{
+				entries.put(key, new Entry(key, rows, rowBytes, freshness, nowMillis + ttl));
+				bytes += rowBytes;
+			}
+		}
+
+		return retval;
+	}
+
+	private void remove(Entry entry)
+	{
+		entries.remove(entry.key);
+		bytes -= entry.bytes;
+	}
+
+	/**
+	 * Drop the results that have expired. They are never served regardless, this just frees their space ahead of eviction.
+	 *
+	 * @param nowMillis	The current time.
+	 *
+	 * @return	The number of results dropped.
+	 */
+	public synchronized int prune(long nowMillis)
+	{
+		long before = expirations;
+
+		removeExpired(nowMillis);
+
+		return (int)(expirations - before);
+	}
+
+	private void removeExpired(long nowMillis)
+	{
+		Entry entry;
+		for(Iterator<Entry> all = entries.values().iterator(); all.hasNext(); )
+		{
+			entry = all.next();
+
+			if(entry.expires <= nowMillis)
+			{
+				all.remove();
+				bytes -= entry.bytes;
+				expirations++;
+			}
+		}
+	}
+
+	/**
+	 * Accessor for the largest single result the cache takes.
+	 *
+	 * @return	The size, in bytes as summed from weigh().
+	 */
+	public long getMaxEntryBytes()
+	{
+		return maxEntryBytes;
+	}
+
+	@Override
+	public synchronized void clear()
+	{
+		entries.clear();
+		bytes = 0;
+
+		logger.info("Query cache cleared");
+	}
+
+	@Override
+	public synchronized long getHits()
+	{
+		return hits;
+	}
+
+	@Override
+	public synchronized long getMisses()
+	{
+		return misses;
+	}
+
+	@Override
+	public synchronized double getHitRatio()
+	{
+		double retval = 0;
+
+		if(hits + misses > 0)
+		{
+			retval = (double)hits / (hits + misses);
+		}
+
+		return retval;
+	}
+
+	@Override
+	public synchronized long getEvictions()
+	{
+		return evictions;
+	}
+
+	@Override
+	public synchronized long getExpirations()
+	{
+		return expirations;
+	}
+
+	@Override
+	public synchronized long getRejections()
+	{
+		return rejections;
+	}
+
+	@Override
+	public synchronized long getEntries()
+	{
+		return entries.size();
+	}
+
+	@Override
+	public synchronized long getBytes()
+	{
+		return bytes;
+	}
+
+	@Override
+	public long getMaxBytes()
+	{
+		return maxBytes;
+	}
+
+	/**
+	 * Write the cache's counters in the Prometheus text exposition format.
+	 *
+	 * @param out	Where to write them. It is not flushed or closed.
+	 *
+	 * @throws IOException	If they cannot be written.
+	 */
+	public synchronized void writeText(Writer out) throws IOException
+	{
+		out.write("# TYPE " + METRIC_PREFIX + "_hits_total counter\n");
+		for(Freshness freshness : Freshness.values())
+		{
+			out.write(METRIC_PREFIX + "_hits_total{freshness=\"" + freshness.getLabel() + "\"} " + hitsByFreshness.get(freshness)[0] + "\n");
+		}
+
+		writeSample(out, "_misses_total", "counter", misses);
+		writeSample(out, "_evictions_total", "counter", evictions);
+		writeSample(out, "_expirations_total", "counter", expirations);
+		writeSample(out, "_rejections_total", "counter", rejections);
+		writeSample(out, "_entries", "gauge", entries.size());
+		writeSample(out, "_bytes", "gauge", bytes);
+		writeSample(out, "_max_bytes", "gauge", maxBytes);
+	}
+
+	private static void writeSample(Writer out, String metric, String type, long value) throws IOException
+	{
+		out.write("# TYPE " + METRIC_PREFIX + metric + " " + type + "\n");
+		out.write(METRIC_PREFIX + metric + " " + value + "\n");
+	}
+}
@@ -0,0 +1,39 @@
+package com.sutherland.hughes.datasources.cache;
+
+/**
+ * The JMX view of the QueryCache.
+ *
+ * @author Jason Diamond
+ *
+ */
+public interface QueryCacheMBean
+{
+	long getHits();
+
+	long getMisses();
+
+	/**
+	 * @return	The fraction of lookups served from the cache, or 0 if there have been none.
+	 */
+	double getHitRatio();
+
+	long getEvictions();
+
+	long getExpirations();
+
+	/**
+	 * @return	The number of results not cached because they were requested less often than what they would have evicted.
+	 */
+	long getRejections();
+
+	long getEntries();
+
+	long getBytes();
+
+	long getMaxBytes();
+
+	/**
+	 * Empty the cache, ie. after data has been corrected in place.
+	 */
+	void clear();
+}
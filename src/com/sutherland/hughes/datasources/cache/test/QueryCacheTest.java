@@ -0,0 +1,205 @@
+/**
+ *
+ */
+package com.sutherland.hughes.datasources.cache.test;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Calendar;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
+import com.sutherland.hughes.datasources.DataSourceProvider;
+import com.sutherland.hughes.datasources.JDBCConnection;
+import com.sutherland.hughes.datasources.RowHandler;
+import com.sutherland.hughes.datasources.cache.CachingDataSourceProvider;
+import com.sutherland.hughes.datasources.cache.Freshness;
+import com.sutherland.hughes.datasources.cache.QueryCache;
+
+/**
+ * @author Jason Diamond
+ *
+ */
+public class QueryCacheTest extends TestCase
+{
+	private final static String DB = "test.properties";
+	private final static String HISTORICAL_QUERY = "SELECT logid, acdcalls FROM tbl_PFS_CMS_Hagent WHERE row_date >= '2014-10-01' AND row_date < '2014-10-08'";
+
+	private int connections;
+	private int queries;
+
+	/**
+	 * Counts the connections opened and queries run on them.
+	 */
+	private class CountingProvider implements DataSourceProvider
+	{
+		@Override
+		public JDBCConnection getConnection(String dbPropFile) throws DatabaseConnectionCreationException
+		{
+			connections++;
+
+			return new JDBCConnection("counting")
+			{
+				@Override
+				public long streamQuery(String query, RowHandler handler) throws SQLException, IOException
+				{
+					queries++;
+
+					handler.handleRow(new String[]{"1001", "12"});
+					handler.handleRow(new String[]{"1002", "7"});
+
+					return 2;
+				}
+			};
+		}
+	}
+
+	private static ArrayList<String[]> rows(int count)
+	{
+		ArrayList<String[]> retval = new ArrayList<String[]>();
+
+		for(int i = 0; i < count; i++)
+		{
+			retval.add(new String[]{"agent" + i, Integer.toString(i)});
+		}
+
+		return retval;
+	}
+
+	private static long weigh(ArrayList<String[]> rows)
+	{
+		long retval = 0;
+
+		for(String[] row : rows)
+		{
+			retval += QueryCache.weigh(row);
+		}
+
+		return retval;
+	}
+
+	@Test
+	public void testRepeatedQueryIsServedFromCache() throws Exception
+	{
+		QueryCache cache = new QueryCache(1024 * 1024, 1024 * 1024);
+		CachingDataSourceProvider provider = new CachingDataSourceProvider(new CountingProvider(), cache);
+
+		JDBCConnection first = provider.getConnection(DB);
+		assertEquals(2, first.runQuery(HISTORICAL_QUERY).size());
+		first.close();
+
+		//same query, built with different whitespace
+		JDBCConnection second = provider.getConnection(DB);
+		ArrayList<String[]> cached = second.runQuery(HISTORICAL_QUERY.replace(" WHERE ", "\n\t\tWHERE  "));
+		second.close();
+
+		assertEquals(2, cached.size());
+		assertEquals("1002", cached.get(1)[0]);
+
+		assertEquals(2, connections);
+		assertEquals(1, queries);
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void testHandlersCannotChangeCachedRows() throws Exception
+	{
+		QueryCache cache = new QueryCache(1024 * 1024, 1024 * 1024);
+		CachingDataSourceProvider provider = new CachingDataSourceProvider(new CountingProvider(), cache);
+
+		RowHandler overwriting = new RowHandler()
+		{
+			@Override
+			public void handleRow(String[] row)
+			{
+				row[1] = "overwritten";
+			}
+		};
+
+		//once on the miss, and again on a hit
+		for(int i = 0; i < 2; i++)
+		{
+			JDBCConnection connection = provider.getConnection(DB);
+			connection.streamQuery(HISTORICAL_QUERY, overwriting);
+			connection.close();
+		}
+
+		JDBCConnection connection = provider.getConnection(DB);
+		ArrayList<String[]> cached = connection.runQuery(HISTORICAL_QUERY);
+		connection.close();
+
+		assertEquals("12", cached.get(0)[1]);
+		assertEquals("7", cached.get(1)[1]);
+		assertEquals(1, queries);
+		assertEquals(2, cache.getHits());
+	}
+
+	@Test
+	public void testFreshnessFollowsDates() throws Exception
+	{
+		Calendar now = Calendar.getInstance();
+		now.set(2014, Calendar.OCTOBER, 8, 14, 30, 0);
+
+		assertEquals(Freshness.HISTORICAL, Freshness.classify(HISTORICAL_QUERY, now.getTimeInMillis()));
+		assertEquals(Freshness.CURRENT, Freshness.classify("SELECT * FROM t WHERE d >= '2014-10-08 00:00:00' AND d < '2014-10-09 00:00:00'", now.getTimeInMillis()));
+		assertEquals(Freshness.CURRENT, Freshness.classify("SELECT * FROM t WHERE d >= DATEADD(hour, -1, GETDATE())", now.getTimeInMillis()));
+		assertEquals(Freshness.UNDATED, Freshness.classify("SELECT USER_USERID FROM CRM_MST_USER", now.getTimeInMillis()));
+	}
+
+	@Test
+	public void testResultsExpire() throws Exception
+	{
+		QueryCache cache = new QueryCache(1024 * 1024, 1024 * 1024);
+		ArrayList<String[]> results = rows(10);
+
+		assertTrue(cache.put("current", results, weigh(results), Freshness.CURRENT, 0));
+		assertNotNull(cache.get("current", Freshness.CURRENT.getTTLMillis() - 1));
+		assertNull(cache.get("current", Freshness.CURRENT.getTTLMillis()));
+
+		assertEquals(1, cache.getExpirations());
+		assertEquals(0, cache.getBytes());
+	}
+
+	@Test
+	public void testOneOffsDoNotEvictFrequentResults() throws Exception
+	{
+		ArrayList<String[]> results = rows(100);
+		long resultBytes = weigh(results);
+
+		//room for two results
+		QueryCache cache = new QueryCache(resultBytes * 2, resultBytes);
+
+		for(String key : new String[]{"a", "b"})
+		{
+			for(int i = 0; i < 3; i++)
+			{
+				cache.get(key, 0);
+			}
+
+			assertTrue(cache.put(key, results, resultBytes, Freshness.HISTORICAL, 0));
+		}
+
+		//asked for once, less than either cached result
+		cache.get("c", 0);
+		assertFalse(cache.put("c", results, resultBytes, Freshness.HISTORICAL, 0));
+		assertEquals(1, cache.getRejections());
+
+		//asked for often enough, it evicts the least recently used
+		for(int i = 0; i < 5; i++)
+		{
+			cache.get("c", 0);
+		}
+		assertTrue(cache.put("c", results, resultBytes, Freshness.HISTORICAL, 0));
+
+		assertEquals(1, cache.getEvictions());
+		assertNull(cache.get("a", 0));
+		assertNotNull(cache.get("b", 0));
+		assertNotNull(cache.get("c", 0));
+		assertTrue(cache.getBytes() <= cache.getMaxBytes());
+	}
+}
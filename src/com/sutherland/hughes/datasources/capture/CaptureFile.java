@@ -0,0 +1,215 @@
+package com.sutherland.hughes.datasources.capture;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.sutherland.hughes.datasources.RowHandler;
+import com.sutherland.hughes.util.results.ResultBuffer;
+
+/**
+ * Reads and writes capture files. A capture file is gzipped: a header, then one entry per query in the order the queries finished,
+ * then an end marker. An entry holds the query text, its query and results times, the row count and the rows. Values are written as
+ * their UTF-8 byte length (-1 for null) followed by the bytes, as in ResultBuffer's spill files.
+ *
+ * @author Jason Diamond
+ *
+ */
+public final class CaptureFile
+{
+	private final static int MAGIC = 0x48524346;
+	private final static int VERSION = 1;
+
+	private final static byte ENTRY_MARKER = 1;
+	private final static byte END_MARKER = 0;
+
+	private final static String CHARSET = "UTF-8";
+	private final static int IO_BUFFER_SIZE = 64 * 1024;
+
+	private CaptureFile()
+	{
+	}
+
+	/**
+	 * Create a capture file and write its header.
+	 *
+	 * @param file	The file to create. An existing file is overwritten.
+	 *
+	 * @return	The stream to write entries to.
+	 *
+	 * @throws IOException	If the file cannot be created.
+	 */
+	public static DataOutputStream create(File file) throws IOException
+	{
+		DataOutputStream retval = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file), IO_BUFFER_SIZE), IO_BUFFER_SIZE));
+
+		retval.writeInt(MAGIC);
+		retval.writeInt(VERSION);
+
+		return retval;
+	}
+
+	/**
+	 * Write one query's entry.
+	 *
+	 * @param out				The capture file's stream.
+	 * @param query				The query text.
+	 * @param queryMillis		The time from executing the query to its first row.
+	 * @param resultsMillis		The time from the first row to the last.
+	 * @param rows				The query's rows.
+	 * @param anonymizer		Applied to each row as it is written, or null to write the rows as they are.
+	 *
+	 * @throws IOException	If the entry cannot be written.
+	 */
+	public static void writeEntry(final DataOutputStream out, String query, long queryMillis, long resultsMillis, ResultBuffer rows, final QueryAnonymizer anonymizer) throws IOException
+	{
+		out.writeByte(ENTRY_MARKER);
+		writeString(out, query);
+		out.writeLong(queryMillis);
+		out.writeLong(resultsMillis);
+		out.writeLong(rows.size());
+
+		rows.replay(new RowHandler()
+		{
+			@Override
+			public void handleRow(String[] row) throws IOException
+			{
+				if(anonymizer != null)
+				{
+					row = anonymizer.anonymize(row);
+				}
+
+				out.writeInt(row.length);
+
+				for(String value : row)
+				{
+					writeString(out, value);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Write the end marker and close the capture file.
+	 *
+	 * @param out	The capture file's stream.
+	 *
+	 * @throws IOException	If the file cannot be written.
+	 */
+	public static void finish(DataOutputStream out) throws IOException
+	{
+		try
+		{
+			out.writeByte(END_MARKER);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * Read every entry of a capture file.
+	 *
+	 * @param file	The capture file.
+	 *
+	 * @return	The captured queries, in the order they were written.
+	 *
+	 * @throws IOException	If the file cannot be read, is not a capture file or is truncated.
+	 */
+	public static ArrayList<CapturedQuery> read(File file) throws IOException
+	{
+		ArrayList<CapturedQuery> retval = new ArrayList<CapturedQuery>();
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file), IO_BUFFER_SIZE), IO_BUFFER_SIZE));
+
+		try
+		{
+			if(in.readInt() != MAGIC)
+			{
+				throw new IOException(file + " is not a capture file");
+			}
+
+			int version = in.readInt();
+
+			if(version != VERSION)
+			{
+				throw new IOException("Unsupported capture file version " + version + " in " + file);
+			}
+
+			String query;
+			long queryMillis, resultsMillis, rowCount;
+			ArrayList<String[]> rows;
+			String[] row;
+
+			while(in.readByte() == ENTRY_MARKER)
+			{
+				query = readString(in);
+				queryMillis = in.readLong();
+				resultsMillis = in.readLong();
+				rowCount = in.readLong();
+
+				rows = new ArrayList<String[]>((int)Math.min(rowCount, Integer.MAX_VALUE));
+
+				for(long i = 0; i < rowCount; i++)
+				{
+					row = new String[in.readInt()];
+
+					for(int j = 0; j < row.length; j++)
+					{
+						row[j] = readString(in);
+					}
+
+					rows.add(row);
+				}
+
+				retval.add(new CapturedQuery(query, queryMillis, resultsMillis, rows));
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+
+		return retval;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException
+	{
+		if(value == null)
+		{
+			out.writeInt(-1);
+		}
+		else
+		{
+			byte[] bytes = value.getBytes(CHARSET);
+
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException
+	{
+		String retval = null;
+
+		int length = in.readInt();
+
+		if(length >= 0)
+		{
+			byte[] bytes = new byte[length];
+			in.readFully(bytes);
+			retval = new String(bytes, CHARSET);
+		}
+
+		return retval;
+	}
+}
@@ -0,0 +1,55 @@
+package com.sutherland.hughes.datasources.capture;
+
+import java.util.ArrayList;
+
+/**
+ * One query read back from a capture file: its text, how long it took against the real database, and the rows it returned.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class CapturedQuery
+{
+	private final String query;
+	private final long queryMillis;
+	private final long resultsMillis;
+	private final ArrayList<String[]> rows;
+
+	public CapturedQuery(String query, long queryMillis, long resultsMillis, ArrayList<String[]> rows)
+	{
+		this.query = query;
+		this.queryMillis = queryMillis;
+		this.resultsMillis = resultsMillis;
+		this.rows = rows;
+	}
+
+	public String getQuery()
+	{
+		return query;
+	}
+
+	/**
+	 * Accessor for the time from executing the query to its first row.
+	 *
+	 * @return	The time in milliseconds.
+	 */
+	public long getQueryMillis()
+	{
+		return queryMillis;
+	}
+
+	/**
+	 * Accessor for the time from the first row to the last.
+	 *
+	 * @return	The time in milliseconds.
+	 */
+	public long getResultsMillis()
+	{
+		return resultsMillis;
+	}
+
+	public ArrayList<String[]> getRows()
+	{
+		return rows;
+	}
+}
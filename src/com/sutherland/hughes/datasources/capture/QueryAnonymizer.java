@@ -0,0 +1,179 @@
+package com.sutherland.hughes.datasources.capture;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Replaces the text values of captured rows with pseudonyms so a capture can leave production. Numbers and dates are the shape of the
+ * data the reports work on and are kept as they are; so are ids that are all digits. Any other value is replaced letter for letter and
+ * digit for digit, keeping its length, case and punctuation, so sanitizing, truncation and sorting behave as they did on the real data.
+ *
+ * The same value always gets the same pseudonym within a capture, so joins between queries (user ids, refval ids, team names) still
+ * line up on replay. The pseudonyms are keyed by a random salt that is never written out, so they cannot be reversed by hashing guesses.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class QueryAnonymizer
+{
+	private final static Pattern NUMBER = Pattern.compile("-?[0-9]+(\\.[0-9]+)?");
+	private final static Pattern DATE = Pattern.compile("[0-9]{4}-[0-9]{2}-[0-9]{2}( [0-9]{2}:[0-9]{2}:[0-9]{2}(\\.[0-9]+)?)?");
+
+	private final static int SALT_BYTES = 32;
+	private final static String DIGEST_ALGORITHM = "SHA-256";
+	private final static String CHARSET = "UTF-8";
+
+	private final byte[] salt;
+	private final HashMap<String, String> pseudonyms;
+	private final MessageDigest digest;
+
+	/**
+	 * Build an anonymizer with a random salt.
+	 */
+	public QueryAnonymizer()
+	{
+		this(newSalt());
+	}
+
+	/**
+	 * Build an anonymizer with the given salt, ie. for repeatable tests.
+	 *
+	 * @param salt	The salt.
+	 */
+	public QueryAnonymizer(byte[] salt)
+	{
+		this.salt = salt.clone();
+
+		pseudonyms = new HashMap<String, String>();
+
+		try
+		{
+			digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			//every JVM is required to provide it
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static byte[] newSalt()
+	{
+		byte[] retval = new byte[SALT_BYTES];
+
+		new SecureRandom().nextBytes(retval);
+
+		return retval;
+	}
+
+	/**
+	 * Anonymize a row.
+	 *
+	 * @param row	The row. It is not modified.
+	 *
+	 * @return	A copy of the row with its values anonymized.
+	 */
+	public String[] anonymize(String[] row)
+	{
+		String[] retval = new String[row.length];
+
+		for(int i = 0; i < row.length; i++)
+		{
+			retval[i] = anonymize(row[i]);
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Anonymize a value.
+	 *
+	 * @param value	The value.
+	 *
+	 * @return	The value itself if it is null, empty, a number or a date, its pseudonym otherwise.
+	 */
+	public String anonymize(String value)
+	{
+		String retval = value;
+
+		if(value != null && !value.trim().isEmpty() && !NUMBER.matcher(value).matches() && !DATE.matcher(value).matches())
+		{
+			retval = pseudonyms.get(value);
+
+			if(retval == null)
+			{
+				retval = buildPseudonym(value);
+				pseudonyms.put(value, retval);
+			}
+		}
+
+		return retval;
+	}
+
+	private String buildPseudonym(String value)
+	{
+		StringBuilder retval = new StringBuilder(value.length());
+
+		byte[] hash = hash(value, 0);
+		int hashIndex = 0;
+		int round = 0;
+
+		char c;
+		int r;
+		for(int i = 0; i < value.length(); i++)
+		{
+			c = value.charAt(i);
+
+			if(Character.isLetterOrDigit(c))
+			{
+				if(hashIndex == hash.length)
+				{
+					hash = hash(value, ++round);
+					hashIndex = 0;
+				}
+
+				r = hash[hashIndex++] & 0xFF;
+
+				if(Character.isDigit(c))
+				{
+					c = (char)('0' + r % 10);
+				}
+				else if(Character.isUpperCase(c))
+				{
+					c = (char)('A' + r % 26);
+				}
+				else
+				{
+					c = (char)('a' + r % 26);
+				}
+			}
+
+			retval.append(c);
+		}
+
+		return retval.toString();
+	}
+
+	private byte[] hash(String value, int round)
+	{
+		digest.reset();
+		digest.update(salt);
+		digest.update((byte)round);
+
+		try
+		{
+			digest.update(value.getBytes(CHARSET));
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			//every JVM is required to support it
+			throw new IllegalStateException(e);
+		}
+
+		return digest.digest();
+	}
+}
@@ -0,0 +1,139 @@
+package com.sutherland.hughes.datasources.capture;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.log4j.Logger;
+
+import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
+import com.sutherland.helios.exceptions.ExceptionFormatter;
+import com.sutherland.hughes.datasources.DataSourceProvider;
+import com.sutherland.hughes.datasources.JDBCConnection;
+import com.sutherland.hughes.util.results.ResultBuffer;
+
+/**
+ * Captures every query run through its connections, with its timing and anonymized results, to a capture file that
+ * ReplayDataSourceProvider can serve again later. Set it as the request's provider in DataSources before the report is built, so the
+ * roster and child reports are captured along with it, and close it once the report is closed.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class QueryRecorder implements DataSourceProvider, Closeable
+{
+	private final static Logger logger = Logger.getLogger(QueryRecorder.class);
+
+	private final DataSourceProvider delegate;
+	private final File file;
+	private final QueryAnonymizer anonymizer;
+
+	private DataOutputStream out;
+	private int queryCount;
+
+	/**
+	 * Start a capture.
+	 *
+	 * @param delegate	The provider of the real connections.
+	 * @param file		The capture file to write.
+	 *
+	 * @throws IOException	If the capture file cannot be created.
+	 */
+	public QueryRecorder(DataSourceProvider delegate, File file) throws IOException
+	{
+		this.delegate = delegate;
+		this.file = file;
+
+		anonymizer = new QueryAnonymizer();
+		out = CaptureFile.create(file);
+		queryCount = 0;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.DataSourceProvider#getConnection(java.lang.String)
+	 */
+	@Override
+	public JDBCConnection getConnection(String dbPropFile) throws DatabaseConnectionCreationException
+	{
+		JDBCConnection retval = delegate.getConnection(dbPropFile);
+
+		//a worker thread started during the capture can outlive it, past that its connections just aren't recorded
+		if(!isClosed())
+		{
+			retval = new RecordingConnection(retval, this);
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Write a finished query to the capture file.
+	 *
+	 * @param query				The query text.
+	 * @param queryMillis		The time from executing the query to its first row.
+	 * @param resultsMillis		The time from the first row to the last.
+	 * @param rows				The query's rows, before anonymizing.
+	 *
+	 * @throws IOException	If the capture file cannot be written.
+	 */
+	synchronized void record(String query, long queryMillis, long resultsMillis, ResultBuffer rows) throws IOException
+	{
+		if(out != null)
+		{
+			CaptureFile.writeEntry(out, query, queryMillis, resultsMillis, rows, anonymizer);
+
+			queryCount++;
+		}
+	}
+
+	/**
+	 * Determine if the capture has been closed.
+	 *
+	 * @return	True if the capture is closed, false otherwise.
+	 */
+	public synchronized boolean isClosed()
+	{
+		return out == null;
+	}
+
+	public File getFile()
+	{
+		return file;
+	}
+
+	/**
+	 * Accessor for the number of queries captured so far.
+	 *
+	 * @return	The query count.
+	 */
+	public synchronized int getQueryCount()
+	{
+		return queryCount;
+	}
+
+	/**
+	 * Finish the capture file. Queries finishing after this are not captured.
+	 */
+	@Override
+	public synchronized void close()
+	{
+		if(out != null)
+		{
+			try
+			{
+				CaptureFile.finish(out);
+
+				logger.info("Captured " + queryCount + " queries to " + file);
+			}
+			catch(IOException e)
+			{
+				logger.error("Could not finish capture file " + file + ": " + ExceptionFormatter.asString(e));
+			}
+			finally
+			{
+				out = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package com.sutherland.hughes.datasources.capture;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+
+import org.apache.log4j.Logger;
+
+import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
+import com.sutherland.helios.exceptions.ExceptionFormatter;
+import com.sutherland.hughes.datasources.JDBCConnection;
+import com.sutherland.hughes.datasources.RowHandler;
+import com.sutherland.hughes.util.results.ResultBuffer;
+
+/**
+ * A connection that runs its queries on a real connection and hands each query's rows to a QueryRecorder as well as to the caller.
+ * The rows are held in a ResultBuffer until the query finishes, so a large result spills to disk rather than doubling the heap.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class RecordingConnection extends JDBCConnection
+{
+	private final static Logger logger = Logger.getLogger(RecordingConnection.class);
+
+	private final JDBCConnection delegate;
+	private final QueryRecorder recorder;
+
+	/**
+	 * Wrap a connection.
+	 *
+	 * @param delegate	The real connection.
+	 * @param recorder	The capture to record to.
+	 *
+	 * @throws DatabaseConnectionCreationException	Never, but required by DatabaseConnection.
+	 */
+	public RecordingConnection(JDBCConnection delegate, QueryRecorder recorder) throws DatabaseConnectionCreationException
+	{
+		super("Recording " + recorder.getFile().getName());
+
+		this.delegate = delegate;
+		this.recorder = recorder;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.JDBCConnection#setFetchSize(int)
+	 */
+	@Override
+	public void setFetchSize(int fetchSize)
+	{
+		delegate.setFetchSize(fetchSize);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.JDBCConnection#streamQuery(java.lang.String, com.sutherland.hughes.datasources.RowHandler)
+	 */
+	@Override
+	public long streamQuery(String query, final RowHandler handler) throws SQLException, IOException
+	{
+		long retval;
+
+		final ResultBuffer captured = new ResultBuffer();
+		final long[] firstRowTime = {-1};
+
+		try
+		{
+			long queryStart = System.currentTimeMillis();
+
+			retval = delegate.streamQuery(query, new RowHandler()
+			{
+				@Override
+				public void handleRow(String[] row) throws IOException
+				{
+					if(firstRowTime[0] < 0)
+					{
+						firstRowTime[0] = System.currentTimeMillis();
+					}
+
+					//copied, in case the caller reuses the array
+					captured.add(row.clone());
+					handler.handleRow(row);
+				}
+			});
+
+			long queryEnd = System.currentTimeMillis();
+			long resultsStart = firstRowTime[0] < 0 ? queryEnd : firstRowTime[0];
+
+			statistics.put(query, delegate.getStatistics().get(query));
+
+			try
+			{
+				recorder.record(query, resultsStart - queryStart, queryEnd - resultsStart, captured);
+			}
+			catch(IOException e)
+			{
+				//the report itself succeeded, a capture problem shouldn't fail it
+				logger.error("Could not capture query to " + recorder.getFile() + ": " + ExceptionFormatter.asString(e));
+			}
+		}
+		finally
+		{
+			captured.close();
+		}
+
+		return retval;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.JDBCConnection#getSchemaInfo(java.lang.String)
+	 */
+	@Override
+	public ArrayList<String> getSchemaInfo(String tableName)
+	{
+		return delegate.getSchemaInfo(tableName);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.JDBCConnection#close()
+	 */
+	@Override
+	public void close()
+	{
+		delegate.close();
+	}
+}
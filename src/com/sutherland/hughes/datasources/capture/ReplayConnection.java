@@ -0,0 +1,73 @@
+package com.sutherland.hughes.datasources.capture;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+
+import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
+import com.sutherland.hughes.datasources.JDBCConnection;
+import com.sutherland.hughes.datasources.RowHandler;
+
+/**
+ * A connection that serves captured results instead of running its queries. Rows are handed out as copies, so a report modifying its
+ * rows doesn't change what the next replay sees.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class ReplayConnection extends JDBCConnection
+{
+	private final ReplayDataSourceProvider provider;
+
+	/**
+	 * Build the connection.
+	 *
+	 * @param provider	The provider holding the captured results.
+	 *
+	 * @throws DatabaseConnectionCreationException	Never, but required by DatabaseConnection.
+	 */
+	public ReplayConnection(ReplayDataSourceProvider provider) throws DatabaseConnectionCreationException
+	{
+		super("Replay " + provider.getFile().getName());
+
+		this.provider = provider;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.JDBCConnection#streamQuery(java.lang.String, com.sutherland.hughes.datasources.RowHandler)
+	 */
+	@Override
+	public long streamQuery(String query, RowHandler handler) throws SQLException, IOException
+	{
+		long retval = 0;
+
+		CapturedQuery capturedQuery = provider.getResults(query);
+
+		for(String[] row : capturedQuery.getRows())
+		{
+			handler.handleRow(row.clone());
+			retval++;
+		}
+
+		statistics.put(query, "Query replayed rows: " + retval + "; Captured query time: " + capturedQuery.getQueryMillis() + " ms; Captured results time: " + capturedQuery.getResultsMillis() + " ms");
+
+		return retval;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.JDBCConnection#getSchemaInfo(java.lang.String)
+	 */
+	@Override
+	public ArrayList<String> getSchemaInfo(String tableName)
+	{
+		return new ArrayList<String>();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.JDBCConnection#close()
+	 */
+	@Override
+	public void close()
+	{
+	}
+}
@@ -0,0 +1,104 @@
+package com.sutherland.hughes.datasources.capture;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.apache.log4j.Logger;
+
+import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
+import com.sutherland.hughes.datasources.DataSourceProvider;
+import com.sutherland.hughes.datasources.JDBCConnection;
+
+/**
+ * Serves the results of a capture file in place of a database, so a captured request can be run and profiled offline. Queries are
+ * matched on their exact text, so the replayed request has to use the same parameters as the captured one. A query that was captured
+ * several times is served its captured results in turn, starting over once they run out.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class ReplayDataSourceProvider implements DataSourceProvider
+{
+	private final static Logger logger = Logger.getLogger(ReplayDataSourceProvider.class);
+
+	private final File file;
+	private final HashMap<String, ArrayList<CapturedQuery>> capturedQueries;
+	private final HashMap<String, Integer> nextResults;
+
+	/**
+	 * Load a capture file.
+	 *
+	 * @param file	The capture file.
+	 *
+	 * @throws IOException	If the capture file cannot be read.
+	 */
+	public ReplayDataSourceProvider(File file) throws IOException
+	{
+		this.file = file;
+
+		capturedQueries = new HashMap<String, ArrayList<CapturedQuery>>();
+		nextResults = new HashMap<String, Integer>();
+
+		ArrayList<CapturedQuery> results;
+		int queryCount = 0;
+
+		for(CapturedQuery capturedQuery : CaptureFile.read(file))
+		{
+			results = capturedQueries.get(capturedQuery.getQuery());
+
+			if(results == null)
+			{
+				results = new ArrayList<CapturedQuery>();
+				capturedQueries.put(capturedQuery.getQuery(), results);
+			}
+
+			results.add(capturedQuery);
+			queryCount++;
+		}
+
+		logger.info("Loaded " + queryCount + " captured queries from " + file);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.DataSourceProvider#getConnection(java.lang.String)
+	 */
+	@Override
+	public JDBCConnection getConnection(String dbPropFile) throws DatabaseConnectionCreationException
+	{
+		return new ReplayConnection(this);
+	}
+
+	/**
+	 * Accessor for the next captured results of a query.
+	 *
+	 * @param query	The query text.
+	 *
+	 * @return	The captured query.
+	 *
+	 * @throws SQLException	If the query was not captured.
+	 */
+	public synchronized CapturedQuery getResults(String query) throws SQLException
+	{
+		ArrayList<CapturedQuery> results = capturedQueries.get(query);
+
+		if(results == null)
+		{
+			throw new SQLException("Query not found in capture file " + file + ": " + query);
+		}
+
+		Integer next = nextResults.get(query);
+		int index = next == null ? 0 : next;
+
+		nextResults.put(query, (index + 1) % results.size());
+
+		return results.get(index);
+	}
+
+	public File getFile()
+	{
+		return file;
+	}
+}
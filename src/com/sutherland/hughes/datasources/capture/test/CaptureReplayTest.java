@@ -0,0 +1,167 @@
+/**
+ *
+ */
+package com.sutherland.hughes.datasources.capture.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
+import com.sutherland.hughes.datasources.DataSourceProvider;
+import com.sutherland.hughes.datasources.JDBCConnection;
+import com.sutherland.hughes.datasources.RowHandler;
+import com.sutherland.hughes.datasources.capture.QueryAnonymizer;
+import com.sutherland.hughes.datasources.capture.QueryRecorder;
+import com.sutherland.hughes.datasources.capture.ReplayDataSourceProvider;
+
+/**
+ * @author Jason Diamond
+ *
+ */
+public class CaptureReplayTest extends TestCase
+{
+	private final static String ROSTER_QUERY = "SELECT USER_USERID, USER_FIRSTNAME, UTEAM_TEAMNAME FROM CRM_MST_USER";
+	private final static String SALES_QUERY = "SELECT ORDDET_CREATEDBY, ORDDET_CREATEDDATE, ORDDET_AMOUNT, ORDDET_NOTE FROM CRM_TRN_ORDERDETAILS";
+
+	private File captureFile;
+
+	/**
+	 * Serves fixed rows in place of a database.
+	 */
+	private static class FixedConnection extends JDBCConnection
+	{
+		public FixedConnection() throws DatabaseConnectionCreationException
+		{
+			super("fixed");
+		}
+
+		@Override
+		public long streamQuery(String query, RowHandler handler) throws SQLException, IOException
+		{
+			ArrayList<String[]> rows = new ArrayList<String[]>();
+
+			if(query.equals(ROSTER_QUERY))
+			{
+				rows.add(new String[]{"1001", "Jane", "Retention East"});
+				rows.add(new String[]{"1002", "John", "Retention East"});
+			}
+			else if(query.equals(SALES_QUERY))
+			{
+				rows.add(new String[]{"1001", "2014-10-01 09:15:00.0", "49.99", "Jane's order"});
+				rows.add(new String[]{"1002", "2014-10-01 10:30:00.0", "19.99", null});
+			}
+			else
+			{
+				throw new SQLException("No such table");
+			}
+
+			for(String[] row : rows)
+			{
+				handler.handleRow(row);
+			}
+
+			return rows.size();
+		}
+
+		@Override
+		public void close()
+		{
+		}
+	}
+
+	public void setUp() throws IOException
+	{
+		captureFile = File.createTempFile("hughes-test-", ".capture.gz");
+	}
+
+	public void tearDown()
+	{
+		captureFile.delete();
+	}
+
+	private void capture() throws Exception
+	{
+		QueryRecorder recorder = new QueryRecorder(new DataSourceProvider()
+		{
+			@Override
+			public JDBCConnection getConnection(String dbPropFile) throws DatabaseConnectionCreationException
+			{
+				return new FixedConnection();
+			}
+		}, captureFile);
+
+		JDBCConnection rosterConnection = recorder.getConnection("test.properties");
+		JDBCConnection salesConnection = recorder.getConnection("test.properties");
+
+		assertEquals(2, rosterConnection.runQuery(ROSTER_QUERY).size());
+		//the caller still sees the real values
+		assertEquals("Jane's order", salesConnection.runQuery(SALES_QUERY).get(0)[3]);
+
+		rosterConnection.close();
+		salesConnection.close();
+		recorder.close();
+
+		assertEquals(2, recorder.getQueryCount());
+	}
+
+	@Test
+	public void testReplayServesAnonymizedResults() throws Exception
+	{
+		capture();
+
+		JDBCConnection replay = new ReplayDataSourceProvider(captureFile).getConnection("test.properties");
+
+		ArrayList<String[]> roster = replay.runQuery(ROSTER_QUERY);
+		ArrayList<String[]> sales = replay.runQuery(SALES_QUERY);
+
+		assertEquals(2, roster.size());
+		assertEquals(2, sales.size());
+
+		//ids, dates and amounts kept, so the report's joins and aggregation behave as they did
+		assertEquals("1001", roster.get(0)[0]);
+		assertEquals("1001", sales.get(0)[0]);
+		assertEquals("2014-10-01 09:15:00.0", sales.get(0)[1]);
+		assertEquals("49.99", sales.get(0)[2]);
+		assertNull(sales.get(1)[3]);
+
+		//text replaced consistently, keeping its shape
+		assertFalse("Jane".equals(roster.get(0)[1]));
+		assertEquals(4, roster.get(0)[1].length());
+		assertEquals(roster.get(0)[2], roster.get(1)[2]);
+		assertFalse("Retention East".equals(roster.get(0)[2]));
+		assertEquals(' ', roster.get(0)[2].charAt(9));
+		assertEquals('\'', sales.get(0)[3].charAt(4));
+	}
+
+	@Test
+	public void testUncapturedQueryFails() throws Exception
+	{
+		capture();
+
+		JDBCConnection replay = new ReplayDataSourceProvider(captureFile).getConnection("test.properties");
+
+		assertNull(replay.runQuery("SELECT * FROM CRM_TRN_REFUND"));
+		assertNotNull(replay.getErrorMessage());
+	}
+
+	@Test
+	public void testAnonymizerIsConsistent()
+	{
+		QueryAnonymizer anonymizer = new QueryAnonymizer(new byte[]{1, 2, 3});
+
+		String pseudonym = anonymizer.anonymize("DSS12345-Smith");
+
+		assertEquals(pseudonym, anonymizer.anonymize("DSS12345-Smith"));
+		assertEquals(pseudonym, new QueryAnonymizer(new byte[]{1, 2, 3}).anonymize("DSS12345-Smith"));
+		assertTrue(pseudonym.matches("[A-Z]{3}[0-9]{5}-[A-Z][a-z]{4}"));
+		assertEquals("", anonymizer.anonymize(""));
+		assertEquals("-12.50", anonymizer.anonymize("-12.50"));
+		assertEquals("2014-10-01", anonymizer.anonymize("2014-10-01"));
+	}
+}
@@ -0,0 +1,141 @@
+package com.sutherland.hughes.datasources.session;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+
+import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
+import com.sutherland.hughes.datasources.JDBCConnection;
+import com.sutherland.hughes.datasources.RowHandler;
+
+/**
+ * A report's connection from a SessionDataSourceProvider. It doesn't hold a connection to the database of its own: each query borrows one
+ * from the provider and hands it back once its last row has been handled. A connection whose query failed may be broken, so it's closed
+ * instead.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class SessionConnection extends JDBCConnection
+{
+	private final SessionDataSourceProvider provider;
+	private final String dbPropFile;
+	private int fetchSize;
+
+	/**
+	 * Build a connection.
+	 *
+	 * @param provider		The provider to borrow connections from.
+	 * @param dbPropFile	The database to connect to.
+	 *
+	 * @throws DatabaseConnectionCreationException	Never, but required by DatabaseConnection.
+	 */
+	SessionConnection(SessionDataSourceProvider provider, String dbPropFile) throws DatabaseConnectionCreationException
+	{
+		super("Session " + dbPropFile);
+
+		this.provider = provider;
+		this.dbPropFile = dbPropFile;
+
+		fetchSize = DEFAULT_FETCH_SIZE;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.JDBCConnection#setFetchSize(int)
+	 */
+	@Override
+	public void setFetchSize(int fetchSize)
+	{
+		if(fetchSize > 0)
+		{
+			this.fetchSize = fetchSize;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.JDBCConnection#streamQuery(java.lang.String, com.sutherland.hughes.datasources.RowHandler)
+	 */
+	@Override
+	public long streamQuery(String query, RowHandler handler) throws SQLException, IOException
+	{
+		long retval;
+
+		JDBCConnection connection;
+
+		try
+		{
+			connection = provider.borrow(dbPropFile);
+		}
+		catch(DatabaseConnectionCreationException e)
+		{
+			throw new SQLException("Could not connect to " + dbPropFile, e);
+		}
+
+		boolean succeeded = false;
+
+		try
+		{
+			//the last report to borrow it may have used another size
+			connection.setFetchSize(fetchSize);
+
+			retval = connection.streamQuery(query, handler);
+
+			statistics.put(query, connection.getStatistics().get(query));
+
+			succeeded = true;
+		}
+		finally
+		{
+			if(succeeded)
+			{
+				provider.release(dbPropFile, connection);
+			}
+			else
+			{
+				connection.close();
+			}
+		}
+
+		return retval;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.JDBCConnection#getSchemaInfo(java.lang.String)
+	 */
+	@Override
+	public ArrayList<String> getSchemaInfo(String tableName)
+	{
+		ArrayList<String> retval = null;
+
+		JDBCConnection connection = null;
+
+		try
+		{
+			connection = provider.borrow(dbPropFile);
+
+			retval = connection.getSchemaInfo(tableName);
+		}
+		catch(DatabaseConnectionCreationException e)
+		{
+			errorMessage = e.getMessage();
+		}
+		finally
+		{
+			if(connection != null)
+			{
+				provider.release(dbPropFile, connection);
+			}
+		}
+
+		return retval;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.JDBCConnection#close()
+	 */
+	@Override
+	public void close()
+	{
+		//nothing held between queries, the provider closes what it kept once the batch is done
+	}
+}
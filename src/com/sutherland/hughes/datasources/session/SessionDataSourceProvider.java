@@ -0,0 +1,177 @@
+package com.sutherland.hughes.datasources.session;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
+import com.sutherland.hughes.datasources.DataSourceProvider;
+import com.sutherland.hughes.datasources.JDBCConnection;
+
+/**
+ * Shares another provider's connections between the reports of one batch. The connections it hands out are SessionConnections, which
+ * borrow a connection to the database for each query and hand it back as soon as the query is done, so a batch opens only as many
+ * connections to a database as it has queries running on it at once, however many reports, child reports and rosters it runs.
+ * 
+ * The provider is only good for one batch, and the connections it kept are closed by close once the batch is done.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class SessionDataSourceProvider implements DataSourceProvider, Closeable
+{
+	private final static Logger logger = Logger.getLogger(SessionDataSourceProvider.class);
+	
+	private final DataSourceProvider delegate;
+	private final HashMap<String, LinkedList<JDBCConnection>> idle;
+	private int opened;
+	private int reused;
+	private boolean closed;
+
+	/**
+	 * @param delegate	The provider of the connections to reuse.
+	 */
+	public SessionDataSourceProvider(DataSourceProvider delegate)
+	{
+		this.delegate = delegate;
+		
+		idle = new HashMap<String, LinkedList<JDBCConnection>>();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.DataSourceProvider#getConnection(java.lang.String)
+	 */
+	@Override
+	public JDBCConnection getConnection(String dbPropFile) throws DatabaseConnectionCreationException
+	{
+		//the report expects to find out it can't connect now, rather than on its first query
+		release(dbPropFile, borrow(dbPropFile));
+		
+		return new SessionConnection(this, dbPropFile);
+	}
+	
+	/**
+	 * Borrow a connection for a query, one kept from an earlier query if there is one.
+	 * 
+	 * @param dbPropFile	The database to connect to.
+	 * 
+	 * @return	The connection, to be handed back with release, or closed if the query fails.
+	 * 
+	 * @throws DatabaseConnectionCreationException	If a new connection cannot be opened.
+	 */
+	JDBCConnection borrow(String dbPropFile) throws DatabaseConnectionCreationException
+	{
+		JDBCConnection retval = null;
+		
+		synchronized(this)
+		{
+			LinkedList<JDBCConnection> connections = idle.get(dbPropFile);
+			
+			if(connections != null && !connections.isEmpty())
+			{
+				retval = connections.removeFirst();
+				reused++;
+			}
+		}
+		
+		if(retval == null)
+		{
+			retval = delegate.getConnection(dbPropFile);
+			
+			synchronized(this)
+			{
+				opened++;
+			}
+		}
+		
+		return retval;
+	}
+	
+	/**
+	 * Take back a connection a query is done with.
+	 * 
+	 * @param dbPropFile	The database it's connected to.
+	 * @param connection	The connection.
+	 */
+	void release(String dbPropFile, JDBCConnection connection)
+	{
+		boolean keep;
+		
+		synchronized(this)
+		{
+			keep = !closed;
+			
+			if(keep)
+			{
+				LinkedList<JDBCConnection> connections = idle.get(dbPropFile);
+				
+				if(connections == null)
+				{
+					connections = new LinkedList<JDBCConnection>();
+					idle.put(dbPropFile, connections);
+				}
+				
+				connections.addLast(connection);
+			}
+		}
+		
+		if(!keep)
+		{
+			connection.close();
+		}
+	}
+	
+	/**
+	 * Close the connections being kept. Any connection still running a query is closed when it's handed back.
+	 */
+	public void close()
+	{
+		ArrayList<JDBCConnection> connections = new ArrayList<JDBCConnection>();
+		
+		synchronized(this)
+		{
+			closed = true;
+			
+			for(Map.Entry<String, LinkedList<JDBCConnection>> database : idle.entrySet())
+			{
+				connections.addAll(database.getValue());
+			}
+			
+			idle.clear();
+			
+			if(logger.isDebugEnabled())
+			{
+				logger.debug("Session opened " + opened + " connections and reused them " + reused + " times");
+			}
+		}
+		
+		for(JDBCConnection connection : connections)
+		{
+			connection.close();
+		}
+	}
+	
+	/**
+	 * Accessor for the number of connections opened through the delegate.
+	 * 
+	 * @return	The number of connections.
+	 */
+	public synchronized int getOpened()
+	{
+		return opened;
+	}
+	
+	/**
+	 * Accessor for the number of times a kept connection was borrowed again.
+	 * 
+	 * @return	The number of times.
+	 */
+	public synchronized int getReused()
+	{
+		return reused;
+	}
+}
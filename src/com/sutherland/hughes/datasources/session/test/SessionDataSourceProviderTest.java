@@ -0,0 +1,132 @@
+/**
+ *
+ */
+package com.sutherland.hughes.datasources.session.test;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
+import com.sutherland.hughes.datasources.DataSourceProvider;
+import com.sutherland.hughes.datasources.JDBCConnection;
+import com.sutherland.hughes.datasources.RowHandler;
+import com.sutherland.hughes.datasources.session.SessionDataSourceProvider;
+
+/**
+ * @author Jason Diamond
+ *
+ */
+public class SessionDataSourceProviderTest extends TestCase
+{
+	/**
+	 * Answers every query with one row, and fails any query named "fail".
+	 */
+	private static class FakeConnection extends JDBCConnection
+	{
+		private boolean closed;
+
+		public FakeConnection() throws DatabaseConnectionCreationException
+		{
+			super("Fake");
+		}
+
+		@Override
+		public long streamQuery(String query, RowHandler handler) throws SQLException, IOException
+		{
+			if(query.equals("fail"))
+			{
+				throw new SQLException("Connection reset");
+			}
+
+			handler.handleRow(new String[]{query});
+
+			return 1;
+		}
+
+		@Override
+		public void close()
+		{
+			closed = true;
+		}
+	}
+
+	private static class FakeProvider implements DataSourceProvider
+	{
+		private final ArrayList<FakeConnection> opened = new ArrayList<FakeConnection>();
+
+		@Override
+		public synchronized JDBCConnection getConnection(String dbPropFile) throws DatabaseConnectionCreationException
+		{
+			FakeConnection retval = new FakeConnection();
+
+			opened.add(retval);
+
+			return retval;
+		}
+	}
+
+	@Test
+	public void testReportsShareConnections() throws Exception
+	{
+		FakeProvider database = new FakeProvider();
+		SessionDataSourceProvider provider = new SessionDataSourceProvider(database);
+
+		JDBCConnection first = provider.getConnection("db");
+		JDBCConnection second = provider.getConnection("db");
+
+		assertEquals("select 1", first.runQuery("select 1").get(0)[0]);
+		assertEquals("select 2", second.runQuery("select 2").get(0)[0]);
+		first.close();
+		assertEquals("select 3", second.runQuery("select 3").get(0)[0]);
+
+		assertEquals(1, provider.getOpened());
+		assertEquals(1, database.opened.size());
+		assertFalse(database.opened.get(0).closed);
+
+		provider.getConnection("other");
+		assertEquals(2, provider.getOpened());
+
+		provider.close();
+
+		for(FakeConnection connection : database.opened)
+		{
+			assertTrue(connection.closed);
+		}
+	}
+
+	@Test
+	public void testFailedConnectionIsNotReused() throws Exception
+	{
+		FakeProvider database = new FakeProvider();
+		SessionDataSourceProvider provider = new SessionDataSourceProvider(database);
+
+		JDBCConnection connection = provider.getConnection("db");
+
+		try
+		{
+			connection.streamQuery("fail", new RowHandler()
+			{
+				@Override
+				public void handleRow(String[] row)
+				{
+				}
+			});
+			fail();
+		}
+		catch(SQLException e)
+		{
+		}
+
+		assertTrue(database.opened.get(0).closed);
+
+		assertEquals(1, connection.runQuery("select 1").size());
+		assertEquals(2, provider.getOpened());
+
+		provider.close();
+	}
+}
@@ -0,0 +1,641 @@
+package com.sutherland.hughes.datasources.standin;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+
+import com.sutherland.helios.exceptions.ExceptionFormatter;
+
+/**
+ * Fills the stand-in database with synthetic but production-shaped data: a roster of agents spread over teams, and for every weekday in
+ * the range each agent's CMS rows, orders, refunds, contacts, prospects and cases at roughly the rates seen in production. The data is
+ * generated from a fixed seed, so two runs with the same settings produce the same database and report timings can be compared.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class StandInDataGenerator
+{
+	public final static int DEFAULT_AGENTS = 2000;
+	public final static int DEFAULT_YEARS = 3;
+	public final static long DEFAULT_SEED = 20141001L;
+
+	private final static int TEAM_SIZE = 50;
+	private final static int BATCH_SIZE = 1000;
+	private final static int CMS_SPLITS = 2;
+	private final static int REFVALS_PER_LIST = 12;
+
+	private final static int SHIFT_START_HOUR = 8;
+	private final static int SHIFT_HOURS = 12;
+
+	private final static String[] SUPPORT_TYPES = {"151", "159"};
+	private final static String[] SERVICE_TYPES = {"14", "15"};
+	private final static String[] PROMO_CODES = {"RETSERVICE01", "RETSERVICE02", "WINBACK10", "GEN4UPGRADE", "NEWSALE"};
+	private final static String[] CASE_TYPES = {"151", "0", "1", "2"};
+	private final static int EXCLUDED_REFUND_TYPE = 20000570;
+
+	//first refval id of each dropdown
+	private final static int CUSTOMER_TYPE_REFVALS = 1000;
+	private final static int MARKETING_CALL_REASON_REFVALS = 1100;
+	private final static int L1_CENTER_REFVALS = 1200;
+	private final static int NO_SALE_REASON_REFVALS = 1300;
+	private final static int OOS_RTP_REASON_REFVALS = 1400;
+	private final static int SOURCE_OF_CHARGE_REFVALS = 1500;
+	private final static int REFUND_REASON_REFVALS = 1600;
+
+	private final static Logger logger = Logger.getLogger(StandInDataGenerator.class);
+
+	private int agents;
+	private int years;
+	private long seed;
+	private GregorianCalendar endDate;
+
+	//per agent, per weekday
+	private double ordersPerDay;
+	private double refundsPerDay;
+	private double contactsPerDay;
+	private double prospectsPerDay;
+	private double casesPerDay;
+
+	private Random random;
+
+	private int nextOrderID;
+	private int nextOrderDetailID;
+	private int nextRefundID;
+	private int nextContactID;
+	private int nextProspectID;
+	private int nextActivityID;
+
+	public StandInDataGenerator()
+	{
+		agents = DEFAULT_AGENTS;
+		years = DEFAULT_YEARS;
+		seed = DEFAULT_SEED;
+
+		endDate = new GregorianCalendar();
+		endDate.set(Calendar.HOUR_OF_DAY, 0);
+		endDate.set(Calendar.MINUTE, 0);
+		endDate.set(Calendar.SECOND, 0);
+		endDate.set(Calendar.MILLISECOND, 0);
+
+		ordersPerDay = 4.0;
+		refundsPerDay = 0.5;
+		contactsPerDay = 3.0;
+		prospectsPerDay = 2.5;
+		casesPerDay = 8.0;
+	}
+
+	public void setAgents(int agents)
+	{
+		this.agents = agents;
+	}
+
+	public void setYears(int years)
+	{
+		this.years = years;
+	}
+
+	public void setSeed(long seed)
+	{
+		this.seed = seed;
+	}
+
+	/**
+	 * Set the day after the last day of generated data. Defaults to today.
+	 *
+	 * @param endDate	The end date. Only the date is used.
+	 */
+	public void setEndDate(GregorianCalendar endDate)
+	{
+		this.endDate = new GregorianCalendar(endDate.get(Calendar.YEAR), endDate.get(Calendar.MONTH), endDate.get(Calendar.DAY_OF_MONTH));
+	}
+
+	public void setOrdersPerDay(double ordersPerDay)
+	{
+		this.ordersPerDay = ordersPerDay;
+	}
+
+	public void setRefundsPerDay(double refundsPerDay)
+	{
+		this.refundsPerDay = refundsPerDay;
+	}
+
+	public void setContactsPerDay(double contactsPerDay)
+	{
+		this.contactsPerDay = contactsPerDay;
+	}
+
+	public void setProspectsPerDay(double prospectsPerDay)
+	{
+		this.prospectsPerDay = prospectsPerDay;
+	}
+
+	public void setCasesPerDay(double casesPerDay)
+	{
+		this.casesPerDay = casesPerDay;
+	}
+
+	/**
+	 * Accessor for the user id of a generated agent, ie. to pick agents for report parameters.
+	 *
+	 * @param agent	The agent's index, from 0.
+	 *
+	 * @return	The user id.
+	 */
+	public static String getUserID(int agent)
+	{
+		return String.valueOf(100000 + agent);
+	}
+
+	/**
+	 * Accessor for the CMS login id of a generated agent.
+	 *
+	 * @param agent	The agent's index, from 0.
+	 *
+	 * @return	The CMS login id, which is the agent's extension.
+	 */
+	public static String getLogID(int agent)
+	{
+		return String.valueOf(50000 + agent);
+	}
+
+	/**
+	 * Accessor for the number of teams the agents are spread over, not counting the excluded Management and SGS teams.
+	 *
+	 * @param agents	The number of agents.
+	 *
+	 * @return	The team count.
+	 */
+	public static int getTeamCount(int agents)
+	{
+		return (agents + TEAM_SIZE - 1) / TEAM_SIZE;
+	}
+
+	/**
+	 * Accessor for the name of a generated team, ie. to pick teams for report parameters.
+	 *
+	 * @param team	The team's number, from 1.
+	 *
+	 * @return	The team name.
+	 */
+	public static String getTeamName(int team)
+	{
+		return "Team " + team;
+	}
+
+	/**
+	 * Generate the data. The tables are expected to exist and be empty.
+	 *
+	 * @param con	An open connection to the stand-in database. Its auto-commit is turned off, and the data committed a day at a time.
+	 *
+	 * @throws SQLException	If the data cannot be inserted.
+	 */
+	public void generate(Connection con) throws SQLException
+	{
+		random = new Random(seed);
+
+		nextOrderID = 1;
+		nextOrderDetailID = 1;
+		nextRefundID = 1;
+		nextContactID = 1;
+		nextProspectID = 1;
+		nextActivityID = 1;
+
+		con.setAutoCommit(false);
+
+		insertRefVals(con);
+		insertRoster(con);
+		con.commit();
+
+		GregorianCalendar day = (GregorianCalendar)endDate.clone();
+		day.add(Calendar.YEAR, -years);
+
+		int days = 0;
+
+		while(day.before(endDate))
+		{
+			int dayOfWeek = day.get(Calendar.DAY_OF_WEEK);
+
+			if(dayOfWeek != Calendar.SATURDAY && dayOfWeek != Calendar.SUNDAY)
+			{
+				insertDay(con, day);
+				con.commit();
+
+				if(++days % 20 == 0)
+				{
+					logger.info("Generated " + days + " days of stand-in data, through " + new Timestamp(day.getTimeInMillis()));
+				}
+			}
+
+			day.add(Calendar.DAY_OF_MONTH, 1);
+		}
+
+		logger.info("Generated " + days + " days of stand-in data for " + agents + " agents");
+	}
+
+	private void insertRefVals(Connection con) throws SQLException
+	{
+		PreparedStatement stmt = con.prepareStatement("INSERT INTO CRM_MST_REFVALUES (REFVAL_REFVALID, REFVAL_DISPLAYVALUE) VALUES (?, ?)");
+
+		try
+		{
+			addRefVals(stmt, CUSTOMER_TYPE_REFVALS, "Customer Type");
+			addRefVals(stmt, MARKETING_CALL_REASON_REFVALS, "Marketing Call Reason");
+			addRefVals(stmt, L1_CENTER_REFVALS, "L1 Center");
+			addRefVals(stmt, NO_SALE_REASON_REFVALS, "Reason For No Sale");
+			addRefVals(stmt, OOS_RTP_REASON_REFVALS, "OOS RTP Reason");
+			addRefVals(stmt, SOURCE_OF_CHARGE_REFVALS, "Source Of Charge");
+			addRefVals(stmt, REFUND_REASON_REFVALS, "Refund Reason");
+
+			stmt.executeBatch();
+		}
+		finally
+		{
+			stmt.close();
+		}
+	}
+
+	private static void addRefVals(PreparedStatement stmt, int firstID, String displayPrefix) throws SQLException
+	{
+		for(int i = 0; i < REFVALS_PER_LIST; i++)
+		{
+			stmt.setInt(1, firstID + i);
+			stmt.setString(2, displayPrefix + " " + (i + 1));
+			stmt.addBatch();
+		}
+	}
+
+	private void insertRoster(Connection con) throws SQLException
+	{
+		int teams = getTeamCount(agents);
+		Timestamp created = new Timestamp(endDate.getTimeInMillis());
+
+		PreparedStatement teamStmt = con.prepareStatement("INSERT INTO CRM_MST_USERTEAM (UTEAM_TEAMID, UTEAM_TEAMNAME, UTEAM_DESCRIPTION, UTEAM_CREATEDDATE, UTEAM_CREATEDBY) VALUES (?, ?, ?, ?, ?)");
+
+		try
+		{
+			for(int team = 1; team <= teams; team++)
+			{
+				addTeam(teamStmt, team, getTeamName(team), created);
+			}
+
+			//the roster leaves these out, so their agents shouldn't turn up in any report
+			addTeam(teamStmt, teams + 1, "Management", created);
+			addTeam(teamStmt, teams + 2, "SGS", created);
+
+			teamStmt.executeBatch();
+		}
+		finally
+		{
+			teamStmt.close();
+		}
+
+		PreparedStatement userStmt = con.prepareStatement("INSERT INTO CRM_MST_USER (USER_USERID, USER_LOGINNAME, USER_TEAMID, USER_FIRSTNAME, USER_LASTNAME, USER_EXTENSION, USER_SUPPORTTYPEID, USER_EMPID, USER_EMAILID, USER_LOGMEINLOGINNAME, USER_LOGMEINNODEID, USER_NTLOGINID, USER_RECORDSTATUS) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+
+		try
+		{
+			int teamID;
+			String loginName;
+
+			for(int agent = 0; agent < agents; agent++)
+			{
+				//one in a hundred agents sits on an excluded team
+				if(agent % 100 == 99)
+				{
+					teamID = teams + 1 + (agent / 100) % 2;
+				}
+				else
+				{
+					teamID = 1 + agent / TEAM_SIZE;
+				}
+
+				loginName = "agent" + agent;
+
+				userStmt.setString(1, getUserID(agent));
+				userStmt.setString(2, loginName);
+				userStmt.setInt(3, teamID);
+				userStmt.setString(4, "First" + agent);
+				userStmt.setString(5, "Last" + agent);
+				userStmt.setString(6, getLogID(agent));
+				userStmt.setString(7, SUPPORT_TYPES[agent % SUPPORT_TYPES.length]);
+				userStmt.setString(8, "E" + (200000 + agent));
+				userStmt.setString(9, loginName + "@example.com");
+				userStmt.setString(10, loginName + "@logmein.example.com");
+				userStmt.setString(11, String.valueOf(300000 + agent));
+				userStmt.setString(12, "CORP\\" + loginName);
+				userStmt.setString(13, "1");
+				userStmt.addBatch();
+
+				if(agent % BATCH_SIZE == BATCH_SIZE - 1)
+				{
+					userStmt.executeBatch();
+				}
+			}
+
+			userStmt.executeBatch();
+		}
+		finally
+		{
+			userStmt.close();
+		}
+	}
+
+	private static void addTeam(PreparedStatement stmt, int teamID, String teamName, Timestamp created) throws SQLException
+	{
+		stmt.setInt(1, teamID);
+		stmt.setString(2, teamName);
+		stmt.setString(3, teamName);
+		stmt.setTimestamp(4, created);
+		stmt.setString(5, "admin");
+		stmt.addBatch();
+	}
+
+	private void insertDay(Connection con, GregorianCalendar day) throws SQLException
+	{
+		PreparedStatement cmsStmt = null, orderStmt = null, detailStmt = null, refundStmt = null, contactStmt = null, prospectStmt = null, activityStmt = null;
+
+		try
+		{
+			cmsStmt = con.prepareStatement("INSERT INTO tbl_PFS_CMS_Hagent (row_date, split, logid, acdcalls, acdtime, acwtime, callsoffered) VALUES (?, ?, ?, ?, ?, ?, ?)");
+			orderStmt = con.prepareStatement("INSERT INTO CRM_TRN_ORDER (ORDER_ORDERID, ORDER_CREATEDBY, ORDER_CREATEDDATE, ORDER_PROMOCODE, ORDER_OPTCOL7) VALUES (?, ?, ?, ?, ?)");
+			detailStmt = con.prepareStatement("INSERT INTO CRM_TRN_ORDERDETAILS (ORDDET_ORDERDETAILID, ORDDET_ORDERID, ORDDET_CREATEDBY, ORDDET_CREATEDDATE, ORDDET_AMOUNT, ORDDET_SERVICETYPEID) VALUES (?, ?, ?, ?, ?, ?)");
+			refundStmt = con.prepareStatement("INSERT INTO CRM_TRN_REFUND (REFUND_REFUNDID, REFUND_ORDERID, REFUND_CREATEDBY, REFUND_CREATEDDATE, REFUND_REASON, REFUND_REFUNDAMOUNT, REFUND_REFUNDTYPEID) VALUES (?, ?, ?, ?, ?, ?, ?)");
+			contactStmt = con.prepareStatement("INSERT INTO CRM_MST_CONTACT (CONT_CONTACTID, CONT_CREATEDDATE, CONT_CUSTOMERTYPE, CONT_HSNID, CONT_PROMOTIONCODE, CONT_MARKETINGCALLREASON, CONT_L1CENTER) VALUES (?, ?, ?, ?, ?, ?, ?)");
+			prospectStmt = con.prepareStatement("INSERT INTO CRM_TRN_PROSPECT (PROSPECT_PROSPECTID, PROSPECT_CONTACTID, PROSPECT_CREATEDBY, PROSPECT_CREATEDDATE, PROSPECT_UPDATEDDATE, PROSPECT_PAGESOURCE, PROSPECT_OOSRTPREASONID, PROSPECT_SRCOFCHARGEID, PROSPECT_REASONFORNOSALE) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+			activityStmt = con.prepareStatement("INSERT INTO CRM_TRN_ACTIVITY (activity_activityid, activity_createdby, activity_createddate, activity_pagesource, activity_casetype) VALUES (?, ?, ?, ?, ?)");
+
+			Timestamp rowDate = new Timestamp(day.getTimeInMillis());
+			String userID;
+
+			for(int agent = 0; agent < agents; agent++)
+			{
+				userID = getUserID(agent);
+
+				addCMSRows(cmsStmt, rowDate, getLogID(agent));
+
+				for(int i = draw(ordersPerDay); i > 0; i--)
+				{
+					addOrder(orderStmt, detailStmt, userID, day);
+				}
+
+				for(int i = draw(refundsPerDay); i > 0; i--)
+				{
+					addRefund(refundStmt, userID, day);
+				}
+
+				for(int i = draw(contactsPerDay); i > 0; i--)
+				{
+					addContact(contactStmt, day);
+				}
+
+				for(int i = draw(prospectsPerDay); i > 0; i--)
+				{
+					addProspect(prospectStmt, userID, day);
+				}
+
+				for(int i = draw(casesPerDay); i > 0; i--)
+				{
+					addActivity(activityStmt, userID, day);
+				}
+
+				if(agent % BATCH_SIZE == BATCH_SIZE - 1)
+				{
+					executeBatches(cmsStmt, orderStmt, detailStmt, refundStmt, contactStmt, prospectStmt, activityStmt);
+				}
+			}
+
+			executeBatches(cmsStmt, orderStmt, detailStmt, refundStmt, contactStmt, prospectStmt, activityStmt);
+		}
+		finally
+		{
+			closeStatements(cmsStmt, orderStmt, detailStmt, refundStmt, contactStmt, prospectStmt, activityStmt);
+		}
+	}
+
+	private void addCMSRows(PreparedStatement stmt, Timestamp rowDate, String logID) throws SQLException
+	{
+		int calls, offered;
+
+		for(int split = 1; split <= CMS_SPLITS; split++)
+		{
+			calls = random.nextInt(30);
+			offered = calls + random.nextInt(5);
+
+			stmt.setTimestamp(1, rowDate);
+			stmt.setInt(2, split);
+			stmt.setString(3, logID);
+			stmt.setInt(4, calls);
+			stmt.setInt(5, calls * (240 + random.nextInt(360)));
+			stmt.setInt(6, calls * (30 + random.nextInt(90)));
+			stmt.setInt(7, offered);
+			stmt.addBatch();
+		}
+	}
+
+	private void addOrder(PreparedStatement orderStmt, PreparedStatement detailStmt, String userID, GregorianCalendar day) throws SQLException
+	{
+		int orderID = nextOrderID++;
+		Timestamp created = getTimeOfDay(day);
+
+		orderStmt.setInt(1, orderID);
+		orderStmt.setString(2, userID);
+		orderStmt.setTimestamp(3, created);
+		orderStmt.setString(4, pick(PROMO_CODES));
+		orderStmt.setString(5, "OPT" + random.nextInt(10));
+		orderStmt.addBatch();
+
+		for(int i = 1 + random.nextInt(2); i > 0; i--)
+		{
+			detailStmt.setInt(1, nextOrderDetailID++);
+			detailStmt.setInt(2, orderID);
+			detailStmt.setString(3, userID);
+			detailStmt.setTimestamp(4, created);
+			detailStmt.setBigDecimal(5, getAmount());
+			detailStmt.setString(6, pick(SERVICE_TYPES));
+			detailStmt.addBatch();
+		}
+	}
+
+	private void addRefund(PreparedStatement stmt, String userID, GregorianCalendar day) throws SQLException
+	{
+		stmt.setInt(1, nextRefundID++);
+		stmt.setInt(2, 1 + random.nextInt(Math.max(1, nextOrderID - 1)));
+		stmt.setString(3, userID);
+		stmt.setTimestamp(4, getTimeOfDay(day));
+		stmt.setInt(5, REFUND_REASON_REFVALS + random.nextInt(REFVALS_PER_LIST));
+		stmt.setBigDecimal(6, getAmount());
+		//the refund reports leave this type out
+		stmt.setInt(7, random.nextInt(10) == 0 ? EXCLUDED_REFUND_TYPE : 20000500 + random.nextInt(10));
+		stmt.addBatch();
+	}
+
+	private void addContact(PreparedStatement stmt, GregorianCalendar day) throws SQLException
+	{
+		int contactID = nextContactID++;
+
+		stmt.setInt(1, contactID);
+		stmt.setTimestamp(2, getTimeOfDay(day));
+		stmt.setInt(3, CUSTOMER_TYPE_REFVALS + random.nextInt(REFVALS_PER_LIST));
+		stmt.setString(4, "DSS" + (10000000 + contactID));
+		stmt.setString(5, random.nextInt(3) == 0 ? null : pick(PROMO_CODES));
+		stmt.setInt(6, MARKETING_CALL_REASON_REFVALS + random.nextInt(REFVALS_PER_LIST));
+		stmt.setInt(7, L1_CENTER_REFVALS + random.nextInt(REFVALS_PER_LIST));
+		stmt.addBatch();
+	}
+
+	private void addProspect(PreparedStatement stmt, String userID, GregorianCalendar day) throws SQLException
+	{
+		Timestamp created = getTimeOfDay(day);
+
+		stmt.setInt(1, nextProspectID++);
+		stmt.setInt(2, 1 + random.nextInt(Math.max(1, nextContactID - 1)));
+		stmt.setString(3, userID);
+		stmt.setTimestamp(4, created);
+		stmt.setTimestamp(5, created);
+		stmt.setString(6, "UPDATED");
+		stmt.setInt(7, OOS_RTP_REASON_REFVALS + random.nextInt(REFVALS_PER_LIST));
+		stmt.setInt(8, SOURCE_OF_CHARGE_REFVALS + random.nextInt(REFVALS_PER_LIST));
+
+		//not every prospect records why there was no sale
+		if(random.nextInt(4) == 0)
+		{
+			stmt.setNull(9, java.sql.Types.INTEGER);
+		}
+		else
+		{
+			stmt.setInt(9, NO_SALE_REASON_REFVALS + random.nextInt(REFVALS_PER_LIST));
+		}
+
+		stmt.addBatch();
+	}
+
+	private void addActivity(PreparedStatement stmt, String userID, GregorianCalendar day) throws SQLException
+	{
+		stmt.setInt(1, nextActivityID++);
+		stmt.setString(2, userID);
+		stmt.setTimestamp(3, getTimeOfDay(day));
+		stmt.setString(4, random.nextInt(5) < 3 ? "QUICKADD" : "Updated");
+		stmt.setString(5, pick(CASE_TYPES));
+		stmt.addBatch();
+	}
+
+	/**
+	 * Draw a whole number of events averaging the given rate.
+	 */
+	private int draw(double rate)
+	{
+		int retval = (int)rate;
+
+		if(random.nextDouble() < rate - retval)
+		{
+			retval++;
+		}
+
+		//spread the per-agent counts a little either side of the rate
+		if(retval > 0)
+		{
+			retval += random.nextInt(3) - 1;
+		}
+
+		return retval;
+	}
+
+	private Timestamp getTimeOfDay(GregorianCalendar day)
+	{
+		return new Timestamp(day.getTimeInMillis() + (SHIFT_START_HOUR * 3600L + random.nextInt(SHIFT_HOURS * 3600)) * 1000L);
+	}
+
+	private BigDecimal getAmount()
+	{
+		return BigDecimal.valueOf(1999 + random.nextInt(18000), 2);
+	}
+
+	private String pick(String[] values)
+	{
+		return values[random.nextInt(values.length)];
+	}
+
+	private static void executeBatches(PreparedStatement... stmts) throws SQLException
+	{
+		for(PreparedStatement stmt : stmts)
+		{
+			stmt.executeBatch();
+		}
+	}
+
+	private static void closeStatements(PreparedStatement... stmts) throws SQLException
+	{
+		for(PreparedStatement stmt : stmts)
+		{
+			if(stmt != null)
+			{
+				stmt.close();
+			}
+		}
+	}
+
+	/**
+	 * Create and fill a stand-in database.
+	 *
+	 * @param args	The JDBC url of the database, then optionally the number of agents and the number of years of data. The driver, user and
+	 * 				password are taken from the hughes.datasource.standin settings.
+	 */
+	public static void main(String[] args)
+	{
+		StandInDataSourceProvider provider = new StandInDataSourceProvider();
+
+		if(args.length > 0)
+		{
+			provider = new StandInDataSourceProvider(args[0], provider.getUserName(), provider.getPassword(), provider.getDriverClassName());
+		}
+
+		StandInDataGenerator generator = new StandInDataGenerator();
+
+		if(args.length > 1)
+		{
+			generator.setAgents(Integer.parseInt(args[1]));
+		}
+
+		if(args.length > 2)
+		{
+			generator.setYears(Integer.parseInt(args[2]));
+		}
+
+		Connection con = null;
+
+		try
+		{
+			con = provider.openConnection();
+
+			StandInSchema.create(con);
+			generator.generate(con);
+		}
+		catch (SQLException e)
+		{
+			logger.error("Stand-in data generation failed: " + ExceptionFormatter.asString(e));
+
+			System.exit(1);
+		}
+		finally
+		{
+			if(con != null)
+			{
+				try
+				{
+					con.close();
+				}
+				catch (SQLException e)
+				{
+					logger.warn("Could not close stand-in database connection: " + ExceptionFormatter.asString(e));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package com.sutherland.hughes.datasources.standin;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
+import com.sutherland.hughes.config.ReportingConfig;
+import com.sutherland.hughes.datasources.DataSourceProvider;
+import com.sutherland.hughes.datasources.JDBCConnection;
+
+/**
+ * Connects every report to the stand-in database instead of the database named by its property file. The stand-in is any JDBC database
+ * holding the tables in StandInSchema; by default an in-memory H2 database in SQL Server mode, so the report queries run unchanged. The
+ * driver jar is expected on the classpath of whatever is running against it.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class StandInDataSourceProvider implements DataSourceProvider
+{
+	public final static String DEFAULT_URL = "jdbc:h2:mem:hughes;MODE=MSSQLServer;DB_CLOSE_DELAY=-1";
+	public final static String DEFAULT_DRIVER = "org.h2.Driver";
+	public final static String DEFAULT_USER = "sa";
+	public final static String DEFAULT_PASS = "";
+	
+	private String url;
+	private String driverClassName;
+	private String userName;
+	private String password;
+	
+	/**
+	 * Build the provider from the hughes.datasource.standin settings.
+	 */
+	public StandInDataSourceProvider()
+	{
+		this
+		(
+			ReportingConfig.getString(ReportingConfig.STAND_IN_URL, DEFAULT_URL),
+			ReportingConfig.getString(ReportingConfig.STAND_IN_USER, DEFAULT_USER),
+			ReportingConfig.getString(ReportingConfig.STAND_IN_PASS, DEFAULT_PASS),
+			ReportingConfig.getString(ReportingConfig.STAND_IN_DRIVER, DEFAULT_DRIVER)
+		);
+	}
+	
+	/**
+	 * Build the provider.
+	 * 
+	 * @param url				The JDBC url of the stand-in database.
+	 * @param userName			The user to connect as.
+	 * @param password			The user's password.
+	 * @param driverClassName	The JDBC driver class.
+	 */
+	public StandInDataSourceProvider(String url, String userName, String password, String driverClassName)
+	{
+		this.url = url;
+		this.userName = userName;
+		this.password = password;
+		this.driverClassName = driverClassName;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.DataSourceProvider#getConnection(java.lang.String)
+	 */
+	@Override
+	public JDBCConnection getConnection(String dbPropFile) throws DatabaseConnectionCreationException
+	{
+		//every report reads the one CRM database, so the property file has nothing to pick between
+		return new JDBCConnection(url, userName, password, driverClassName);
+	}
+	
+	/**
+	 * Open a plain JDBC connection to the stand-in database, ie. to create the schema or load generated data.
+	 * 
+	 * @return	The connection. The caller is responsible for closing it.
+	 * 
+	 * @throws SQLException	If the driver cannot be loaded or the connection cannot be opened.
+	 */
+	public Connection openConnection() throws SQLException
+	{
+		try
+		{
+			Class.forName(driverClassName);
+		}
+		catch (ClassNotFoundException e)
+		{
+			throw new SQLException("Stand-in database driver not found: " + driverClassName, e);
+		}
+		
+		return DriverManager.getConnection(url, userName, password);
+	}
+
+	public String getUrl()
+	{
+		return url;
+	}
+
+	public String getUserName()
+	{
+		return userName;
+	}
+
+	public String getPassword()
+	{
+		return password;
+	}
+
+	public String getDriverClassName()
+	{
+		return driverClassName;
+	}
+}
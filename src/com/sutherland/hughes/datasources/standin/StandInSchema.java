@@ -0,0 +1,103 @@
+package com.sutherland.hughes.datasources.standin;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * The CRM and CMS tables the reports query, cut down to the columns they read. The types are plain SQL so the same statements work on
+ * SQL Server and on the embedded databases used as stand-ins.
+ *
+ * @author Jason Diamond
+ *
+ */
+public final class StandInSchema 
+{
+	public final static String[] TABLES = 
+	{
+		"CREATE TABLE CRM_MST_USERTEAM (" +
+			"UTEAM_TEAMID INT PRIMARY KEY, UTEAM_TEAMNAME VARCHAR(100), UTEAM_DESCRIPTION VARCHAR(255), UTEAM_CREATEDDATE DATETIME, " +
+			"UTEAM_CREATEDBY VARCHAR(20))",
+		"CREATE TABLE CRM_MST_USER (" +
+			"USER_USERID VARCHAR(20) PRIMARY KEY, USER_LOGINNAME VARCHAR(50), USER_TEAMID INT, USER_FIRSTNAME VARCHAR(50), " +
+			"USER_LASTNAME VARCHAR(50), USER_EXTENSION VARCHAR(20), USER_SUPPORTTYPEID VARCHAR(10), USER_EMPID VARCHAR(20), " +
+			"USER_EMAILID VARCHAR(100), USER_LOGMEINLOGINNAME VARCHAR(100), USER_LOGMEINNODEID VARCHAR(50), USER_NTLOGINID VARCHAR(50), " +
+			"USER_RECORDSTATUS VARCHAR(5))",
+		"CREATE TABLE CRM_MST_REFVALUES (" +
+			"REFVAL_REFVALID INT PRIMARY KEY, REFVAL_DISPLAYVALUE VARCHAR(100))",
+		"CREATE TABLE tbl_PFS_CMS_Hagent (" +
+			"row_date DATETIME, split INT, logid VARCHAR(20), acdcalls INT, acdtime INT, acwtime INT, callsoffered INT)",
+		"CREATE TABLE CRM_TRN_ORDER (" +
+			"ORDER_ORDERID INT PRIMARY KEY, ORDER_CREATEDBY VARCHAR(20), ORDER_CREATEDDATE DATETIME, ORDER_PROMOCODE VARCHAR(50), " +
+			"ORDER_OPTCOL7 VARCHAR(50))",
+		"CREATE TABLE CRM_TRN_ORDERDETAILS (" +
+			"ORDDET_ORDERDETAILID INT PRIMARY KEY, ORDDET_ORDERID INT, ORDDET_CREATEDBY VARCHAR(20), ORDDET_CREATEDDATE DATETIME, " +
+			"ORDDET_AMOUNT DECIMAL(12,2), ORDDET_SERVICETYPEID VARCHAR(10))",
+		"CREATE TABLE CRM_TRN_REFUND (" +
+			"REFUND_REFUNDID INT PRIMARY KEY, REFUND_ORDERID INT, REFUND_CREATEDBY VARCHAR(20), REFUND_CREATEDDATE DATETIME, " +
+			"REFUND_REASON INT, REFUND_REFUNDAMOUNT DECIMAL(12,2), REFUND_REFUNDTYPEID INT)",
+		"CREATE TABLE CRM_MST_CONTACT (" +
+			"CONT_CONTACTID INT PRIMARY KEY, CONT_CREATEDDATE DATETIME, CONT_CUSTOMERTYPE INT, CONT_HSNID VARCHAR(20), " +
+			"CONT_PROMOTIONCODE VARCHAR(50), CONT_MARKETINGCALLREASON INT, CONT_L1CENTER INT)",
+		"CREATE TABLE CRM_TRN_PROSPECT (" +
+			"PROSPECT_PROSPECTID INT PRIMARY KEY, PROSPECT_CONTACTID INT, PROSPECT_CREATEDBY VARCHAR(20), PROSPECT_CREATEDDATE DATETIME, " +
+			"PROSPECT_UPDATEDDATE DATETIME, PROSPECT_PAGESOURCE VARCHAR(20), PROSPECT_OOSRTPREASONID INT, PROSPECT_SRCOFCHARGEID INT, " +
+			"PROSPECT_REASONFORNOSALE INT)",
+		"CREATE TABLE CRM_TRN_ACTIVITY (" +
+			"activity_activityid INT PRIMARY KEY, activity_createdby VARCHAR(20), activity_createddate DATETIME, " +
+			"activity_pagesource VARCHAR(20), activity_casetype VARCHAR(10))"
+	};
+	
+	//every report query is a date range over one of these
+	public final static String[] INDEXES = 
+	{
+		"CREATE INDEX IX_HAGENT_ROWDATE ON tbl_PFS_CMS_Hagent (row_date)",
+		"CREATE INDEX IX_HAGENT_LOGID ON tbl_PFS_CMS_Hagent (logid)",
+		"CREATE INDEX IX_ORDER_CREATEDDATE ON CRM_TRN_ORDER (ORDER_CREATEDDATE)",
+		"CREATE INDEX IX_ORDDET_CREATEDDATE ON CRM_TRN_ORDERDETAILS (ORDDET_CREATEDDATE)",
+		"CREATE INDEX IX_ORDDET_ORDERID ON CRM_TRN_ORDERDETAILS (ORDDET_ORDERID)",
+		"CREATE INDEX IX_REFUND_CREATEDDATE ON CRM_TRN_REFUND (REFUND_CREATEDDATE)",
+		"CREATE INDEX IX_CONT_CREATEDDATE ON CRM_MST_CONTACT (CONT_CREATEDDATE)",
+		"CREATE INDEX IX_PROSPECT_CREATEDDATE ON CRM_TRN_PROSPECT (PROSPECT_CREATEDDATE)",
+		"CREATE INDEX IX_PROSPECT_CONTACTID ON CRM_TRN_PROSPECT (PROSPECT_CONTACTID)",
+		"CREATE INDEX IX_ACTIVITY_CREATEDDATE ON CRM_TRN_ACTIVITY (activity_createddate)"
+	};
+	
+	private StandInSchema()
+	{
+	}
+	
+	/**
+	 * Create the tables and indexes.
+	 * 
+	 * @param con	An open connection to an empty stand-in database.
+	 * 
+	 * @throws SQLException	If a statement fails, ie. the tables already exist.
+	 */
+	public static void create(Connection con) throws SQLException
+	{
+		Statement stmt = null;
+		
+		try
+		{
+			stmt = con.createStatement();
+			
+			for(String ddl : TABLES)
+			{
+				stmt.execute(ddl);
+			}
+			
+			for(String ddl : INDEXES)
+			{
+				stmt.execute(ddl);
+			}
+		}
+		finally
+		{
+			if(stmt != null)
+			{
+				stmt.close();
+			}
+		}
+	}
+}
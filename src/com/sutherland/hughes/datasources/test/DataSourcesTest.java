@@ -0,0 +1,71 @@
+/**
+ *
+ */
+package com.sutherland.hughes.datasources.test;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
+import com.sutherland.hughes.datasources.DataSourceProvider;
+import com.sutherland.hughes.datasources.DataSources;
+import com.sutherland.hughes.datasources.JDBCConnection;
+import com.sutherland.hughes.datasources.standin.StandInDataSourceProvider;
+
+/**
+ * @author Jason Diamond
+ *
+ */
+public class DataSourcesTest extends TestCase
+{
+	public void tearDown()
+	{
+		DataSources.setProvider(null);
+	}
+
+	@Test
+	public void testProviderIsUsed() throws DatabaseConnectionCreationException
+	{
+		final StringBuilder requested = new StringBuilder();
+
+		DataSources.setProvider(new DataSourceProvider()
+		{
+			@Override
+			public JDBCConnection getConnection(String dbPropFile) throws DatabaseConnectionCreationException
+			{
+				requested.append(dbPropFile);
+
+				throw new DatabaseConnectionCreationException("no database here");
+			}
+		});
+
+		try
+		{
+			DataSources.getConnection("test.properties");
+
+			fail("Expected the provider's exception");
+		}
+		catch(DatabaseConnectionCreationException e)
+		{
+			assertEquals("test.properties", requested.toString());
+		}
+	}
+
+	@Test
+	public void testMissingStandInDriverFails()
+	{
+		DataSources.setProvider(new StandInDataSourceProvider("jdbc:nowhere:hughes", "sa", "", "org.example.NoSuchDriver"));
+
+		try
+		{
+			DataSources.getConnection("test.properties");
+
+			fail("Expected the connection to fail");
+		}
+		catch(DatabaseConnectionCreationException e)
+		{
+			//never quietly fall back to the production database
+		}
+	}
+}
@@ -0,0 +1,213 @@
+package com.sutherland.hughes.jobs;
+
+import java.util.BitSet;
+import java.util.Calendar;
+
+/**
+ * When a job runs, as the five fields of a crontab line: minute, hour, day of month, month and day of week, ie. "30 2 * * *" for 2:30
+ * every night or "0 6 * * 1-5" for 6:00 on weekdays. Each field is *, a number or a range a-b, any of those followed by /step, or a comma
+ * separated list of them. Days of the week run 0-6 from Sunday, and 7 is also Sunday. As in cron, when both day fields are restricted a
+ * day matching either of them runs. Times are in the JVM's time zone.
+ *
+ * @author Jason Diamond
+ *
+ */
+public final class CronSchedule
+{
+	//a step moves on at least to the next day whose day fields don't match, this is centuries of them
+	private final static int MAX_STEPS = 100000;
+
+	private final String expression;
+	private final BitSet minutes;
+	private final BitSet hours;
+	private final BitSet daysOfMonth;
+	private final BitSet months;
+	private final BitSet daysOfWeek;
+	private final boolean anyDayOfMonth;
+	private final boolean anyDayOfWeek;
+
+	private CronSchedule(String expression, String[] fields)
+	{
+		this.expression = expression;
+
+		minutes = parseField(fields[0], 0, 59);
+		hours = parseField(fields[1], 0, 23);
+		daysOfMonth = parseField(fields[2], 1, 31);
+		months = parseField(fields[3], 1, 12);
+		daysOfWeek = parseField(fields[4], 0, 7);
+
+		//7 is Sunday too
+		if(daysOfWeek.get(7))
+		{
+			daysOfWeek.set(0);
+		}
+
+		anyDayOfMonth = fields[2].equals("*");
+		anyDayOfWeek = fields[4].equals("*");
+	}
+
+	/**
+	 * Parse a cron expression.
+	 *
+	 * @param expression	The expression, ie. "30 2 * * *".
+	 *
+	 * @return	The schedule.
+	 *
+	 * @throws IllegalArgumentException	If the expression is malformed.
+	 */
+	public static CronSchedule parse(String expression)
+	{
+		String[] fields = expression.trim().split("\\s+");
+
+		if(fields.length != 5)
+		{
+			throw new IllegalArgumentException("Expected 5 fields in cron expression " + expression);
+		}
+
+		return new CronSchedule(expression.trim(), fields);
+	}
+
+	private static BitSet parseField(String field, int min, int max)
+	{
+		BitSet retval = new BitSet(max + 1);
+
+		String range;
+		int step, slash, dash, start, end;
+		for(String part : field.split(","))
+		{
+			slash = part.indexOf('/');
+			range = slash < 0 ? part : part.substring(0, slash);
+
+			try
+			{
+				step = slash < 0 ? 1 : Integer.parseInt(part.substring(slash + 1));
+
+				if(range.equals("*"))
+				{
+					start = min;
+					end = max;
+				}
+				else
+				{
+					dash = range.indexOf('-');
+
+					if(dash < 0)
+					{
+						start = Integer.parseInt(range);
+						end = slash < 0 ? start : max;
+					}
+					else
+					{
+						start = Integer.parseInt(range.substring(0, dash));
+						end = Integer.parseInt(range.substring(dash + 1));
+					}
+				}
+			}
+			catch(NumberFormatException e)
+			{
+				throw new IllegalArgumentException("Malformed cron field " + field);
+			}
+
+			if(start < min || end > max || start > end || step < 1)
+			{
+				throw new IllegalArgumentException("Cron field " + field + " is outside " + min + "-" + max);
+			}
+
+			for(int i = start; i <= end; i += step)
+			{
+				retval.set(i);
+			}
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Find the next time the schedule fires.
+	 *
+	 * @param afterMillis	The time to start looking from.
+	 *
+	 * @return	The first whole minute strictly after afterMillis that the schedule fires at.
+	 *
+	 * @throws IllegalStateException	If the schedule never fires, ie. on the 31st of February.
+	 */
+	public long next(long afterMillis)
+	{
+		long retval = -1;
+
+		Calendar next = Calendar.getInstance();
+		next.setTimeInMillis(afterMillis);
+		next.set(Calendar.SECOND, 0);
+		next.set(Calendar.MILLISECOND, 0);
+		next.add(Calendar.MINUTE, 1);
+
+		for(int i = 0; i < MAX_STEPS && retval < 0; i++)
+		{
+			if(!months.get(next.get(Calendar.MONTH) + 1))
+			{
+				next.add(Calendar.MONTH, 1);
+				next.set(Calendar.DAY_OF_MONTH, 1);
+				next.set(Calendar.HOUR_OF_DAY, 0);
+				next.set(Calendar.MINUTE, 0);
+			}
+			else if(!isRunDay(next))
+			{
+				next.add(Calendar.DAY_OF_MONTH, 1);
+				next.set(Calendar.HOUR_OF_DAY, 0);
+				next.set(Calendar.MINUTE, 0);
+			}
+			else if(!hours.get(next.get(Calendar.HOUR_OF_DAY)))
+			{
+				next.add(Calendar.HOUR_OF_DAY, 1);
+				next.set(Calendar.MINUTE, 0);
+			}
+			else if(!minutes.get(next.get(Calendar.MINUTE)))
+			{
+				next.add(Calendar.MINUTE, 1);
+			}
+			else
+			{
+				retval = next.getTimeInMillis();
+			}
+		}
+
+		if(retval < 0)
+		{
+			throw new IllegalStateException("Cron expression " + expression + " never fires");
+		}
+
+		return retval;
+	}
+
+	private boolean isRunDay(Calendar day)
+	{
+		boolean retval;
+
+		boolean dayOfMonth = daysOfMonth.get(day.get(Calendar.DAY_OF_MONTH));
+		boolean dayOfWeek = daysOfWeek.get(day.get(Calendar.DAY_OF_WEEK) - Calendar.SUNDAY);
+
+		if(anyDayOfMonth)
+		{
+			retval = dayOfWeek;
+		}
+		else if(anyDayOfWeek)
+		{
+			retval = dayOfMonth;
+		}
+		else
+		{
+			retval = dayOfMonth || dayOfWeek;
+		}
+
+		return retval;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString()
+	{
+		return expression;
+	}
+}
@@ -0,0 +1,26 @@
+package com.sutherland.hughes.jobs;
+
+/**
+ * Background work a JobScheduler runs on a CronSchedule, ie. precomputing reports overnight.
+ *
+ * @author Jason Diamond
+ *
+ */
+public interface Job
+{
+	/**
+	 * Accessor for the job's name, unique within its scheduler.
+	 *
+	 * @return	The name.
+	 */
+	String getName();
+
+	/**
+	 * Do the job's work.
+	 *
+	 * @param attempt	0 for a scheduled run, or which retry this is after the run failed.
+	 *
+	 * @throws Exception	If the work failed, to have it retried.
+	 */
+	void run(int attempt) throws Exception;
+}
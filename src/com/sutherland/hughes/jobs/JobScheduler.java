@@ -0,0 +1,158 @@
+package com.sutherland.hughes.jobs;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import com.sutherland.hughes.report.execution.RequestContext;
+
+/**
+ * Runs Jobs on CronSchedules, on a fixed number of low priority daemon threads. At most that many jobs run at once; a job that comes due
+ * while they're all busy waits for one to finish. A failed run is retried a few times with a growing delay before the job goes back to its
+ * schedule.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class JobScheduler
+{
+	private final static String THREAD_NAME_PREFIX = "hughes-jobs-";
+
+	private final static Logger logger = Logger.getLogger(JobScheduler.class);
+
+	private final ScheduledThreadPoolExecutor executor;
+	private final int maxRetries;
+	private final long retryDelayMillis;
+	private final LinkedHashMap<String, ScheduledJob> jobs;
+
+	/**
+	 * Build a scheduler.
+	 *
+	 * @param threads			The most jobs to run at once.
+	 * @param maxRetries		How many times to retry a failed run before waiting for the job's next scheduled run.
+	 * @param retryDelayMillis	How long to wait before the first retry. Each retry after waits that much longer.
+	 */
+	public JobScheduler(int threads, int maxRetries, long retryDelayMillis)
+	{
+		this.maxRetries = maxRetries;
+		this.retryDelayMillis = retryDelayMillis;
+
+		jobs = new LinkedHashMap<String, ScheduledJob>();
+
+		//a job's thread may be started while a request is being served, and mustn't carry that request's budget or trace into its runs
+		final ThreadFactory pooledThreads = RequestContext.pooledThreads(THREAD_NAME_PREFIX);
+
+		executor = new ScheduledThreadPoolExecutor(Math.max(1, threads), new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable runnable)
+			{
+				Thread retval = pooledThreads.newThread(runnable);
+
+				retval.setPriority(Thread.MIN_PRIORITY);
+
+				return retval;
+			}
+		});
+
+		executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+	}
+
+	/**
+	 * Add a job, to run the next time its schedule fires.
+	 *
+	 * @param job		The job.
+	 * @param schedule	When it runs.
+	 *
+	 * @return	The scheduled job, for its status.
+	 *
+	 * @throws IllegalArgumentException	If a job with the same name is already scheduled.
+	 */
+	public synchronized ScheduledJob schedule(Job job, CronSchedule schedule)
+	{
+		if(jobs.containsKey(job.getName()))
+		{
+			throw new IllegalArgumentException("Job " + job.getName() + " is already scheduled");
+		}
+
+		ScheduledJob retval = new ScheduledJob(job, schedule, this);
+
+		jobs.put(job.getName(), retval);
+
+		retval.scheduleNext(System.currentTimeMillis());
+
+		logger.info("Scheduled job " + job.getName() + " at " + schedule + ", next run " + retval.getNextRun());
+
+		return retval;
+	}
+
+	ScheduledFuture<?> submit(Runnable job, long delayMillis)
+	{
+		return executor.schedule(job, Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Accessor for a job.
+	 *
+	 * @param name	The job's name.
+	 *
+	 * @return	The job, or null if there's none by that name.
+	 */
+	public synchronized ScheduledJob getJob(String name)
+	{
+		return jobs.get(name);
+	}
+
+	/**
+	 * Accessor for every job.
+	 *
+	 * @return	The jobs, in the order they were scheduled.
+	 */
+	public synchronized List<ScheduledJob> getJobs()
+	{
+		return new ArrayList<ScheduledJob>(jobs.values());
+	}
+
+	public int getMaxRetries()
+	{
+		return maxRetries;
+	}
+
+	public long getRetryDelayMillis()
+	{
+		return retryDelayMillis;
+	}
+
+	/**
+	 * Cancel every job's next run, and interrupt the jobs running now. Waits a few seconds for them to stop.
+	 *
+	 * @param waitMillis	How long to wait for running jobs to stop.
+	 */
+	public void shutdown(long waitMillis)
+	{
+		for(ScheduledJob job : getJobs())
+		{
+			job.cancel();
+		}
+
+		executor.shutdownNow();
+
+		try
+		{
+			if(!executor.awaitTermination(waitMillis, TimeUnit.MILLISECONDS))
+			{
+				logger.warn("Jobs still running after shutdown");
+			}
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+}
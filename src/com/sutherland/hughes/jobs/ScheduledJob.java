@@ -0,0 +1,315 @@
+package com.sutherland.hughes.jobs;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+
+import org.apache.log4j.Logger;
+
+import com.sutherland.helios.exceptions.ExceptionFormatter;
+import com.sutherland.hughes.trace.TraceNode;
+
+/**
+ * A job on a JobScheduler, with its schedule and the status of its runs. After a run it's scheduled again for the next time its
+ * CronSchedule fires, or, if the run failed and it has retries left, after the scheduler's retry delay times the number of the retry. A job
+ * never runs twice at once.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class ScheduledJob implements Runnable, ScheduledJobMBean
+{
+	private final static String TIME_FORMAT = "yyyy-MM-dd HH:mm:ss";
+
+	private final static Logger logger = Logger.getLogger(ScheduledJob.class);
+
+	private final Job job;
+	private final CronSchedule schedule;
+	private final JobScheduler scheduler;
+
+	private ScheduledFuture<?> pending;
+	private long nextRunMillis;
+	private boolean running;
+	private int attempt;
+	private long runs;
+	private long failures;
+	private int consecutiveFailures;
+	private long lastStartMillis;
+	private long lastDurationMillis;
+	private String lastError;
+
+	ScheduledJob(Job job, CronSchedule schedule, JobScheduler scheduler)
+	{
+		this.job = job;
+		this.schedule = schedule;
+		this.scheduler = scheduler;
+
+		nextRunMillis = -1;
+		lastStartMillis = -1;
+	}
+
+	/**
+	 * Queue the job for the next time its schedule fires.
+	 *
+	 * @param nowMillis	The current time.
+	 */
+	synchronized void scheduleNext(long nowMillis)
+	{
+		attempt = 0;
+
+		submit(schedule.next(nowMillis), nowMillis);
+	}
+
+	private void submit(long runMillis, long nowMillis)
+	{
+		if(pending != null)
+		{
+			pending.cancel(false);
+		}
+
+		try
+		{
+			pending = scheduler.submit(this, runMillis - nowMillis);
+			nextRunMillis = runMillis;
+		}
+		catch(RejectedExecutionException e)
+		{
+			//the scheduler has been shut down
+			pending = null;
+			nextRunMillis = -1;
+		}
+	}
+
+	/**
+	 * Cancel the job's next run.
+	 */
+	synchronized void cancel()
+	{
+		if(pending != null)
+		{
+			pending.cancel(false);
+			pending = null;
+		}
+
+		nextRunMillis = -1;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.jobs.ScheduledJobMBean#runNow()
+	 */
+	@Override
+	public synchronized void runNow()
+	{
+		if(!running)
+		{
+			long now = System.currentTimeMillis();
+
+			attempt = 0;
+
+			submit(now, now);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run()
+	{
+		int thisAttempt;
+
+		synchronized(this)
+		{
+			if(running)
+			{
+				return;
+			}
+
+			running = true;
+			pending = null;
+			nextRunMillis = -1;
+			thisAttempt = attempt;
+			lastStartMillis = System.currentTimeMillis();
+			runs++;
+		}
+
+		//anything but an Exception is left to the executor, but still counts as a failure
+		String error = "Did not finish";
+		long start = System.nanoTime();
+
+		try
+		{
+			job.run(thisAttempt);
+
+			error = null;
+		}
+		catch(Exception e)
+		{
+			error = e.getMessage() == null ? e.toString() : e.getMessage();
+
+			logger.error("Job " + job.getName() + " failed: " + ExceptionFormatter.asString(e));
+		}
+		finally
+		{
+			synchronized(this)
+			{
+				running = false;
+				lastDurationMillis = (System.nanoTime() - start) / 1000000;
+				lastError = error;
+
+				long now = System.currentTimeMillis();
+
+				if(error == null)
+				{
+					consecutiveFailures = 0;
+
+					logger.info("Job " + job.getName() + " finished in " + lastDurationMillis + " ms");
+
+					scheduleNext(now);
+				}
+				else
+				{
+					failures++;
+					consecutiveFailures++;
+
+					if(attempt < scheduler.getMaxRetries())
+					{
+						attempt++;
+
+						long delay = scheduler.getRetryDelayMillis() * attempt;
+
+						logger.warn("Retrying job " + job.getName() + " in " + delay / 1000 + " s, retry " + attempt + " of " + scheduler.getMaxRetries());
+
+						submit(now + delay, now);
+					}
+					else
+					{
+						scheduleNext(now);
+					}
+				}
+			}
+		}
+	}
+
+	public Job getJob()
+	{
+		return job;
+	}
+
+	@Override
+	public String getName()
+	{
+		return job.getName();
+	}
+
+	@Override
+	public String getSchedule()
+	{
+		return schedule.toString();
+	}
+
+	@Override
+	public synchronized String getState()
+	{
+		String retval;
+
+		if(running)
+		{
+			retval = "running";
+		}
+		else if(attempt > 0)
+		{
+			retval = "retrying";
+		}
+		else
+		{
+			retval = "scheduled";
+		}
+
+		return retval;
+	}
+
+	@Override
+	public synchronized long getRuns()
+	{
+		return runs;
+	}
+
+	@Override
+	public synchronized long getFailures()
+	{
+		return failures;
+	}
+
+	@Override
+	public synchronized int getConsecutiveFailures()
+	{
+		return consecutiveFailures;
+	}
+
+	@Override
+	public synchronized String getLastStart()
+	{
+		return formatTime(lastStartMillis);
+	}
+
+	@Override
+	public synchronized long getLastDurationMillis()
+	{
+		return lastDurationMillis;
+	}
+
+	@Override
+	public synchronized String getLastError()
+	{
+		return lastError;
+	}
+
+	@Override
+	public synchronized String getNextRun()
+	{
+		return formatTime(nextRunMillis);
+	}
+
+	/**
+	 * Accessor for when the job runs next.
+	 *
+	 * @return	The time, in milliseconds since the epoch, or -1 if it isn't scheduled.
+	 */
+	public synchronized long getNextRunMillis()
+	{
+		return nextRunMillis;
+	}
+
+	private static String formatTime(long millis)
+	{
+		return millis < 0 ? null : new SimpleDateFormat(TIME_FORMAT).format(new Date(millis));
+	}
+
+	/**
+	 * Write the job's status as a JSON object.
+	 *
+	 * @param out	Where to write it.
+	 */
+	public synchronized void appendJSON(StringBuilder out)
+	{
+		out.append("{\"name\":");
+		TraceNode.appendString(out, getName());
+		out.append(",\"schedule\":");
+		TraceNode.appendString(out, getSchedule());
+		out.append(",\"state\":");
+		TraceNode.appendString(out, getState());
+		out.append(",\"runs\":").append(runs);
+		out.append(",\"failures\":").append(failures);
+		out.append(",\"consecutiveFailures\":").append(consecutiveFailures);
+		out.append(",\"lastStart\":");
+		TraceNode.appendString(out, getLastStart());
+		out.append(",\"lastDurationMillis\":").append(lastDurationMillis);
+		out.append(",\"lastError\":");
+		TraceNode.appendString(out, lastError);
+		out.append(",\"nextRun\":");
+		TraceNode.appendString(out, getNextRun());
+		out.append('}');
+	}
+}
@@ -0,0 +1,50 @@
+package com.sutherland.hughes.jobs;
+
+/**
+ * The JMX view of a ScheduledJob.
+ *
+ * @author Jason Diamond
+ *
+ */
+public interface ScheduledJobMBean
+{
+	String getName();
+
+	/**
+	 * @return	The job's cron expression.
+	 */
+	String getSchedule();
+
+	/**
+	 * @return	scheduled, running or retrying.
+	 */
+	String getState();
+
+	long getRuns();
+
+	long getFailures();
+
+	int getConsecutiveFailures();
+
+	/**
+	 * @return	When the job last started, or null if it hasn't run.
+	 */
+	String getLastStart();
+
+	long getLastDurationMillis();
+
+	/**
+	 * @return	Why the last run failed, or null if it succeeded.
+	 */
+	String getLastError();
+
+	/**
+	 * @return	When the job runs next, or null if it isn't scheduled.
+	 */
+	String getNextRun();
+
+	/**
+	 * Run the job as soon as a scheduler thread is free, unless it's already running.
+	 */
+	void runNow();
+}
@@ -0,0 +1,198 @@
+/**
+ *
+ */
+package com.sutherland.hughes.jobs.test;
+
+import java.util.Calendar;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.sutherland.hughes.jobs.CronSchedule;
+import com.sutherland.hughes.jobs.Job;
+import com.sutherland.hughes.jobs.JobScheduler;
+import com.sutherland.hughes.jobs.ScheduledJob;
+import com.sutherland.hughes.report.execution.ResourceBudget;
+
+/**
+ * @author Jason Diamond
+ *
+ */
+public class JobSchedulerTest extends TestCase
+{
+	private static long time(int year, int month, int day, int hour, int minute)
+	{
+		Calendar retval = Calendar.getInstance();
+		retval.clear();
+		retval.set(year, month, day, hour, minute, 0);
+
+		return retval.getTimeInMillis();
+	}
+
+	@Test
+	public void testCronNextRun()
+	{
+		CronSchedule nightly = CronSchedule.parse("30 1 * * *");
+		assertEquals(time(2014, Calendar.OCTOBER, 9, 1, 30), nightly.next(time(2014, Calendar.OCTOBER, 8, 14, 30)));
+		assertEquals(time(2014, Calendar.OCTOBER, 9, 1, 30), nightly.next(time(2014, Calendar.OCTOBER, 9, 1, 29)));
+
+		//strictly after
+		assertEquals(time(2014, Calendar.OCTOBER, 10, 1, 30), nightly.next(time(2014, Calendar.OCTOBER, 9, 1, 30)));
+
+		CronSchedule hourly = CronSchedule.parse("0 * * * *");
+		assertEquals(time(2014, Calendar.DECEMBER, 31, 23, 0), hourly.next(time(2014, Calendar.DECEMBER, 31, 22, 5)));
+		assertEquals(time(2015, Calendar.JANUARY, 1, 0, 0), hourly.next(time(2014, Calendar.DECEMBER, 31, 23, 5)));
+
+		//October 8th 2014 is a Wednesday
+		CronSchedule weekdays = CronSchedule.parse("0 6 * * 1-5");
+		assertEquals(time(2014, Calendar.OCTOBER, 13, 6, 0), weekdays.next(time(2014, Calendar.OCTOBER, 10, 7, 0)));
+
+		CronSchedule everyQuarterHour = CronSchedule.parse("*/15 9-10 1,15 * *");
+		assertEquals(time(2014, Calendar.OCTOBER, 15, 9, 0), everyQuarterHour.next(time(2014, Calendar.OCTOBER, 8, 14, 30)));
+		assertEquals(time(2014, Calendar.OCTOBER, 15, 9, 45), everyQuarterHour.next(time(2014, Calendar.OCTOBER, 15, 9, 30)));
+
+		String[] malformed = { "30 1 * *", "60 1 * * *", "a 1 * * *", "0 0 0 * *", "5-1 * * * *" };
+		for(String expression : malformed)
+		{
+			try
+			{
+				CronSchedule.parse(expression);
+				fail(expression);
+			}
+			catch(IllegalArgumentException e)
+			{
+			}
+		}
+
+		try
+		{
+			CronSchedule.parse("0 0 31 2 *").next(time(2014, Calendar.OCTOBER, 8, 14, 30));
+			fail();
+		}
+		catch(IllegalStateException e)
+		{
+		}
+	}
+
+	@Test
+	public void testFailedRunsAreRetried() throws Exception
+	{
+		final AtomicInteger attempts = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(1);
+
+		JobScheduler scheduler = new JobScheduler(1, 2, 10);
+
+		try
+		{
+			//scheduled for a day that never comes around during the test, then run by hand
+			ScheduledJob job = scheduler.schedule(new Job()
+			{
+				@Override
+				public String getName()
+				{
+					return "flaky";
+				}
+
+				@Override
+				public void run(int attempt) throws Exception
+				{
+					attempts.incrementAndGet();
+
+					if(attempt < 2)
+					{
+						throw new Exception("Attempt " + attempt + " failed");
+					}
+
+					done.countDown();
+				}
+			}, CronSchedule.parse("0 0 1 1 *"));
+
+			assertEquals("scheduled", job.getState());
+			assertTrue(job.getNextRunMillis() > System.currentTimeMillis());
+
+			job.runNow();
+
+			assertTrue(done.await(5, TimeUnit.SECONDS));
+
+			//back on its schedule once the last retry finishes
+			long deadline = System.currentTimeMillis() + 5000;
+			while(!job.getState().equals("scheduled") && System.currentTimeMillis() < deadline)
+			{
+				Thread.sleep(10);
+			}
+
+			assertEquals(3, attempts.get());
+			assertEquals(3, job.getRuns());
+			assertEquals(2, job.getFailures());
+			assertEquals(0, job.getConsecutiveFailures());
+			assertNull(job.getLastError());
+			assertEquals("scheduled", job.getState());
+
+			try
+			{
+				scheduler.schedule(job.getJob(), CronSchedule.parse("0 0 1 1 *"));
+				fail();
+			}
+			catch(IllegalArgumentException e)
+			{
+			}
+
+			StringBuilder json = new StringBuilder();
+			job.appendJSON(json);
+			assertTrue(json.toString(), json.toString().startsWith("{\"name\":\"flaky\",\"schedule\":\"0 0 1 1 *\",\"state\":\"scheduled\",\"runs\":3"));
+		}
+		finally
+		{
+			scheduler.shutdown(1000);
+		}
+	}
+
+	@Test
+	public void testJobsDontInheritTheRequestTheyStartedIn() throws Exception
+	{
+		final AtomicReference<Object> jobBudget = new AtomicReference<Object>("not run");
+		final AtomicReference<String> jobThread = new AtomicReference<String>();
+		final CountDownLatch done = new CountDownLatch(1);
+
+		JobScheduler scheduler = new JobScheduler(1, 0, 10);
+
+		//the scheduler's thread is started from a thread serving a request
+		ResourceBudget.setCurrent(ResourceBudget.forReport("JobSchedulerTest"));
+
+		try
+		{
+			scheduler.schedule(new Job()
+			{
+				@Override
+				public String getName()
+				{
+					return "context";
+				}
+
+				@Override
+				public void run(int attempt)
+				{
+					jobBudget.set(ResourceBudget.getCurrent());
+					jobThread.set(Thread.currentThread().getName() + " " + Thread.currentThread().getPriority());
+
+					done.countDown();
+				}
+			}, CronSchedule.parse("0 0 1 1 *")).runNow();
+
+			assertTrue(done.await(5, TimeUnit.SECONDS));
+
+			assertNull(jobBudget.get());
+			assertEquals("hughes-jobs-1 " + Thread.MIN_PRIORITY, jobThread.get());
+		}
+		finally
+		{
+			ResourceBudget.setCurrent(null);
+			scheduler.shutdown(1000);
+		}
+	}
+}
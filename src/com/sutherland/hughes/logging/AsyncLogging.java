@@ -0,0 +1,130 @@
+package com.sutherland.hughes.logging;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+
+import org.apache.log4j.Appender;
+import org.apache.log4j.AsyncAppender;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.sutherland.hughes.config.ReportingConfig;
+
+/**
+ * Moves log output off the reporting threads. Each logger's configured appenders are put behind a log4j AsyncAppender, so a report thread
+ * only queues its event and a single dispatcher thread does the formatting and file writes. The queue is bounded and never blocks: once it's
+ * full, further events are dropped, and a summary of how many were dropped is logged when there's room again.
+ *
+ * Enabled by hughes.logging.async, true by default, with the queue size set by hughes.logging.async.bufferSize.
+ *
+ * @author Jason Diamond
+ *
+ */
+public final class AsyncLogging
+{
+	public final static int DEFAULT_BUFFER_SIZE = 1024;
+
+	private final static String APPENDER_NAME = "hughes-async";
+
+	private final static Logger logger = Logger.getLogger(AsyncLogging.class);
+
+	/**
+	 * The loggers whose appenders have been moved behind an AsyncAppender.
+	 */
+	private final static ArrayList<Logger> wrappedLoggers = new ArrayList<Logger>();
+
+	private AsyncLogging()
+	{
+	}
+
+	/**
+	 * Put every logger's appenders behind an AsyncAppender, if enabled. Does nothing if already installed.
+	 */
+	public static synchronized void install()
+	{
+		if(wrappedLoggers.isEmpty() && ReportingConfig.getBoolean(ReportingConfig.LOGGING_ASYNC, true))
+		{
+			int bufferSize = ReportingConfig.getInt(ReportingConfig.LOGGING_ASYNC_BUFFER_SIZE, DEFAULT_BUFFER_SIZE);
+
+			wrap(Logger.getRootLogger(), bufferSize);
+
+			for(Enumeration<?> loggers = LogManager.getCurrentLoggers(); loggers.hasMoreElements(); )
+			{
+				wrap((Logger)loggers.nextElement(), bufferSize);
+			}
+
+			logger.info("Logging asynchronously for " + wrappedLoggers.size() + " loggers, queueing up to " + bufferSize + " events");
+		}
+	}
+
+	/**
+	 * Write out whatever is still queued and close the appenders, ie. when the webapp stops. Nothing is logged afterwards.
+	 */
+	public static synchronized void shutdown()
+	{
+		Appender asyncAppender;
+
+		for(Logger wrappedLogger : wrappedLoggers)
+		{
+			asyncAppender = wrappedLogger.getAppender(APPENDER_NAME);
+
+			if(asyncAppender != null)
+			{
+				wrappedLogger.removeAppender(asyncAppender);
+
+				//waits for the dispatcher to drain the queue, then closes the real appenders
+				asyncAppender.close();
+			}
+		}
+
+		wrappedLoggers.clear();
+	}
+
+	/**
+	 * Determine if logging is asynchronous.
+	 *
+	 * @return	True if install() has moved any appenders and they haven't been shut down, false otherwise.
+	 */
+	public static synchronized boolean isInstalled()
+	{
+		return !wrappedLoggers.isEmpty();
+	}
+
+	private static void wrap(Logger target, int bufferSize)
+	{
+		ArrayList<Appender> appenders = new ArrayList<Appender>();
+
+		for(Enumeration<?> targetAppenders = target.getAllAppenders(); targetAppenders.hasMoreElements(); )
+		{
+			appenders.add((Appender)targetAppenders.nextElement());
+		}
+
+		if(!appenders.isEmpty() && target.getAppender(APPENDER_NAME) == null)
+		{
+			AsyncAppender asyncAppender = new AsyncAppender();
+			asyncAppender.setName(APPENDER_NAME);
+			asyncAppender.setBufferSize(bufferSize);
+
+			//drop rather than hold up a report when the appenders can't keep up
+			asyncAppender.setBlocking(false);
+
+			//finding the caller's line means building a stack trace for every event
+			asyncAppender.setLocationInfo(false);
+
+			for(Appender appender : appenders)
+			{
+				asyncAppender.addAppender(appender);
+			}
+
+			//one at a time, removing them all would close them
+			for(Appender appender : appenders)
+			{
+				target.removeAppender(appender);
+			}
+
+			target.addAppender(asyncAppender);
+
+			wrappedLoggers.add(target);
+		}
+	}
+}
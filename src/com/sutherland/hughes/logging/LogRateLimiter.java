@@ -0,0 +1,88 @@
+package com.sutherland.hughes.logging;
+
+/**
+ * Limits how often a message is logged, for errors that can happen once per row, so a bad batch of data can't turn logging into the
+ * bottleneck. Up to a fixed number of messages are let through per interval; the rest are counted, and the count handed to the next message
+ * let through so it can say how many were suppressed.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class LogRateLimiter
+{
+	public final static int DEFAULT_MESSAGES_PER_INTERVAL = 10;
+	public final static long DEFAULT_INTERVAL_MILLIS = 60000;
+
+	private final int messagesPerInterval;
+	private final long intervalMillis;
+	private long intervalStart;
+	private int intervalMessages;
+	private long suppressed;
+
+	/**
+	 * Build a limiter letting through DEFAULT_MESSAGES_PER_INTERVAL messages a minute.
+	 */
+	public LogRateLimiter()
+	{
+		this(DEFAULT_MESSAGES_PER_INTERVAL, DEFAULT_INTERVAL_MILLIS);
+	}
+
+	/**
+	 * Build a limiter.
+	 *
+	 * @param messagesPerInterval	The most messages let through per interval.
+	 * @param intervalMillis		The length of the interval.
+	 */
+	public LogRateLimiter(int messagesPerInterval, long intervalMillis)
+	{
+		this.messagesPerInterval = messagesPerInterval;
+		this.intervalMillis = intervalMillis;
+
+		intervalStart = -1;
+	}
+
+	/**
+	 * Determine if a message should be logged. Call it before building the message, so a suppressed message costs nothing.
+	 *
+	 * @return	True if the message should be logged, false if it's suppressed.
+	 */
+	public synchronized boolean allow()
+	{
+		boolean retval;
+
+		long now = System.currentTimeMillis();
+
+		if(intervalStart < 0 || now - intervalStart >= intervalMillis)
+		{
+			intervalStart = now;
+			intervalMessages = 0;
+		}
+
+		retval = intervalMessages < messagesPerInterval;
+
+		if(retval)
+		{
+			intervalMessages++;
+		}
+		else
+		{
+			suppressed++;
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Accessor for the number of messages suppressed since the last call, to mention in the next message logged.
+	 *
+	 * @return	The count, which is reset to 0.
+	 */
+	public synchronized long takeSuppressed()
+	{
+		long retval = suppressed;
+
+		suppressed = 0;
+
+		return retval;
+	}
+}
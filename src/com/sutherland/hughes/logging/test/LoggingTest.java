@@ -0,0 +1,117 @@
+/**
+ *
+ */
+package com.sutherland.hughes.logging.test;
+
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.Test;
+
+import com.sutherland.hughes.logging.AsyncLogging;
+import com.sutherland.hughes.logging.LogRateLimiter;
+
+/**
+ * @author Jason Diamond
+ *
+ */
+public class LoggingTest extends TestCase
+{
+	private final static int MESSAGES = 100;
+
+	/**
+	 * Keeps the messages it's given, noting the thread that wrote them.
+	 */
+	private static class CapturingAppender extends AppenderSkeleton
+	{
+		private final ArrayList<String> messages = new ArrayList<String>();
+		private final ArrayList<String> writers = new ArrayList<String>();
+
+		@Override
+		protected synchronized void append(LoggingEvent event)
+		{
+			messages.add(event.getRenderedMessage());
+			writers.add(Thread.currentThread().getName());
+		}
+
+		@Override
+		public boolean requiresLayout()
+		{
+			return false;
+		}
+
+		@Override
+		public void close()
+		{
+		}
+	}
+
+	@Test
+	public void testRateLimiterSuppressesPastLimit() throws Exception
+	{
+		LogRateLimiter limiter = new LogRateLimiter(3, 60000);
+
+		for(int i = 0; i < 3; i++)
+		{
+			assertTrue(limiter.allow());
+		}
+
+		assertFalse(limiter.allow());
+		assertFalse(limiter.allow());
+
+		assertEquals(2, limiter.takeSuppressed());
+		assertEquals(0, limiter.takeSuppressed());
+	}
+
+	@Test
+	public void testRateLimiterAllowsAgainNextInterval() throws Exception
+	{
+		LogRateLimiter limiter = new LogRateLimiter(1, 50);
+
+		assertTrue(limiter.allow());
+		assertFalse(limiter.allow());
+
+		Thread.sleep(100);
+
+		assertTrue(limiter.allow());
+		assertEquals(1, limiter.takeSuppressed());
+	}
+
+	@Test
+	public void testAsyncLoggingWritesOffTheCallingThread() throws Exception
+	{
+		Logger testLogger = Logger.getLogger(LoggingTest.class);
+		testLogger.setAdditivity(false);
+
+		CapturingAppender appender = new CapturingAppender();
+		testLogger.addAppender(appender);
+
+		AsyncLogging.install();
+
+		try
+		{
+			assertTrue(AsyncLogging.isInstalled());
+
+			for(int i = 0; i < MESSAGES; i++)
+			{
+				testLogger.info("Message " + i);
+			}
+		}
+		finally
+		{
+			AsyncLogging.shutdown();
+		}
+
+		assertFalse(AsyncLogging.isInstalled());
+
+		//the queue is drained on shutdown, in order
+		assertEquals(MESSAGES, appender.messages.size());
+		assertEquals("Message 0", appender.messages.get(0));
+		assertEquals("Message " + (MESSAGES - 1), appender.messages.get(MESSAGES - 1));
+		assertFalse(appender.writers.contains(Thread.currentThread().getName()));
+	}
+}
@@ -0,0 +1,92 @@
+package com.sutherland.hughes.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.apache.log4j.Logger;
+
+import com.sutherland.helios.exceptions.ExceptionFormatter;
+
+/**
+ * Reads the heap allocated by the calling thread, from the HotSpot thread allocation counters. The counter only ever grows, so the
+ * allocation of a piece of work is the difference between two readings on the thread doing it. On a JVM without the counters every
+ * reading is -1.
+ *
+ * @author Jason Diamond
+ *
+ */
+public final class AllocationCounter
+{
+	private final static Logger logger = Logger.getLogger(AllocationCounter.class);
+
+	private final static com.sun.management.ThreadMXBean threads = findThreads();
+
+	private AllocationCounter()
+	{
+	}
+
+	private static com.sun.management.ThreadMXBean findThreads()
+	{
+		com.sun.management.ThreadMXBean retval = null;
+
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+		if(threadBean instanceof com.sun.management.ThreadMXBean)
+		{
+			retval = (com.sun.management.ThreadMXBean)threadBean;
+
+			try
+			{
+				if(!retval.isThreadAllocatedMemorySupported())
+				{
+					retval = null;
+				}
+				else if(!retval.isThreadAllocatedMemoryEnabled())
+				{
+					retval.setThreadAllocatedMemoryEnabled(true);
+				}
+			}
+			catch(Exception e)
+			{
+				logger.warn("Could not enable thread allocation counters");
+				logger.warn(ExceptionFormatter.asString(e));
+
+				retval = null;
+			}
+		}
+
+		if(retval == null)
+		{
+			logger.info("Thread allocation counters unavailable, heap allocation will not be measured");
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Determine if allocation can be measured on this JVM.
+	 *
+	 * @return	True if it can, false otherwise.
+	 */
+	public static boolean isSupported()
+	{
+		return threads != null;
+	}
+
+	/**
+	 * Accessor for the heap allocated by the calling thread since it started.
+	 *
+	 * @return	The number of bytes, or -1 if allocation can't be measured.
+	 */
+	public static long getCurrentThreadAllocatedBytes()
+	{
+		long retval = -1;
+
+		if(threads != null)
+		{
+			retval = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+
+		return retval;
+	}
+}
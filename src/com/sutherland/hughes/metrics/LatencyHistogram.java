@@ -0,0 +1,146 @@
+package com.sutherland.hughes.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A latency histogram with fixed bucket bounds, safe to record to from any number of threads. The bounds run from milliseconds to minutes
+ * so one set fits a realtime report and a three year export alike. Percentiles are estimated as the upper bound of the bucket the rank
+ * falls in, or the largest latency seen for the overflow bucket.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class LatencyHistogram 
+{
+	private final static long[] BUCKET_BOUNDS_MILLIS = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000, 120000, 300000};
+	
+	private final AtomicLongArray counts;
+	private final AtomicLong totalNanos;
+	private final AtomicLong maxNanos;
+	
+	public LatencyHistogram()
+	{
+		//the last bucket holds everything past the largest bound
+		counts = new AtomicLongArray(BUCKET_BOUNDS_MILLIS.length + 1);
+		totalNanos = new AtomicLong();
+		maxNanos = new AtomicLong();
+	}
+	
+	/**
+	 * Record a latency.
+	 * 
+	 * @param nanos	The latency, in nanoseconds.
+	 */
+	public void record(long nanos)
+	{
+		long millis = nanos / 1000000;
+		
+		int bucket = 0;
+		while(bucket < BUCKET_BOUNDS_MILLIS.length && millis > BUCKET_BOUNDS_MILLIS[bucket])
+		{
+			bucket++;
+		}
+		
+		counts.incrementAndGet(bucket);
+		totalNanos.addAndGet(nanos);
+		
+		long max;
+		do
+		{
+			max = maxNanos.get();
+		}
+		while(nanos > max && !maxNanos.compareAndSet(max, nanos));
+	}
+	
+	/**
+	 * Accessor for the upper bounds of the buckets, excluding the overflow bucket.
+	 * 
+	 * @return	The bounds, in milliseconds, smallest first.
+	 */
+	public static long[] getBucketBoundsMillis()
+	{
+		return BUCKET_BOUNDS_MILLIS.clone();
+	}
+	
+	/**
+	 * Accessor for the number of latencies recorded in a bucket.
+	 * 
+	 * @param bucket	The bucket's index. The index one past the last bound is the overflow bucket.
+	 * 
+	 * @return	The count.
+	 */
+	public long getBucketCount(int bucket)
+	{
+		return counts.get(bucket);
+	}
+	
+	public long getCount()
+	{
+		long retval = 0;
+		
+		for(int i = 0; i < counts.length(); i++)
+		{
+			retval += counts.get(i);
+		}
+		
+		return retval;
+	}
+	
+	public long getTotalNanos()
+	{
+		return totalNanos.get();
+	}
+	
+	public long getMaxNanos()
+	{
+		return maxNanos.get();
+	}
+	
+	/**
+	 * Estimate a percentile of the recorded latencies.
+	 * 
+	 * @param percentile	The percentile, ie. 95.
+	 * 
+	 * @return	The percentile in milliseconds, or 0 if nothing has been recorded.
+	 */
+	public long getPercentileMillis(double percentile)
+	{
+		long retval = 0;
+		
+		//copied first, recording carries on while this runs
+		long[] snapshot = new long[counts.length()];
+		long count = 0;
+		
+		for(int i = 0; i < snapshot.length; i++)
+		{
+			snapshot[i] = counts.get(i);
+			count += snapshot[i];
+		}
+		
+		if(count > 0)
+		{
+			//nearest rank
+			long rank = Math.max(1, (long)Math.ceil(percentile / 100 * count));
+			long seen = 0;
+			
+			int bucket = 0;
+			while(bucket < snapshot.length - 1 && seen + snapshot[bucket] < rank)
+			{
+				seen += snapshot[bucket];
+				bucket++;
+			}
+			
+			if(bucket < BUCKET_BOUNDS_MILLIS.length)
+			{
+				retval = BUCKET_BOUNDS_MILLIS[bucket];
+			}
+			else
+			{
+				retval = getMaxNanos() / 1000000;
+			}
+		}
+		
+		return retval;
+	}
+}
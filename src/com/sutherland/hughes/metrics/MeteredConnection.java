@@ -0,0 +1,167 @@
+package com.sutherland.hughes.metrics;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+
+import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
+import com.sutherland.hughes.datasources.DataSourceProvider;
+import com.sutherland.hughes.datasources.JDBCConnection;
+import com.sutherland.hughes.datasources.RowHandler;
+import com.sutherland.hughes.report.execution.GrainPushdown;
+import com.sutherland.hughes.report.execution.ResourceBudget;
+import com.sutherland.hughes.trace.Tracer;
+
+/**
+ * A connection that records its queries' timings and row counts to a report's metrics, and to the execution trace of the report running
+ * on the calling thread. Query time runs to the first row of the result, fetch time from there to the last row, so for a streamed query
+ * fetch time includes whatever the caller does with each row.
+ *
+ * Rows fetched are counted as the report's rows: a row of a query grouped by GrainPushdown counts as the rows it stands for, so a report's
+ * rows fetched and rows kept are in the same unit whether or not its rows were grouped.
+ *
+ * Rows read are also charged to the budget of the request running on the calling thread, which is checked every few thousand rows so a
+ * runaway query is stopped part way through its results rather than after they've all been read.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class MeteredConnection extends JDBCConnection
+{
+	private final JDBCConnection delegate;
+	private final ReportMetricSet metrics;
+
+	/**
+	 * Wrap a connection.
+	 *
+	 * @param delegate	The real connection.
+	 * @param metrics	The metrics to record to.
+	 *
+	 * @throws DatabaseConnectionCreationException	Never, but required by DatabaseConnection.
+	 */
+	public MeteredConnection(JDBCConnection delegate, ReportMetricSet metrics) throws DatabaseConnectionCreationException
+	{
+		super("Metered " + metrics.getName());
+
+		this.delegate = delegate;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Open a connection through a provider, timing how long it takes, and wrap it.
+	 *
+	 * @param provider		The provider.
+	 * @param dbPropFile	The property file of the database, ie. one of DatabaseConfigs.
+	 * @param metrics		The metrics to record to.
+	 *
+	 * @return	The connection. The caller is responsible for closing it.
+	 *
+	 * @throws DatabaseConnectionCreationException	If the connection cannot be opened.
+	 */
+	public static MeteredConnection connect(DataSourceProvider provider, String dbPropFile, ReportMetricSet metrics) throws DatabaseConnectionCreationException
+	{
+		long connectStart = System.nanoTime();
+
+		JDBCConnection connection = provider.getConnection(dbPropFile);
+
+		metrics.addPhaseTime(ReportPhase.CONNECT, System.nanoTime() - connectStart);
+
+		return new MeteredConnection(connection, metrics);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.JDBCConnection#setFetchSize(int)
+	 */
+	@Override
+	public void setFetchSize(int fetchSize)
+	{
+		delegate.setFetchSize(fetchSize);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.JDBCConnection#streamQuery(java.lang.String, com.sutherland.hughes.datasources.RowHandler)
+	 */
+	@Override
+	public long streamQuery(String query, final RowHandler handler) throws SQLException, IOException
+	{
+		long retval;
+
+		final long[] firstRowTime = {-1};
+		final long[] uncheckedRows = {0};
+		final long[] groupedRows = {0};
+		final boolean grouped = GrainPushdown.isGrouped(query);
+		final ResourceBudget budget = ResourceBudget.getCurrent();
+
+		if(budget != null)
+		{
+			budget.checkpoint();
+			budget.check();
+		}
+
+		long queryStart = System.nanoTime();
+
+		retval = delegate.streamQuery(query, new RowHandler()
+		{
+			@Override
+			public void handleRow(String[] row) throws IOException
+			{
+				if(firstRowTime[0] < 0)
+				{
+					firstRowTime[0] = System.nanoTime();
+				}
+
+				if(budget != null && ++uncheckedRows[0] == ResourceBudget.CHECK_INTERVAL_ROWS)
+				{
+					budget.addRows(uncheckedRows[0]);
+					budget.checkpoint();
+					budget.check();
+
+					uncheckedRows[0] = 0;
+				}
+
+				if(grouped)
+				{
+					groupedRows[0] += GrainPushdown.getGroupedRowCount(row);
+				}
+
+				handler.handleRow(row);
+			}
+		});
+
+		if(budget != null)
+		{
+			budget.addRows(uncheckedRows[0]);
+			budget.checkpoint();
+		}
+
+		long queryEnd = System.nanoTime();
+		long resultsStart = firstRowTime[0] < 0 ? queryEnd : firstRowTime[0];
+
+		metrics.addPhaseTime(ReportPhase.QUERY, resultsStart - queryStart);
+		metrics.addPhaseTime(ReportPhase.FETCH, queryEnd - resultsStart);
+		metrics.addRowsFetched(grouped ? groupedRows[0] : retval);
+		Tracer.addQuery(query, queryEnd - queryStart, retval);
+
+		statistics.put(query, delegate.getStatistics().get(query));
+
+		return retval;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.JDBCConnection#getSchemaInfo(java.lang.String)
+	 */
+	@Override
+	public ArrayList<String> getSchemaInfo(String tableName)
+	{
+		return delegate.getSchemaInfo(tableName);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.JDBCConnection#close()
+	 */
+	@Override
+	public void close()
+	{
+		delegate.close();
+	}
+}
@@ -0,0 +1,318 @@
+package com.sutherland.hughes.metrics;
+
+import java.util.EnumMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The timers, counters and latency histogram of one report class, or of one kind of top-level request. Everything is safe to record to
+ * from any thread.
+ * 
+ * Phase times and row counts recorded against a report are also recorded against the request it is running for, if any, so a request's
+ * figures cover its roster and child reports as well.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class ReportMetricSet implements ReportMetricSetMBean
+{
+	private final String name;
+	private final EnumMap<ReportPhase, PhaseTimer> phaseTimers;
+	private final AtomicLong runs;
+	private final AtomicLong errors;
+	private final AtomicLong rowsFetched;
+	private final AtomicLong rowsKept;
+	private final AtomicLong allocatedBytes;
+	private final LatencyHistogram latency;
+	
+	private final static class PhaseTimer
+	{
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong totalNanos = new AtomicLong();
+		private final AtomicLong maxNanos = new AtomicLong();
+		
+		private void record(long nanos)
+		{
+			count.incrementAndGet();
+			totalNanos.addAndGet(nanos);
+			
+			long max;
+			do
+			{
+				max = maxNanos.get();
+			}
+			while(nanos > max && !maxNanos.compareAndSet(max, nanos));
+		}
+	}
+	
+	/**
+	 * Build an empty set. Sets are normally looked up through ReportMetrics, which registers them with JMX.
+	 * 
+	 * @param name	The report or request name.
+	 */
+	public ReportMetricSet(String name)
+	{
+		this.name = name;
+		
+		phaseTimers = new EnumMap<ReportPhase, PhaseTimer>(ReportPhase.class);
+		for(ReportPhase phase : ReportPhase.values())
+		{
+			phaseTimers.put(phase, new PhaseTimer());
+		}
+		
+		runs = new AtomicLong();
+		errors = new AtomicLong();
+		rowsFetched = new AtomicLong();
+		rowsKept = new AtomicLong();
+		allocatedBytes = new AtomicLong();
+		latency = new LatencyHistogram();
+	}
+	
+	/**
+	 * Record the time spent in a phase.
+	 * 
+	 * @param phase	The phase.
+	 * @param nanos	The time, in nanoseconds.
+	 */
+	public void addPhaseTime(ReportPhase phase, long nanos)
+	{
+		phaseTimers.get(phase).record(nanos);
+		
+		ReportMetricSet request = ReportMetrics.getCurrentRequest();
+		if(request != null && request != this)
+		{
+			request.phaseTimers.get(phase).record(nanos);
+		}
+	}
+	
+	/**
+	 * Record rows read from the database, in the report's rows: a row grouped in the database is the rows it stands for.
+	 * 
+	 * @param rows	The number of rows.
+	 */
+	public void addRowsFetched(long rows)
+	{
+		rowsFetched.addAndGet(rows);
+		
+		ReportMetricSet request = ReportMetrics.getCurrentRequest();
+		if(request != null && request != this)
+		{
+			request.rowsFetched.addAndGet(rows);
+		}
+	}
+	
+	/**
+	 * Record rows that passed the roster check and went into the report's figures, counted as rows fetched are.
+	 * 
+	 * @param rows	The number of rows.
+	 */
+	public void addRowsKept(long rows)
+	{
+		rowsKept.addAndGet(rows);
+		
+		ReportMetricSet request = ReportMetrics.getCurrentRequest();
+		if(request != null && request != this)
+		{
+			request.rowsKept.addAndGet(rows);
+		}
+	}
+	
+	/**
+	 * Record heap allocated while running the report, by its own thread or threads working for it.
+	 * 
+	 * @param bytes	The number of bytes.
+	 */
+	public void addAllocatedBytes(long bytes)
+	{
+		allocatedBytes.addAndGet(bytes);
+		
+		ReportMetricSet request = ReportMetrics.getCurrentRequest();
+		if(request != null && request != this)
+		{
+			request.allocatedBytes.addAndGet(bytes);
+		}
+	}
+	
+	/**
+	 * Record a completed run.
+	 * 
+	 * @param nanos			The run's latency, in nanoseconds.
+	 * @param errorMessage	The report's error message after the run. Null or empty if it succeeded.
+	 */
+	public void addRun(long nanos, String errorMessage)
+	{
+		runs.incrementAndGet();
+		latency.record(nanos);
+		
+		if(errorMessage != null && !errorMessage.isEmpty())
+		{
+			errors.incrementAndGet();
+		}
+	}
+	
+	@Override
+	public String getName()
+	{
+		return name;
+	}
+	
+	@Override
+	public long getRuns()
+	{
+		return runs.get();
+	}
+	
+	@Override
+	public long getErrors()
+	{
+		return errors.get();
+	}
+	
+	@Override
+	public long getRowsFetched()
+	{
+		return rowsFetched.get();
+	}
+	
+	@Override
+	public long getRowsKept()
+	{
+		return rowsKept.get();
+	}
+	
+	@Override
+	public long getAllocatedBytes()
+	{
+		return allocatedBytes.get();
+	}
+	
+	@Override
+	public double getSelectivity()
+	{
+		double retval = 0;
+		
+		long fetched = getRowsFetched();
+		
+		if(fetched > 0)
+		{
+			retval = (double)getRowsKept() / fetched;
+		}
+		
+		return retval;
+	}
+	
+	/**
+	 * Accessor for the number of times a phase has been timed.
+	 * 
+	 * @param phase	The phase.
+	 * 
+	 * @return	The count.
+	 */
+	public long getPhaseCount(ReportPhase phase)
+	{
+		return phaseTimers.get(phase).count.get();
+	}
+	
+	/**
+	 * Accessor for the total time spent in a phase.
+	 * 
+	 * @param phase	The phase.
+	 * 
+	 * @return	The time, in nanoseconds.
+	 */
+	public long getPhaseNanos(ReportPhase phase)
+	{
+		return phaseTimers.get(phase).totalNanos.get();
+	}
+	
+	/**
+	 * Accessor for the longest single time spent in a phase.
+	 * 
+	 * @param phase	The phase.
+	 * 
+	 * @return	The time, in nanoseconds.
+	 */
+	public long getPhaseMaxNanos(ReportPhase phase)
+	{
+		return phaseTimers.get(phase).maxNanos.get();
+	}
+	
+	public LatencyHistogram getLatency()
+	{
+		return latency;
+	}
+	
+	@Override
+	public long getConnectMillis()
+	{
+		return getPhaseNanos(ReportPhase.CONNECT) / 1000000;
+	}
+	
+	@Override
+	public long getRosterMillis()
+	{
+		return getPhaseNanos(ReportPhase.ROSTER) / 1000000;
+	}
+	
+	@Override
+	public long getQueryMillis()
+	{
+		return getPhaseNanos(ReportPhase.QUERY) / 1000000;
+	}
+	
+	@Override
+	public long getFetchMillis()
+	{
+		return getPhaseNanos(ReportPhase.FETCH) / 1000000;
+	}
+	
+	@Override
+	public long getAggregateMillis()
+	{
+		return getPhaseNanos(ReportPhase.AGGREGATE) / 1000000;
+	}
+	
+	@Override
+	public long getFormatMillis()
+	{
+		return getPhaseNanos(ReportPhase.FORMAT) / 1000000;
+	}
+	
+	@Override
+	public long getMeanLatencyMillis()
+	{
+		long retval = 0;
+		
+		long count = latency.getCount();
+		
+		if(count > 0)
+		{
+			retval = latency.getTotalNanos() / count / 1000000;
+		}
+		
+		return retval;
+	}
+	
+	@Override
+	public long getMaxLatencyMillis()
+	{
+		return latency.getMaxNanos() / 1000000;
+	}
+	
+	@Override
+	public long getLatencyP50Millis()
+	{
+		return latency.getPercentileMillis(50);
+	}
+	
+	@Override
+	public long getLatencyP95Millis()
+	{
+		return latency.getPercentileMillis(95);
+	}
+	
+	@Override
+	public long getLatencyP99Millis()
+	{
+		return latency.getPercentileMillis(99);
+	}
+}
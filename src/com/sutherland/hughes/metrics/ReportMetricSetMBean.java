@@ -0,0 +1,60 @@
+package com.sutherland.hughes.metrics;
+
+/**
+ * The JMX view of a ReportMetricSet. Times are totals since the webapp started, so rates and means are left to the monitoring side.
+ *
+ * @author Jason Diamond
+ *
+ */
+public interface ReportMetricSetMBean 
+{
+	String getName();
+	
+	long getRuns();
+	
+	long getErrors();
+	
+	/**
+	 * @return	The rows read from the database. A row the database grouped by the report's grain counts as the rows it stands for.
+	 */
+	long getRowsFetched();
+	
+	/**
+	 * @return	The rows kept after the roster check, counted the same way as rows fetched.
+	 */
+	long getRowsKept();
+	
+	/**
+	 * @return	The heap allocated by runs of the report, or 0 if the JVM can't measure it.
+	 */
+	long getAllocatedBytes();
+	
+	/**
+	 * @return	The fraction of fetched rows kept after the roster check, or 0 if no rows have been fetched. It's the same whether or not 
+	 * 			the rows were grouped in the database, unless they were grouped by team, program or orgunit for the roster's users only: 
+	 * 			then the rows the check would drop are never fetched.
+	 */
+	double getSelectivity();
+	
+	long getConnectMillis();
+	
+	long getRosterMillis();
+	
+	long getQueryMillis();
+	
+	long getFetchMillis();
+	
+	long getAggregateMillis();
+	
+	long getFormatMillis();
+	
+	long getMeanLatencyMillis();
+	
+	long getMaxLatencyMillis();
+	
+	long getLatencyP50Millis();
+	
+	long getLatencyP95Millis();
+	
+	long getLatencyP99Millis();
+}
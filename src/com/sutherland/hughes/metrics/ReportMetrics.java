@@ -0,0 +1,296 @@
+package com.sutherland.hughes.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+import com.sutherland.helios.exceptions.ExceptionFormatter;
+import com.sutherland.hughes.config.ReportingConfig;
+
+/**
+ * Where reports and requests get their metrics. Each report class and each kind of top-level request has one ReportMetricSet for the
+ * life of the webapp, registered as an MBean under com.sutherland.hughes:type=ReportMetrics or type=RequestMetrics, and written out in
+ * the Prometheus text format by writeText for scraping.
+ * 
+ * Set hughes.metrics.jmx to false to skip the JMX registration; the figures are still recorded and scraped.
+ *
+ * @author Jason Diamond
+ *
+ */
+public final class ReportMetrics 
+{
+	public final static String JMX_DOMAIN = "com.sutherland.hughes";
+	public final static String REPORT_TYPE = "ReportMetrics";
+	public final static String REQUEST_TYPE = "RequestMetrics";
+	
+	private final static String REPORT_PREFIX = "hughes_report";
+	private final static String REQUEST_PREFIX = "hughes_request";
+	
+	private final static Logger logger = Logger.getLogger(ReportMetrics.class);
+	
+	private final static ConcurrentMap<String, ReportMetricSet> reportMetrics = new ConcurrentHashMap<String, ReportMetricSet>();
+	private final static ConcurrentMap<String, ReportMetricSet> requestMetrics = new ConcurrentHashMap<String, ReportMetricSet>();
+	
+	private final static InheritableThreadLocal<ReportMetricSet> currentRequest = new InheritableThreadLocal<ReportMetricSet>();
+	
+	private ReportMetrics()
+	{
+	}
+	
+	/**
+	 * Accessor for a report class's metrics, created and registered on first use.
+	 * 
+	 * @param reportClass	The report class.
+	 * 
+	 * @return	The metrics.
+	 */
+	public static ReportMetricSet getReportMetrics(Class<?> reportClass)
+	{
+		return getMetrics(reportMetrics, REPORT_TYPE, reportClass.getSimpleName());
+	}
+	
+	/**
+	 * Accessor for a kind of request's metrics, created and registered on first use.
+	 * 
+	 * @param requestName	The request name, ie. the report it runs.
+	 * 
+	 * @return	The metrics.
+	 */
+	public static ReportMetricSet getRequestMetrics(String requestName)
+	{
+		return getMetrics(requestMetrics, REQUEST_TYPE, requestName);
+	}
+	
+	/**
+	 * Accessor for the metrics of the request being served by this thread.
+	 * 
+	 * @return	The request's metrics, or null if the thread isn't serving a request.
+	 */
+	public static ReportMetricSet getCurrentRequest()
+	{
+		return currentRequest.get();
+	}
+	
+	/**
+	 * Set the metrics of the request being served. Like a request's data source provider, it applies to threads started from this one
+	 * while it is set, ie. child reports. The caller is responsible for clearing it when the request is done, since servlet threads are
+	 * reused.
+	 * 
+	 * @param metrics	The request's metrics, or null to clear them.
+	 */
+	public static void setCurrentRequest(ReportMetricSet metrics)
+	{
+		if(metrics == null)
+		{
+			currentRequest.remove();
+		}
+		else
+		{
+			currentRequest.set(metrics);
+		}
+	}
+	
+	private static ReportMetricSet getMetrics(ConcurrentMap<String, ReportMetricSet> metrics, String type, String name)
+	{
+		ReportMetricSet retval = metrics.get(name);
+		
+		if(retval == null)
+		{
+			ReportMetricSet created = new ReportMetricSet(name);
+			
+			retval = metrics.putIfAbsent(name, created);
+			
+			if(retval == null)
+			{
+				retval = created;
+				
+				register(type, name, created);
+			}
+		}
+		
+		return retval;
+	}
+	
+	/**
+	 * Register an MBean under com.sutherland.hughes, unless hughes.metrics.jmx is false. A failure is logged rather than thrown, since the
+	 * figures behind it can still be scraped.
+	 * 
+	 * @param type	The MBean's type key.
+	 * @param name	The MBean's name key.
+	 * @param mbean	The MBean.
+	 */
+	public static void register(String type, String name, Object mbean)
+	{
+		if(ReportingConfig.getBoolean(ReportingConfig.METRICS_JMX, true))
+		{
+			try
+			{
+				MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+				ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+				
+				//left behind by a previous deployment of the webapp, the platform server outlives it
+				if(server.isRegistered(objectName))
+				{
+					server.unregisterMBean(objectName);
+				}
+				
+				server.registerMBean(mbean, objectName);
+			}
+			catch(JMException e)
+			{
+				//the metrics are still recorded and scraped
+				logger.warn("Could not register metrics for " + name + ": " + ExceptionFormatter.asString(e));
+			}
+		}
+	}
+	
+	/**
+	 * Write every report's and request's metrics in the Prometheus text exposition format.
+	 * 
+	 * @param out	Where to write the metrics. It is not flushed or closed.
+	 * 
+	 * @throws IOException	If the metrics cannot be written.
+	 */
+	public static void writeText(Writer out) throws IOException
+	{
+		writeText(out, REPORT_PREFIX, "report", new TreeMap<String, ReportMetricSet>(reportMetrics));
+		writeText(out, REQUEST_PREFIX, "request", new TreeMap<String, ReportMetricSet>(requestMetrics));
+	}
+	
+	private static void writeText(Writer out, String prefix, String label, Map<String, ReportMetricSet> metrics) throws IOException
+	{
+		if(!metrics.isEmpty())
+		{
+			ArrayList<String> names = new ArrayList<String>(metrics.size());
+			for(String name : metrics.keySet())
+			{
+				names.add(label + "=\"" + escapeLabel(name) + "\"");
+			}
+			
+			//every sample of a metric has to be written together
+			writeType(out, prefix + "_runs_total", "counter");
+			int i = 0;
+			for(ReportMetricSet set : metrics.values())
+			{
+				writeSample(out, prefix + "_runs_total", names.get(i++), set.getRuns());
+			}
+			
+			writeType(out, prefix + "_errors_total", "counter");
+			i = 0;
+			for(ReportMetricSet set : metrics.values())
+			{
+				writeSample(out, prefix + "_errors_total", names.get(i++), set.getErrors());
+			}
+			
+			writeType(out, prefix + "_rows_fetched_total", "counter");
+			i = 0;
+			for(ReportMetricSet set : metrics.values())
+			{
+				writeSample(out, prefix + "_rows_fetched_total", names.get(i++), set.getRowsFetched());
+			}
+			
+			writeType(out, prefix + "_rows_kept_total", "counter");
+			i = 0;
+			for(ReportMetricSet set : metrics.values())
+			{
+				writeSample(out, prefix + "_rows_kept_total", names.get(i++), set.getRowsKept());
+			}
+			
+			writeType(out, prefix + "_allocated_bytes_total", "counter");
+			i = 0;
+			for(ReportMetricSet set : metrics.values())
+			{
+				writeSample(out, prefix + "_allocated_bytes_total", names.get(i++), set.getAllocatedBytes());
+			}
+			
+			writeType(out, prefix + "_phase_seconds_total", "counter");
+			i = 0;
+			for(ReportMetricSet set : metrics.values())
+			{
+				for(ReportPhase phase : ReportPhase.values())
+				{
+					writeSample(out, prefix + "_phase_seconds_total", names.get(i) + ",phase=\"" + phase.getLabel() + "\"", toSeconds(set.getPhaseNanos(phase)));
+				}
+				
+				i++;
+			}
+			
+			writeType(out, prefix + "_phase_count_total", "counter");
+			i = 0;
+			for(ReportMetricSet set : metrics.values())
+			{
+				for(ReportPhase phase : ReportPhase.values())
+				{
+					writeSample(out, prefix + "_phase_count_total", names.get(i) + ",phase=\"" + phase.getLabel() + "\"", set.getPhaseCount(phase));
+				}
+				
+				i++;
+			}
+			
+			writeType(out, prefix + "_phase_max_seconds", "gauge");
+			i = 0;
+			for(ReportMetricSet set : metrics.values())
+			{
+				for(ReportPhase phase : ReportPhase.values())
+				{
+					writeSample(out, prefix + "_phase_max_seconds", names.get(i) + ",phase=\"" + phase.getLabel() + "\"", toSeconds(set.getPhaseMaxNanos(phase)));
+				}
+				
+				i++;
+			}
+			
+			writeType(out, prefix + "_latency_seconds", "histogram");
+			i = 0;
+			long[] bounds = LatencyHistogram.getBucketBoundsMillis();
+			for(ReportMetricSet set : metrics.values())
+			{
+				LatencyHistogram latency = set.getLatency();
+				long cumulative = 0;
+				
+				for(int bucket = 0; bucket < bounds.length; bucket++)
+				{
+					cumulative += latency.getBucketCount(bucket);
+					writeSample(out, prefix + "_latency_seconds_bucket", names.get(i) + ",le=\"" + toSeconds(bounds[bucket] * 1000000) + "\"", cumulative);
+				}
+				
+				cumulative += latency.getBucketCount(bounds.length);
+				writeSample(out, prefix + "_latency_seconds_bucket", names.get(i) + ",le=\"+Inf\"", cumulative);
+				writeSample(out, prefix + "_latency_seconds_sum", names.get(i), toSeconds(latency.getTotalNanos()));
+				writeSample(out, prefix + "_latency_seconds_count", names.get(i), cumulative);
+				
+				i++;
+			}
+		}
+	}
+	
+	private static void writeType(Writer out, String metric, String type) throws IOException
+	{
+		out.write("# TYPE " + metric + " " + type + "\n");
+	}
+	
+	private static void writeSample(Writer out, String metric, String labels, Object value) throws IOException
+	{
+		out.write(metric + "{" + labels + "} " + value + "\n");
+	}
+	
+	private static String toSeconds(long nanos)
+	{
+		return Double.toString(nanos / 1000000000.0);
+	}
+	
+	private static String escapeLabel(String value)
+	{
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+}
@@ -0,0 +1,58 @@
+package com.sutherland.hughes.metrics;
+
+/**
+ * The phases a report's run time is broken down into.
+ *
+ * @author Jason Diamond
+ *
+ */
+public enum ReportPhase 
+{
+	/**
+	 * Opening database connections.
+	 */
+	CONNECT("connect"),
+	
+	/**
+	 * Loading the roster the report's rows are filtered against.
+	 */
+	ROSTER("roster"),
+	
+	/**
+	 * Executing queries, up to the first row of each result.
+	 */
+	QUERY("query"),
+	
+	/**
+	 * Reading query results, from the first row to the last. For reports that aggregate their rows as they are read this includes the
+	 * aggregation.
+	 */
+	FETCH("fetch"),
+	
+	/**
+	 * Filtering, bucketing and totalling rows once they have been read, or merging child reports' results.
+	 */
+	AGGREGATE("aggregate"),
+	
+	/**
+	 * Writing a request's output.
+	 */
+	FORMAT("format");
+	
+	private final String label;
+	
+	private ReportPhase(String label)
+	{
+		this.label = label;
+	}
+	
+	/**
+	 * Accessor for the phase's name in scraped metrics.
+	 * 
+	 * @return	The label.
+	 */
+	public String getLabel()
+	{
+		return label;
+	}
+}
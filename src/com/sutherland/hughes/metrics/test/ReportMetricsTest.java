@@ -0,0 +1,176 @@
+/**
+ *
+ */
+package com.sutherland.hughes.metrics.test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.sql.SQLException;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
+import com.sutherland.hughes.datasources.DataSourceProvider;
+import com.sutherland.hughes.datasources.JDBCConnection;
+import com.sutherland.hughes.datasources.RowHandler;
+import com.sutherland.hughes.metrics.LatencyHistogram;
+import com.sutherland.hughes.metrics.MeteredConnection;
+import com.sutherland.hughes.metrics.ReportMetricSet;
+import com.sutherland.hughes.metrics.ReportMetrics;
+import com.sutherland.hughes.metrics.ReportPhase;
+
+/**
+ * @author Jason Diamond
+ *
+ */
+public class ReportMetricsTest extends TestCase
+{
+	private final static int ROW_COUNT = 250;
+
+	/**
+	 * Serves a fixed number of empty rows in place of a database.
+	 */
+	private static class FixedConnection extends JDBCConnection
+	{
+		public FixedConnection() throws DatabaseConnectionCreationException
+		{
+			super("fixed");
+		}
+
+		@Override
+		public long streamQuery(String query, RowHandler handler) throws SQLException, IOException
+		{
+			for(int i = 0; i < ROW_COUNT; i++)
+			{
+				handler.handleRow(new String[]{"" + i});
+			}
+
+			statistics.put(query, "Query returned rows: " + ROW_COUNT);
+
+			return ROW_COUNT;
+		}
+
+		@Override
+		public void close()
+		{
+		}
+	}
+
+	@Test
+	public void testHistogramPercentiles()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+
+		assertEquals(0, histogram.getPercentileMillis(95));
+
+		//90 fast runs, 9 slow ones and one past the largest bucket
+		for(int i = 0; i < 90; i++)
+		{
+			histogram.record(3 * 1000000L);
+		}
+
+		for(int i = 0; i < 9; i++)
+		{
+			histogram.record(800 * 1000000L);
+		}
+
+		histogram.record(400000 * 1000000L);
+
+		assertEquals(100, histogram.getCount());
+		assertEquals(5, histogram.getPercentileMillis(50));
+		assertEquals(5, histogram.getPercentileMillis(90));
+		assertEquals(1000, histogram.getPercentileMillis(95));
+		assertEquals(1000, histogram.getPercentileMillis(99));
+		assertEquals(400000, histogram.getPercentileMillis(100));
+	}
+
+	@Test
+	public void testMeteredConnectionRecordsToReportAndRequest() throws Exception
+	{
+		ReportMetricSet reportMetrics = new ReportMetricSet("TestReport");
+		ReportMetricSet requestMetrics = new ReportMetricSet("TestRequest");
+
+		ReportMetrics.setCurrentRequest(requestMetrics);
+
+		try
+		{
+			JDBCConnection connection = MeteredConnection.connect(new DataSourceProvider()
+			{
+				@Override
+				public JDBCConnection getConnection(String dbPropFile) throws DatabaseConnectionCreationException
+				{
+					return new FixedConnection();
+				}
+			}, "test.properties", reportMetrics);
+
+			assertEquals(ROW_COUNT, connection.runQuery("SELECT 1").size());
+			assertEquals("Query returned rows: " + ROW_COUNT, connection.getStatistics().get("SELECT 1"));
+
+			reportMetrics.addRowsKept(50);
+			reportMetrics.addRun(2000000, "");
+			reportMetrics.addRun(4000000, "Error running report");
+
+			connection.close();
+		}
+		finally
+		{
+			ReportMetrics.setCurrentRequest(null);
+		}
+
+		assertEquals(1, reportMetrics.getPhaseCount(ReportPhase.CONNECT));
+		assertEquals(1, reportMetrics.getPhaseCount(ReportPhase.QUERY));
+		assertEquals(1, reportMetrics.getPhaseCount(ReportPhase.FETCH));
+		assertEquals(ROW_COUNT, reportMetrics.getRowsFetched());
+		assertEquals(50, reportMetrics.getRowsKept());
+		assertEquals(0.2, reportMetrics.getSelectivity(), 0.0001);
+		assertEquals(2, reportMetrics.getRuns());
+		assertEquals(1, reportMetrics.getErrors());
+
+		//phases and rows go to the request as well, runs are the request's own
+		assertEquals(1, requestMetrics.getPhaseCount(ReportPhase.QUERY));
+		assertEquals(ROW_COUNT, requestMetrics.getRowsFetched());
+		assertEquals(50, requestMetrics.getRowsKept());
+		assertEquals(0, requestMetrics.getRuns());
+	}
+
+	@Test
+	public void testGroupedRowsCountAsTheRowsTheyStandFor() throws Exception
+	{
+		ReportMetricSet reportMetrics = new ReportMetricSet("TestReport");
+
+		JDBCConnection connection = new MeteredConnection(new FixedConnection(), reportMetrics);
+
+		//the fixed rows' only column is also the grouped rows' count, 0 to ROW_COUNT - 1
+		connection.runQuery("SELECT grain_rows.grain_col0, COUNT(*) FROM (q) AS grain_rows (grain_col0) GROUP BY grain_rows.grain_col0");
+
+		assertEquals((long)ROW_COUNT * (ROW_COUNT - 1) / 2, reportMetrics.getRowsFetched());
+
+		connection.runQuery("q");
+
+		assertEquals((long)ROW_COUNT * (ROW_COUNT - 1) / 2 + ROW_COUNT, reportMetrics.getRowsFetched());
+
+		connection.close();
+	}
+
+	@Test
+	public void testTextOutput() throws IOException
+	{
+		ReportMetricSet metrics = ReportMetrics.getReportMetrics(ReportMetricsTest.class);
+		metrics.addRun(30 * 1000000L, null);
+		metrics.addPhaseTime(ReportPhase.AGGREGATE, 1500000000L);
+
+		assertSame(metrics, ReportMetrics.getReportMetrics(ReportMetricsTest.class));
+
+		StringWriter out = new StringWriter();
+		ReportMetrics.writeText(out);
+		String text = out.toString();
+
+		assertTrue(text.contains("# TYPE hughes_report_runs_total counter\n"));
+		assertTrue(text.contains("hughes_report_phase_seconds_total{report=\"ReportMetricsTest\",phase=\"aggregate\"} 1.5\n"));
+		assertTrue(text.contains("hughes_report_latency_seconds_bucket{report=\"ReportMetricsTest\",le=\"0.025\"} 0\n"));
+		assertTrue(text.contains("hughes_report_latency_seconds_bucket{report=\"ReportMetricsTest\",le=\"0.05\"} 1\n"));
+		assertTrue(text.contains("hughes_report_latency_seconds_bucket{report=\"ReportMetricsTest\",le=\"+Inf\"} 1\n"));
+	}
+}
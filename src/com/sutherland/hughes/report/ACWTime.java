@@ -16,8 +16,6 @@ import com.sutherland.helios.data.Aggregation;
 import com.sutherland.helios.data.attributes.DataAttributes;
 import com.sutherland.helios.data.formatting.NumberFormatter;
 import com.sutherland.helios.data.granularity.user.UserGrains;
-import com.sutherland.helios.database.connection.SQL.ConnectionFactory;
-import com.sutherland.helios.database.connection.SQL.RemoteConnection;
 import com.sutherland.helios.date.formatting.DateFormatter;
 import com.sutherland.helios.date.parsing.DateParser;
 import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
@@ -27,7 +25,14 @@ import com.sutherland.helios.logging.LogIDFactory;
 import com.sutherland.helios.report.Report;
 import com.sutherland.helios.report.parameters.groups.ReportParameterGroups;
 import com.sutherland.helios.statistics.Statistics;
+import com.sutherland.hughes.datasources.DataSources;
 import com.sutherland.hughes.datasources.DatabaseConfigs;
+import com.sutherland.hughes.datasources.JDBCConnection;
+import com.sutherland.hughes.metrics.ReportMetricSet;
+import com.sutherland.hughes.metrics.ReportMetrics;
+import com.sutherland.hughes.metrics.ReportPhase;
+import com.sutherland.hughes.report.execution.GrainPushdown;
+import com.sutherland.hughes.report.execution.ReportExecution;
 
 /**
  * @author Jason Diamond
@@ -35,10 +40,11 @@ import com.sutherland.hughes.datasources.DatabaseConfigs;
  */
 public final class ACWTime extends Report implements DataAttributes
 {
-	private RemoteConnection dbConnection;
+	private JDBCConnection dbConnection;
 	private HughesRoster roster;
 	private final String dbPropFile = DatabaseConfigs.PRIVATE_LABEL_PROD_DB;
 	private final static Logger logger = Logger.getLogger(ACWTime.class);
+	private final static ReportMetricSet metrics = ReportMetrics.getReportMetrics(ACWTime.class);
 
 	public static String uiGetReportName()
 	{
@@ -121,11 +127,7 @@ public final class ACWTime extends Report implements DataAttributes
 		
 		try 
 		{
-			ConnectionFactory factory = new ConnectionFactory();
-			
-			factory.load(dbPropFile);
-			
-			dbConnection = factory.getConnection();
+			dbConnection = DataSources.getConnection(dbPropFile, metrics);
 		}
 		catch(DatabaseConnectionCreationException e )
 		{
@@ -188,6 +190,22 @@ public final class ACWTime extends Report implements DataAttributes
 		return retval;
 	}
 
+	/* (non-Javadoc)
+	 * @see com.sutherland.helios.report.Report#startReport()
+	 */
+	@Override
+	public ArrayList<String[]> startReport()
+	{
+		return ReportExecution.run(this, metrics, new ReportExecution.Runner()
+		{
+			@Override
+			public ArrayList<String[]> run()
+			{
+				return ACWTime.super.startReport();
+			}
+		});
+	}
+	
 	/* (non-Javadoc)
 	 * @see helios.Report#runReport()
 	 */
@@ -217,15 +235,33 @@ public final class ACWTime extends Report implements DataAttributes
 		roster.setChildReport(true);
 		roster.getParameters().setAgentNames(getParameters().getAgentNames());
 		roster.getParameters().setTeamNames(getParameters().getTeamNames());
+		long rosterStart = System.nanoTime();
 		roster.load();
+		metrics.addPhaseTime(ReportPhase.ROSTER, System.nanoTime() - rosterStart);
 		
-		for(String[] row:  dbConnection.runQuery(query))
+		//rows come back from the database already grouped by the report's time or user grain, totalled
+		GrainPushdown pushdown = GrainPushdown.forReport(this, roster);
+		
+		if(pushdown != null)
+		{
+			query = pushdown.group(query, 3, 0, 1, new int[]{2});
+		}
+		
+		ArrayList<String[]> queryResults = dbConnection.runQuery(query);
+		
+		//filtering and bucketing, timed apart from the query
+		long aggregateStart = System.nanoTime();
+		long rowsKept = 0;
+		
+		for(String[] row:  queryResults)
 		{
 			userID = row[0];
 
 			
 			if(roster.hasUser(userID))
 			{
+				rowsKept += GrainPushdown.getRowCount(pushdown, row);
+				
 				acwSeconds = row[2];
 
 				//time grain for time reports
@@ -248,9 +284,12 @@ public final class ACWTime extends Report implements DataAttributes
 			}
 		}
 		
-		for( Entry<String, String> queryStats  : dbConnection.getStatistics().entrySet())
+		if(logger.isInfoEnabled())
 		{
-			logInfoMessage( "Query " + queryStats.getKey() + ": " + queryStats.getValue());
+			for( Entry<String, String> queryStats  : dbConnection.getStatistics().entrySet())
+			{
+				logInfoMessage( "Query " + queryStats.getKey() + ": " + queryStats.getValue());
+			}
 		}
 		
 		/////////////////
@@ -268,6 +307,9 @@ public final class ACWTime extends Report implements DataAttributes
 			retval.add(new String[]{grain, "" + NumberFormatter.convertToCurrency(finalACWTime/60)});
 		}
 		
+		metrics.addRowsKept(rowsKept);
+		metrics.addPhaseTime(ReportPhase.AGGREGATE, System.nanoTime() - aggregateStart);
+		
 		return retval;
 	}
 	
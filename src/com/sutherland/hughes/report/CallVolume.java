@@ -12,11 +12,8 @@ import org.apache.log4j.Logger;
 import org.apache.log4j.MDC;
 
 import com.sutherland.helios.api.report.frontend.ReportFrontEndGroups;
-import com.sutherland.helios.data.Aggregation;
 import com.sutherland.helios.data.attributes.DataAttributes;
 import com.sutherland.helios.data.granularity.user.UserGrains;
-import com.sutherland.helios.database.connection.SQL.ConnectionFactory;
-import com.sutherland.helios.database.connection.SQL.RemoteConnection;
 import com.sutherland.helios.date.formatting.DateFormatter;
 import com.sutherland.helios.date.parsing.DateParser;
 import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
@@ -25,8 +22,18 @@ import com.sutherland.helios.exceptions.ReportSetupException;
 import com.sutherland.helios.logging.LogIDFactory;
 import com.sutherland.helios.report.Report;
 import com.sutherland.helios.report.parameters.groups.ReportParameterGroups;
-import com.sutherland.helios.statistics.Statistics;
+import com.sutherland.hughes.data.GrainPartials;
+import com.sutherland.hughes.datasources.DataSources;
 import com.sutherland.hughes.datasources.DatabaseConfigs;
+import com.sutherland.hughes.datasources.JDBCConnection;
+import com.sutherland.hughes.metrics.ReportMetricSet;
+import com.sutherland.hughes.metrics.ReportMetrics;
+import com.sutherland.hughes.metrics.ReportPhase;
+import com.sutherland.hughes.report.execution.ChunkedQueryRunner;
+import com.sutherland.hughes.report.execution.ChunkedQueryRunner.ChunkQueryBuilder;
+import com.sutherland.hughes.report.execution.GrainPushdown;
+import com.sutherland.hughes.report.execution.ReportExecution;
+import com.sutherland.hughes.report.execution.RowAggregator;
 
 /**
  * @author Jason Diamond
@@ -34,10 +41,11 @@ import com.sutherland.hughes.datasources.DatabaseConfigs;
  */
 public final class CallVolume extends Report implements DataAttributes 
 {
-	private RemoteConnection dbConnection;
+	private JDBCConnection dbConnection;
 	private HughesRoster roster;
 	private final String dbPropFile = DatabaseConfigs.PRIVATE_LABEL_PROD_DB;
 	private final static Logger logger = Logger.getLogger(CallVolume.class);
+	private final static ReportMetricSet metrics = ReportMetrics.getReportMetrics(CallVolume.class);
 
 	public static String uiGetReportName()
 	{
@@ -120,11 +128,7 @@ public final class CallVolume extends Report implements DataAttributes
 		
 		try 
 		{
-			ConnectionFactory factory = new ConnectionFactory();
-			
-			factory.load(dbPropFile);
-			
-			dbConnection = factory.getConnection();
+			dbConnection = DataSources.getConnection(dbPropFile, metrics);
 		}
 		catch(DatabaseConnectionCreationException e )
 		{
@@ -187,6 +191,22 @@ public final class CallVolume extends Report implements DataAttributes
 		return retval;
 	}
 
+	/* (non-Javadoc)
+	 * @see com.sutherland.helios.report.Report#startReport()
+	 */
+	@Override
+	public ArrayList<String[]> startReport()
+	{
+		return ReportExecution.run(this, metrics, new ReportExecution.Runner()
+		{
+			@Override
+			public ArrayList<String[]> run()
+			{
+				return CallVolume.super.startReport();
+			}
+		});
+	}
+	
 	/* (non-Javadoc)
 	 * @see helios.Report#runReport()
 	 */
@@ -195,63 +215,92 @@ public final class CallVolume extends Report implements DataAttributes
 	{		
 		ArrayList<String[]> retval = null;
 		
-		String query = "SELECT CRM_MST_USER.USER_USERID,tbl_PFS_CMS_Hagent.row_date,Sum(tbl_PFS_CMS_Hagent.acdcalls) AS ACDCalls " + 
-				"FROM tbl_PFS_CMS_Hagent INNER JOIN CRM_MST_USER ON tbl_PFS_CMS_Hagent.logid = CRM_MST_USER.USER_EXTENSION " +
-				"WHERE tbl_PFS_CMS_Hagent.row_date >= '" +  
-				getParameters().getStartDate() + 
-				"' AND tbl_PFS_CMS_Hagent.row_date < '" +   
-				getParameters().getEndDate() + 
-				"'" ;
-		
-		query += " AND ACDCalls > 0 ";
-		
-		//required
-		query += " GROUP BY CRM_MST_USER.USER_USERID,tbl_PFS_CMS_Hagent.row_date, tbl_PFS_CMS_Hagent.split ";
-		
-		Aggregation reportGrainData = new Aggregation();
-
-		String userID, reportGrain, numCalls;
-		
-		int timeGrain, userGrain, dateFormat;
-		
 		roster = new HughesRoster();
 		roster.setChildReport(true);
 		roster.getParameters().setAgentNames(getParameters().getAgentNames());
 		roster.getParameters().setTeamNames(getParameters().getTeamNames());
+		long rosterStart = System.nanoTime();
 		roster.load();
+		metrics.addPhaseTime(ReportPhase.ROSTER, System.nanoTime() - rosterStart);
+		
+		//rows come back from the database already grouped by the report's time or user grain
+		final GrainPushdown pushdown = GrainPushdown.forReport(this, roster);
+		
+		//long ranges are run as concurrent date range chunks, each aggregated separately and merged
+		ChunkedQueryRunner queryRunner = new ChunkedQueryRunner(dbConnection, dbPropFile);
+		queryRunner.setMetrics(metrics);
 		
-		for(String[] row:  dbConnection.runQuery(query))
+		GrainPartials reportGrainData = queryRunner.run(getParameters().getStartDate(), getParameters().getEndDate(), new ChunkQueryBuilder()
 		{
-			userID = row[0];
-
-			
-			if(roster.hasUser(userID))
+			@Override
+			public String buildQuery(String chunkStartDate, String chunkEndDate)
 			{
-				numCalls = row[2];
-
-				//time grain for time reports
-				if(isTimeTrendReport())
+				String query = "SELECT CRM_MST_USER.USER_USERID,tbl_PFS_CMS_Hagent.row_date,Sum(tbl_PFS_CMS_Hagent.acdcalls) AS ACDCalls " + 
+						"FROM tbl_PFS_CMS_Hagent INNER JOIN CRM_MST_USER ON tbl_PFS_CMS_Hagent.logid = CRM_MST_USER.USER_EXTENSION " +
+						"WHERE tbl_PFS_CMS_Hagent.row_date >= '" +  
+						chunkStartDate + 
+						"' AND tbl_PFS_CMS_Hagent.row_date < '" +   
+						chunkEndDate + 
+						"'" ;
+				
+				query += " AND ACDCalls > 0 ";
+				
+				//required
+				query += " GROUP BY CRM_MST_USER.USER_USERID,tbl_PFS_CMS_Hagent.row_date, tbl_PFS_CMS_Hagent.split ";
+				
+				if(pushdown != null)
 				{
-					timeGrain = Integer.parseInt(getParameters().getTimeGrain());
-					dateFormat = Integer.parseInt(getParameters().getDateFormat());
-					reportGrain = DateFormatter.getFormattedDate(DateParser.convertSQLDateToGregorian(row[1]), timeGrain, dateFormat);
+					query = pushdown.group(query, 3, 0, 1, new int[]{2});
 				}
-				else //if(isStackReport())
+				
+				return query;
+			}
+		}, 
+		new RowAggregator()
+		{
+			@Override
+			public void aggregate(String[] row, GrainPartials partials)
+			{
+				String userID, reportGrain, numCalls;
+				
+				int timeGrain, userGrain, dateFormat;
+				
+				userID = row[0];
+				
+				if(roster.hasUser(userID))
 				{
-					//is stack report
-					userGrain = Integer.parseInt(getParameters().getUserGrain());
-					reportGrain = UserGrains.getUserGrain(userGrain, roster.getUser(userID));
+					partials.addRows(GrainPushdown.getRowCount(pushdown, row));
+					
+					numCalls = row[2];
+
+					//time grain for time reports
+					if(isTimeTrendReport())
+					{
+						timeGrain = Integer.parseInt(getParameters().getTimeGrain());
+						dateFormat = Integer.parseInt(getParameters().getDateFormat());
+						reportGrain = DateFormatter.getFormattedDate(DateParser.convertSQLDateToGregorian(row[1]), timeGrain, dateFormat);
+					}
+					else //if(isStackReport())
+					{
+						//is stack report
+						userGrain = Integer.parseInt(getParameters().getUserGrain());
+						reportGrain = UserGrains.getUserGrain(userGrain, roster.getUser(userID));
+					}
+					
+					partials.get(reportGrain, CALL_VOL_ATTR).addValues(numCalls, GrainPushdown.getRowCount(pushdown, row));
 				}
-				
-				reportGrainData.addDatum(reportGrain);
-				reportGrainData.getDatum(reportGrain).addAttribute(CALL_VOL_ATTR);
-				reportGrainData.getDatum(reportGrain).addData(CALL_VOL_ATTR, numCalls);
 			}
-		}
+		});
+		
+		//the rows were bucketed as they were fetched, what is left is merging and totalling
+		long aggregateStart = System.nanoTime();
 		
-		for( Entry<String, String> queryStats  : dbConnection.getStatistics().entrySet())
+		if(logger.isInfoEnabled())
 		{
-			logInfoMessage( "Query " + queryStats.getKey() + ": " + queryStats.getValue());
+			for( Entry<String, String> queryStats  : queryRunner.getStatistics().entrySet())
+			{
+				logInfoMessage( "Query " + queryStats.getKey() + ": " + queryStats.getValue());
+			}
 		}
 		
 		/////////////////
@@ -261,13 +310,16 @@ public final class CallVolume extends Report implements DataAttributes
 		
 		retval = new ArrayList<String[]>(reportGrainData.getSize());
 		
-		for(String grain : reportGrainData.getDatumIDList())
+		for(String grain : reportGrainData.getGrainIDList())
 		{
-			finalNumCalls = Statistics.getTotal(reportGrainData.getDatum(grain).getAttributeData(CALL_VOL_ATTR));
+			finalNumCalls = reportGrainData.get(grain, CALL_VOL_ATTR).getSum().doubleValue();
 
 			retval.add(new String[]{grain, "" + finalNumCalls});
 		}
 		
+		metrics.addRowsKept(reportGrainData.getRowCount());
+		metrics.addPhaseTime(ReportPhase.AGGREGATE, System.nanoTime() - aggregateStart);
+		
 		return retval;
 	}
 	
@@ -22,6 +22,10 @@ import com.sutherland.helios.report.Report;
 import com.sutherland.helios.report.ReportRunner;
 import com.sutherland.helios.report.parameters.groups.ReportParameterGroups;
 import com.sutherland.helios.statistics.Statistics;
+import com.sutherland.hughes.metrics.ReportMetricSet;
+import com.sutherland.hughes.metrics.ReportMetrics;
+import com.sutherland.hughes.metrics.ReportPhase;
+import com.sutherland.hughes.report.execution.ReportExecution;
 
 /**
  * @author Jason Diamond
@@ -32,6 +36,7 @@ public final class Conversion extends Report implements DataAttributes
 	private CallVolume callVolumeReport;
 	private SalesCount salesCountReport;
 	private final static Logger logger = Logger.getLogger(Conversion.class);
+	private final static ReportMetricSet metrics = ReportMetrics.getReportMetrics(Conversion.class);
 
 	public static String uiGetReportName()
 	{
@@ -156,6 +161,22 @@ public final class Conversion extends Report implements DataAttributes
 		return retval;
 	}
 
+	/* (non-Javadoc)
+	 * @see com.sutherland.helios.report.Report#startReport()
+	 */
+	@Override
+	public ArrayList<String[]> startReport()
+	{
+		return ReportExecution.run(this, metrics, new ReportExecution.Runner()
+		{
+			@Override
+			public ArrayList<String[]> run()
+			{
+				return Conversion.super.startReport();
+			}
+		});
+	}
+	
 	/* (non-Javadoc)
 	 * @see helios.Report#runReport()
 	 */
@@ -182,7 +203,12 @@ public final class Conversion extends Report implements DataAttributes
 		runner.addReport(CALL_VOL_ATTR, callVolumeReport);
 		runner.addReport(SALES_COUNT_ATTR, salesCountReport);
 		
-		if(!runner.runReports())
+		boolean reportsRan = runner.runReports();
+		
+		//merging the child reports' results
+		long aggregateStart = System.nanoTime();
+		
+		if(!reportsRan)
 		{
 			throw new ReportSetupException("Running reports failed");
 		}
@@ -228,6 +254,8 @@ public final class Conversion extends Report implements DataAttributes
 			retval.add(new String[]{datumID, "" + NumberFormatter.convertToPercentage(finalConversion, 4) }) ;
 		}
 
+		metrics.addPhaseTime(ReportPhase.AGGREGATE, System.nanoTime() - aggregateStart);
+		
 		return retval;
 	}
 	
@@ -16,8 +16,6 @@ import com.sutherland.helios.api.report.frontend.ReportFrontEndGroups;
 import com.sutherland.helios.data.Aggregation;
 import com.sutherland.helios.data.attributes.DataAttributes;
 import com.sutherland.helios.data.granularity.user.UserGrains;
-import com.sutherland.helios.database.connection.SQL.ConnectionFactory;
-import com.sutherland.helios.database.connection.SQL.RemoteConnection;
 import com.sutherland.helios.date.formatting.DateFormatter;
 import com.sutherland.helios.date.parsing.DateParser;
 import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
@@ -26,7 +24,15 @@ import com.sutherland.helios.exceptions.ReportSetupException;
 import com.sutherland.helios.logging.LogIDFactory;
 import com.sutherland.helios.report.Report;
 import com.sutherland.helios.report.parameters.groups.ReportParameterGroups;
+import com.sutherland.helios.statistics.Statistics;
+import com.sutherland.hughes.datasources.DataSources;
 import com.sutherland.hughes.datasources.DatabaseConfigs;
+import com.sutherland.hughes.datasources.JDBCConnection;
+import com.sutherland.hughes.metrics.ReportMetricSet;
+import com.sutherland.hughes.metrics.ReportMetrics;
+import com.sutherland.hughes.metrics.ReportPhase;
+import com.sutherland.hughes.report.execution.GrainPushdown;
+import com.sutherland.hughes.report.execution.ReportExecution;
 
 
 
@@ -36,10 +42,11 @@ import com.sutherland.hughes.datasources.DatabaseConfigs;
  */
 public final class CreatedCases extends Report implements DataAttributes 
 {
-	private RemoteConnection dbConnection;
+	private JDBCConnection dbConnection;
 	private HughesRoster roster;
 	private final String dbPropFile = DatabaseConfigs.PRIVATE_LABEL_PROD_DB;
 	private final static Logger logger = Logger.getLogger(CreatedCases.class);
+	private final static ReportMetricSet metrics = ReportMetrics.getReportMetrics(CreatedCases.class);
 
 	public static String uiGetReportName()
 	{
@@ -122,11 +129,7 @@ public final class CreatedCases extends Report implements DataAttributes
 
 		try 
 		{
-			ConnectionFactory factory = new ConnectionFactory();
-			
-			factory.load(dbPropFile);
-			
-			dbConnection = factory.getConnection();
+			dbConnection = DataSources.getConnection(dbPropFile, metrics);
 		}
 		catch(DatabaseConnectionCreationException e )
 		{
@@ -146,6 +149,22 @@ public final class CreatedCases extends Report implements DataAttributes
 		return retval;
 	}
 
+	/* (non-Javadoc)
+	 * @see com.sutherland.helios.report.Report#startReport()
+	 */
+	@Override
+	public ArrayList<String[]> startReport()
+	{
+		return ReportExecution.run(this, metrics, new ReportExecution.Runner()
+		{
+			@Override
+			public ArrayList<String[]> run()
+			{
+				return CreatedCases.super.startReport();
+			}
+		});
+	}
+	
 	/* (non-Javadoc)
 	 * @see helios.Report#runReport()
 	 */
@@ -181,14 +200,32 @@ public final class CreatedCases extends Report implements DataAttributes
 		roster.setChildReport(true);
 		roster.getParameters().setAgentNames(getParameters().getAgentNames());
 		roster.getParameters().setTeamNames(getParameters().getTeamNames());
+		long rosterStart = System.nanoTime();
 		roster.load();
+		metrics.addPhaseTime(ReportPhase.ROSTER, System.nanoTime() - rosterStart);
 		
-		for(String[] row:  dbConnection.runQuery(query))
+		//rows come back from the database already grouped by the report's time or user grain, counted per user
+		GrainPushdown pushdown = GrainPushdown.forReport(this, roster);
+		
+		if(pushdown != null)
+		{
+			query = pushdown.group(query, 3, 1, 0, new int[0]);
+		}
+		
+		ArrayList<String[]> queryResults = dbConnection.runQuery(query);
+		
+		//filtering and bucketing, timed apart from the query
+		long aggregateStart = System.nanoTime();
+		long rowsKept = 0;
+		
+		for(String[] row:  queryResults)
 		{
 			userID = row[1];
 			
 			if(roster.hasUser(userID) )
 			{
+				rowsKept += GrainPushdown.getRowCount(pushdown, row);
+				
 				createdCaseID = row[2];
 
 				//time grain for time reports
@@ -207,13 +244,16 @@ public final class CreatedCases extends Report implements DataAttributes
 				
 				reportGrainData.addDatum(reportGrain);
 				reportGrainData.getDatum(reportGrain).addAttribute(CREATED_CASES_ATTR);
-				reportGrainData.getDatum(reportGrain).addData(CREATED_CASES_ATTR, createdCaseID);
+				reportGrainData.getDatum(reportGrain).addData(CREATED_CASES_ATTR, "" + GrainPushdown.getRowCount(pushdown, row));
 			}
 		}
 		
-		for( Entry<String, String> queryStats  : dbConnection.getStatistics().entrySet())
+		if(logger.isInfoEnabled())
 		{
-			logInfoMessage( "Query " + queryStats.getKey() + ": " + queryStats.getValue());
+			for( Entry<String, String> queryStats  : dbConnection.getStatistics().entrySet())
+			{
+				logInfoMessage( "Query " + queryStats.getKey() + ": " + queryStats.getValue());
+			}
 		}
 		
 		/////////////////
@@ -225,11 +265,14 @@ public final class CreatedCases extends Report implements DataAttributes
 		
 		for(String grain : reportGrainData.getDatumIDList())
 		{
-			numCreatedCases = reportGrainData.getDatum(grain).getAttributeData(CREATED_CASES_ATTR).size();
+			numCreatedCases = (int)Statistics.getTotal(reportGrainData.getDatum(grain).getAttributeData(CREATED_CASES_ATTR));
 
 			retval.add(new String[]{grain, "" + numCreatedCases });
 		}
 
+		metrics.addRowsKept(rowsKept);
+		metrics.addPhaseTime(ReportPhase.AGGREGATE, System.nanoTime() - aggregateStart);
+		
 		return retval;
 	}
 
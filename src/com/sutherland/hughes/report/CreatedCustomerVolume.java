@@ -14,8 +14,6 @@ import org.apache.log4j.MDC;
 import com.sutherland.helios.api.report.frontend.ReportFrontEndGroups;
 import com.sutherland.helios.data.Aggregation;
 import com.sutherland.helios.data.attributes.DataAttributes;
-import com.sutherland.helios.database.connection.SQL.ConnectionFactory;
-import com.sutherland.helios.database.connection.SQL.RemoteConnection;
 import com.sutherland.helios.date.formatting.DateFormatter;
 import com.sutherland.helios.date.parsing.DateParser;
 import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
@@ -25,7 +23,15 @@ import com.sutherland.helios.logging.LogIDFactory;
 import com.sutherland.helios.report.Report;
 import com.sutherland.helios.report.parameters.groups.ReportParameterGroups;
 import com.sutherland.helios.report.parameters.validation.TimeIntervalValidator;
+import com.sutherland.helios.statistics.Statistics;
+import com.sutherland.hughes.datasources.DataSources;
 import com.sutherland.hughes.datasources.DatabaseConfigs;
+import com.sutherland.hughes.datasources.JDBCConnection;
+import com.sutherland.hughes.metrics.ReportMetricSet;
+import com.sutherland.hughes.metrics.ReportMetrics;
+import com.sutherland.hughes.metrics.ReportPhase;
+import com.sutherland.hughes.report.execution.GrainPushdown;
+import com.sutherland.hughes.report.execution.ReportExecution;
 
 /**
  * @author Jason Diamond
@@ -33,9 +39,10 @@ import com.sutherland.hughes.datasources.DatabaseConfigs;
  */
 public final class CreatedCustomerVolume extends Report implements DataAttributes 
 {
-	private RemoteConnection dbConnection;
+	private JDBCConnection dbConnection;
 	private final String dbPropFile = DatabaseConfigs.PRIVATE_LABEL_PROD_DB;
 	private final static Logger logger = Logger.getLogger(CreatedCustomerVolume.class);
+	private final static ReportMetricSet metrics = ReportMetrics.getReportMetrics(CreatedCustomerVolume.class);
 	
 	public static String uiGetReportName()
 	{
@@ -120,11 +127,7 @@ public final class CreatedCustomerVolume extends Report implements DataAttribute
 
 		try 
 		{
-			ConnectionFactory factory = new ConnectionFactory();
-			
-			factory.load(dbPropFile);
-			
-			dbConnection = factory.getConnection();
+			dbConnection = DataSources.getConnection(dbPropFile, metrics);
 		}
 		catch(DatabaseConnectionCreationException e )
 		{
@@ -144,6 +147,22 @@ public final class CreatedCustomerVolume extends Report implements DataAttribute
 		return retval;
 	}
 
+	/* (non-Javadoc)
+	 * @see com.sutherland.helios.report.Report#startReport()
+	 */
+	@Override
+	public ArrayList<String[]> startReport()
+	{
+		return ReportExecution.run(this, metrics, new ReportExecution.Runner()
+		{
+			@Override
+			public ArrayList<String[]> run()
+			{
+				return CreatedCustomerVolume.super.startReport();
+			}
+		});
+	}
+	
 	/* (non-Javadoc)
 	 * @see helios.Report#runReport()
 	 */
@@ -171,13 +190,22 @@ public final class CreatedCustomerVolume extends Report implements DataAttribute
 		int timeGrain, dateFormat;
 		String reportGrain;
 		
+		//rows come back from the database already grouped by the report's time or user grain, counted
+		GrainPushdown pushdown = GrainPushdown.forReport(this, null);
+		
+		if(pushdown != null)
+		{
+			query = pushdown.group(query, 7, -1, 0, new int[0]);
+		}
+		
 		Aggregation reportGrainData = new Aggregation();
 		
-		String san;
-		for(String[] row:  dbConnection.runQuery(query))
+		ArrayList<String[]> queryResults = dbConnection.runQuery(query);
+		
+		long aggregateStart = System.nanoTime();
+		
+		for(String[] row:  queryResults)
 		{
-			san = row[2];
-			
 			//time grain for time reports
 			if(isTimeTrendReport())
 			{
@@ -187,13 +215,16 @@ public final class CreatedCustomerVolume extends Report implements DataAttribute
 				
 				reportGrainData.addDatum(reportGrain);
 				reportGrainData.getDatum(reportGrain).addAttribute(CREATED_CUST_ATTR);
-				reportGrainData.getDatum(reportGrain).addData(CREATED_CUST_ATTR, san);
+				reportGrainData.getDatum(reportGrain).addData(CREATED_CUST_ATTR, "" + GrainPushdown.getRowCount(pushdown, row));
 			}
 		}
 		
-		for( Entry<String, String> queryStats  : dbConnection.getStatistics().entrySet())
+		if(logger.isInfoEnabled())
 		{
-			logInfoMessage( "Query " + queryStats.getKey() + ": " + queryStats.getValue());
+			for( Entry<String, String> queryStats  : dbConnection.getStatistics().entrySet())
+			{
+				logInfoMessage( "Query " + queryStats.getKey() + ": " + queryStats.getValue());
+			}
 		}
 		
 		retval =  new ArrayList<String[]>();
@@ -204,12 +235,14 @@ public final class CreatedCustomerVolume extends Report implements DataAttribute
 			customerCount = 0;
 			if( reportGrainData.getDatum(grain).getAttributeData(CREATED_CUST_ATTR) != null)
 			{
-				customerCount = reportGrainData.getDatum(grain).getAttributeData(CREATED_CUST_ATTR).size();
+				customerCount = (int)Statistics.getTotal(reportGrainData.getDatum(grain).getAttributeData(CREATED_CUST_ATTR));
 			}
 
 			retval.add(new String[]{grain, "" + customerCount }) ;
 		}
 		
+		metrics.addPhaseTime(ReportPhase.AGGREGATE, System.nanoTime() - aggregateStart);
+		
 		return retval;
 	}
 
@@ -3,7 +3,9 @@
  */
 package com.sutherland.hughes.report;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map.Entry;
 
@@ -13,8 +15,6 @@ import org.apache.log4j.MDC;
 
 import com.sutherland.helios.api.report.frontend.ReportFrontEndGroups;
 import com.sutherland.helios.data.attributes.DataAttributes;
-import com.sutherland.helios.database.connection.SQL.ConnectionFactory;
-import com.sutherland.helios.database.connection.SQL.RemoteConnection;
 import com.sutherland.helios.date.parsing.DateParser;
 import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
 import com.sutherland.helios.exceptions.ExceptionFormatter;
@@ -23,18 +23,32 @@ import com.sutherland.helios.logging.LogIDFactory;
 import com.sutherland.helios.report.Report;
 import com.sutherland.helios.report.parameters.groups.ReportParameterGroups;
 import com.sutherland.helios.report.parameters.validation.TimeIntervalValidator;
+import com.sutherland.hughes.datasources.DataSources;
 import com.sutherland.hughes.datasources.DatabaseConfigs;
+import com.sutherland.hughes.datasources.JDBCConnection;
+import com.sutherland.hughes.datasources.RowHandler;
+import com.sutherland.hughes.metrics.ReportMetricSet;
+import com.sutherland.hughes.metrics.ReportMetrics;
+import com.sutherland.hughes.report.execution.ReportExecution;
+import com.sutherland.hughes.report.execution.ReportSession;
+import com.sutherland.hughes.report.export.StreamableReport;
 
 /**
  * @author Jason Diamond
  *
  */
-public final class CreatedCustomers extends Report implements DataAttributes 
+public final class CreatedCustomers extends Report implements DataAttributes, StreamableReport 
 {
-	private RemoteConnection dbConnection;
+	private JDBCConnection dbConnection;
 	private final String dbPropFile = DatabaseConfigs.PRIVATE_LABEL_PROD_DB;
-	private LinkedHashMap<String, String> refVals; 
+	private HashMap<String, String> refVals; 
 	private final static Logger logger = Logger.getLogger(CreatedCustomers.class);
+	private final static ReportMetricSet metrics = ReportMetrics.getReportMetrics(CreatedCustomers.class);
+	
+	/**
+	 * The refval dictionary, from DatabaseConfigs.PRIVATE_LABEL_PROD_DB. Also run at startup by the warm-up, to have it in the query cache.
+	 */
+	public final static String REFVAL_QUERY = "select refval_refvalid, refval_displayvalue from crm_mst_refvalues";
 
 	public static String uiGetReportName()
 	{
@@ -70,7 +84,7 @@ public final class CreatedCustomers extends Report implements DataAttributes
 
 		try
 		{	
-			refVals = new LinkedHashMap<String,String>();
+			refVals = new HashMap<String,String>();
 			
 			reportName = CreatedCustomers.uiGetReportName();
 			reportDesc = CreatedCustomers.uiGetReportDesc();
@@ -119,11 +133,7 @@ public final class CreatedCustomers extends Report implements DataAttributes
 
 		try 
 		{
-			ConnectionFactory factory = new ConnectionFactory();
-			
-			factory.load(dbPropFile);
-			
-			dbConnection = factory.getConnection();
+			dbConnection = DataSources.getConnection(dbPropFile, metrics);
 		}
 		catch(DatabaseConnectionCreationException e )
 		{
@@ -143,40 +153,156 @@ public final class CreatedCustomers extends Report implements DataAttributes
 		return retval;
 	}
 	
-	private String lookupRefVal(String refValID)
+	/**
+	 * Load the refval dictionary in one pass. Lookups happen for every row of the result, and the rows are read from an open cursor 
+	 * on the same connection, so the dictionary has to be in hand before the main query starts. In a batch, it's loaded once for every
+	 * report in the session.
+	 */
+	private void loadRefVals()
 	{
-		String retval = "";
-		if(refValID != null && !refValID.equals("null") && !refValID.equals("-1") && refValID.matches("[A-Za-z0-9\\-]+"))
+		refVals.clear();
+		
+		ReportSession session = ReportSession.getCurrent();
+		
+		if(session == null)
 		{
-			if(refVals.containsKey(refValID))
-			{
-				retval = refVals.get(refValID);
-			}
-			else
+			refVals.putAll(queryRefVals());
+		}
+		else
+		{
+			HashMap<String, String> shared = session.get(REFVAL_QUERY, new ReportSession.Loader<HashMap<String, String>>()
 			{
-				try
+				@Override
+				public HashMap<String, String> load()
 				{
-					retval = dbConnection.runQuery("select top 1 refval_displayvalue from crm_mst_refvalues where refval_refvalid = '" + refValID + " ' ").get(0)[0];
-					refVals.put(refValID, retval);
+					return queryRefVals();
 				}
-				catch (Exception e)
+			});
+			
+			if(shared != null)
+			{
+				refVals.putAll(shared);
+			}
+		}
+	}
+	
+	private HashMap<String, String> queryRefVals()
+	{
+		HashMap<String, String> retval = new HashMap<String, String>();
+		
+		String refValID;
+		for(String[] row : dbConnection.runQuery(REFVAL_QUERY))
+		{
+			if(row[0] != null)
+			{
+				refValID = row[0].trim();
+				
+				//first value wins, same as the old select top 1
+				if(!retval.containsKey(refValID))
 				{
-					retval = "";
+					retval.put(refValID, row[1]);
 				}
 			}
 		}
 		
 		return retval;
 	}
+	
+	private String lookupRefVal(String refValID)
+	{
+		String retval = "";
+		if(refValID != null && !refValID.equals("null") && !refValID.equals("-1") && refValID.matches("[A-Za-z0-9\\-]+"))
+		{
+			retval = refVals.get(refValID);
+			
+			if(retval == null)
+			{
+				retval = "";
+			}
+		}
+		
+		return retval;
+	}
 
+	/* (non-Javadoc)
+	 * @see com.sutherland.helios.report.Report#startReport()
+	 */
+	@Override
+	public ArrayList<String[]> startReport()
+	{
+		return ReportExecution.run(this, metrics, new ReportExecution.Runner()
+		{
+			@Override
+			public ArrayList<String[]> run()
+			{
+				return CreatedCustomers.super.startReport();
+			}
+		});
+	}
+	
 	/* (non-Javadoc)
 	 * @see helios.Report#runReport()
 	 */
 	@Override
-	protected ArrayList<String[]> runReport() 
+	protected ArrayList<String[]> runReport() throws Exception 
 	{
-		ArrayList<String[]> retval = null;
+		final ArrayList<String[]> retval = new ArrayList<String[]>();
+		
+		streamRows(new RowHandler()
+		{
+			@Override
+			public void handleRow(String[] row)
+			{
+				retval.add(row);
+			}
+		});
 		
+		return retval;
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.report.export.StreamableReport#streamReport(com.sutherland.hughes.datasources.RowHandler)
+	 */
+	@Override
+	public void streamReport(RowHandler handler) throws Exception
+	{
+		ReportExecution execution = ReportExecution.begin(this, metrics);
+		String runError = null;
+		long rows = 0;
+		
+		try
+		{
+			if(!validateParameters())
+			{
+				throw new ReportSetupException("Parameter validation failed: " + getErrorMessage());
+			}
+			
+			rows = streamRows(handler);
+		}
+		catch(Exception e)
+		{
+			runError = ExceptionFormatter.asString(e);
+			
+			throw e;
+		}
+		finally
+		{
+			execution.end(rows, runError);
+		}
+	}
+	
+	/**
+	 * Decode each contact row as it comes off of the cursor and pass it to the handler. Nothing is accumulated here, so memory use does
+	 * not depend on the date range.
+	 * 
+	 * @param handler	The receiver of the decoded rows.
+	 * 
+	 * @return	The number of rows.
+	 * 
+	 * @throws Exception	If the query fails, or the handler cannot accept a row.
+	 */
+	private long streamRows(final RowHandler handler) throws Exception
+	{
 		String query = 
 				"select " + 
 				"CRM_MST_CONTACT.CONT_CREATEDDATE,"+
@@ -192,41 +318,47 @@ public final class CreatedCustomers extends Report implements DataAttributes
 				"CRM_MST_CONTACT.CONT_CREATEDDATE >= '" + getParameters().getStartDate() +
 				"' and CRM_MST_CONTACT.CONT_CREATEDDATE < '" + getParameters().getEndDate() +"'";
 		
-		retval = new ArrayList<String[]>();
+		loadRefVals();
 		
-		int dateFormat;
-
-		dateFormat = Integer.parseInt(getParameters().getDateFormat());
+		final int dateFormat = Integer.parseInt(getParameters().getDateFormat());
 		
-		String creationDate, customerType, san, promoCode, marketingCallReason, l1Center, reasonForNoSale;
-		for(String[] row:  dbConnection.runQuery(query))
+		long retval = dbConnection.streamQuery(query, new RowHandler()
 		{
-			creationDate = DateParser.convertToString(DateParser.convertSQLDateToGregorian(row[0]), dateFormat );	
-			
-			san = row[2];
-			promoCode = row[3];
-			
-			//customertype
-			customerType = lookupRefVal(row[1]);
-			
-			//promoCode
-			//promoCode = lookupRefVal(row[3]);
+			@Override
+			public void handleRow(String[] row) throws IOException 
+			{
+				String creationDate, customerType, san, promoCode, marketingCallReason, l1Center, reasonForNoSale;
+				
+				creationDate = DateParser.convertToString(DateParser.convertSQLDateToGregorian(row[0]), dateFormat );	
+				
+				san = row[2];
+				promoCode = row[3];
+				
+				//customertype
+				customerType = lookupRefVal(row[1]);
+				
+				//promoCode
+				//promoCode = lookupRefVal(row[3]);
 
-			//mcr
-			marketingCallReason  = lookupRefVal(row[4]);
-			
-			//l1c
-			l1Center = lookupRefVal(row[5]);
-			
-			//rfns
-			reasonForNoSale = lookupRefVal(row[6]);
-			
-			retval.add(new String[]{creationDate, customerType, san, promoCode, marketingCallReason, l1Center, reasonForNoSale});
-		}
+				//mcr
+				marketingCallReason  = lookupRefVal(row[4]);
+				
+				//l1c
+				l1Center = lookupRefVal(row[5]);
+				
+				//rfns
+				reasonForNoSale = lookupRefVal(row[6]);
+				
+				handler.handleRow(new String[]{creationDate, customerType, san, promoCode, marketingCallReason, l1Center, reasonForNoSale});
+			}
+		});
 		
-		for( Entry<String, String> queryStats  : dbConnection.getStatistics().entrySet())
+		if(logger.isInfoEnabled())
 		{
-			logInfoMessage( "Query " + queryStats.getKey() + ": " + queryStats.getValue());
+			for( Entry<String, String> queryStats  : dbConnection.getStatistics().entrySet())
+			{
+				logInfoMessage( "Query " + queryStats.getKey() + ": " + queryStats.getValue());
+			}
 		}
 		
 		return retval;
@@ -6,6 +6,7 @@ package com.sutherland.hughes.report;
 
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Map.Entry;
 
 import org.apache.log4j.Level;
@@ -14,7 +15,6 @@ import org.apache.log4j.MDC;
 
 import com.sutherland.helios.api.report.frontend.ReportFrontEndGroups;
 import com.sutherland.helios.data.Datum;
-import com.sutherland.helios.database.connection.SQL.ConnectionFactory;
 import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
 import com.sutherland.helios.exceptions.ExceptionFormatter;
 import com.sutherland.helios.exceptions.ReportSetupException;
@@ -22,8 +22,18 @@ import com.sutherland.helios.logging.LogIDFactory;
 import com.sutherland.helios.report.parameters.groups.ReportParameterGroups;
 import com.sutherland.helios.roster.Roster;
 import com.sutherland.helios.schedule.Scheduling;
+import com.sutherland.hughes.config.ReportingConfig;
+import com.sutherland.hughes.datasources.DataSources;
 import com.sutherland.hughes.datasources.DatabaseConfigs;
+import com.sutherland.hughes.datasources.JDBCConnection;
+import com.sutherland.hughes.logging.LogRateLimiter;
+import com.sutherland.hughes.metrics.ReportMetricSet;
+import com.sutherland.hughes.metrics.ReportMetrics;
+import com.sutherland.hughes.report.execution.ReportExecution;
+import com.sutherland.hughes.report.execution.ReportSession;
 import com.sutherland.hughes.report.roster.Attributes;
+import com.sutherland.hughes.report.roster.RosterSnapshot;
+import com.sutherland.hughes.report.roster.RosterSnapshots;
 
 
 
@@ -31,17 +41,47 @@ import com.sutherland.hughes.report.roster.Attributes;
  * The roster containing the agents for whom we care about performance. This backend is not only used by the Roster report, but is used by other reports requiring 
  * an end-all list of users to report on. AgentName to CMS Name mappings are also loaded and can be referenced by implementing reports without additional database queries.
  * 
+ * Every HughesRoster is filled from one shared RosterSnapshot, so concurrent reports don't each query the users, or open a connection to
+ * query them with. A roster instance still belongs to one report, with that report's filters.
  * 
  * @author Jason Diamond
  *
  */
 public final class HughesRoster extends Roster implements Attributes, Scheduling
 {
-	private final String dbPropFile = DatabaseConfigs.PRIVATE_LABEL_PROD_DB;
+	private final static String dbPropFile = DatabaseConfigs.PRIVATE_LABEL_PROD_DB;
 	private final static String PROGRAM_NAME = "Hughes";
 	private final static String ORGUNIT_NAME = "NATS";
 	
+	public final static long DEFAULT_SNAPSHOT_MAX_AGE_SECONDS = 300;
+	
+	private final static String SESSION_SNAPSHOT_KEY = "HughesRoster.snapshot";
+	
 	private final static Logger logger = Logger.getLogger(HughesRoster.class);
+	private final static ReportMetricSet metrics = ReportMetrics.getReportMetrics(HughesRoster.class);
+	
+	/**
+	 * Bad user rows are only logged a few at a time, since every roster load hits the same ones.
+	 */
+	private final static LogRateLimiter rowErrorLimiter = new LogRateLimiter();
+	
+	/**
+	 * The users every HughesRoster is filled from, refreshed every hughes.roster.snapshotMaxAgeSeconds.
+	 */
+	private final static RosterSnapshots snapshots = new RosterSnapshots(ReportingConfig.getLong(ReportingConfig.ROSTER_SNAPSHOT_MAX_AGE_SECONDS, DEFAULT_SNAPSHOT_MAX_AGE_SECONDS) * 1000);
+	
+	/**
+	 * Queries the users for a new snapshot, on a connection of its own, since a refresh runs in the background after the roster that
+	 * found the snapshot stale may be closed.
+	 */
+	private final static RosterSnapshots.Loader usersLoader = new RosterSnapshots.Loader()
+	{
+		@Override
+		public Map<String, Datum> load()
+		{
+			return queryUsers();
+		}
+	};
 
 	public static String uiGetReportName()
 	{
@@ -115,38 +155,14 @@ public final class HughesRoster extends Roster implements Attributes, Scheduling
 	}
 
 	/** 
-	 * Attempt to establish connections to all required datasources. A report by definition has at least one, and possibly many.
+	 * The roster has no connection of its own. The users are queried on one opened for the purpose, and only when the snapshot is due for
+	 * a refresh.
 	 * 
-	 * @return	True if the connection was established, false otherwise.
+	 * @return	True.
 	 */
 	protected boolean setupDataSourceConnections()
 	{
-		boolean retval = false;
-
-		try 
-		{
-			ConnectionFactory factory = new ConnectionFactory();
-			
-			factory.load(dbPropFile);
-			
-			dbConnection = factory.getConnection();
-		}
-		catch(DatabaseConnectionCreationException e )
-		{
-			setErrorMessage("DatabaseConnectionCreationException on attempt to access database");
-					
-			logErrorMessage( getErrorMessage());
-			logErrorMessage( ExceptionFormatter.asString(e));
-		}
-		finally
-		{
-			if(dbConnection != null)
-			{
-				retval = true;
-			}
-		}
-
-		return retval;
+		return true;
 	}
 
 	/**
@@ -193,15 +209,172 @@ public final class HughesRoster extends Roster implements Attributes, Scheduling
 	}
 
 	/**
-	 * Build the roster from the database. Also build the PARAM -> USER mappings for other reports to reference.
+	 * Build the roster from the roster snapshot, refreshing it from the database when it's due. Also build the PARAM -> USER mappings for other reports to reference.
 	 * 
 	 */
 	public void load()
+	{
+		//the roster shows up in the trace as a child of the report loading it
+		ReportExecution execution = ReportExecution.begin(this, metrics);
+		
+		try
+		{
+			loadUsers();
+		}
+		finally
+		{
+			execution.end(getUserIDs().length, getErrorMessage());
+		}
+	}
+	
+	private static String suppressedErrors()
+	{
+		String retval = "";
+		
+		long suppressed = rowErrorLimiter.takeSuppressed();
+		
+		if(suppressed > 0)
+		{
+			retval = " (" + suppressed + " similar errors not logged)";
+		}
+		
+		return retval;
+	}
+	
+	private void loadUsers()
 	{
 		logInfoMessage( "Loading Roster for likely a parent report: " + toString());
 
 		clearUsers();
 
+		//this roster's filters are applied to the shared snapshot, which is only queried when it's due for a refresh
+		RosterSnapshot snapshot;
+		ReportSession session = ReportSession.getCurrent();
+		
+		if(session == null)
+		{
+			snapshot = snapshots.get(usersLoader);
+		}
+		else
+		{
+			//every report in a batch sees the same snapshot, even if it's refreshed partway through
+			snapshot = session.get(SESSION_SNAPSHOT_KEY, new ReportSession.Loader<RosterSnapshot>()
+			{
+				@Override
+				public RosterSnapshot load()
+				{
+					return snapshots.get(usersLoader);
+				}
+			});
+		}
+		
+		Datum user;
+		
+		for(String userID : snapshot.getUserIDs())
+		{
+			user = snapshot.getUser(userID);
+			
+			if(shouldIncludeUser(user) || includeAllUsers)
+			{
+				addUser(userID, user);
+			}
+		}
+		
+		logInfoMessage( "Loaded " + getSize() + " users into roster from snapshot " + snapshot.getVersion());
+	}
+	
+	/**
+	 * Accessor for the roster snapshot every HughesRoster is filled from.
+	 * 
+	 * @return	The snapshots.
+	 */
+	public static RosterSnapshots getSnapshots()
+	{
+		return snapshots;
+	}
+	
+	private static Map<String, Datum> queryUsers()
+	{
+		LinkedHashMap<String, Datum> retval = new LinkedHashMap<String, Datum>();
+
+		String userID;
+		
+		String query = 	"SELECT CRM_MST_USER.USER_USERID,CRM_MST_USER.USER_LOGINNAME,CRM_MST_USERTEAM.UTEAM_TEAMNAME,CRM_MST_USER.USER_FIRSTNAME, " +
+				" CRM_MST_USER.USER_LASTNAME, CRM_MST_USER.USER_EXTENSION, CRM_MST_USER.USER_SUPPORTTYPEID, CRM_MST_USER.USER_EMPID, " +
+				" CRM_MST_USER.USER_EMAILID, CRM_MST_USER.USER_LOGMEINLOGINNAME, CRM_MST_USER.USER_LOGMEINNODEID,CRM_MST_USER.USER_NTLOGINID,CRM_MST_USER.USER_RECORDSTATUS " +
+				" FROM CRM_MST_USER INNER JOIN CRM_MST_USERTEAM ON CRM_MST_USER.USER_TEAMID = CRM_MST_USERTEAM.UTEAM_TEAMID " +
+				" WHERE ( CRM_MST_USER.USER_SUPPORTTYPEID in ('151','159') AND CRM_MST_USER.USER_LOGINNAME NOT IN ('CHATUSER', 'WEBUSER', 'USER11') AND CRM_MST_USERTEAM.UTEAM_TEAMNAME NOT IN ('Management', 'SGS'))";
+		
+		JDBCConnection connection = null;
+		
+		try
+		{
+			connection = DataSources.getConnection(dbPropFile, metrics);
+			
+			ArrayList<String[]> rows = connection.runQuery(query);
+			
+			if(rows == null)
+			{
+				logger.error("Roster query failed: " + connection.getErrorMessage());
+				rows = new ArrayList<String[]>();
+			}
+			
+			for(String[] row : rows)
+			{
+				try
+				{					
+					userID = row[0].trim();
+	
+					if( !retval.containsKey(userID) ) 
+					{
+						retval.put(userID, buildUser(row));
+					}
+				}
+				catch(NullPointerException e)
+				{
+					if(rowErrorLimiter.allow())
+					{
+						logger.error("Error adding user for line beginning with " + row[0] + suppressedErrors());
+						logger.error(ExceptionFormatter.asString(e));
+					}
+				}
+			}
+			
+			if(logger.isInfoEnabled())
+			{
+				for( Entry<String, String> queryStats  : connection.getStatistics().entrySet())
+				{
+					logger.info("Query " + queryStats.getKey() + ": " + queryStats.getValue());
+				}
+			}
+		}
+		catch(DatabaseConnectionCreationException e)
+		{
+			logger.error("DatabaseConnectionCreationException on attempt to access database");
+			logger.error(ExceptionFormatter.asString(e));
+		}
+		finally
+		{
+			if(connection != null)
+			{
+				connection.close();
+			}
+		}
+		
+		return retval;
+	}
+	
+	/**
+	 * Build a roster user from a row of the roster query.
+	 * 
+	 * @param row	The roster query row.
+	 * 
+	 * @return	The user.
+	 * 
+	 * @throws NullPointerException	If a required column is null.
+	 */
+	public static Datum buildUser(String[] row)
+	{
 		String userID;
 		String loginName;
 		String teamName;
@@ -217,141 +390,109 @@ public final class HughesRoster extends Roster implements Attributes, Scheduling
 		String ntlogin;
 		String active;
 
-		Datum newUser = null;
+		Datum retval = null;
 		
-		String query = 	"SELECT CRM_MST_USER.USER_USERID,CRM_MST_USER.USER_LOGINNAME,CRM_MST_USERTEAM.UTEAM_TEAMNAME,CRM_MST_USER.USER_FIRSTNAME, " +
-				" CRM_MST_USER.USER_LASTNAME, CRM_MST_USER.USER_EXTENSION, CRM_MST_USER.USER_SUPPORTTYPEID, CRM_MST_USER.USER_EMPID, " +
-				" CRM_MST_USER.USER_EMAILID, CRM_MST_USER.USER_LOGMEINLOGINNAME, CRM_MST_USER.USER_LOGMEINNODEID,CRM_MST_USER.USER_NTLOGINID,CRM_MST_USER.USER_RECORDSTATUS " +
-				" FROM CRM_MST_USER INNER JOIN CRM_MST_USERTEAM ON CRM_MST_USER.USER_TEAMID = CRM_MST_USERTEAM.UTEAM_TEAMID " +
-				" WHERE ( CRM_MST_USER.USER_SUPPORTTYPEID in ('151','159') AND CRM_MST_USER.USER_LOGINNAME NOT IN ('CHATUSER', 'WEBUSER', 'USER11') AND CRM_MST_USERTEAM.UTEAM_TEAMNAME NOT IN ('Management', 'SGS'))";
-		
-		for(String[] row:  dbConnection.runQuery(query))
+		userID = row[0].trim();
+		loginName = row[1].trim();
+		teamName = row[2].trim();
+		firstName = row[3].trim();
+		lastName = row[4].trim();
+		fullName = lastName + ", " + firstName;
+
+		if(row[5] != null)
 		{
-			try
-			{					
-				userID = row[0].trim();
-				loginName = row[1].trim();
-				teamName = row[2].trim();
-				firstName = row[3].trim();
-				lastName = row[4].trim();
-				fullName = lastName + ", " + firstName;
-
-				if(row[5] != null)
-				{
-					extension = row[5].trim();
-				}
-				else
-				{
-					extension="";
-				}
-
-				supportTypeID = row[6].trim();
-				empID = row[7].trim().toUpperCase();
-				emailID = row[8].trim();
+			extension = row[5].trim();
+		}
+		else
+		{
+			extension="";
+		}
 
-				if(row[9] != null)
-				{
-					lmiLogin = row[9].trim();
-				}
-				else
-				{
-					lmiLogin ="";
-				}
+		supportTypeID = row[6].trim();
+		empID = row[7].trim().toUpperCase();
+		emailID = row[8].trim();
 
-				if(row[10] != null)
-				{
-					lmiLoginNodeID = row[10].trim();
-				}
-				else
-				{
-					lmiLoginNodeID ="";
-				}
-				
-				if(row[11] != null)
-				{
-					ntlogin = row[11].trim();
-				}
-				else
-				{
-					ntlogin ="";
-				}
-				
-				if(row[12] != null)
-				{
-					active = row[12].trim();
-				}
-				else
-				{
-					active ="";
-				}
+		if(row[9] != null)
+		{
+			lmiLogin = row[9].trim();
+		}
+		else
+		{
+			lmiLogin ="";
+		}
 
-				if( !hasUser(userID) ) 
-				{
-					newUser = new Datum(userID);
-
-					newUser.addAttribute(USER_ID_ATTR);
-					newUser.addAttribute(LOGIN_NAME_ATTR);
-					newUser.addAttribute(TEAMNAME_ATTR);
-					newUser.addAttribute(FIRSTNAME_ATTR);
-					newUser.addAttribute(LASTNAME_ATTR);
-					newUser.addAttribute(EXTENSION_ATTR); 
-					newUser.addAttribute(SUPPORT_TYPE_ID_ATTR);
-					newUser.addAttribute(EMP_ID_ATTR);
-					newUser.addAttribute(EMAIL_ID_ATTR );
-					newUser.addAttribute(LMI_LOGIN_NAME_ATTR); 
-					newUser.addAttribute(LMI_LOGIN_NODE_ID_ATTR);
-					newUser.addAttribute(FULLNAME_ATTR);
-					newUser.addAttribute(NTLOGIN_ATTR);
-					newUser.addAttribute(ACTIVE_ATTR);
-					newUser.addAttribute(PROGRAMNAME_ATTR);
-					newUser.addAttribute(ORGUNIT_ATTR);
-					
-					newUser.setAttributeAsUnique(USER_ID_ATTR);
-					newUser.setAttributeAsUnique(NTLOGIN_ATTR);
-					newUser.setAttributeAsUnique(EMAIL_ID_ATTR);
-					newUser.setAttributeAsUnique(EMP_ID_ATTR);
-					newUser.setAttributeAsUnique(EXTENSION_ATTR);
-					newUser.setAttributeAsUnique(FULLNAME_ATTR);
-					newUser.setAttributeAsUnique(LMI_LOGIN_NODE_ID_ATTR);
-
-					newUser.addData(USER_ID_ATTR, userID);
-					newUser.addData(LOGIN_NAME_ATTR, loginName);
-					newUser.addData(TEAMNAME_ATTR, teamName);
-					newUser.addData(FIRSTNAME_ATTR, firstName);
-					newUser.addData(LASTNAME_ATTR, lastName);
-					newUser.addData(EXTENSION_ATTR, extension);
-					newUser.addData(SUPPORT_TYPE_ID_ATTR, supportTypeID);
-					newUser.addData(EMP_ID_ATTR, empID);
-					newUser.addData(EMAIL_ID_ATTR, emailID);
-					newUser.addData(LMI_LOGIN_NAME_ATTR, lmiLogin);
-					newUser.addData(LMI_LOGIN_NODE_ID_ATTR, lmiLoginNodeID);
-					newUser.addData(FULLNAME_ATTR, fullName);
-					newUser.addData(NTLOGIN_ATTR, ntlogin);
-					newUser.addData(ACTIVE_ATTR, active);
-					newUser.addData(PROGRAMNAME_ATTR, PROGRAM_NAME);
-					newUser.addData(ORGUNIT_ATTR, ORGUNIT_NAME);
-					
-					
-					
-					if(shouldIncludeUser(newUser) || includeAllUsers)
-					{
-						addUser(userID, newUser);
-					}
-				}
-			}
-			catch(NullPointerException e)
-			{
-				logErrorMessage(  "Error adding user for line beginning with " + row[0]);
-				logErrorMessage( ExceptionFormatter.asString(e));
-			}
+		if(row[10] != null)
+		{
+			lmiLoginNodeID = row[10].trim();
+		}
+		else
+		{
+			lmiLoginNodeID ="";
+		}
+		
+		if(row[11] != null)
+		{
+			ntlogin = row[11].trim();
+		}
+		else
+		{
+			ntlogin ="";
 		}
 		
-		for( Entry<String, String> queryStats  : dbConnection.getStatistics().entrySet())
+		if(row[12] != null)
+		{
+			active = row[12].trim();
+		}
+		else
 		{
-			logInfoMessage( "Query " + queryStats.getKey() + ": " + queryStats.getValue());
+			active ="";
 		}
+
+		retval = new Datum(userID);
+
+		retval.addAttribute(USER_ID_ATTR);
+		retval.addAttribute(LOGIN_NAME_ATTR);
+		retval.addAttribute(TEAMNAME_ATTR);
+		retval.addAttribute(FIRSTNAME_ATTR);
+		retval.addAttribute(LASTNAME_ATTR);
+		retval.addAttribute(EXTENSION_ATTR); 
+		retval.addAttribute(SUPPORT_TYPE_ID_ATTR);
+		retval.addAttribute(EMP_ID_ATTR);
+		retval.addAttribute(EMAIL_ID_ATTR );
+		retval.addAttribute(LMI_LOGIN_NAME_ATTR); 
+		retval.addAttribute(LMI_LOGIN_NODE_ID_ATTR);
+		retval.addAttribute(FULLNAME_ATTR);
+		retval.addAttribute(NTLOGIN_ATTR);
+		retval.addAttribute(ACTIVE_ATTR);
+		retval.addAttribute(PROGRAMNAME_ATTR);
+		retval.addAttribute(ORGUNIT_ATTR);
+		
+		retval.setAttributeAsUnique(USER_ID_ATTR);
+		retval.setAttributeAsUnique(NTLOGIN_ATTR);
+		retval.setAttributeAsUnique(EMAIL_ID_ATTR);
+		retval.setAttributeAsUnique(EMP_ID_ATTR);
+		retval.setAttributeAsUnique(EXTENSION_ATTR);
+		retval.setAttributeAsUnique(FULLNAME_ATTR);
+		retval.setAttributeAsUnique(LMI_LOGIN_NODE_ID_ATTR);
+
+		retval.addData(USER_ID_ATTR, userID);
+		retval.addData(LOGIN_NAME_ATTR, loginName);
+		retval.addData(TEAMNAME_ATTR, teamName);
+		retval.addData(FIRSTNAME_ATTR, firstName);
+		retval.addData(LASTNAME_ATTR, lastName);
+		retval.addData(EXTENSION_ATTR, extension);
+		retval.addData(SUPPORT_TYPE_ID_ATTR, supportTypeID);
+		retval.addData(EMP_ID_ATTR, empID);
+		retval.addData(EMAIL_ID_ATTR, emailID);
+		retval.addData(LMI_LOGIN_NAME_ATTR, lmiLogin);
+		retval.addData(LMI_LOGIN_NODE_ID_ATTR, lmiLoginNodeID);
+		retval.addData(FULLNAME_ATTR, fullName);
+		retval.addData(NTLOGIN_ATTR, ntlogin);
+		retval.addData(ACTIVE_ATTR, active);
+		retval.addData(PROGRAMNAME_ATTR, PROGRAM_NAME);
+		retval.addData(ORGUNIT_ATTR, ORGUNIT_NAME);
 		
-		logInfoMessage( "Loaded " + getSize() + " users into roster");
+		return retval;
 	}
 	
 	/**
@@ -408,7 +549,10 @@ public final class HughesRoster extends Roster implements Attributes, Scheduling
 		}
 		catch(NullPointerException e)
 		{
-			logErrorMessage( "Could not determine full name for parameter: " + userID);
+			if(rowErrorLimiter.allow())
+			{
+				logErrorMessage( "Could not determine full name for parameter: " + userID + suppressedErrors());
+			}
 		}
 
 		return fullName;
@@ -0,0 +1,503 @@
+/**
+ *
+ */
+package com.sutherland.hughes.report;
+
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.MDC;
+
+import com.sutherland.helios.api.report.frontend.ReportFrontEndGroups;
+import com.sutherland.helios.data.attributes.DataAttributes;
+import com.sutherland.helios.data.formatting.NumberFormatter;
+import com.sutherland.helios.data.granularity.user.UserGrains;
+import com.sutherland.helios.date.formatting.DateFormatter;
+import com.sutherland.helios.date.parsing.DateParser;
+import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
+import com.sutherland.helios.exceptions.ExceptionFormatter;
+import com.sutherland.helios.exceptions.ReportSetupException;
+import com.sutherland.helios.logging.LogIDFactory;
+import com.sutherland.helios.report.Report;
+import com.sutherland.helios.report.parameters.groups.ReportParameterGroups;
+import com.sutherland.hughes.data.GrainPartials;
+import com.sutherland.hughes.datasources.DataSources;
+import com.sutherland.hughes.datasources.DatabaseConfigs;
+import com.sutherland.hughes.datasources.JDBCConnection;
+import com.sutherland.hughes.datasources.RowHandler;
+import com.sutherland.hughes.metrics.ReportMetricSet;
+import com.sutherland.hughes.metrics.ReportMetrics;
+import com.sutherland.hughes.metrics.ReportPhase;
+import com.sutherland.hughes.report.execution.GrainPushdown;
+import com.sutherland.hughes.report.execution.ReportExecution;
+
+/**
+ * Every agent metric the stack ranks are built from, in one report: calls, talk, ACW and handle time, AHT, sales count and amount, AOV,
+ * conversion, refund count and amount, net revenue and created cases.
+ *
+ * Run separately those take a dozen reports, each scanning its tables and loading the roster again. Here the roster is loaded once and
+ * each fact table is read in one pass, the call stats, order details, refunds and activities, with every measure taken from the table
+ * folded into the same GrainPartials as its rows are fetched. The averages and ratios are worked out from the partials' totals at the end,
+ * so they're exact for a team as well as an agent. Every figure is a plain number, so the stack rank front ends can sort by any column.
+ *
+ * Talk and ACW time are totalled over every call stats row. TalkTime and ACWTime group an agent's rows by their value first, so an agent
+ * with two intervals of exactly the same time in a day is counted once there and twice here.
+ *
+ * @author Jason Diamond
+ *
+ */
+public final class HughesScorecard extends Report implements DataAttributes
+{
+	private JDBCConnection dbConnection;
+	private HughesRoster roster;
+	private final String dbPropFile = DatabaseConfigs.PRIVATE_LABEL_PROD_DB;
+	private final static Logger logger = Logger.getLogger(HughesScorecard.class);
+	private final static ReportMetricSet metrics = ReportMetrics.getReportMetrics(HughesScorecard.class);
+
+	private final static BigDecimal SECONDS_PER_MINUTE = BigDecimal.valueOf(60);
+
+	public static String uiGetReportName()
+	{
+		return "Scorecard";
+	}
+
+	public static String uiGetReportDesc()
+	{
+		return "Calls, handle time, sales, refunds and cases side by side.";
+	}
+
+	public final static LinkedHashMap<String, String> uiSupportedReportFrontEnds = ReportFrontEndGroups.STACK_RANK_FRONTENDS;
+
+	public final static LinkedHashMap<String, ArrayList<String>> uiReportParameters = ReportParameterGroups.BASIC_METRIC_REPORT_PARAMETERS;
+
+	/**
+	 * Folds one fact table's rows into the scorecard's partials, under the grain of the row's user or date.
+	 */
+	private abstract class FactHandler implements RowHandler
+	{
+		private final GrainPartials partials;
+		private final GrainPushdown pushdown;
+		private final int userColumn;
+		private final int dateColumn;
+
+		private FactHandler(GrainPartials partials, GrainPushdown pushdown, int userColumn, int dateColumn)
+		{
+			this.partials = partials;
+			this.pushdown = pushdown;
+			this.userColumn = userColumn;
+			this.dateColumn = dateColumn;
+		}
+
+		/* (non-Javadoc)
+		 * @see com.sutherland.hughes.datasources.RowHandler#handleRow(java.lang.String[])
+		 */
+		@Override
+		public void handleRow(String[] row)
+		{
+			String userID = row[userColumn];
+
+			if(roster.hasUser(userID))
+			{
+				partials.addRows(GrainPushdown.getRowCount(pushdown, row));
+
+				String reportGrain;
+
+				//time grain for time reports
+				if(isTimeTrendReport())
+				{
+					int timeGrain = Integer.parseInt(getParameters().getTimeGrain());
+					int dateFormat = Integer.parseInt(getParameters().getDateFormat());
+					reportGrain = DateFormatter.getFormattedDate(DateParser.convertSQLDateToGregorian(row[dateColumn]), timeGrain, dateFormat);
+				}
+				else //if stack
+				{
+					int userGrain = Integer.parseInt(getParameters().getUserGrain());
+					reportGrain = UserGrains.getUserGrain(userGrain, roster.getUser(userID));
+				}
+
+				add(partials, reportGrain, row, GrainPushdown.getRowCount(pushdown, row));
+			}
+		}
+
+		/**
+		 * Fold a row's measures into its grain.
+		 *
+		 * @param partials		The scorecard's partials.
+		 * @param reportGrain	The row's grain.
+		 * @param row			The row.
+		 * @param rowCount		The number of the table's rows the row stands for.
+		 */
+		protected abstract void add(GrainPartials partials, String reportGrain, String[] row, long rowCount);
+	}
+
+	/**
+	 * Build the report object.
+	 *
+	 * @throws ReportSetupException		If a failure occurs during creation of the report or its resources.
+	 */
+	public HughesScorecard() throws ReportSetupException
+	{
+		super();
+	}
+
+	/* (non-Javadoc)
+	 * @see helios.Report#setupReport()
+	 */
+	@Override
+	protected boolean setupReport()
+	{
+		boolean retval = false;
+
+		try
+		{
+			reportName = HughesScorecard.uiGetReportName();
+			reportDesc = HughesScorecard.uiGetReportDesc();
+
+			for(Entry<String, ArrayList<String>> reportType : uiReportParameters.entrySet())
+			{
+				for(String paramName :  reportType.getValue())
+				{
+					getParameters().addSupportedParameter(paramName);
+				}
+			}
+
+			retval = true;
+		}
+		catch (Exception e)
+		{
+			setErrorMessage("Error setting up report");
+
+			logErrorMessage( getErrorMessage());
+			logErrorMessage( ExceptionFormatter.asString(e));
+		}
+
+		return retval;
+	}
+
+	@Override
+	protected boolean setupLogger()
+	{
+		logID = LogIDFactory.getLogID().toString();
+
+		if (MDC.get(LOG_ID_PREFIX) == null)
+		{
+			MDC.put(LOG_ID_PREFIX, LOG_ID_PREFIX + logID);
+		}
+
+		return (logger != null);
+	}
+
+	/* (non-Javadoc)
+	 * @see helios.Report#setupDataSourceConnections()
+	 */
+	@Override
+	protected boolean setupDataSourceConnections()
+	{
+		boolean retval = false;
+
+		try
+		{
+			dbConnection = DataSources.getConnection(dbPropFile, metrics);
+		}
+		catch(DatabaseConnectionCreationException e )
+		{
+			setErrorMessage("DatabaseConnectionCreationException on attempt to access database");
+
+			logErrorMessage( getErrorMessage());
+			logErrorMessage( ExceptionFormatter.asString(e));
+		}
+		finally
+		{
+			if(dbConnection != null)
+			{
+				retval = true;
+			}
+		}
+
+		return retval;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.helios.report.Report#startReport()
+	 */
+	@Override
+	public ArrayList<String[]> startReport()
+	{
+		return ReportExecution.run(this, metrics, new ReportExecution.Runner()
+		{
+			@Override
+			public ArrayList<String[]> run()
+			{
+				return HughesScorecard.super.startReport();
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see helios.Report#runReport(java.lang.String, java.lang.String)
+	 */
+	@Override
+	protected ArrayList<String[]> runReport() throws Exception
+	{
+		String startDate = getParameters().getStartDate();
+		String endDate = getParameters().getEndDate();
+
+		String callQuery = "SELECT CRM_MST_USER.USER_USERID,tbl_PFS_CMS_Hagent.row_date, " +
+				" tbl_PFS_CMS_Hagent.acdcalls,tbl_PFS_CMS_Hagent.acdtime,tbl_PFS_CMS_Hagent.acwtime " +
+				" FROM tbl_PFS_CMS_Hagent INNER JOIN CRM_MST_USER ON tbl_PFS_CMS_Hagent.logid = CRM_MST_USER.USER_EXTENSION " +
+				" WHERE tbl_PFS_CMS_Hagent.row_date >= '" +
+				startDate +
+				"' AND tbl_PFS_CMS_Hagent.row_date < '" +
+				endDate +
+				"' ";
+
+		String salesQuery = "SELECT " +
+				" CRM_MST_USER.USER_USERID,CRM_TRN_ORDERDETAILS.ORDDET_CREATEDDATE, " +
+				" CRM_TRN_ORDERDETAILS.ORDDET_AMOUNT " +
+				" FROM CRM_MST_USER INNER JOIN CRM_TRN_ORDERDETAILS ON CRM_MST_USER.USER_USERID = CRM_TRN_ORDERDETAILS.ORDDET_CREATEDBY " +
+				" WHERE CRM_TRN_ORDERDETAILS.ORDDET_CREATEDDATE >= '" +
+				startDate +
+				"' AND CRM_TRN_ORDERDETAILS.ORDDET_CREATEDDATE < '" +
+				endDate +
+				"' ";
+
+		String refundQuery = "SELECT CRM_TRN_REFUND.REFUND_CREATEDDATE,CRM_TRN_ORDER.ORDER_CREATEDBY,CRM_TRN_REFUND.REFUND_REFUNDAMOUNT " +
+				" FROM CRM_TRN_REFUND INNER JOIN CRM_TRN_ORDER ON CRM_TRN_REFUND.REFUND_ORDERID = CRM_TRN_ORDER.ORDER_ORDERID " +
+				" WHERE CRM_TRN_REFUND.REFUND_CREATEDDATE >= '" +
+				startDate +
+				"' AND CRM_TRN_REFUND.REFUND_CREATEDDATE < '" +
+				endDate +
+				"' AND CRM_TRN_REFUND.REFUND_REFUNDTYPEID != 20000570 ";
+
+		String caseQuery = "SELECT " +
+				" CRM_TRN_ACTIVITY.activity_createddate, " +
+				" CRM_TRN_ACTIVITY.activity_createdby," +
+				" CRM_TRN_ACTIVITY.activity_activityid" +
+				" FROM CRM_TRN_ACTIVITY " +
+				" WHERE CRM_TRN_ACTIVITY.activity_createddate >= '" +
+				startDate +
+				"' AND CRM_TRN_ACTIVITY.activity_createddate < '" +
+				endDate +
+				"' " +
+				" and CRM_TRN_ACTIVITY.activity_pagesource='QUICKADD' and " +
+					"(CRM_TRN_ACTIVITY.activity_casetype = '151' or CRM_TRN_ACTIVITY.activity_casetype = '0' or CRM_TRN_ACTIVITY.activity_casetype='1') " +
+				" GROUP BY CRM_TRN_ACTIVITY.activity_createddate,CRM_TRN_ACTIVITY.activity_createdby,CRM_TRN_ACTIVITY.activity_activityid ";
+
+		roster = new HughesRoster();
+		roster.setChildReport(true);
+		roster.getParameters().setAgentNames(getParameters().getAgentNames());
+		roster.getParameters().setTeamNames(getParameters().getTeamNames());
+		long rosterStart = System.nanoTime();
+		roster.load();
+		metrics.addPhaseTime(ReportPhase.ROSTER, System.nanoTime() - rosterStart);
+
+		//rows come back from the database already grouped by the report's time or user grain, totalled
+		GrainPushdown pushdown = GrainPushdown.forReport(this, roster);
+
+		if(pushdown != null)
+		{
+			callQuery = pushdown.group(callQuery, 5, 0, 1, new int[]{2, 3, 4});
+			salesQuery = pushdown.group(salesQuery, 3, 0, 1, new int[]{2});
+			refundQuery = pushdown.group(refundQuery, 3, 1, 0, new int[]{2});
+			caseQuery = pushdown.group(caseQuery, 3, 1, 0, new int[0]);
+		}
+
+		//every table's measures go into the same partials, as its rows are fetched
+		GrainPartials reportGrainData = new GrainPartials();
+
+		dbConnection.streamQuery(callQuery, new FactHandler(reportGrainData, pushdown, 0, 1)
+		{
+			@Override
+			protected void add(GrainPartials partials, String reportGrain, String[] row, long rowCount)
+			{
+				partials.get(reportGrain, CALL_VOL_ATTR).addValues(row[2], rowCount);
+				partials.get(reportGrain, ACD_TIME_ATTR).addValues(row[3], rowCount);
+				partials.get(reportGrain, ACW_TIME_ATTR).addValues(row[4], rowCount);
+			}
+		});
+
+		dbConnection.streamQuery(salesQuery, new FactHandler(reportGrainData, pushdown, 0, 1)
+		{
+			@Override
+			protected void add(GrainPartials partials, String reportGrain, String[] row, long rowCount)
+			{
+				partials.get(reportGrain, SALES_COUNT_ATTR).addOccurrences(rowCount);
+				partials.get(reportGrain, SALES_AMTS_ATTR).addValues(row[2], rowCount);
+			}
+		});
+
+		dbConnection.streamQuery(refundQuery, new FactHandler(reportGrainData, pushdown, 1, 0)
+		{
+			@Override
+			protected void add(GrainPartials partials, String reportGrain, String[] row, long rowCount)
+			{
+				partials.get(reportGrain, REFUND_COUNT_ATTR).addOccurrences(rowCount);
+				partials.get(reportGrain, REFUNDS_AMTS_ATTR).addValues(row[2], rowCount);
+			}
+		});
+
+		dbConnection.streamQuery(caseQuery, new FactHandler(reportGrainData, pushdown, 1, 0)
+		{
+			@Override
+			protected void add(GrainPartials partials, String reportGrain, String[] row, long rowCount)
+			{
+				partials.get(reportGrain, CREATED_CASES_ATTR).addOccurrences(rowCount);
+			}
+		});
+
+		//the rows were bucketed as they were fetched, what is left is the ratios
+		long aggregateStart = System.nanoTime();
+
+		if(logger.isInfoEnabled())
+		{
+			for( Entry<String, String> queryStats  : dbConnection.getStatistics().entrySet())
+			{
+				logInfoMessage( "Query " + queryStats.getKey() + ": " + queryStats.getValue());
+			}
+		}
+
+		ArrayList<String[]> retval = buildRows(reportGrainData);
+
+		metrics.addRowsKept(reportGrainData.getRowCount());
+		metrics.addPhaseTime(ReportPhase.AGGREGATE, System.nanoTime() - aggregateStart);
+
+		return retval;
+	}
+
+	/**
+	 * Work out the scorecard's rows from its partials, in the order of getReportSchema.
+	 *
+	 * @param partials	The totals of every fact table, by grain.
+	 *
+	 * @return	A row per grain.
+	 */
+	public static ArrayList<String[]> buildRows(GrainPartials partials)
+	{
+		ArrayList<String[]> retval = new ArrayList<String[]>(partials.getSize());
+
+		double calls, talkMinutes, acwMinutes, handleMinutes, salesCount, salesAmount, refundCount, refundAmount, cases;
+
+		for(String grain : partials.getGrainIDList())
+		{
+			calls = getSum(partials, grain, CALL_VOL_ATTR).doubleValue();
+			talkMinutes = getSum(partials, grain, ACD_TIME_ATTR).divide(SECONDS_PER_MINUTE, 10, RoundingMode.HALF_UP).doubleValue();
+			acwMinutes = getSum(partials, grain, ACW_TIME_ATTR).divide(SECONDS_PER_MINUTE, 10, RoundingMode.HALF_UP).doubleValue();
+			handleMinutes = talkMinutes + acwMinutes;
+			salesCount = getCount(partials, grain, SALES_COUNT_ATTR);
+			salesAmount = getSum(partials, grain, SALES_AMTS_ATTR).doubleValue();
+			refundCount = getCount(partials, grain, REFUND_COUNT_ATTR);
+			refundAmount = getSum(partials, grain, REFUNDS_AMTS_ATTR).doubleValue();
+			cases = getCount(partials, grain, CREATED_CASES_ATTR);
+
+			retval.add(new String[]
+			{
+				grain,
+				"" + (long)calls,
+				NumberFormatter.convertToCurrency(talkMinutes),
+				NumberFormatter.convertToCurrency(acwMinutes),
+				NumberFormatter.convertToCurrency(handleMinutes),
+				NumberFormatter.convertToCurrency(calls == 0 ? 0 : handleMinutes / calls),
+				"" + (long)salesCount,
+				NumberFormatter.convertToCurrency(salesAmount),
+				NumberFormatter.convertToCurrency(salesCount == 0 ? 0 : salesAmount / salesCount),
+				NumberFormatter.convertToPercentage(calls == 0 ? 0 : salesCount / calls, 4),
+				"" + (long)refundCount,
+				NumberFormatter.convertToCurrency(refundAmount),
+				NumberFormatter.convertToCurrency(salesAmount - refundAmount),
+				"" + (long)cases
+			});
+		}
+
+		return retval;
+	}
+
+	private static BigDecimal getSum(GrainPartials partials, String grain, String attribute)
+	{
+		//not every grain is in every table
+		return partials.has(grain, attribute) ? partials.get(grain, attribute).getSum() : BigDecimal.ZERO;
+	}
+
+	private static long getCount(GrainPartials partials, String grain, String attribute)
+	{
+		return partials.has(grain, attribute) ? partials.get(grain, attribute).getCount() : 0;
+	}
+
+	/* (non-Javadoc)
+	 * @see report.Report#close()
+	 */
+	@Override
+	public void close()
+	{
+		if(roster != null)
+		{
+			roster.close();
+		}
+
+		if(dbConnection != null)
+		{
+			dbConnection.close();
+		}
+
+		super.close();
+
+		if (!isChildReport)
+		{
+			MDC.remove(LOG_ID_PREFIX);
+		}
+	}
+
+	@Override
+	public ArrayList<String> getReportSchema()
+	{
+		ArrayList<String> retval = new ArrayList<String>();
+
+		if(isTimeTrendReport())
+		{
+			retval.add("Date Grain");
+		}
+		else if(isStackReport())
+		{
+			retval.add("User Grain");
+		}
+
+		retval.add("Calls");
+		retval.add("Talk Time");
+		retval.add("ACW Time");
+		retval.add("Handle Time");
+		retval.add("AHT");
+		retval.add("Sales Count");
+		retval.add("Sales Amount");
+		retval.add("AOV");
+		retval.add("Conversion");
+		retval.add("Refund Count");
+		retval.add("Refund Amount");
+		retval.add("Net Revenue");
+		retval.add("Created Cases");
+
+		return retval;
+	}
+
+	@Override
+	protected void logErrorMessage(String message)
+	{
+		logger.log(Level.ERROR, message);
+	}
+
+	@Override
+	protected void logInfoMessage(String message)
+	{
+		logger.log(Level.INFO, message);
+	}
+
+	@Override
+	protected void logWarnMessage(String message)
+	{
+		logger.log(Level.WARN, message);
+	}
+}
@@ -22,6 +22,10 @@ import com.sutherland.helios.report.Report;
 import com.sutherland.helios.report.ReportRunner;
 import com.sutherland.helios.report.parameters.groups.ReportParameterGroups;
 import com.sutherland.helios.statistics.Statistics;
+import com.sutherland.hughes.metrics.ReportMetricSet;
+import com.sutherland.hughes.metrics.ReportMetrics;
+import com.sutherland.hughes.metrics.ReportPhase;
+import com.sutherland.hughes.report.execution.ReportExecution;
 
 
 /**
@@ -33,6 +37,7 @@ public final class NetRevenue extends Report implements DataAttributes
 	private RealtimeSales realtimeSalesReport;
 	private RefundTotals refundTotalsReport;
 	private final static Logger logger = Logger.getLogger(NetRevenue.class);
+	private final static ReportMetricSet metrics = ReportMetrics.getReportMetrics(NetRevenue.class);
 	
 	public static String uiGetReportName()
 	{
@@ -157,6 +162,22 @@ public final class NetRevenue extends Report implements DataAttributes
 		return retval;
 	}
 
+	/* (non-Javadoc)
+	 * @see com.sutherland.helios.report.Report#startReport()
+	 */
+	@Override
+	public ArrayList<String[]> startReport()
+	{
+		return ReportExecution.run(this, metrics, new ReportExecution.Runner()
+		{
+			@Override
+			public ArrayList<String[]> run()
+			{
+				return NetRevenue.super.startReport();
+			}
+		});
+	}
+	
 	/* (non-Javadoc)
 	 * @see helios.Report#runReport()
 	 */
@@ -184,7 +205,12 @@ public final class NetRevenue extends Report implements DataAttributes
 		runner.addReport(SALES_AMTS_ATTR, realtimeSalesReport);
 		runner.addReport(TOTAL_REFUNDS_ATTR, refundTotalsReport);
 		
-		if(!runner.runReports())
+		boolean reportsRan = runner.runReports();
+		
+		//merging the child reports' results
+		long aggregateStart = System.nanoTime();
+		
+		if(!reportsRan)
 		{
 			throw new ReportSetupException("Running reports failed");
 		}
@@ -241,6 +267,8 @@ public final class NetRevenue extends Report implements DataAttributes
 			retval.add(new String[]{	grain,NumberFormatter.convertToCurrency(finalRevenue)}	);
 		}
 
+		metrics.addPhaseTime(ReportPhase.AGGREGATE, System.nanoTime() - aggregateStart);
+		
 		return retval;
 	}
 	
@@ -13,11 +13,8 @@ import org.apache.log4j.Logger;
 import org.apache.log4j.MDC;
 
 import com.sutherland.helios.api.report.frontend.ReportFrontEndGroups;
-import com.sutherland.helios.data.Aggregation;
 import com.sutherland.helios.data.attributes.DataAttributes;
 import com.sutherland.helios.data.granularity.user.UserGrains;
-import com.sutherland.helios.database.connection.SQL.ConnectionFactory;
-import com.sutherland.helios.database.connection.SQL.RemoteConnection;
 import com.sutherland.helios.date.formatting.DateFormatter;
 import com.sutherland.helios.date.parsing.DateParser;
 import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
@@ -26,7 +23,17 @@ import com.sutherland.helios.exceptions.ReportSetupException;
 import com.sutherland.helios.logging.LogIDFactory;
 import com.sutherland.helios.report.Report;
 import com.sutherland.helios.report.parameters.groups.ReportParameterGroups;
+import com.sutherland.hughes.data.GrainPartials;
+import com.sutherland.hughes.datasources.DataSources;
 import com.sutherland.hughes.datasources.DatabaseConfigs;
+import com.sutherland.hughes.datasources.JDBCConnection;
+import com.sutherland.hughes.metrics.ReportMetricSet;
+import com.sutherland.hughes.metrics.ReportMetrics;
+import com.sutherland.hughes.metrics.ReportPhase;
+import com.sutherland.hughes.report.execution.GrainPushdown;
+import com.sutherland.hughes.report.execution.ParallelAggregator;
+import com.sutherland.hughes.report.execution.ReportExecution;
+import com.sutherland.hughes.report.execution.RowAggregator;
 
 
 /**
@@ -35,10 +42,11 @@ import com.sutherland.hughes.datasources.DatabaseConfigs;
  */
 public final class OpenedCases extends Report implements DataAttributes 
 {
-	private RemoteConnection dbConnection;
+	private JDBCConnection dbConnection;
 	private HughesRoster roster;
 	private final String dbPropFile = DatabaseConfigs.PRIVATE_LABEL_PROD_DB;
 	private final static Logger logger = Logger.getLogger(OpenedCases.class);
+	private final static ReportMetricSet metrics = ReportMetrics.getReportMetrics(OpenedCases.class);
 	
 	public static String uiGetReportDesc()
 	{
@@ -121,11 +129,7 @@ public final class OpenedCases extends Report implements DataAttributes
 
 		try 
 		{
-			ConnectionFactory factory = new ConnectionFactory();
-			
-			factory.load(dbPropFile);
-			
-			dbConnection = factory.getConnection();
+			dbConnection = DataSources.getConnection(dbPropFile, metrics);
 		}
 		catch(DatabaseConnectionCreationException e )
 		{
@@ -145,6 +149,22 @@ public final class OpenedCases extends Report implements DataAttributes
 		return retval;
 	}
 
+	/* (non-Javadoc)
+	 * @see com.sutherland.helios.report.Report#startReport()
+	 */
+	@Override
+	public ArrayList<String[]> startReport()
+	{
+		return ReportExecution.run(this, metrics, new ReportExecution.Runner()
+		{
+			@Override
+			public ArrayList<String[]> run()
+			{
+				return OpenedCases.super.startReport();
+			}
+		});
+	}
+	
 	/* (non-Javadoc)
 	 * @see helios.Report#runReport(java.lang.String, java.lang.String)
 	 */
@@ -164,68 +184,82 @@ public final class OpenedCases extends Report implements DataAttributes
 		
 		casesQuery += " AND CRM_TRN_PROSPECT.PROSPECT_PAGESOURCE='UPDATED' " ;
 		casesQuery += " GROUP BY PROSPECT_UPDATEDDATE,CRM_MST_USER.USER_USERID, CRM_TRN_PROSPECT.PROSPECT_PROSPECTID";
-
+		
 		retval = new ArrayList<String[]>();
 
-		Aggregation reportGrainData = new Aggregation();
-
-		String userID, reportGrain, openedCaseID;
-		
-		int timeGrain, userGrain, dateFormat;
-		
 		roster = new HughesRoster();
 		roster.setChildReport(true);
 		roster.getParameters().setAgentNames(getParameters().getAgentNames());
 		roster.getParameters().setTeamNames(getParameters().getTeamNames());
+		long rosterStart = System.nanoTime();
 		roster.load();
+		metrics.addPhaseTime(ReportPhase.ROSTER, System.nanoTime() - rosterStart);
+		
+		//rows come back from the database already grouped by the report's time or user grain
+		final GrainPushdown pushdown = GrainPushdown.forReport(this, roster);
 		
-		for(String[] row:  dbConnection.runQuery(casesQuery))
+		if(pushdown != null)
 		{
-			userID = row[1];
-			
-			if(roster.hasUser(userID) )
+			casesQuery = pushdown.group(casesQuery, 3, 1, 0, new int[0]);
+		}
+		
+		ArrayList<String[]> queryResults = dbConnection.runQuery(casesQuery);
+		
+		long aggregateStart = System.nanoTime();
+		
+		//bucketing is spread across cores, the roster and parameters are only read
+		GrainPartials reportGrainData = ParallelAggregator.aggregate(queryResults, new RowAggregator()
+		{
+			@Override
+			public void aggregate(String[] row, GrainPartials partials)
 			{
-				openedCaseID = row[2];
-
-				//time grain for time reports
-				if(isTimeTrendReport())
-				{
-					timeGrain = Integer.parseInt(getParameters().getTimeGrain());
-					dateFormat = Integer.parseInt(getParameters().getDateFormat());
-					reportGrain = DateFormatter.getFormattedDate(DateParser.convertSQLDateToGregorian(row[0]), timeGrain, dateFormat);
-				}
-				else //if(isStackReport())
+				String userID = row[1];
+				String reportGrain;
+				
+				if(roster.hasUser(userID) )
 				{
-					//is stack report
-					userGrain = Integer.parseInt(getParameters().getUserGrain());
-					reportGrain = UserGrains.getUserGrain(userGrain, roster.getUser(userID));
+					partials.addRows(GrainPushdown.getRowCount(pushdown, row));
+					
+					//time grain for time reports
+					if(isTimeTrendReport())
+					{
+						int timeGrain = Integer.parseInt(getParameters().getTimeGrain());
+						int dateFormat = Integer.parseInt(getParameters().getDateFormat());
+						reportGrain = DateFormatter.getFormattedDate(DateParser.convertSQLDateToGregorian(row[0]), timeGrain, dateFormat);
+					}
+					else //if(isStackReport())
+					{
+						//is stack report
+						int userGrain = Integer.parseInt(getParameters().getUserGrain());
+						reportGrain = UserGrains.getUserGrain(userGrain, roster.getUser(userID));
+					}
+					
+					partials.get(reportGrain, CASE_IDS_ATTR).addOccurrences(GrainPushdown.getRowCount(pushdown, row));
 				}
-				
-				reportGrainData.addDatum(reportGrain);
-				reportGrainData.getDatum(reportGrain).addAttribute(CASE_IDS_ATTR);
-				reportGrainData.getDatum(reportGrain).addData(CASE_IDS_ATTR, openedCaseID);
 			}
-		}
+		});
 		
-		for( Entry<String, String> queryStats  : dbConnection.getStatistics().entrySet())
+		if(logger.isInfoEnabled())
 		{
-			logInfoMessage( "Query " + queryStats.getKey() + ": " + queryStats.getValue());
+			for( Entry<String, String> queryStats  : dbConnection.getStatistics().entrySet())
+			{
+				logInfoMessage( "Query " + queryStats.getKey() + ": " + queryStats.getValue());
+			}
 		}
 		
 		/////////////////
 		//processing the buckets
 
-		int numOpenedCases;
-		
 		retval = new ArrayList<String[]>(reportGrainData.getSize());
 		
-		for(String grain : reportGrainData.getDatumIDList())
+		for(String grain : reportGrainData.getGrainIDList())
 		{
-			numOpenedCases = reportGrainData.getDatum(grain).getAttributeData(CASE_IDS_ATTR).size();
-
-			retval.add(new String[]{grain, "" + numOpenedCases });
+			retval.add(new String[]{grain, "" + reportGrainData.get(grain, CASE_IDS_ATTR).getCount() });
 		}
 
+		metrics.addRowsKept(reportGrainData.getRowCount());
+		metrics.addPhaseTime(ReportPhase.AGGREGATE, System.nanoTime() - aggregateStart);
+		
 		return retval;
 	}
 
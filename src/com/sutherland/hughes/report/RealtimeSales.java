@@ -13,12 +13,9 @@ import org.apache.log4j.Logger;
 import org.apache.log4j.MDC;
 
 import com.sutherland.helios.api.report.frontend.ReportFrontEndGroups;
-import com.sutherland.helios.data.Aggregation;
 import com.sutherland.helios.data.attributes.DataAttributes;
 import com.sutherland.helios.data.formatting.NumberFormatter;
 import com.sutherland.helios.data.granularity.user.UserGrains;
-import com.sutherland.helios.database.connection.SQL.ConnectionFactory;
-import com.sutherland.helios.database.connection.SQL.RemoteConnection;
 import com.sutherland.helios.date.formatting.DateFormatter;
 import com.sutherland.helios.date.parsing.DateParser;
 import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
@@ -27,8 +24,18 @@ import com.sutherland.helios.exceptions.ReportSetupException;
 import com.sutherland.helios.logging.LogIDFactory;
 import com.sutherland.helios.report.Report;
 import com.sutherland.helios.report.parameters.groups.ReportParameterGroups;
-import com.sutherland.helios.statistics.Statistics;
+import com.sutherland.hughes.data.GrainPartials;
+import com.sutherland.hughes.datasources.DataSources;
 import com.sutherland.hughes.datasources.DatabaseConfigs;
+import com.sutherland.hughes.datasources.JDBCConnection;
+import com.sutherland.hughes.metrics.ReportMetricSet;
+import com.sutherland.hughes.metrics.ReportMetrics;
+import com.sutherland.hughes.metrics.ReportPhase;
+import com.sutherland.hughes.report.execution.ChunkedQueryRunner;
+import com.sutherland.hughes.report.execution.ChunkedQueryRunner.ChunkQueryBuilder;
+import com.sutherland.hughes.report.execution.GrainPushdown;
+import com.sutherland.hughes.report.execution.ReportExecution;
+import com.sutherland.hughes.report.execution.RowAggregator;
 
 /**
  * @author Jason Diamond
@@ -36,10 +43,11 @@ import com.sutherland.hughes.datasources.DatabaseConfigs;
  */
 public final class RealtimeSales extends Report implements DataAttributes 
 {
-	private RemoteConnection dbConnection;
+	private JDBCConnection dbConnection;
 	private HughesRoster roster;
 	private final String dbPropFile = DatabaseConfigs.PRIVATE_LABEL_PROD_DB;
 	private final static Logger logger = Logger.getLogger(RealtimeSales.class);
+	private final static ReportMetricSet metrics = ReportMetrics.getReportMetrics(RealtimeSales.class);
 
 	public static String uiGetReportName()
 	{
@@ -122,11 +130,7 @@ public final class RealtimeSales extends Report implements DataAttributes
 
 		try 
 		{
-			ConnectionFactory factory = new ConnectionFactory();
-			
-			factory.load(dbPropFile);
-			
-			dbConnection = factory.getConnection();
+			dbConnection = DataSources.getConnection(dbPropFile, metrics);
 		}
 		catch(DatabaseConnectionCreationException e )
 		{
@@ -146,6 +150,22 @@ public final class RealtimeSales extends Report implements DataAttributes
 		return retval;
 	}
 
+	/* (non-Javadoc)
+	 * @see com.sutherland.helios.report.Report#startReport()
+	 */
+	@Override
+	public ArrayList<String[]> startReport()
+	{
+		return ReportExecution.run(this, metrics, new ReportExecution.Runner()
+		{
+			@Override
+			public ArrayList<String[]> run()
+			{
+				return RealtimeSales.super.startReport();
+			}
+		});
+	}
+	
 	/* (non-Javadoc)
 	 * @see helios.Report#runReport()
 	 */
@@ -154,73 +174,104 @@ public final class RealtimeSales extends Report implements DataAttributes
 	{
 		ArrayList<String[]> retval = null;
 
-		String ordersQuery = "SELECT " +
-				" CRM_MST_USER.USER_USERID,CRM_TRN_ORDERDETAILS.ORDDET_CREATEDDATE, " +
-				" CRM_TRN_ORDERDETAILS.ORDDET_AMOUNT " + 
-				" FROM CRM_MST_USER INNER JOIN CRM_TRN_ORDERDETAILS ON CRM_MST_USER.USER_USERID = CRM_TRN_ORDERDETAILS.ORDDET_CREATEDBY " + 
-				" WHERE CRM_TRN_ORDERDETAILS.ORDDET_CREATEDDATE >= '" + 
-				getParameters().getStartDate() +
-				"' AND CRM_TRN_ORDERDETAILS.ORDDET_CREATEDDATE < '" + 
-				getParameters().getEndDate() + 
-				"' "; 
-		
-		retval = new ArrayList<String[]>();
-
-		Aggregation reportGrainData = new Aggregation();
-
-		String userID, reportGrain, orderAmounts;
-		
-		//don't assign time grain just yet. in case this is a non-time report, because the timegrain param is not guaranteed to be set 
-		int timeGrain, userGrain, dateFormat;
-		
 		roster = new HughesRoster();
 		roster.setChildReport(true);
 		roster.getParameters().setAgentNames(getParameters().getAgentNames());
 		roster.getParameters().setTeamNames(getParameters().getTeamNames());
+		long rosterStart = System.nanoTime();
 		roster.load();
+		metrics.addPhaseTime(ReportPhase.ROSTER, System.nanoTime() - rosterStart);
 		
-		for(String[] row:  dbConnection.runQuery(ordersQuery))
+		//rows come back from the database already grouped by the report's time or user grain
+		final GrainPushdown pushdown = GrainPushdown.forReport(this, roster);
+		
+		//long ranges are run as concurrent date range chunks, each aggregated separately and merged
+		ChunkedQueryRunner queryRunner = new ChunkedQueryRunner(dbConnection, dbPropFile);
+		queryRunner.setMetrics(metrics);
+		
+		GrainPartials reportGrainData = queryRunner.run(getParameters().getStartDate(), getParameters().getEndDate(), new ChunkQueryBuilder()
 		{
-			userID = row[0];	
-
-			if(roster.hasUser(userID) )
+			@Override
+			public String buildQuery(String chunkStartDate, String chunkEndDate)
 			{
-				orderAmounts = row[2];
+				String query = "SELECT " +
+						" CRM_MST_USER.USER_USERID,CRM_TRN_ORDERDETAILS.ORDDET_CREATEDDATE, " +
+						" CRM_TRN_ORDERDETAILS.ORDDET_AMOUNT " + 
+						" FROM CRM_MST_USER INNER JOIN CRM_TRN_ORDERDETAILS ON CRM_MST_USER.USER_USERID = CRM_TRN_ORDERDETAILS.ORDDET_CREATEDBY " + 
+						" WHERE CRM_TRN_ORDERDETAILS.ORDDET_CREATEDDATE >= '" + 
+						chunkStartDate +
+						"' AND CRM_TRN_ORDERDETAILS.ORDDET_CREATEDDATE < '" + 
+						chunkEndDate + 
+						"' "; 
 				
-				//time grain for time reports
-				if(isTimeTrendReport())
+				if(pushdown != null)
 				{
-					timeGrain = Integer.parseInt(getParameters().getTimeGrain());
-					dateFormat = Integer.parseInt(getParameters().getDateFormat());
-					reportGrain = DateFormatter.getFormattedDate(DateParser.convertSQLDateToGregorian(row[1]), timeGrain, dateFormat);
+					query = pushdown.group(query, 3, 0, 1, new int[]{2});
 				}
-				else //if stack
+				
+				return query;
+			}
+		}, 
+		new RowAggregator()
+		{
+			@Override
+			public void aggregate(String[] row, GrainPartials partials)
+			{
+				String userID, reportGrain, orderAmounts;
+				
+				//don't assign time grain just yet. in case this is a non-time report, because the timegrain param is not guaranteed to be set 
+				int timeGrain, userGrain, dateFormat;
+				
+				userID = row[0];	
+
+				if(roster.hasUser(userID) )
 				{
-					userGrain = Integer.parseInt(getParameters().getUserGrain());
-					reportGrain = UserGrains.getUserGrain(userGrain,roster.getUser(userID));
+					partials.addRows(GrainPushdown.getRowCount(pushdown, row));
+					
+					orderAmounts = row[2];
+					
+					//time grain for time reports
+					if(isTimeTrendReport())
+					{
+						timeGrain = Integer.parseInt(getParameters().getTimeGrain());
+						dateFormat = Integer.parseInt(getParameters().getDateFormat());
+						reportGrain = DateFormatter.getFormattedDate(DateParser.convertSQLDateToGregorian(row[1]), timeGrain, dateFormat);
+					}
+					else //if stack
+					{
+						userGrain = Integer.parseInt(getParameters().getUserGrain());
+						reportGrain = UserGrains.getUserGrain(userGrain,roster.getUser(userID));
+					}
+					
+					partials.get(reportGrain, SALES_AMTS_ATTR).addValues(orderAmounts, GrainPushdown.getRowCount(pushdown, row));
 				}
-				
-				reportGrainData.addDatum(reportGrain);
-				reportGrainData.getDatum(reportGrain).addAttribute(SALES_AMTS_ATTR);
-				reportGrainData.getDatum(reportGrain).addData(SALES_AMTS_ATTR, orderAmounts);
 			}
-		}
+		});
 		
-		for( Entry<String, String> queryStats  : dbConnection.getStatistics().entrySet())
+		//the rows were bucketed as they were fetched, what is left is merging and totalling
+		long aggregateStart = System.nanoTime();
+		
+		if(logger.isInfoEnabled())
 		{
-			logInfoMessage( "Query " + queryStats.getKey() + ": " + queryStats.getValue());
+			for( Entry<String, String> queryStats  : queryRunner.getStatistics().entrySet())
+			{
+				logInfoMessage( "Query " + queryStats.getKey() + ": " + queryStats.getValue());
+			}
 		}
 
 		//format the output
 		double finalSales;
 		retval = new ArrayList<String[]>();
-		for(String grain : reportGrainData.getDatumIDList())
+		for(String grain : reportGrainData.getGrainIDList())
 		{
-			finalSales = Statistics.getTotal(reportGrainData.getDatum(grain).getAttributeData(SALES_AMTS_ATTR));
+			finalSales = reportGrainData.get(grain, SALES_AMTS_ATTR).getSum().doubleValue();
 
 			retval.add(new String[]{grain, NumberFormatter.convertToCurrency(finalSales) });
 		}
 
+		metrics.addRowsKept(reportGrainData.getRowCount());
+		metrics.addPhaseTime(ReportPhase.AGGREGATE, System.nanoTime() - aggregateStart);
+		
 		return retval;
 	}
 
@@ -13,11 +13,8 @@ import org.apache.log4j.Logger;
 import org.apache.log4j.MDC;
 
 import com.sutherland.helios.api.report.frontend.ReportFrontEndGroups;
-import com.sutherland.helios.data.Aggregation;
 import com.sutherland.helios.data.attributes.DataAttributes;
 import com.sutherland.helios.data.granularity.user.UserGrains;
-import com.sutherland.helios.database.connection.SQL.ConnectionFactory;
-import com.sutherland.helios.database.connection.SQL.RemoteConnection;
 import com.sutherland.helios.date.formatting.DateFormatter;
 import com.sutherland.helios.date.parsing.DateParser;
 import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
@@ -26,7 +23,17 @@ import com.sutherland.helios.exceptions.ReportSetupException;
 import com.sutherland.helios.logging.LogIDFactory;
 import com.sutherland.helios.report.Report;
 import com.sutherland.helios.report.parameters.groups.ReportParameterGroups;
+import com.sutherland.hughes.data.GrainPartials;
+import com.sutherland.hughes.datasources.DataSources;
 import com.sutherland.hughes.datasources.DatabaseConfigs;
+import com.sutherland.hughes.datasources.JDBCConnection;
+import com.sutherland.hughes.metrics.ReportMetricSet;
+import com.sutherland.hughes.metrics.ReportMetrics;
+import com.sutherland.hughes.metrics.ReportPhase;
+import com.sutherland.hughes.report.execution.GrainPushdown;
+import com.sutherland.hughes.report.execution.ParallelAggregator;
+import com.sutherland.hughes.report.execution.ReportExecution;
+import com.sutherland.hughes.report.execution.RowAggregator;
 
 /**
  * @author Jason Diamond
@@ -34,10 +41,11 @@ import com.sutherland.hughes.datasources.DatabaseConfigs;
  */
 public final class SalesCount extends Report implements DataAttributes 
 {
-	private RemoteConnection dbConnection;
+	private JDBCConnection dbConnection;
 	private HughesRoster roster;
 	private final String dbPropFile = DatabaseConfigs.PRIVATE_LABEL_PROD_DB;
 	private final static Logger logger = Logger.getLogger(SalesCount.class);
+	private final static ReportMetricSet metrics = ReportMetrics.getReportMetrics(SalesCount.class);
 
 	public static String uiGetReportName()
 	{
@@ -120,11 +128,7 @@ public final class SalesCount extends Report implements DataAttributes
 
 		try 
 		{
-			ConnectionFactory factory = new ConnectionFactory();
-			
-			factory.load(dbPropFile);
-			
-			dbConnection = factory.getConnection();
+			dbConnection = DataSources.getConnection(dbPropFile, metrics);
 		}
 		catch(DatabaseConnectionCreationException e )
 		{
@@ -144,6 +148,22 @@ public final class SalesCount extends Report implements DataAttributes
 		return retval;
 	}
 
+	/* (non-Javadoc)
+	 * @see com.sutherland.helios.report.Report#startReport()
+	 */
+	@Override
+	public ArrayList<String[]> startReport()
+	{
+		return ReportExecution.run(this, metrics, new ReportExecution.Runner()
+		{
+			@Override
+			public ArrayList<String[]> run()
+			{
+				return SalesCount.super.startReport();
+			}
+		});
+	}
+	
 	/* (non-Javadoc)
 	 * @see helios.Report#runReport(java.lang.String, java.lang.String)
 	 */
@@ -161,50 +181,65 @@ public final class SalesCount extends Report implements DataAttributes
 				"' AND CRM_TRN_ORDERDETAILS.ORDDET_CREATEDDATE < '" + 
 				getParameters().getEndDate() + 
 				"' ";
-
-		Aggregation reportGrainData = new Aggregation();
-
-		String userID, salesAmount, reportGrain;
-
-		int timeGrain, userGrain, dateFormat;
 		
 		roster = new HughesRoster();
 		roster.setChildReport(true);
 		roster.getParameters().setAgentNames(getParameters().getAgentNames());
 		roster.getParameters().setTeamNames(getParameters().getTeamNames());
+		long rosterStart = System.nanoTime();
 		roster.load();
+		metrics.addPhaseTime(ReportPhase.ROSTER, System.nanoTime() - rosterStart);
+		
+		//rows come back from the database already grouped by the report's time or user grain
+		final GrainPushdown pushdown = GrainPushdown.forReport(this, roster);
 		
-		for(String[] row:  dbConnection.runQuery(salesQuery))
+		if(pushdown != null)
 		{
-			userID = row[0];
-
-			if(roster.hasUser(userID) )
+			salesQuery = pushdown.group(salesQuery, 3, 0, 1, new int[0]);
+		}
+		
+		ArrayList<String[]> queryResults = dbConnection.runQuery(salesQuery);
+		
+		long aggregateStart = System.nanoTime();
+		
+		//bucketing is spread across cores, the roster and parameters are only read
+		GrainPartials reportGrainData = ParallelAggregator.aggregate(queryResults, new RowAggregator()
+		{
+			@Override
+			public void aggregate(String[] row, GrainPartials partials)
 			{
-				salesAmount = row[2];
+				String userID = row[0];
+				String reportGrain;
 
-				//time grain for time reports
-				if(isTimeTrendReport())
-				{
-					timeGrain = Integer.parseInt(getParameters().getTimeGrain());
-					dateFormat = Integer.parseInt(getParameters().getDateFormat());
-					reportGrain = DateFormatter.getFormattedDate(DateParser.convertSQLDateToGregorian(row[1]), timeGrain, dateFormat);
-				}
-				else //if stack
+				if(roster.hasUser(userID) )
 				{
-					//is stack report
-					userGrain = Integer.parseInt(getParameters().getUserGrain());
-					reportGrain = UserGrains.getUserGrain(userGrain, roster.getUser(userID));
+					partials.addRows(GrainPushdown.getRowCount(pushdown, row));
+					
+					//time grain for time reports
+					if(isTimeTrendReport())
+					{
+						int timeGrain = Integer.parseInt(getParameters().getTimeGrain());
+						int dateFormat = Integer.parseInt(getParameters().getDateFormat());
+						reportGrain = DateFormatter.getFormattedDate(DateParser.convertSQLDateToGregorian(row[1]), timeGrain, dateFormat);
+					}
+					else //if stack
+					{
+						//is stack report
+						int userGrain = Integer.parseInt(getParameters().getUserGrain());
+						reportGrain = UserGrains.getUserGrain(userGrain, roster.getUser(userID));
+					}
+					
+					partials.get(reportGrain, SALES_COUNT_ATTR).addOccurrences(GrainPushdown.getRowCount(pushdown, row));
 				}
-				
-				reportGrainData.addDatum(reportGrain);
-				reportGrainData.getDatum(reportGrain).addAttribute(SALES_COUNT_ATTR);
-				reportGrainData.getDatum(reportGrain).addData(SALES_COUNT_ATTR, salesAmount);
 			}
-		}
+		});
 
-		for( Entry<String, String> queryStats  : dbConnection.getStatistics().entrySet())
+		if(logger.isInfoEnabled())
 		{
-			logInfoMessage( "Query " + queryStats.getKey() + ": " + queryStats.getValue());
+			for( Entry<String, String> queryStats  : dbConnection.getStatistics().entrySet())
+			{
+				logInfoMessage( "Query " + queryStats.getKey() + ": " + queryStats.getValue());
+			}
 		}
 		
 		/////////////////
@@ -213,19 +248,14 @@ public final class SalesCount extends Report implements DataAttributes
 
 		retval =  new ArrayList<String[]>();
 
-		int salesCount;
-		for(String user : reportGrainData.getDatumIDList())
+		for(String user : reportGrainData.getGrainIDList())
 		{
-			//not all users will have sales
-			salesCount = 0;
-			if( reportGrainData.getDatum(user).getAttributeData(SALES_COUNT_ATTR) != null)
-			{
-				salesCount = reportGrainData.getDatum(user).getAttributeData(SALES_COUNT_ATTR).size();
-			}
-
-			retval.add(new String[]{user, "" + salesCount }) ;
+			retval.add(new String[]{user, "" + reportGrainData.get(user, SALES_COUNT_ATTR).getCount() }) ;
 		}
 		
+		metrics.addRowsKept(reportGrainData.getRowCount());
+		metrics.addPhaseTime(ReportPhase.AGGREGATE, System.nanoTime() - aggregateStart);
+		
 		return retval;
 	}
 
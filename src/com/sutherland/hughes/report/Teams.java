@@ -14,15 +14,19 @@ import org.apache.log4j.Logger;
 import org.apache.log4j.MDC;
 
 import com.sutherland.helios.api.report.frontend.ReportFrontEndGroups;
-import com.sutherland.helios.database.connection.DatabaseConnection;
-import com.sutherland.helios.database.connection.SQL.ConnectionFactory;
 import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
 import com.sutherland.helios.exceptions.ExceptionFormatter;
 import com.sutherland.helios.exceptions.ReportSetupException;
 import com.sutherland.helios.logging.LogIDFactory;
 import com.sutherland.helios.report.Report;
 import com.sutherland.helios.report.parameters.groups.ReportParameterGroups;
+import com.sutherland.hughes.datasources.DataSources;
 import com.sutherland.hughes.datasources.DatabaseConfigs;
+import com.sutherland.hughes.datasources.JDBCConnection;
+import com.sutherland.hughes.metrics.ReportMetricSet;
+import com.sutherland.hughes.metrics.ReportMetrics;
+import com.sutherland.hughes.metrics.ReportPhase;
+import com.sutherland.hughes.report.execution.ReportExecution;
 
 
 /**
@@ -34,9 +38,10 @@ import com.sutherland.hughes.datasources.DatabaseConfigs;
 public final class Teams extends Report 
 {	
 	private HughesRoster roster;
-	private DatabaseConnection dbConnection;
+	private JDBCConnection dbConnection;
 	private final String dbPropFile = DatabaseConfigs.PRIVATE_LABEL_PROD_DB;
 	private final static Logger logger = Logger.getLogger(Teams.class);
+	private final static ReportMetricSet metrics = ReportMetrics.getReportMetrics(Teams.class);
 
 	public static String uiGetReportName()
 	{
@@ -120,11 +125,7 @@ public final class Teams extends Report
 
 		try 
 		{
-			ConnectionFactory factory = new ConnectionFactory();
-			
-			factory.load(dbPropFile);
-			
-			dbConnection = factory.getConnection();
+			dbConnection = DataSources.getConnection(dbPropFile, metrics);
 		}
 		catch (DatabaseConnectionCreationException e) 
 		{
@@ -183,6 +184,22 @@ public final class Teams extends Report
 		return retval;
 	}
 
+	/* (non-Javadoc)
+	 * @see com.sutherland.helios.report.Report#startReport()
+	 */
+	@Override
+	public ArrayList<String[]> startReport()
+	{
+		return ReportExecution.run(this, metrics, new ReportExecution.Runner()
+		{
+			@Override
+			public ArrayList<String[]> run()
+			{
+				return Teams.super.startReport();
+			}
+		});
+	}
+	
 	@Override
 	protected ArrayList<String[]> runReport() throws Exception 
 	{
@@ -191,7 +208,9 @@ public final class Teams extends Report
 		roster = new HughesRoster();
 		roster.setChildReport(true);
 		roster.setParameters(getParameters());
+		long rosterStart = System.nanoTime();
 		roster.load();
+		metrics.addPhaseTime(ReportPhase.ROSTER, System.nanoTime() - rosterStart);
 
 		//for each roster member, add every team we find to the list
 		TreeSet<String> teamSet = new TreeSet<String>();
@@ -232,9 +251,12 @@ public final class Teams extends Report
 			}
 		}
 		
-		for( Entry<String, String> queryStats  : dbConnection.getStatistics().entrySet())
+		if(logger.isInfoEnabled())
 		{
-			logInfoMessage( "Query " + queryStats.getKey() + ": " + queryStats.getValue());
+			for( Entry<String, String> queryStats  : dbConnection.getStatistics().entrySet())
+			{
+				logInfoMessage( "Query " + queryStats.getKey() + ": " + queryStats.getValue());
+			}
 		}
 	
 		return retval;
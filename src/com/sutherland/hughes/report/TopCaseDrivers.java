@@ -13,9 +13,6 @@ import org.apache.log4j.Logger;
 import org.apache.log4j.MDC;
 
 import com.sutherland.helios.api.report.frontend.ReportFrontEndGroups;
-import com.sutherland.helios.data.Aggregation;
-import com.sutherland.helios.database.connection.SQL.ConnectionFactory;
-import com.sutherland.helios.database.connection.SQL.RemoteConnection;
 import com.sutherland.helios.date.formatting.DateFormatter;
 import com.sutherland.helios.date.parsing.DateParser;
 import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
@@ -24,8 +21,16 @@ import com.sutherland.helios.exceptions.ReportSetupException;
 import com.sutherland.helios.logging.LogIDFactory;
 import com.sutherland.helios.report.Report;
 import com.sutherland.helios.report.parameters.groups.ReportParameterGroups;
-import com.sutherland.helios.util.results.Filter;
+import com.sutherland.hughes.data.GrainPartials;
+import com.sutherland.hughes.datasources.DataSources;
 import com.sutherland.hughes.datasources.DatabaseConfigs;
+import com.sutherland.hughes.datasources.JDBCConnection;
+import com.sutherland.hughes.metrics.ReportMetricSet;
+import com.sutherland.hughes.metrics.ReportMetrics;
+import com.sutherland.hughes.metrics.ReportPhase;
+import com.sutherland.hughes.report.execution.ParallelAggregator;
+import com.sutherland.hughes.report.execution.ReportExecution;
+import com.sutherland.hughes.report.execution.RowAggregator;
 
 
 /**
@@ -34,10 +39,13 @@ import com.sutherland.hughes.datasources.DatabaseConfigs;
  */
 public class TopCaseDrivers extends Report
 {
-	private RemoteConnection dbConnection;
+	private JDBCConnection dbConnection;
 	private HughesRoster roster;
 	private final String dbPropFile = DatabaseConfigs.PRIVATE_LABEL_PROD_DB;
 	private final static Logger logger = Logger.getLogger(TopCaseDrivers.class);
+	private final static ReportMetricSet metrics = ReportMetrics.getReportMetrics(TopCaseDrivers.class);
+	
+	private final static String DRIVERS_ATTR = "drivers";
 	
 	public static String uiGetReportName()
 	{
@@ -120,11 +128,7 @@ public class TopCaseDrivers extends Report
 
 		try 
 		{
-			ConnectionFactory factory = new ConnectionFactory();
-			
-			factory.load(dbPropFile);
-			
-			dbConnection = factory.getConnection();
+			dbConnection = DataSources.getConnection(dbPropFile, metrics);
 		} 
 		catch(DatabaseConnectionCreationException e )
 		{
@@ -144,6 +148,22 @@ public class TopCaseDrivers extends Report
 		return retval;
 	}
 
+	/* (non-Javadoc)
+	 * @see com.sutherland.helios.report.Report#startReport()
+	 */
+	@Override
+	public ArrayList<String[]> startReport()
+	{
+		return ReportExecution.run(this, metrics, new ReportExecution.Runner()
+		{
+			@Override
+			public ArrayList<String[]> run()
+			{
+				return TopCaseDrivers.super.startReport();
+			}
+		});
+	}
+	
 	/* (non-Javadoc)
 	 * @see helios.Report#runReport(java.lang.String, java.lang.String)
 	 */
@@ -164,47 +184,72 @@ public class TopCaseDrivers extends Report
 		roster.setChildReport(true);
 		roster.getParameters().setAgentNames(getParameters().getAgentNames());
 		roster.getParameters().setTeamNames(getParameters().getTeamNames());
+		long rosterStart = System.nanoTime();
 		roster.load();
+		metrics.addPhaseTime(ReportPhase.ROSTER, System.nanoTime() - rosterStart);
 		
-		Aggregation reportGrainData = new Aggregation();
-
-		String driver;
-		String userID;
-		String reportGrain; 
-		
-		//don't assign time grain just yet. in case this is a non-time report, because the timegrain param is not guaranteed to be set 
-		int timeGrain, dateFormat;
-		
-		for(String[] row : dbConnection.runQuery(query))
+		//rows are handed to the aggregation workers in batches as they come off the cursor, a year of day grain source rows is never held at once
+		ParallelAggregator aggregator = new ParallelAggregator(new RowAggregator()
 		{
-			userID = row[0];
-			driver = row[2] + "-" + row[3];
-
-			if(roster.hasUser(userID))
+			@Override
+			public void aggregate(String[] row, GrainPartials partials)
 			{
-				timeGrain = Integer.parseInt(getParameters().getTimeGrain());
-				dateFormat = Integer.parseInt(getParameters().getDateFormat());
-				reportGrain = DateFormatter.getFormattedDate(DateParser.convertSQLDateToGregorian(row[1]), timeGrain, dateFormat);
+				String userID = row[0];
+				String driver = row[2] + "-" + row[3];
 
-				reportGrainData.addDatum(reportGrain);
-				reportGrainData.getDatum(reportGrain).addAttribute(driver);
-				reportGrainData.getDatum(reportGrain).addData(driver, userID);	
+				if(roster.hasUser(userID))
+				{
+					partials.addRow();
+					
+					//don't assign time grain until here. in case this is a non-time report, because the timegrain param is not guaranteed to be set 
+					int timeGrain = Integer.parseInt(getParameters().getTimeGrain());
+					int dateFormat = Integer.parseInt(getParameters().getDateFormat());
+					String reportGrain = DateFormatter.getFormattedDate(DateParser.convertSQLDateToGregorian(row[1]), timeGrain, dateFormat);
+
+					partials.get(reportGrain, DRIVERS_ATTR).addDriver(driver);
+				}
 			}
+		});
+		
+		GrainPartials reportGrainData;
+		
+		try
+		{
+			dbConnection.streamQuery(query, aggregator);
+			
+			reportGrainData = aggregator.finish();
 		}
+		catch(Exception e)
+		{
+			aggregator.cancel();
+			
+			throw e;
+		}
+		
+		//the rows were bucketed as they were fetched, what is left is totalling
+		long aggregateStart = System.nanoTime();
 		
-		for( Entry<String, String> queryStats  : dbConnection.getStatistics().entrySet())
+		if(logger.isInfoEnabled())
 		{
-			logInfoMessage( "Query " + queryStats.getKey() + ": " + queryStats.getValue());
+			for( Entry<String, String> queryStats  : dbConnection.getStatistics().entrySet())
+			{
+				logInfoMessage( "Query " + queryStats.getKey() + ": " + queryStats.getValue());
+			}
 		}
 
-		for(String grain : reportGrainData.getDatumIDList())
+		int numDrivers = Integer.parseInt(getParameters().getNumDrivers());
+		for(String grain : reportGrainData.getGrainIDList())
 		{
-			for(String[] row : Filter.filterTopDrivers(reportGrainData.getDatum(grain), Integer.parseInt(getParameters().getNumDrivers())))
+			//picked from the drivers' counts as the Helios filter picks from a datum of their occurrences, ties and all
+			for(String[] row : reportGrainData.get(grain, DRIVERS_ATTR).filterTopDrivers(numDrivers))
 			{
 				retval.add(new String[]{grain, row[0], row[1] });
 			}
 		}
 		
+		metrics.addRowsKept(reportGrainData.getRowCount());
+		metrics.addPhaseTime(ReportPhase.AGGREGATE, System.nanoTime() - aggregateStart);
+		
 		return retval;
 	}
 
@@ -14,8 +14,6 @@ import org.apache.log4j.MDC;
 
 import com.sutherland.helios.api.report.frontend.ReportFrontEndGroups;
 import com.sutherland.helios.data.Aggregation;
-import com.sutherland.helios.database.connection.SQL.ConnectionFactory;
-import com.sutherland.helios.database.connection.SQL.RemoteConnection;
 import com.sutherland.helios.date.formatting.DateFormatter;
 import com.sutherland.helios.date.parsing.DateParser;
 import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
@@ -25,7 +23,13 @@ import com.sutherland.helios.logging.LogIDFactory;
 import com.sutherland.helios.report.Report;
 import com.sutherland.helios.report.parameters.groups.ReportParameterGroups;
 import com.sutherland.helios.util.results.Filter;
+import com.sutherland.hughes.datasources.DataSources;
 import com.sutherland.hughes.datasources.DatabaseConfigs;
+import com.sutherland.hughes.datasources.JDBCConnection;
+import com.sutherland.hughes.metrics.ReportMetricSet;
+import com.sutherland.hughes.metrics.ReportMetrics;
+import com.sutherland.hughes.metrics.ReportPhase;
+import com.sutherland.hughes.report.execution.ReportExecution;
 
 
 /**
@@ -34,10 +38,11 @@ import com.sutherland.hughes.datasources.DatabaseConfigs;
  */
 public class TopRefundDrivers extends Report
 {
-	private RemoteConnection dbConnection;
+	private JDBCConnection dbConnection;
 	private HughesRoster roster;
 	private final String dbPropFile = DatabaseConfigs.PRIVATE_LABEL_PROD_DB;
 	private final static Logger logger = Logger.getLogger(TopRefundDrivers.class);
+	private final static ReportMetricSet metrics = ReportMetrics.getReportMetrics(TopRefundDrivers.class);
 	
 	public static String uiGetReportName()
 	{
@@ -120,11 +125,7 @@ public class TopRefundDrivers extends Report
 
 		try 
 		{
-			ConnectionFactory factory = new ConnectionFactory();
-			
-			factory.load(dbPropFile);
-			
-			dbConnection = factory.getConnection();
+			dbConnection = DataSources.getConnection(dbPropFile, metrics);
 		} 
 		catch(DatabaseConnectionCreationException e )
 		{
@@ -144,6 +145,22 @@ public class TopRefundDrivers extends Report
 		return retval;
 	}
 
+	/* (non-Javadoc)
+	 * @see com.sutherland.helios.report.Report#startReport()
+	 */
+	@Override
+	public ArrayList<String[]> startReport()
+	{
+		return ReportExecution.run(this, metrics, new ReportExecution.Runner()
+		{
+			@Override
+			public ArrayList<String[]> run()
+			{
+				return TopRefundDrivers.super.startReport();
+			}
+		});
+	}
+	
 	/* (non-Javadoc)
 	 * @see helios.Report#runReport(java.lang.String, java.lang.String)
 	 */
@@ -164,7 +181,9 @@ public class TopRefundDrivers extends Report
 		roster.setChildReport(true);
 		roster.getParameters().setAgentNames(getParameters().getAgentNames());
 		roster.getParameters().setTeamNames(getParameters().getTeamNames());
+		long rosterStart = System.nanoTime();
 		roster.load();
+		metrics.addPhaseTime(ReportPhase.ROSTER, System.nanoTime() - rosterStart);
 				   
 		Aggregation reportGrainData = new Aggregation();
 		
@@ -175,13 +194,21 @@ public class TopRefundDrivers extends Report
 		//don't assign time grain just yet. in case this is a non-time report, because the timegrain param is not guaranteed to be set 
 		int timeGrain, dateFormat;
 		
-		for(String[] row : dbConnection.runQuery(query))
+		ArrayList<String[]> queryResults = dbConnection.runQuery(query);
+		
+		//filtering and bucketing, timed apart from the query
+		long aggregateStart = System.nanoTime();
+		long rowsKept = 0;
+		
+		for(String[] row : queryResults)
 		{
 			userID = row[1];
 			driver = row[2];
 
 			if(roster.hasUser(userID) )
 			{
+				rowsKept++;
+				
 				timeGrain = Integer.parseInt(getParameters().getTimeGrain());
 				dateFormat = Integer.parseInt(getParameters().getDateFormat());
 				reportGrain = DateFormatter.getFormattedDate(DateParser.convertSQLDateToGregorian(row[0]), timeGrain, dateFormat);
@@ -192,9 +219,12 @@ public class TopRefundDrivers extends Report
 			}
 		}
 		
-		for( Entry<String, String> queryStats  : dbConnection.getStatistics().entrySet())
+		if(logger.isInfoEnabled())
 		{
-			logInfoMessage( "Query " + queryStats.getKey() + ": " + queryStats.getValue());
+			for( Entry<String, String> queryStats  : dbConnection.getStatistics().entrySet())
+			{
+				logInfoMessage( "Query " + queryStats.getKey() + ": " + queryStats.getValue());
+			}
 		}
 
 		for(String grain : reportGrainData.getDatumIDList())
@@ -205,6 +235,9 @@ public class TopRefundDrivers extends Report
 			}
 		}
 		
+		metrics.addRowsKept(rowsKept);
+		metrics.addPhaseTime(ReportPhase.AGGREGATE, System.nanoTime() - aggregateStart);
+		
 		return retval;
 	}
 
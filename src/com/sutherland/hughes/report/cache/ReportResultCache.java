@@ -0,0 +1,672 @@
+package com.sutherland.hughes.report.cache;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.GregorianCalendar;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+import org.apache.log4j.Logger;
+
+import com.sutherland.helios.date.parsing.DateParser;
+import com.sutherland.helios.exceptions.ExceptionFormatter;
+import com.sutherland.helios.report.parameters.ReportParameters;
+import com.sutherland.hughes.config.ReportingConfig;
+import com.sutherland.hughes.metrics.ReportMetrics;
+import com.sutherland.hughes.util.results.ResultBuffer;
+
+/**
+ * Finished report results kept on disk, keyed by report class and normalized parameters, so they outlive the JVM. Only requests for
+ * closed periods, ending at or before the start of today, are cached: their rows won't change, and they are what gets asked for again
+ * after every redeploy. Each result is one ResultCacheFile in the cache directory, written to a temp file and renamed into place, so a
+ * reader only ever sees a complete file, and validated whenever it is read.
+ *
+ * The directory holds at most a fixed number of bytes. Entries are evicted least recently read first, going by the files' modification
+ * times across restarts, and expire after a maximum age in case past data is corrected. An evicted file a reader already has open stays
+ * readable until it is closed, so any number of requests can read while results are written and evicted.
+ *
+ * Configured by hughes.resultCache.dir, which enables it, hughes.resultCache.maxBytes and hughes.resultCache.maxAgeHours. Its counters
+ * are registered as an MBean under com.sutherland.hughes:type=ResultCache, and scraped by writeText.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class ReportResultCache implements ReportResultCacheMBean
+{
+	public final static long DEFAULT_MAX_BYTES = 1024L * 1024 * 1024;
+	public final static long DEFAULT_MAX_AGE_HOURS = 7 * 24;
+	public final static String JMX_TYPE = "ResultCache";
+
+	private final static String ENTRY_SUFFIX = ".results.gz";
+	private final static String TEMP_PREFIX = "hughes-result-";
+	private final static String TEMP_SUFFIX = ".tmp";
+	private final static String METRIC_PREFIX = "hughes_result_cache";
+
+	//temp files older than this were left by a writer that died
+	private final static long ABANDONED_TEMP_MILLIS = 60 * 60 * 1000;
+
+	private final static Logger logger = Logger.getLogger(ReportResultCache.class);
+
+	private static ReportResultCache instance;
+	private static boolean configured;
+
+	private final File dir;
+	private final long maxBytes;
+	private final long maxAgeMillis;
+
+	/**
+	 * What the index keeps of an entry file.
+	 */
+	private final static class IndexEntry
+	{
+		private final long size;
+		private final long created;
+
+		private IndexEntry(long size, long created)
+		{
+			this.size = size;
+			this.created = created;
+		}
+	}
+
+	//by file name, access ordered, the first entry is the least recently used
+	private final LinkedHashMap<String, IndexEntry> entries;
+	private long bytes;
+	private long hits;
+	private long misses;
+	private long writes;
+	private long evictions;
+	private long expirations;
+	private long invalidEntries;
+
+	/**
+	 * Open a cache directory, creating it if need be, and index the entries already in it. Entries that have expired or whose headers
+	 * can't be read are deleted.
+	 *
+	 * @param dir			The cache directory.
+	 * @param maxBytes		The most the directory's entries take.
+	 * @param maxAgeMillis	How long an entry is served after it was written.
+	 *
+	 * @throws IOException	If the directory cannot be created.
+	 */
+	public ReportResultCache(File dir, long maxBytes, long maxAgeMillis) throws IOException
+	{
+		this.dir = dir;
+		this.maxBytes = maxBytes;
+		this.maxAgeMillis = maxAgeMillis;
+
+		entries = new LinkedHashMap<String, IndexEntry>(16, 0.75f, true);
+
+		if(!dir.isDirectory() && !dir.mkdirs())
+		{
+			throw new IOException("Could not create result cache directory " + dir);
+		}
+
+		load(System.currentTimeMillis());
+	}
+
+	/**
+	 * Accessor for the site-wide cache, opened from the configuration on first use.
+	 *
+	 * @return	The cache, or null if no cache directory is configured or it cannot be opened.
+	 */
+	public static synchronized ReportResultCache getInstance()
+	{
+		if(!configured)
+		{
+			configured = true;
+
+			String dir = ReportingConfig.getString(ReportingConfig.RESULT_CACHE_DIR, null);
+
+			if(dir != null)
+			{
+				long maxBytes = ReportingConfig.getLong(ReportingConfig.RESULT_CACHE_MAX_BYTES, DEFAULT_MAX_BYTES);
+				long maxAgeHours = ReportingConfig.getLong(ReportingConfig.RESULT_CACHE_MAX_AGE_HOURS, DEFAULT_MAX_AGE_HOURS);
+
+				try
+				{
+					instance = new ReportResultCache(new File(dir), maxBytes, maxAgeHours * 60 * 60 * 1000);
+
+					ReportMetrics.register(JMX_TYPE, "Reports", instance);
+
+					logger.info("Caching closed period report results in " + dir + ", " + instance.getEntries() + " entries loaded");
+				}
+				catch(IOException e)
+				{
+					logger.error("Could not open the result cache in " + dir + ": " + ExceptionFormatter.asString(e));
+				}
+			}
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Replace the site-wide cache, ie. with one in a temporary directory for a test run.
+	 *
+	 * @param cache	The cache, or null to go back to the configured one.
+	 */
+	public static synchronized void setInstance(ReportResultCache cache)
+	{
+		instance = cache;
+		configured = cache != null;
+	}
+
+	/**
+	 * Build the cache key of a request: the report class, then each of its parameters that is set, in name order, with their values in
+	 * sorted order, so the same request with its parameters or agent names listed differently is still recognized.
+	 *
+	 * @param reportClassName	The report's fully qualified class name.
+	 * @param parameters		The report's parameters.
+	 *
+	 * @return	The key.
+	 */
+	public static String key(String reportClassName, ReportParameters parameters)
+	{
+		StringBuilder retval = new StringBuilder(reportClassName);
+
+		ArrayList<String> names = new ArrayList<String>(parameters.getSupportedParameters());
+		Collections.sort(names);
+
+		ArrayList<String> values = new ArrayList<String>();
+		for(String name : names)
+		{
+			values.clear();
+
+			if(parameters.getParameterValues(name) != null)
+			{
+				for(String value : parameters.getParameterValues(name))
+				{
+					//unset parameters come back as a single null
+					if(value != null)
+					{
+						values.add(value);
+					}
+				}
+			}
+
+			if(!values.isEmpty())
+			{
+				Collections.sort(values);
+
+				retval.append('\n').append(name).append('=');
+
+				for(String value : values)
+				{
+					retval.append('\t').append(value);
+				}
+			}
+		}
+
+		return retval.toString();
+	}
+
+	/**
+	 * Determine if a request is for a closed period, so its results can be cached. The end date is exclusive, so a range ending at
+	 * midnight this morning is closed.
+	 *
+	 * @param parameters	The report's parameters.
+	 * @param nowMillis		The current time.
+	 *
+	 * @return	True if the request's end date is at or before the start of today, false if it's later or there isn't one.
+	 */
+	public static boolean isClosedPeriod(ReportParameters parameters, long nowMillis)
+	{
+		boolean retval = false;
+
+		String endDate = parameters.getEndDate();
+
+		if(endDate != null)
+		{
+			GregorianCalendar end = null;
+
+			try
+			{
+				end = DateParser.convertSQLDateToGregorian(endDate);
+			}
+			catch(Exception e)
+			{
+				//not a date, ie. a relative one, so not closed
+			}
+
+			if(end != null)
+			{
+				Calendar today = Calendar.getInstance();
+				today.setTimeInMillis(nowMillis);
+				today.set(Calendar.HOUR_OF_DAY, 0);
+				today.set(Calendar.MINUTE, 0);
+				today.set(Calendar.SECOND, 0);
+				today.set(Calendar.MILLISECOND, 0);
+
+				retval = end.getTimeInMillis() <= today.getTimeInMillis();
+			}
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Look up a request's results.
+	 *
+	 * @param key		The request's key.
+	 * @param schema	Receives the report's column names, if the results are cached.
+	 * @param nowMillis	The current time.
+	 *
+	 * @return	The rows, which the caller is responsible for closing, or null if they aren't cached or have expired.
+	 */
+	public ResultBuffer get(String key, ArrayList<String> schema, long nowMillis)
+	{
+		ResultBuffer retval = null;
+
+		String name = fileName(key);
+
+		boolean indexed;
+		synchronized(this)
+		{
+			indexed = entries.get(name) != null;
+		}
+
+		if(indexed)
+		{
+			File file = new File(dir, name);
+			ResultBuffer rows = new ResultBuffer();
+
+			try
+			{
+				ResultCacheFile.Header header = ResultCacheFile.read(file, key, schema, rows);
+
+				if(header.getCreated() + maxAgeMillis <= nowMillis)
+				{
+					synchronized(this)
+					{
+						expirations++;
+					}
+
+					remove(name, file);
+				}
+				else
+				{
+					//keeps the least recently used order across restarts
+					file.setLastModified(nowMillis);
+
+					retval = rows;
+				}
+			}
+			catch(FileNotFoundException e)
+			{
+				//evicted since it was looked up
+				remove(name, null);
+			}
+			catch(IOException e)
+			{
+				logger.warn("Discarding result cache entry " + file + ": " + e.getMessage());
+
+				synchronized(this)
+				{
+					invalidEntries++;
+				}
+
+				remove(name, file);
+			}
+
+			if(retval == null)
+			{
+				rows.close();
+				schema.clear();
+			}
+		}
+
+		synchronized(this)
+		{
+			if(retval != null)
+			{
+				hits++;
+			}
+			else
+			{
+				misses++;
+			}
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Store a request's results, replacing any already cached. Least recently read results are evicted to make room for them.
+	 *
+	 * @param key		The request's key.
+	 * @param schema	The report's column names.
+	 * @param rows		The report's rows. They're read, not closed.
+	 * @param nowMillis	The current time.
+	 *
+	 * @return	True if the results were cached, false if they are too big or could not be written.
+	 */
+	public boolean put(String key, ArrayList<String> schema, ResultBuffer rows, long nowMillis)
+	{
+		boolean retval = false;
+
+		String name = fileName(key);
+		File temp = null;
+
+		try
+		{
+			temp = File.createTempFile(TEMP_PREFIX, TEMP_SUFFIX, dir);
+
+			ResultCacheFile.write(temp, key, nowMillis, schema, rows);
+
+			long size = temp.length();
+
+			if(size <= maxBytes)
+			{
+				Files.move(temp.toPath(), new File(dir, name).toPath(), StandardCopyOption.ATOMIC_MOVE);
+				temp = null;
+
+				synchronized(this)
+				{
+					IndexEntry replaced = entries.put(name, new IndexEntry(size, nowMillis));
+
+					bytes += size - (replaced == null ? 0 : replaced.size);
+					writes++;
+
+					evict(name);
+				}
+
+				retval = true;
+			}
+		}
+		catch(IOException e)
+		{
+			logger.warn("Could not write result cache entry " + name + ": " + ExceptionFormatter.asString(e));
+		}
+		finally
+		{
+			if(temp != null)
+			{
+				temp.delete();
+			}
+		}
+
+		return retval;
+	}
+
+	private String fileName(String key)
+	{
+		StringBuilder retval = new StringBuilder(40 + ENTRY_SUFFIX.length());
+
+		try
+		{
+			for(byte b : MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8")))
+			{
+				retval.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+		}
+		catch(NoSuchAlgorithmException e)
+		{
+			//every JVM has SHA-1
+			throw new IllegalStateException(e);
+		}
+		catch(IOException e)
+		{
+			//every JVM has UTF-8
+			throw new IllegalStateException(e);
+		}
+
+		return retval.append(ENTRY_SUFFIX).toString();
+	}
+
+	/**
+	 * Index the directory's entries, oldest first so the least recently read are evicted first.
+	 */
+	private synchronized void load(long nowMillis)
+	{
+		File[] files = dir.listFiles();
+
+		if(files == null)
+		{
+			return;
+		}
+
+		Arrays.sort(files, new Comparator<File>()
+		{
+			@Override
+			public int compare(File a, File b)
+			{
+				return Long.compare(a.lastModified(), b.lastModified());
+			}
+		});
+
+		String name;
+		for(File file : files)
+		{
+			name = file.getName();
+
+			if(name.startsWith(TEMP_PREFIX) && name.endsWith(TEMP_SUFFIX))
+			{
+				if(file.lastModified() + ABANDONED_TEMP_MILLIS < nowMillis)
+				{
+					file.delete();
+				}
+			}
+			else if(name.endsWith(ENTRY_SUFFIX))
+			{
+				try
+				{
+					ResultCacheFile.Header header = ResultCacheFile.readHeader(file);
+
+					if(header.getCreated() + maxAgeMillis <= nowMillis)
+					{
+						expirations++;
+						file.delete();
+					}
+					else
+					{
+						entries.put(name, new IndexEntry(file.length(), header.getCreated()));
+						bytes += file.length();
+					}
+				}
+				catch(IOException e)
+				{
+					logger.warn("Discarding result cache entry " + file + ": " + e.getMessage());
+
+					invalidEntries++;
+					file.delete();
+				}
+			}
+		}
+
+		evict(null);
+	}
+
+	/**
+	 * Delete least recently read entries until the directory is back within its size.
+	 *
+	 * @param keep	The name of an entry not to evict, or null.
+	 */
+	private void evict(String keep)
+	{
+		Entry<String, IndexEntry> entry;
+		for(Iterator<Entry<String, IndexEntry>> leastRecent = entries.entrySet().iterator(); bytes > maxBytes && leastRecent.hasNext(); )
+		{
+			entry = leastRecent.next();
+
+			if(!entry.getKey().equals(keep))
+			{
+				leastRecent.remove();
+				bytes -= entry.getValue().size;
+				evictions++;
+
+				new File(dir, entry.getKey()).delete();
+			}
+		}
+	}
+
+	/**
+	 * Drop an entry from the index.
+	 *
+	 * @param name	The entry's file name.
+	 * @param file	The entry's file, to delete, or null to leave it.
+	 */
+	private synchronized void remove(String name, File file)
+	{
+		IndexEntry entry = entries.remove(name);
+
+		if(entry != null)
+		{
+			bytes -= entry.size;
+
+			if(file != null)
+			{
+				file.delete();
+			}
+		}
+	}
+
+	/**
+	 * Delete the entries that have expired. They are never served regardless, this just frees their space ahead of eviction.
+	 *
+	 * @param nowMillis	The current time.
+	 *
+	 * @return	The number of entries deleted.
+	 */
+	public synchronized int prune(long nowMillis)
+	{
+		int retval = 0;
+
+		Entry<String, IndexEntry> entry;
+		for(Iterator<Entry<String, IndexEntry>> all = entries.entrySet().iterator(); all.hasNext(); )
+		{
+			entry = all.next();
+
+			if(entry.getValue().created + maxAgeMillis <= nowMillis)
+			{
+				all.remove();
+				bytes -= entry.getValue().size;
+				expirations++;
+				retval++;
+
+				new File(dir, entry.getKey()).delete();
+			}
+		}
+
+		return retval;
+	}
+
+	@Override
+	public synchronized void clear()
+	{
+		for(String name : entries.keySet())
+		{
+			new File(dir, name).delete();
+		}
+
+		entries.clear();
+		bytes = 0;
+
+		logger.info("Result cache cleared");
+	}
+
+	@Override
+	public synchronized long getHits()
+	{
+		return hits;
+	}
+
+	@Override
+	public synchronized long getMisses()
+	{
+		return misses;
+	}
+
+	@Override
+	public synchronized double getHitRatio()
+	{
+		double retval = 0;
+
+		if(hits + misses > 0)
+		{
+			retval = (double)hits / (hits + misses);
+		}
+
+		return retval;
+	}
+
+	@Override
+	public synchronized long getWrites()
+	{
+		return writes;
+	}
+
+	@Override
+	public synchronized long getEvictions()
+	{
+		return evictions;
+	}
+
+	@Override
+	public synchronized long getExpirations()
+	{
+		return expirations;
+	}
+
+	@Override
+	public synchronized long getInvalidEntries()
+	{
+		return invalidEntries;
+	}
+
+	@Override
+	public synchronized long getEntries()
+	{
+		return entries.size();
+	}
+
+	@Override
+	public synchronized long getBytes()
+	{
+		return bytes;
+	}
+
+	@Override
+	public long getMaxBytes()
+	{
+		return maxBytes;
+	}
+
+	/**
+	 * Write the cache's counters in the Prometheus text exposition format.
+	 *
+	 * @param out	Where to write them. It is not flushed or closed.
+	 *
+	 * @throws IOException	If they cannot be written.
+	 */
+	public synchronized void writeText(Writer out) throws IOException
+	{
+		writeSample(out, "_hits_total", "counter", hits);
+		writeSample(out, "_misses_total", "counter", misses);
+		writeSample(out, "_writes_total", "counter", writes);
+		writeSample(out, "_evictions_total", "counter", evictions);
+		writeSample(out, "_expirations_total", "counter", expirations);
+		writeSample(out, "_invalid_entries_total", "counter", invalidEntries);
+		writeSample(out, "_entries", "gauge", entries.size());
+		writeSample(out, "_bytes", "gauge", bytes);
+		writeSample(out, "_max_bytes", "gauge", maxBytes);
+	}
+
+	private static void writeSample(Writer out, String metric, String type, long value) throws IOException
+	{
+		out.write("# TYPE " + METRIC_PREFIX + metric + " " + type + "\n");
+		out.write(METRIC_PREFIX + metric + " " + value + "\n");
+	}
+}
@@ -0,0 +1,41 @@
+package com.sutherland.hughes.report.cache;
+
+/**
+ * The JMX view of the ReportResultCache.
+ *
+ * @author Jason Diamond
+ *
+ */
+public interface ReportResultCacheMBean
+{
+	long getHits();
+
+	long getMisses();
+
+	/**
+	 * @return	The fraction of lookups served from the cache, or 0 if there have been none.
+	 */
+	double getHitRatio();
+
+	long getWrites();
+
+	long getEvictions();
+
+	long getExpirations();
+
+	/**
+	 * @return	The number of entry files thrown away because they were truncated, corrupt or from another version.
+	 */
+	long getInvalidEntries();
+
+	long getEntries();
+
+	long getBytes();
+
+	long getMaxBytes();
+
+	/**
+	 * Delete every cached result, ie. after data for past days has been corrected.
+	 */
+	void clear();
+}
@@ -0,0 +1,309 @@
+package com.sutherland.hughes.report.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.sutherland.hughes.datasources.RowHandler;
+import com.sutherland.hughes.util.results.ResultBuffer;
+
+/**
+ * Reads and writes the entry files of a ReportResultCache. An entry file is gzipped: a header holding the cache key it was written for and
+ * when, then the report's schema, its row count and its rows. Lengths and counts are written as variable length integers rather than the
+ * fixed four bytes of capture files, since most cached values are short numbers and grain names.
+ *
+ * A file is only accepted if its magic number, version and key match, it holds exactly the rows its header promises, and the gzip trailer's
+ * CRC checks out, so a file left half written by a crash, or from an older build, is never served.
+ *
+ * @author Jason Diamond
+ *
+ */
+public final class ResultCacheFile
+{
+	private final static int MAGIC = 0x48525243;
+	private final static int VERSION = 1;
+
+	private final static String CHARSET = "UTF-8";
+	private final static int IO_BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The header of an entry file.
+	 */
+	public final static class Header
+	{
+		private final String key;
+		private final long created;
+
+		private Header(String key, long created)
+		{
+			this.key = key;
+			this.created = created;
+		}
+
+		public String getKey()
+		{
+			return key;
+		}
+
+		/**
+		 * Accessor for when the entry was written.
+		 *
+		 * @return	The time, in milliseconds since the epoch.
+		 */
+		public long getCreated()
+		{
+			return created;
+		}
+	}
+
+	private ResultCacheFile()
+	{
+	}
+
+	/**
+	 * Write an entry file.
+	 *
+	 * @param file		The file to write. An existing file is overwritten.
+	 * @param key		The cache key of the results.
+	 * @param created	When the results were produced.
+	 * @param schema	The report's column names.
+	 * @param rows		The report's rows.
+	 *
+	 * @throws IOException	If the file cannot be written.
+	 */
+	public static void write(File file, String key, long created, ArrayList<String> schema, ResultBuffer rows) throws IOException
+	{
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file), IO_BUFFER_SIZE), IO_BUFFER_SIZE));
+
+		try
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			writeString(out, key);
+			out.writeLong(created);
+
+			writeLength(out, schema.size());
+			for(String column : schema)
+			{
+				writeString(out, column);
+			}
+
+			out.writeLong(rows.size());
+
+			rows.replay(new RowHandler()
+			{
+				@Override
+				public void handleRow(String[] row) throws IOException
+				{
+					writeLength(out, row.length);
+
+					for(String value : row)
+					{
+						writeString(out, value);
+					}
+				}
+			});
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * Read an entry file's header.
+	 *
+	 * @param file	The entry file.
+	 *
+	 * @return	The header.
+	 *
+	 * @throws IOException	If the file cannot be read or is not an entry file of this version.
+	 */
+	public static Header readHeader(File file) throws IOException
+	{
+		Header retval;
+
+		DataInputStream in = open(file);
+
+		try
+		{
+			retval = readHeader(in, file);
+		}
+		finally
+		{
+			in.close();
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Read an entry file's rows.
+	 *
+	 * @param file		The entry file.
+	 * @param key		The cache key the file is expected to hold.
+	 * @param schema	Receives the report's column names.
+	 * @param rows		Receives the report's rows.
+	 *
+	 * @return	The file's header.
+	 *
+	 * @throws IOException	If the file cannot be read, is not an entry file of this version, holds another key, or is truncated or
+	 * 						corrupt.
+	 */
+	public static Header read(File file, String key, ArrayList<String> schema, RowHandler rows) throws IOException
+	{
+		Header retval;
+
+		DataInputStream in = open(file);
+
+		try
+		{
+			retval = readHeader(in, file);
+
+			if(!retval.getKey().equals(key))
+			{
+				throw new IOException(file + " holds the results of another request");
+			}
+
+			int columnCount = readLength(in);
+			for(int i = 0; i < columnCount; i++)
+			{
+				schema.add(readString(in));
+			}
+
+			long rowCount = in.readLong();
+
+			String[] row;
+			for(long i = 0; i < rowCount; i++)
+			{
+				row = new String[readLength(in)];
+
+				for(int j = 0; j < row.length; j++)
+				{
+					row[j] = readString(in);
+				}
+
+				rows.handleRow(row);
+			}
+
+			//reading to the end has the gzip stream check its CRC and length
+			if(in.read() != -1)
+			{
+				throw new IOException(file + " holds more rows than its header says");
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+
+		return retval;
+	}
+
+	private static DataInputStream open(File file) throws IOException
+	{
+		return new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file), IO_BUFFER_SIZE), IO_BUFFER_SIZE));
+	}
+
+	private static Header readHeader(DataInputStream in, File file) throws IOException
+	{
+		if(in.readInt() != MAGIC)
+		{
+			throw new IOException(file + " is not a result cache file");
+		}
+
+		int version = in.readInt();
+
+		if(version != VERSION)
+		{
+			throw new IOException("Unsupported result cache file version " + version + " in " + file);
+		}
+
+		String key = readString(in);
+
+		if(key == null)
+		{
+			throw new IOException(file + " has no key");
+		}
+
+		return new Header(key, in.readLong());
+	}
+
+	/*
+	 * Seven bits at a time, low bits first, the high bit set on every byte but the last.
+	 */
+	private static void writeLength(DataOutputStream out, int length) throws IOException
+	{
+		while((length & ~0x7F) != 0)
+		{
+			out.writeByte((length & 0x7F) | 0x80);
+			length >>>= 7;
+		}
+
+		out.writeByte(length);
+	}
+
+	private static int readLength(DataInputStream in) throws IOException
+	{
+		int retval = 0;
+
+		int b;
+		int shift = 0;
+		do
+		{
+			if(shift > 28)
+			{
+				throw new IOException("Malformed length in result cache file");
+			}
+
+			b = in.readUnsignedByte();
+			retval |= (b & 0x7F) << shift;
+			shift += 7;
+		}
+		while((b & 0x80) != 0);
+
+		return retval;
+	}
+
+	/*
+	 * The UTF-8 byte length plus one, 0 for null, followed by the bytes.
+	 */
+	private static void writeString(DataOutputStream out, String value) throws IOException
+	{
+		if(value == null)
+		{
+			writeLength(out, 0);
+		}
+		else
+		{
+			byte[] bytes = value.getBytes(CHARSET);
+
+			writeLength(out, bytes.length + 1);
+			out.write(bytes);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException
+	{
+		String retval = null;
+
+		int length = readLength(in) - 1;
+
+		if(length >= 0)
+		{
+			byte[] bytes = new byte[length];
+			in.readFully(bytes);
+			retval = new String(bytes, CHARSET);
+		}
+
+		return retval;
+	}
+}
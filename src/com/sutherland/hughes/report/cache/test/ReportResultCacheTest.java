@@ -0,0 +1,226 @@
+/**
+ *
+ */
+package com.sutherland.hughes.report.cache.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.sutherland.helios.report.Report;
+import com.sutherland.helios.report.parameters.ReportParameters;
+import com.sutherland.hughes.api.async.test.ReportJobQueueTest;
+import com.sutherland.hughes.api.export.ReportExporter;
+import com.sutherland.hughes.report.cache.ReportResultCache;
+import com.sutherland.hughes.util.results.ResultBuffer;
+
+/**
+ * @author Jason Diamond
+ *
+ */
+public class ReportResultCacheTest extends TestCase
+{
+	private final static long MAX_AGE_MILLIS = 24 * 60 * 60 * 1000;
+	private final static String KEY = "com.sutherland.hughes.report.CallVolume\nStart Date=\t2014-10-01 00:00:00";
+
+	private File dir;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		dir = File.createTempFile("hughes-result-cache-", "");
+		dir.delete();
+		dir.mkdirs();
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		for(File file : dir.listFiles())
+		{
+			file.delete();
+		}
+
+		dir.delete();
+	}
+
+	private static ResultBuffer rows(int count) throws IOException
+	{
+		ResultBuffer retval = new ResultBuffer(Long.MAX_VALUE, null);
+
+		for(int i = 0; i < count; i++)
+		{
+			retval.add(new String[]{"2014-10-0" + (i % 9 + 1), (i % 5 == 0) ? null : "" + i * 1.5});
+		}
+
+		return retval;
+	}
+
+	private static File entryFile(File dir)
+	{
+		File retval = null;
+
+		for(File file : dir.listFiles())
+		{
+			if(file.getName().endsWith(".results.gz"))
+			{
+				retval = file;
+			}
+		}
+
+		return retval;
+	}
+
+	@Test
+	public void testResultsSurviveRestart() throws Exception
+	{
+		ResultBuffer results = rows(1000);
+
+		ReportResultCache cache = new ReportResultCache(dir, 1024 * 1024, MAX_AGE_MILLIS);
+		assertTrue(cache.put(KEY, new ArrayList<String>(Arrays.asList("Date Grain", "Call Count")), results, System.currentTimeMillis()));
+
+		//a new instance over the same directory, as after a redeploy
+		ReportResultCache reopened = new ReportResultCache(dir, 1024 * 1024, MAX_AGE_MILLIS);
+		assertEquals(1, reopened.getEntries());
+
+		ArrayList<String> schema = new ArrayList<String>();
+		ResultBuffer cached = reopened.get(KEY, schema, System.currentTimeMillis());
+
+		assertNotNull(cached);
+		assertEquals(Arrays.asList("Date Grain", "Call Count"), schema);
+		assertEquals(1000, cached.size());
+
+		ArrayList<String[]> expected = results.getRows(0, 1000);
+		ArrayList<String[]> actual = cached.getRows(0, 1000);
+		for(int i = 0; i < expected.size(); i++)
+		{
+			assertTrue(Arrays.equals(expected.get(i), actual.get(i)));
+		}
+
+		cached.close();
+		results.close();
+
+		assertNull(reopened.get(KEY + "x", new ArrayList<String>(), System.currentTimeMillis()));
+		assertEquals(1, reopened.getHits());
+		assertEquals(1, reopened.getMisses());
+	}
+
+	@Test
+	public void testCorruptEntryIsDiscarded() throws Exception
+	{
+		ReportResultCache cache = new ReportResultCache(dir, 1024 * 1024, MAX_AGE_MILLIS);
+		assertTrue(cache.put(KEY, new ArrayList<String>(Arrays.asList("Call Count")), rows(1000), System.currentTimeMillis()));
+
+		//as if the disk filled up while it was copied in
+		File file = entryFile(dir);
+		RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+		truncated.setLength(file.length() / 2);
+		truncated.close();
+
+		ArrayList<String> schema = new ArrayList<String>();
+		assertNull(cache.get(KEY, schema, System.currentTimeMillis()));
+		assertTrue(schema.isEmpty());
+
+		assertEquals(1, cache.getInvalidEntries());
+		assertEquals(0, cache.getEntries());
+		assertEquals(0, cache.getBytes());
+		assertNull(entryFile(dir));
+	}
+
+	@Test
+	public void testLeastRecentlyReadIsEvicted() throws Exception
+	{
+		ReportResultCache probe = new ReportResultCache(dir, Long.MAX_VALUE, MAX_AGE_MILLIS);
+		probe.put("size", new ArrayList<String>(), rows(200), 0);
+		long entryBytes = probe.getBytes();
+		probe.clear();
+
+		//room for two entries, and some slack for their compressed sizes differing
+		ReportResultCache cache = new ReportResultCache(dir, entryBytes * 2 + entryBytes / 2, MAX_AGE_MILLIS);
+		long now = System.currentTimeMillis();
+
+		assertTrue(cache.put("a", new ArrayList<String>(), rows(200), now));
+		assertTrue(cache.put("b", new ArrayList<String>(), rows(200), now));
+		cache.get("a", new ArrayList<String>(), now).close();
+		assertTrue(cache.put("c", new ArrayList<String>(), rows(200), now));
+
+		assertEquals(1, cache.getEvictions());
+		assertEquals(2, cache.getEntries());
+		assertNotNull(cache.get("a", new ArrayList<String>(), now));
+		assertNull(cache.get("b", new ArrayList<String>(), now));
+		assertNotNull(cache.get("c", new ArrayList<String>(), now));
+
+		//expired entries aren't served
+		assertNull(cache.get("c", new ArrayList<String>(), now + MAX_AGE_MILLIS));
+		assertEquals(1, cache.getExpirations());
+	}
+
+	@Test
+	public void testKeysAndClosedPeriods() throws Exception
+	{
+		ReportParameters first = new ReportParameters();
+		ReportParameters second = new ReportParameters();
+
+		for(ReportParameters parameters : new ReportParameters[]{first, second})
+		{
+			parameters.addSupportedParameter("Start Date");
+			parameters.addSupportedParameter("End Date");
+			parameters.addSupportedParameter("Report Type");
+			parameters.addSupportedParameter("Time Grain");
+		}
+
+		first.addParameter("startDate", "2014-10-01 00:00:00");
+		first.addParameter("endDate", "2014-10-08 00:00:00");
+		first.addParameter("reportType", "1");
+
+		second.addParameter("reportType", "1");
+		second.addParameter("endDate", "2014-10-08 00:00:00");
+		second.addParameter("startDate", "2014-10-01 00:00:00");
+
+		assertEquals(ReportResultCache.key("CallVolume", first), ReportResultCache.key("CallVolume", second));
+		assertFalse(ReportResultCache.key("CallVolume", first).equals(ReportResultCache.key("TalkTime", first)));
+
+		Calendar now = Calendar.getInstance();
+		now.set(2014, Calendar.OCTOBER, 8, 14, 30, 0);
+		assertTrue(ReportResultCache.isClosedPeriod(first, now.getTimeInMillis()));
+
+		now.set(2014, Calendar.OCTOBER, 7, 23, 59, 0);
+		assertFalse(ReportResultCache.isClosedPeriod(first, now.getTimeInMillis()));
+
+		assertFalse(ReportResultCache.isClosedPeriod(new ReportParameters(), now.getTimeInMillis()));
+	}
+
+	@Test
+	public void testExportedReportIsCached() throws Exception
+	{
+		ReportResultCache cache = new ReportResultCache(dir, 1024 * 1024, MAX_AGE_MILLIS);
+		long now = System.currentTimeMillis();
+
+		//run the way ExportServlet runs a closed period, through the cache
+		for(int run = 0; run < 2; run++)
+		{
+			Report report = new ReportJobQueueTest.DatedReport();
+			report.getParameters().setStartDate("2014-10-01 00:00:00");
+
+			ArrayList<String> schema = new ArrayList<String>();
+			ResultBuffer results = ReportExporter.bufferReport(report, cache, now, schema);
+			report.close();
+
+			assertEquals(3, results.size());
+			assertEquals(Arrays.asList("Start", "Index"), schema);
+
+			results.close();
+		}
+
+		assertEquals(1, cache.getEntries());
+		assertEquals(1, cache.getWrites());
+		assertEquals(1, cache.getHits());
+	}
+}
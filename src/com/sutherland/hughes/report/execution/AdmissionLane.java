@@ -0,0 +1,119 @@
+package com.sutherland.hughes.report.execution;
+
+import java.util.GregorianCalendar;
+
+import com.sutherland.helios.date.parsing.DateParser;
+import com.sutherland.helios.report.Report;
+import com.sutherland.hughes.config.ReportingConfig;
+
+/**
+ * The priority a request's queries are admitted to the database with, highest first. A request's lane is set on its ResourceBudget, so
+ * every query run for it, on any of its threads, waits in the same lane.
+ *
+ * @author Jason Diamond
+ *
+ */
+public enum AdmissionLane
+{
+	/**
+	 * The realtime pages, which refresh every few seconds and are useless late.
+	 */
+	REALTIME("realtime"),
+
+	/**
+	 * Someone waiting on a trend or stack report.
+	 */
+	INTERACTIVE("interactive"),
+
+	/**
+	 * Exports of large reports, and background work like warmup and the precompute jobs, which can wait.
+	 */
+	BULK("bulk");
+
+	public final static String DEFAULT_REALTIME_REPORTS = "RealtimeSales, RealtimeSalesQueue";
+	public final static String DEFAULT_BULK_REPORTS = "CreatedCustomers";
+	public final static long DEFAULT_BULK_DRIVER_DAYS = 31;
+
+	private final static long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+	private final String label;
+
+	private AdmissionLane(String label)
+	{
+		this.label = label;
+	}
+
+	public String getLabel()
+	{
+		return label;
+	}
+
+	/**
+	 * Determine the lane of a report, with its parameters set. The realtime and bulk reports are listed in hughes.admission.realtimeReports
+	 * and hughes.admission.bulkReports by class name, and a drivers report over more than hughes.admission.bulkDriverDays days is bulk too.
+	 * Anything else is interactive.
+	 *
+	 * @param report	The report.
+	 *
+	 * @return	The lane.
+	 */
+	public static AdmissionLane forReport(Report report)
+	{
+		AdmissionLane retval = INTERACTIVE;
+
+		String reportName = report.getClass().getSimpleName();
+
+		if(isListed(reportName, ReportingConfig.getString(ReportingConfig.ADMISSION_REALTIME_REPORTS, DEFAULT_REALTIME_REPORTS)))
+		{
+			retval = REALTIME;
+		}
+		else if(isListed(reportName, ReportingConfig.getString(ReportingConfig.ADMISSION_BULK_REPORTS, DEFAULT_BULK_REPORTS)))
+		{
+			retval = BULK;
+		}
+		else if(report.isDriversReport() && getRangeDays(report) > ReportingConfig.getLong(ReportingConfig.ADMISSION_BULK_DRIVER_DAYS, DEFAULT_BULK_DRIVER_DAYS))
+		{
+			retval = BULK;
+		}
+
+		return retval;
+	}
+
+	private static boolean isListed(String reportName, String reportNames)
+	{
+		boolean retval = false;
+
+		for(String listed : reportNames.split(","))
+		{
+			if(listed.trim().equals(reportName))
+			{
+				retval = true;
+				break;
+			}
+		}
+
+		return retval;
+	}
+
+	/**
+	 * @return	The days between the report's start and end dates, or 0 if they aren't both dates.
+	 */
+	private static long getRangeDays(Report report)
+	{
+		long retval = 0;
+
+		try
+		{
+			GregorianCalendar start = DateParser.convertSQLDateToGregorian(report.getParameters().getStartDate());
+			GregorianCalendar end = DateParser.convertSQLDateToGregorian(report.getParameters().getEndDate());
+
+			retval = (end.getTimeInMillis() - start.getTimeInMillis()) / DAY_MILLIS;
+		}
+		catch(Exception e)
+		{
+			//missing or relative dates, judged interactive
+		}
+
+		return retval;
+	}
+}
@@ -0,0 +1,22 @@
+package com.sutherland.hughes.report.execution;
+
+/**
+ * Thrown when a request's query is turned away by a database's AdmissionController, because its lane's queue was full or it waited too
+ * long. The request is shed rather than failed: the database is busy, and it's worth trying again later. It's unchecked for the same
+ * reason as BudgetExceededException.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class AdmissionRejectedException extends RuntimeException
+{
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * @param message	Why the query was turned away.
+	 */
+	public AdmissionRejectedException(String message)
+	{
+		super(message);
+	}
+}
@@ -0,0 +1,21 @@
+package com.sutherland.hughes.report.execution;
+
+/**
+ * Thrown when a request goes past its row or heap allocation budget. It's unchecked so it can unwind from inside a row handler and through
+ * the report's own query code, which only expects database errors, to the report's error handling.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class BudgetExceededException extends RuntimeException
+{
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * @param message	What was exceeded, and by whom.
+	 */
+	public BudgetExceededException(String message)
+	{
+		super(message);
+	}
+}
@@ -0,0 +1,156 @@
+package com.sutherland.hughes.report.execution;
+
+import java.util.ArrayList;
+
+/**
+ * Cooperative cancellation of one request, shared through its ResourceBudget by the request's report, roster, child reports and their
+ * threads. Work in progress checks it at the same checkpoints as the budget and stops once it's cancelled. Work that can't check, like
+ * a running SQL statement or a query waiting for admission, registers a hook that's run on cancellation to stop it from outside, ie. with
+ * Statement.cancel().
+ *
+ * A request with a time limit is cancelled by the first check after its deadline. Queries are also given a timeout of no more than the
+ * time the request has left, so the database stops them even if nothing checks.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class Cancellation
+{
+	private final long deadlineNanos;
+	private final long timeoutMillis;
+	private final ArrayList<Runnable> hooks;
+	private volatile String reason;
+
+	/**
+	 * Build a cancellation.
+	 *
+	 * @param timeoutMillis	How long the request can run, from now, or 0 for no limit.
+	 */
+	public Cancellation(long timeoutMillis)
+	{
+		this.timeoutMillis = timeoutMillis;
+
+		deadlineNanos = timeoutMillis > 0 ? System.nanoTime() + timeoutMillis * 1000000 : 0;
+		hooks = new ArrayList<Runnable>();
+	}
+
+	/**
+	 * Cancel the request, and run its hooks. Only the first cancellation counts.
+	 *
+	 * @param reason	Why it was cancelled.
+	 */
+	public void cancel(String reason)
+	{
+		ArrayList<Runnable> cancelHooks = null;
+
+		synchronized(this)
+		{
+			if(this.reason == null)
+			{
+				this.reason = reason;
+
+				cancelHooks = new ArrayList<Runnable>(hooks);
+				hooks.clear();
+			}
+		}
+
+		//outside the lock, a hook may block on a driver or take another lock
+		if(cancelHooks != null)
+		{
+			for(Runnable hook : cancelHooks)
+			{
+				hook.run();
+			}
+		}
+	}
+
+	/**
+	 * Determine if the request has been cancelled, cancelling it first if it's past its deadline.
+	 *
+	 * @return	True if it's cancelled, false otherwise.
+	 */
+	public boolean isCancelled()
+	{
+		if(reason == null && deadlineNanos != 0 && System.nanoTime() - deadlineNanos > 0)
+		{
+			cancel("Timed out after " + timeoutMillis / 1000 + "s");
+		}
+
+		return reason != null;
+	}
+
+	/**
+	 * Stop the calling thread's work if the request has been cancelled.
+	 *
+	 * @throws RequestCancelledException	If it has.
+	 */
+	public void check()
+	{
+		if(isCancelled())
+		{
+			throw new RequestCancelledException(reason);
+		}
+	}
+
+	/**
+	 * Accessor for why the request was cancelled.
+	 *
+	 * @return	The reason, or null if it hasn't been.
+	 */
+	public String getReason()
+	{
+		return reason;
+	}
+
+	/**
+	 * Accessor for the time the request has left.
+	 *
+	 * @return	The time left in milliseconds, at least 1, or 0 if it has no deadline.
+	 */
+	public long getRemainingMillis()
+	{
+		long retval = 0;
+
+		if(deadlineNanos != 0)
+		{
+			retval = Math.max(1, (deadlineNanos - System.nanoTime()) / 1000000);
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Register work to stop on cancellation. If the request is already cancelled, the hook is run right away.
+	 *
+	 * @param hook	Stops the work. It must be quick, and safe to run from any thread.
+	 */
+	public void addHook(Runnable hook)
+	{
+		boolean cancelled;
+
+		synchronized(this)
+		{
+			cancelled = reason != null;
+
+			if(!cancelled)
+			{
+				hooks.add(hook);
+			}
+		}
+
+		if(cancelled)
+		{
+			hook.run();
+		}
+	}
+
+	/**
+	 * Unregister work once it's done.
+	 *
+	 * @param hook	The hook it was registered with.
+	 */
+	public synchronized void removeHook(Runnable hook)
+	{
+		hooks.remove(hook);
+	}
+}
@@ -0,0 +1,320 @@
+package com.sutherland.hughes.report.execution;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+
+import com.sutherland.helios.date.parsing.DateParser;
+import com.sutherland.hughes.config.ReportingConfig;
+import com.sutherland.hughes.data.GrainPartials;
+import com.sutherland.hughes.datasources.DataSourceProvider;
+import com.sutherland.hughes.datasources.DataSources;
+import com.sutherland.hughes.datasources.JDBCConnection;
+import com.sutherland.hughes.datasources.RowHandler;
+import com.sutherland.hughes.trace.Tracer;
+import com.sutherland.hughes.metrics.AllocationCounter;
+import com.sutherland.hughes.metrics.MeteredConnection;
+import com.sutherland.hughes.metrics.ReportMetricSet;
+
+/**
+ * Runs a report's date bounded query as a series of smaller date range chunks, concurrently, and merges each chunk's partial aggregates.
+ * A long range then costs roughly as much as its slowest chunk rather than one query over the whole range, and no single connection is
+ * held for the duration.
+ * 
+ * The first chunk runs on the report's own connection, in the calling thread. The rest run on a pool sized by the per-request parallelism
+ * limit, each worker with its own connection. Partials are merged in chunk order once every chunk has finished.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class ChunkedQueryRunner 
+{
+	public final static int DEFAULT_CHUNK_DAYS = 7;
+	public final static int DEFAULT_PARALLELISM = 4;
+	
+	private final static Logger logger = Logger.getLogger(ChunkedQueryRunner.class);
+	
+	/**
+	 * Builds the query for one chunk of the report's date range.
+	 */
+	public interface ChunkQueryBuilder
+	{
+		/**
+		 * @param chunkStartDate	The start of the chunk, inclusive, in SQL date format.
+		 * @param chunkEndDate		The end of the chunk, exclusive, in SQL date format.
+		 * 
+		 * @return	The query.
+		 */
+		String buildQuery(String chunkStartDate, String chunkEndDate);
+	}
+	
+	private final JDBCConnection primaryConnection;
+	private final String dbPropFile;
+	private final int chunkDays;
+	private final int parallelism;
+	private final Map<String, String> statistics;
+	private ReportMetricSet metrics;
+	
+	/**
+	 * Build a runner with the configured chunk size and parallelism.
+	 * 
+	 * @param primaryConnection	The report's connection, used for the first chunk.
+	 * @param dbPropFile		The database property file for the workers' connections.
+	 */
+	public ChunkedQueryRunner(JDBCConnection primaryConnection, String dbPropFile)
+	{
+		this(primaryConnection, dbPropFile, ReportingConfig.getInt(ReportingConfig.CHUNK_DAYS, DEFAULT_CHUNK_DAYS), ReportingConfig.getInt(ReportingConfig.CHUNK_PARALLELISM, DEFAULT_PARALLELISM));
+	}
+	
+	/**
+	 * Build a runner.
+	 * 
+	 * @param primaryConnection	The report's connection, used for the first chunk.
+	 * @param dbPropFile		The database property file for the workers' connections.
+	 * @param chunkDays			The length of each chunk, in days.
+	 * @param parallelism		The maximum number of chunks to run at once, including the calling thread.
+	 */
+	public ChunkedQueryRunner(JDBCConnection primaryConnection, String dbPropFile, int chunkDays, int parallelism)
+	{
+		this.primaryConnection = primaryConnection;
+		this.dbPropFile = dbPropFile;
+		this.chunkDays = Math.max(1, chunkDays);
+		this.parallelism = Math.max(1, parallelism);
+		
+		statistics = Collections.synchronizedMap(new LinkedHashMap<String, String>());
+	}
+	
+	/**
+	 * Record the workers' connect and query timings to a report's metrics. The primary connection is the report's own, and is expected
+	 * to record to them already.
+	 * 
+	 * @param metrics	The report's metrics, or null to not record them.
+	 */
+	public void setMetrics(ReportMetricSet metrics)
+	{
+		this.metrics = metrics;
+	}
+	
+	/**
+	 * Split [startDate, endDate) into consecutive ranges of at most chunkDays days.
+	 * 
+	 * @param startDate	The start of the range, inclusive, in SQL date format.
+	 * @param endDate	The end of the range, exclusive, in SQL date format.
+	 * @param chunkDays	The length of each chunk, in days.
+	 * 
+	 * @return	The chunks' start and end dates. A range that can't be parsed comes back as a single chunk.
+	 */
+	public static ArrayList<String[]> splitDateRange(String startDate, String endDate, int chunkDays)
+	{
+		ArrayList<String[]> retval = new ArrayList<String[]>();
+		
+		GregorianCalendar chunkStart = DateParser.convertSQLDateToGregorian(startDate);
+		GregorianCalendar end = DateParser.convertSQLDateToGregorian(endDate);
+		
+		if(chunkStart == null || end == null || !chunkStart.before(end))
+		{
+			retval.add(new String[]{startDate, endDate});
+		}
+		else
+		{
+			GregorianCalendar chunkEnd;
+			String chunkStartDate = startDate;
+			String chunkEndDate;
+			
+			while(chunkStart.before(end))
+			{
+				chunkEnd = (GregorianCalendar)chunkStart.clone();
+				chunkEnd.add(GregorianCalendar.DAY_OF_MONTH, chunkDays);
+				
+				if(chunkEnd.before(end))
+				{
+					chunkEndDate = DateParser.toSQLDateFormat(chunkEnd);
+				}
+				else
+				{
+					//keep the caller's end date verbatim
+					chunkEndDate = endDate;
+				}
+				
+				retval.add(new String[]{chunkStartDate, chunkEndDate});
+				
+				chunkStart = chunkEnd;
+				chunkStartDate = chunkEndDate;
+			}
+		}
+		
+		return retval;
+	}
+	
+	/**
+	 * Run the query over [startDate, endDate) and aggregate its rows.
+	 * 
+	 * @param startDate		The start of the range, inclusive, in SQL date format.
+	 * @param endDate		The end of the range, exclusive, in SQL date format.
+	 * @param queryBuilder	Builds each chunk's query.
+	 * @param aggregator	Folds each row into its chunk's partials.
+	 * 
+	 * @return	The merged partials of every chunk.
+	 * 
+	 * @throws Exception	If any chunk fails. The remaining chunks are abandoned.
+	 */
+	public GrainPartials run(String startDate, String endDate, ChunkQueryBuilder queryBuilder, RowAggregator aggregator) throws Exception
+	{
+		GrainPartials retval;
+		
+		ArrayList<String[]> chunks = splitDateRange(startDate, endDate, chunkDays);
+		
+		if(chunks.size() == 1 || parallelism == 1)
+		{
+			retval = new GrainPartials();
+			
+			for(String[] chunk : chunks)
+			{
+				runChunk(primaryConnection, queryBuilder.buildQuery(chunk[0], chunk[1]), aggregator, retval);
+			}
+		}
+		else
+		{
+			logger.info("Running " + chunks.size() + " chunks of " + chunkDays + " days, " + parallelism + " at a time");
+			
+			retval = runConcurrently(chunks, queryBuilder, aggregator);
+		}
+		
+		return retval;
+	}
+	
+	private GrainPartials runConcurrently(ArrayList<String[]> chunks, ChunkQueryBuilder queryBuilder, final RowAggregator aggregator) throws Exception
+	{
+		GrainPartials retval = new GrainPartials();
+		
+		ExecutorService workers = Executors.newFixedThreadPool(Math.min(parallelism, chunks.size()) - 1);
+		ArrayList<Future<GrainPartials>> workerResults = new ArrayList<Future<GrainPartials>>(chunks.size() - 1);
+		
+		//looked up on the report's thread, so a provider set for the request (ie. a capture) is used by the workers too
+		final DataSourceProvider provider = DataSources.getProvider();
+		final ReportMetricSet workerMetrics = metrics;
+		
+		try
+		{
+			for(int i = 1; i < chunks.size(); i++)
+			{
+				final String query = queryBuilder.buildQuery(chunks.get(i)[0], chunks.get(i)[1]);
+				
+				workerResults.add(workers.submit(new Callable<GrainPartials>()
+				{
+					@Override
+					public GrainPartials call() throws Exception
+					{
+						GrainPartials retval = new GrainPartials();
+						
+						long startAllocatedBytes = AllocationCounter.getCurrentThreadAllocatedBytes();
+						
+						JDBCConnection connection;
+						
+						if(workerMetrics == null)
+						{
+							connection = provider.getConnection(dbPropFile);
+						}
+						else
+						{
+							connection = MeteredConnection.connect(provider, dbPropFile, workerMetrics);
+						}
+						
+						try
+						{
+							runChunk(connection, query, aggregator, retval);
+						}
+						finally
+						{
+							connection.close();
+							
+							addAllocatedBytes(startAllocatedBytes, workerMetrics);
+						}
+						
+						return retval;
+					}
+				}));
+			}
+			
+			//first chunk in this thread, while the workers run
+			runChunk(primaryConnection, queryBuilder.buildQuery(chunks.get(0)[0], chunks.get(0)[1]), aggregator, retval);
+			
+			for(Future<GrainPartials> workerResult : workerResults)
+			{
+				try
+				{
+					retval.merge(workerResult.get());
+				}
+				catch(ExecutionException e)
+				{
+					if(e.getCause() instanceof Exception)
+					{
+						throw (Exception)e.getCause();
+					}
+					
+					throw e;
+				}
+			}
+		}
+		finally
+		{
+			workers.shutdownNow();
+		}
+		
+		return retval;
+	}
+	
+	/**
+	 * Record what a worker allocated running a chunk to the report's trace and metrics. The report's own thread only counts its own.
+	 * 
+	 * @param startAllocatedBytes	The worker's allocation reading from before the chunk.
+	 * @param workerMetrics			The report's metrics, or null if it has none.
+	 */
+	private static void addAllocatedBytes(long startAllocatedBytes, ReportMetricSet workerMetrics)
+	{
+		long endAllocatedBytes = AllocationCounter.getCurrentThreadAllocatedBytes();
+		
+		if(startAllocatedBytes >= 0 && endAllocatedBytes >= 0)
+		{
+			Tracer.addAllocatedBytes(endAllocatedBytes - startAllocatedBytes);
+			
+			if(workerMetrics != null)
+			{
+				workerMetrics.addAllocatedBytes(endAllocatedBytes - startAllocatedBytes);
+			}
+		}
+	}
+	
+	private void runChunk(JDBCConnection connection, String query, final RowAggregator aggregator, final GrainPartials partials) throws Exception
+	{
+		connection.streamQuery(query, new RowHandler()
+		{
+			@Override
+			public void handleRow(String[] row)
+			{
+				aggregator.aggregate(row, partials);
+			}
+		});
+		
+		statistics.put(query, connection.getStatistics().get(query));
+	}
+	
+	/**
+	 * Accessor for the query statistics of every chunk run so far.
+	 * 
+	 * @return	Query statistics, keyed by query.
+	 */
+	public Map<String, String> getStatistics()
+	{
+		return statistics;
+	}
+}
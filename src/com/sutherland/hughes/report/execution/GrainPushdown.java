@@ -0,0 +1,324 @@
+package com.sutherland.hughes.report.execution;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+
+import com.sutherland.helios.data.granularity.time.TimeGrains;
+import com.sutherland.helios.data.granularity.user.UserGrains;
+import com.sutherland.helios.report.Report;
+import com.sutherland.helios.roster.Roster;
+import com.sutherland.hughes.config.ReportingConfig;
+
+/**
+ * Groups a report's rows by its grain in the database rather than in the report. A report's row query is wrapped so the server sums the
+ * measures and counts the rows of each group, and returns a row per group instead of one per call, order or case. The report aggregates
+ * the grouped rows as before, weighting each by its row count.
+ *
+ * Time trends are grouped by user and by the start of the bucket each row's date falls in. The bucket start is the earliest date that
+ * DateFormatter labels the same as every other date in the bucket, so the report formats it exactly as it would have formatted the raw
+ * dates: weeks are cut at the month boundary, since week grains are labelled with the month, and the fiscal grains are bucketed by month.
+ *
+ * Stack reports are grouped by user, whatever the date. By team, program or orgunit they're grouped further, by the users' team or into
+ * one group, but only the roster's users are counted: the roster's user IDs are sent with the query, and each group comes back under one
+ * of its users, which the report looks up in the roster to label the group. Above hughes.pushdown.maxRosterUsers users they're grouped by
+ * user instead.
+ *
+ * Expressions are T-SQL, and don't depend on the server's DATEFIRST or language settings. Disabled by setting hughes.pushdown.timeGrain or
+ * hughes.pushdown.userGrain to false.
+ *
+ * @author Jason Diamond
+ *
+ */
+public final class GrainPushdown
+{
+	public final static int DEFAULT_MAX_ROSTER_USERS = 2000;
+
+	private final static String ROWS_ALIAS = "grain_rows";
+	private final static String USERS_ALIAS = "grain_users";
+	private final static String COLUMN_PREFIX = "grain_col";
+	private final static String EPOCH = "CAST('1900-01-01' AS DATETIME)";
+
+	private final int timeGrain;
+	private final int userGrain;
+	private final String rosterUserIDs;
+
+	private GrainPushdown(int timeGrain, int userGrain, String rosterUserIDs)
+	{
+		this.timeGrain = timeGrain;
+		this.userGrain = userGrain;
+		this.rosterUserIDs = rosterUserIDs;
+	}
+
+	/**
+	 * Get the pushdown for a report, if it can use one.
+	 *
+	 * @param report	The report, with its parameters set.
+	 * @param roster	The report's roster, loaded, or null if the report doesn't filter by one.
+	 *
+	 * @return	The pushdown, or null if the report's grain can't be grouped in SQL or pushdown is disabled.
+	 */
+	public static GrainPushdown forReport(Report report, Roster roster)
+	{
+		GrainPushdown retval = null;
+
+		try
+		{
+			if(report.isTimeTrendReport() && ReportingConfig.getBoolean(ReportingConfig.PUSHDOWN_TIME_GRAIN, true))
+			{
+				int timeGrain = Integer.parseInt(report.getParameters().getTimeGrain());
+
+				if(bucketStart("d", timeGrain) != null)
+				{
+					retval = new GrainPushdown(timeGrain, -1, null);
+				}
+			}
+			else if(report.isStackReport() && ReportingConfig.getBoolean(ReportingConfig.PUSHDOWN_USER_GRAIN, true))
+			{
+				int userGrain = Integer.parseInt(report.getParameters().getUserGrain());
+
+				String rosterUserIDs = null;
+
+				if(roster != null && isGroupedGrain(userGrain))
+				{
+					rosterUserIDs = toInList(roster.getUserIDs(), ReportingConfig.getInt(ReportingConfig.PUSHDOWN_MAX_ROSTER_USERS, DEFAULT_MAX_ROSTER_USERS));
+				}
+
+				//without the roster's users, grouped by user and labelled in the report
+				retval = new GrainPushdown(-1, rosterUserIDs == null ? UserGrains.AGENT_GRANULARITY : userGrain, rosterUserIDs);
+			}
+		}
+		catch(NumberFormatException e)
+		{
+			//no usable grain, the report groups its rows itself and reports the bad grain as it always has
+		}
+
+		return retval;
+	}
+
+	private static boolean isGroupedGrain(int userGrain)
+	{
+		return userGrain == UserGrains.TEAM_GRANULARITY || userGrain == UserGrains.PROGRAM_GRANULARITY || userGrain == UserGrains.ORGUNIT_GRANULARITY;
+	}
+
+	private static String toInList(String[] userIDs, int maxUsers)
+	{
+		String retval = null;
+
+		if(userIDs.length > 0 && userIDs.length <= maxUsers)
+		{
+			StringBuilder inList = new StringBuilder();
+
+			for(int i = 0; i < userIDs.length; i++)
+			{
+				if(i > 0)
+				{
+					inList.append(',');
+				}
+
+				inList.append('\'').append(userIDs[i].replace("'", "''")).append('\'');
+			}
+
+			retval = inList.toString();
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Build the SQL expression for the start of the bucket a date falls in.
+	 *
+	 * @param dateColumn	The date expression.
+	 * @param timeGrain		The time grain.
+	 *
+	 * @return	The expression, or null if the time grain isn't known.
+	 */
+	public static String bucketStart(String dateColumn, int timeGrain)
+	{
+		String retval;
+
+		switch(timeGrain)
+		{
+			case TimeGrains.YEARLY_GRANULARITY:
+				retval = truncate("year", dateColumn);
+				break;
+			case TimeGrains.QUARTERLY_GRANULARITY:
+				retval = truncate("quarter", dateColumn);
+				break;
+			case TimeGrains.MONTHLY_GRANULARITY:
+			case TimeGrains.FISCAL_YEARLY_GRANULARITY:
+			case TimeGrains.FISCAL_QUARTERLY_GRANULARITY:
+				//fiscal years don't start on a quarter or year boundary, but never split a month
+				retval = truncate("month", dateColumn);
+				break;
+			case TimeGrains.WEEKLY_GRANULARITY:
+				//the whole days since the start of the week, counted from a day that started one
+				String weekStart = "DATEADD(day, -(DATEDIFF(day, '" + getFirstWeekStart() + "', " + dateColumn + ") % 7), " + truncate("day", dateColumn) + ")";
+				String monthStart = truncate("month", dateColumn);
+
+				retval = "CASE WHEN " + weekStart + " < " + monthStart + " THEN " + monthStart + " ELSE " + weekStart + " END";
+				break;
+			case TimeGrains.DAILY_GRANULARITY:
+				retval = truncate("day", dateColumn);
+				break;
+			case TimeGrains.HOURLY_GRANULARITY:
+				retval = truncate("hour", dateColumn);
+				break;
+			default:
+				retval = null;
+				break;
+		}
+
+		return retval;
+	}
+
+	private static String truncate(String datePart, String dateColumn)
+	{
+		return "DATEADD(" + datePart + ", DATEDIFF(" + datePart + ", " + EPOCH + ", " + dateColumn + "), " + EPOCH + ")";
+	}
+
+	/**
+	 * Weeks start on the JVM's first day of the week, since that's what DateFormatter numbers them by.
+	 *
+	 * @return	The first date after 1900-01-01 that starts a week, in SQL date format.
+	 */
+	private static String getFirstWeekStart()
+	{
+		GregorianCalendar day = new GregorianCalendar(1900, Calendar.JANUARY, 1);
+
+		while(day.get(Calendar.DAY_OF_WEEK) != day.getFirstDayOfWeek())
+		{
+			day.add(Calendar.DAY_OF_MONTH, 1);
+		}
+
+		return new SimpleDateFormat("yyyy-MM-dd").format(day.getTime());
+	}
+
+	/**
+	 * Wrap a report's row query so its rows come back grouped. The grouped rows have the same columns in the same places, followed by the
+	 * number of rows in the group: the user column as the user, or one of the group's users, the date column as the bucket start for a time
+	 * trend, the sum columns summed, and any other column null.
+	 *
+	 * @param rowQuery		The report's query. It must not have an ORDER BY.
+	 * @param columnCount	The number of columns the query selects.
+	 * @param userColumn	The index of the user ID column, or -1 if the query has none.
+	 * @param dateColumn	The index of the date column.
+	 * @param sumColumns	The indexes of the columns to sum.
+	 *
+	 * @return	The grouped query.
+	 */
+	public String group(String rowQuery, int columnCount, int userColumn, int dateColumn, int[] sumColumns)
+	{
+		String[] selected = new String[columnCount];
+		StringBuilder groupBy = new StringBuilder();
+		String where = "";
+		String join = "";
+
+		for(int column : sumColumns)
+		{
+			selected[column] = "SUM(" + ROWS_ALIAS + "." + COLUMN_PREFIX + column + ")";
+		}
+
+		if(userColumn >= 0)
+		{
+			String user = ROWS_ALIAS + "." + COLUMN_PREFIX + userColumn;
+
+			if(rosterUserIDs == null)
+			{
+				selected[userColumn] = user;
+				groupBy.append(user);
+			}
+			else
+			{
+				//any of the group's users labels it the same
+				selected[userColumn] = "MIN(" + user + ")";
+				where = " WHERE " + user + " IN (" + rosterUserIDs + ")";
+
+				if(userGrain == UserGrains.TEAM_GRANULARITY)
+				{
+					join = " INNER JOIN CRM_MST_USER AS " + USERS_ALIAS + " ON " + USERS_ALIAS + ".USER_USERID = " + user;
+					groupBy.append(USERS_ALIAS).append(".USER_TEAMID");
+				}
+			}
+		}
+
+		if(timeGrain >= 0)
+		{
+			selected[dateColumn] = bucketStart(ROWS_ALIAS + "." + COLUMN_PREFIX + dateColumn, timeGrain);
+
+			if(groupBy.length() > 0)
+			{
+				groupBy.append(", ");
+			}
+
+			groupBy.append(selected[dateColumn]);
+		}
+
+		StringBuilder retval = new StringBuilder("SELECT ");
+		StringBuilder columnNames = new StringBuilder();
+
+		for(int column = 0; column < columnCount; column++)
+		{
+			retval.append(selected[column] == null ? "NULL" : selected[column]).append(", ");
+
+			if(column > 0)
+			{
+				columnNames.append(", ");
+			}
+
+			columnNames.append(COLUMN_PREFIX).append(column);
+		}
+
+		retval.append("COUNT(*) FROM (").append(rowQuery).append(") AS ").append(ROWS_ALIAS).append(" (").append(columnNames).append(")");
+		retval.append(join).append(where);
+
+		if(groupBy.length() > 0)
+		{
+			retval.append(" GROUP BY ").append(groupBy);
+		}
+		else
+		{
+			//one group over no rows would still be a row
+			retval.append(" HAVING COUNT(*) > 0");
+		}
+
+		return retval.toString();
+	}
+
+	/**
+	 * Accessor for the number of the report's rows a row stands for, whether or not it was grouped.
+	 *
+	 * @param pushdown	The report's pushdown, or null if its rows weren't grouped.
+	 * @param row		A row returned by the report's query.
+	 *
+	 * @return	The row count, 1 for a row that wasn't grouped.
+	 */
+	public static long getRowCount(GrainPushdown pushdown, String[] row)
+	{
+		return pushdown == null ? 1 : getGroupedRowCount(row);
+	}
+
+	/**
+	 * Accessor for the number of the report's rows a grouped row stands for.
+	 *
+	 * @param row	A row returned by a query built by group.
+	 *
+	 * @return	The row count.
+	 */
+	public static long getGroupedRowCount(String[] row)
+	{
+		return Long.parseLong(row[row.length - 1].trim());
+	}
+
+	/**
+	 * Check whether a query was built by group, ie. to count the report rows its results stand for.
+	 *
+	 * @param query	The query.
+	 *
+	 * @return	True if the query's rows are grouped, false otherwise.
+	 */
+	public static boolean isGrouped(String query)
+	{
+		return query.startsWith("SELECT ") && query.contains(") AS " + ROWS_ALIAS + " (" + COLUMN_PREFIX + "0");
+	}
+}
@@ -0,0 +1,291 @@
+package com.sutherland.hughes.report.execution;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.sutherland.hughes.config.ReportingConfig;
+import com.sutherland.hughes.data.GrainPartials;
+import com.sutherland.hughes.datasources.RowHandler;
+
+/**
+ * Spreads the per-row work of a report's aggregation (date parsing, roster lookups, grain assignment) across cores. Rows are split into
+ * batches, each batch is aggregated by a worker into partials of its own, and the partials are merged in row order, so the only
+ * synchronization is the handoff of each batch and the merge. Merging in row order also means the merged partials list grains and
+ * drivers in the same order a single pass over the rows would have.
+ * 
+ * As a RowHandler, rows are batched as they come off a cursor while the workers aggregate earlier batches. The number of batches in flight
+ * is bounded, so a fast cursor can't queue up the whole result set in memory. Already fetched rows can be aggregated in one call with
+ * aggregate(List, RowAggregator).
+ * 
+ * The workers are shared by every report in the JVM, one per core unless configured otherwise.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class ParallelAggregator implements RowHandler
+{
+	public final static int DEFAULT_BATCH_ROWS = 4096;
+	
+	private static ExecutorService workers;
+	private static int workerCount;
+	
+	private final RowAggregator aggregator;
+	private final int batchRows;
+	private final int maxPendingBatches;
+	private final GrainPartials results;
+	private final ArrayDeque<Future<GrainPartials>> pendingBatches;
+	private ArrayList<String[]> batch;
+	
+	/**
+	 * Build an aggregator with the configured batch size.
+	 * 
+	 * @param aggregator	Folds each row into its batch's partials.
+	 */
+	public ParallelAggregator(RowAggregator aggregator)
+	{
+		this(aggregator, getBatchRows());
+	}
+	
+	/**
+	 * Build an aggregator.
+	 * 
+	 * @param aggregator	Folds each row into its batch's partials.
+	 * @param batchRows		The number of rows handed to a worker at a time.
+	 */
+	public ParallelAggregator(RowAggregator aggregator, int batchRows)
+	{
+		this.aggregator = aggregator;
+		this.batchRows = Math.max(1, batchRows);
+		
+		getWorkers();
+		maxPendingBatches = 2 * workerCount;
+		
+		results = new GrainPartials();
+		pendingBatches = new ArrayDeque<Future<GrainPartials>>();
+		batch = new ArrayList<String[]>(this.batchRows);
+	}
+	
+	private static int getBatchRows()
+	{
+		return ReportingConfig.getInt(ReportingConfig.AGGREGATION_BATCH_ROWS, DEFAULT_BATCH_ROWS);
+	}
+	
+	private static synchronized ExecutorService getWorkers()
+	{
+		if(workers == null)
+		{
+			workerCount = Math.max(1, ReportingConfig.getInt(ReportingConfig.AGGREGATION_THREADS, Runtime.getRuntime().availableProcessors()));
+			
+			//the pool outlives whichever request starts it, so its threads mustn't keep that request's state
+			workers = Executors.newFixedThreadPool(workerCount, RequestContext.pooledThreads("report-aggregation-"));
+		}
+		
+		return workers;
+	}
+	
+	/**
+	 * Aggregate already fetched rows. The rows are split into one contiguous slice per worker, with the first slice aggregated in the
+	 * calling thread. Small result sets are aggregated entirely in the calling thread.
+	 * 
+	 * @param rows			The rows. They must not be modified until this returns.
+	 * @param aggregator	Folds each row into its slice's partials.
+	 * 
+	 * @return	The merged partials of every slice.
+	 * 
+	 * @throws InterruptedException	If the calling thread is interrupted while waiting for the workers.
+	 */
+	public static GrainPartials aggregate(List<String[]> rows, final RowAggregator aggregator) throws InterruptedException
+	{
+		GrainPartials retval = new GrainPartials();
+		
+		ExecutorService workers = getWorkers();
+		
+		int slices = Math.min(workerCount, (rows.size() + getBatchRows() - 1) / getBatchRows());
+		
+		if(slices <= 1)
+		{
+			aggregateRows(rows, aggregator, retval);
+		}
+		else
+		{
+			int sliceRows = (rows.size() + slices - 1) / slices;
+			
+			ArrayList<Future<GrainPartials>> sliceResults = new ArrayList<Future<GrainPartials>>(slices - 1);
+			
+			try
+			{
+				for(int start = sliceRows; start < rows.size(); start += sliceRows)
+				{
+					sliceResults.add(workers.submit(new BatchTask(rows.subList(start, Math.min(start + sliceRows, rows.size())), aggregator)));
+				}
+				
+				aggregateRows(rows.subList(0, sliceRows), aggregator, retval);
+				
+				for(Future<GrainPartials> sliceResult : sliceResults)
+				{
+					retval.merge(getResult(sliceResult));
+				}
+			}
+			finally
+			{
+				for(Future<GrainPartials> sliceResult : sliceResults)
+				{
+					sliceResult.cancel(true);
+				}
+			}
+		}
+		
+		return retval;
+	}
+	
+	private static void aggregateRows(List<String[]> rows, RowAggregator aggregator, GrainPartials partials)
+	{
+		for(String[] row : rows)
+		{
+			aggregator.aggregate(row, partials);
+		}
+	}
+	
+	private static GrainPartials getResult(Future<GrainPartials> batchResult) throws InterruptedException
+	{
+		GrainPartials retval = null;
+		
+		try
+		{
+			retval = batchResult.get();
+		}
+		catch(ExecutionException e)
+		{
+			//aggregators can only throw unchecked
+			if(e.getCause() instanceof RuntimeException)
+			{
+				throw (RuntimeException)e.getCause();
+			}
+			else if(e.getCause() instanceof Error)
+			{
+				throw (Error)e.getCause();
+			}
+			
+			throw new IllegalStateException(e.getCause());
+		}
+		
+		return retval;
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.RowHandler#handleRow(java.lang.String[])
+	 */
+	@Override
+	public void handleRow(String[] row) throws IOException
+	{
+		batch.add(row);
+		
+		if(batch.size() >= batchRows)
+		{
+			submitBatch();
+		}
+	}
+	
+	private void submitBatch() throws IOException
+	{
+		pendingBatches.add(workers.submit(new BatchTask(batch, aggregator)));
+		
+		batch = new ArrayList<String[]>(batchRows);
+		
+		//merge what's done, and wait on the oldest batch if the workers have fallen behind the cursor
+		while(!pendingBatches.isEmpty() && (pendingBatches.peek().isDone() || pendingBatches.size() > maxPendingBatches))
+		{
+			mergeOldestBatch();
+		}
+	}
+	
+	private void mergeOldestBatch() throws IOException
+	{
+		try
+		{
+			results.merge(getResult(pendingBatches.poll()));
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			
+			cancel();
+			
+			throw new InterruptedIOException("Interrupted waiting for aggregation");
+		}
+		catch(RuntimeException e)
+		{
+			cancel();
+			
+			throw e;
+		}
+	}
+	
+	/**
+	 * Finish aggregating the rows handled so far. The last, partial, batch is aggregated in the calling thread while the workers finish.
+	 * 
+	 * @return	The merged partials of every row handled.
+	 * 
+	 * @throws IOException	If the calling thread is interrupted while waiting for the workers.
+	 */
+	public GrainPartials finish() throws IOException
+	{
+		GrainPartials lastBatch = new GrainPartials();
+		aggregateRows(batch, aggregator, lastBatch);
+		
+		batch = new ArrayList<String[]>(batchRows);
+		
+		while(!pendingBatches.isEmpty())
+		{
+			mergeOldestBatch();
+		}
+		
+		results.merge(lastBatch);
+		
+		return results;
+	}
+	
+	/**
+	 * Abandon any batches still being aggregated, ie. when the query feeding this has failed.
+	 */
+	public void cancel()
+	{
+		for(Future<GrainPartials> pendingBatch : pendingBatches)
+		{
+			pendingBatch.cancel(true);
+		}
+		
+		pendingBatches.clear();
+		batch.clear();
+	}
+	
+	private static class BatchTask implements Callable<GrainPartials>
+	{
+		private final List<String[]> rows;
+		private final RowAggregator aggregator;
+		
+		public BatchTask(List<String[]> rows, RowAggregator aggregator)
+		{
+			this.rows = rows;
+			this.aggregator = aggregator;
+		}
+		
+		@Override
+		public GrainPartials call()
+		{
+			GrainPartials retval = new GrainPartials();
+			
+			aggregateRows(rows, aggregator, retval);
+			
+			return retval;
+		}
+	}
+}
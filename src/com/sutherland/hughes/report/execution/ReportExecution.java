@@ -0,0 +1,229 @@
+package com.sutherland.hughes.report.execution;
+
+import java.util.ArrayList;
+
+import com.sutherland.helios.report.Report;
+import com.sutherland.hughes.metrics.AllocationCounter;
+import com.sutherland.hughes.metrics.ReportMetricSet;
+import com.sutherland.hughes.report.cache.ReportResultCache;
+import com.sutherland.hughes.trace.TraceNode;
+import com.sutherland.hughes.trace.Tracer;
+
+/**
+ * One run of a report, from the start of startReport to its end: records the run's latency, errors and heap allocation to the report's
+ * metrics and trace, and charges the request's budget. A report run outside of a request becomes a request of its own, with its own
+ * budget, which is cancelled when the run ends.
+ *
+ * A report's allocation is what its own thread allocated during the run, less what any report run inside it on the same thread, like its
+ * roster, allocated. Child reports on a ReportRunner's threads count their own, so summing a trace's nodes gives the request's total.
+ *
+ * Reports run in a batch share their results within its ReportSession: the first run of a report with a set of parameters, whether it's
+ * in the batch or a child of another report in it, runs the report, and later runs with the same parameters get a copy of its results
+ * from getSharedResults.
+ *
+ * @author Jason Diamond
+ *
+ */
+public final class ReportExecution
+{
+	/**
+	 * The run in progress on each thread, so a run nested in it on the same thread can take its allocation out of the outer run's.
+	 */
+	private final static ThreadLocal<ReportExecution> currentExecution = new ThreadLocal<ReportExecution>();
+
+	/**
+	 * Runs the report itself, ie. the base class's startReport.
+	 */
+	public interface Runner
+	{
+		/**
+		 * @return	The report's results.
+		 */
+		ArrayList<String[]> run();
+	}
+
+	private final Report report;
+	private final ReportMetricSet metrics;
+	private final TraceNode trace;
+	private final ResourceBudget budget;
+	private final boolean ownsBudget;
+	private final ReportExecution outer;
+	private final long startNanos;
+	private final long startAllocatedBytes;
+	private long nestedAllocatedBytes;
+	private ReportSession session;
+	private String sharedKey;
+	private ReportSession.Memo sharedMemo;
+
+	private ReportExecution(Report report, ReportMetricSet metrics, TraceNode trace, ResourceBudget budget, boolean ownsBudget)
+	{
+		this.report = report;
+		this.metrics = metrics;
+		this.trace = trace;
+		this.budget = budget;
+		this.ownsBudget = ownsBudget;
+
+		outer = currentExecution.get();
+		startNanos = System.nanoTime();
+		startAllocatedBytes = AllocationCounter.getCurrentThreadAllocatedBytes();
+	}
+
+	/**
+	 * Start a run.
+	 *
+	 * @param report	The report being run.
+	 * @param metrics	The report's metrics.
+	 *
+	 * @return	The run, to be ended in a finally block once the report is done.
+	 */
+	public static ReportExecution begin(Report report, ReportMetricSet metrics)
+	{
+		ResourceBudget budget = ResourceBudget.getCurrent();
+		boolean ownsBudget = budget == null;
+
+		if(ownsBudget)
+		{
+			budget = ResourceBudget.forReport(report.getClass().getSimpleName());
+			budget.setLane(AdmissionLane.forReport(report));
+			ResourceBudget.setCurrent(budget);
+		}
+
+		budget.checkpoint();
+
+		ReportExecution retval = new ReportExecution(report, metrics, Tracer.beginReport(report), budget, ownsBudget);
+
+		currentExecution.set(retval);
+
+		return retval;
+	}
+
+	/**
+	 * Run a report, for its startReport: takes its results from the batch it's running in if they're there, and otherwise runs it and 
+	 * shares them, recording the run either way.
+	 *
+	 * @param report	The report being run.
+	 * @param metrics	The report's metrics.
+	 * @param runner	Runs the report.
+	 *
+	 * @return	The report's results.
+	 */
+	public static ArrayList<String[]> run(Report report, ReportMetricSet metrics, Runner runner)
+	{
+		ArrayList<String[]> retval = null;
+
+		ReportExecution execution = begin(report, metrics);
+
+		try
+		{
+			retval = execution.getSharedResults();
+
+			if(retval == null)
+			{
+				retval = runner.run();
+			}
+		}
+		finally
+		{
+			execution.end(retval, report.getErrorMessage());
+		}
+
+		return retval;
+	}
+
+	/**
+	 * End the run.
+	 *
+	 * @param results		The report's results, or null if it failed.
+	 * @param errorMessage	The report's error message. Null or empty if it succeeded.
+	 */
+	public void end(ArrayList<String[]> results, String errorMessage)
+	{
+		if(sharedMemo != null)
+		{
+			session.publish(sharedKey, sharedMemo, errorMessage == null || errorMessage.isEmpty() ? results : null);
+		}
+
+		end(results == null ? 0 : results.size(), errorMessage);
+	}
+
+	/**
+	 * Get the report's results from the batch it's running in, if another report in the batch already ran it with the same parameters.
+	 * Otherwise the report is to be run as usual, and its results are shared with the rest of the batch when the run ends.
+	 *
+	 * @return	A copy of the shared results, or null if the report has to be run.
+	 */
+	public ArrayList<String[]> getSharedResults()
+	{
+		ArrayList<String[]> retval = null;
+
+		session = ReportSession.getCurrent();
+
+		if(session != null)
+		{
+			sharedKey = ReportResultCache.key(report.getClass().getName(), report.getParameters());
+			sharedMemo = session.claim(sharedKey);
+
+			if(sharedMemo == null)
+			{
+				retval = session.awaitResults(sharedKey);
+			}
+		}
+
+		return retval;
+	}
+
+	/**
+	 * End the run.
+	 *
+	 * @param rows			The number of rows the report produced.
+	 * @param errorMessage	The report's error message. Null or empty if it succeeded.
+	 */
+	public void end(long rows, String errorMessage)
+	{
+		long nanos = System.nanoTime() - startNanos;
+		long endAllocatedBytes = AllocationCounter.getCurrentThreadAllocatedBytes();
+
+		if(startAllocatedBytes >= 0 && endAllocatedBytes >= 0)
+		{
+			long allocatedBytes = endAllocatedBytes - startAllocatedBytes;
+
+			metrics.addAllocatedBytes(allocatedBytes - nestedAllocatedBytes);
+
+			if(trace != null)
+			{
+				trace.addAllocatedBytes(allocatedBytes - nestedAllocatedBytes);
+			}
+
+			if(outer != null)
+			{
+				outer.nestedAllocatedBytes += allocatedBytes;
+			}
+		}
+
+		budget.checkpoint();
+
+		metrics.addRun(nanos, errorMessage);
+		Tracer.endReport(trace, rows, errorMessage);
+
+		if(outer == null)
+		{
+			currentExecution.remove();
+		}
+		else
+		{
+			currentExecution.set(outer);
+		}
+
+		if(ownsBudget)
+		{
+			//stop anything the run left behind, like a child report it gave up waiting for
+			budget.getCancellation().cancel("Request finished");
+			ResourceBudget.setCurrent(null);
+		}
+	}
+
+	public ResourceBudget getBudget()
+	{
+		return budget;
+	}
+}
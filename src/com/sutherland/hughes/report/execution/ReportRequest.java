@@ -0,0 +1,256 @@
+package com.sutherland.hughes.report.execution;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+
+import org.apache.log4j.Logger;
+
+import com.sutherland.helios.exceptions.ExceptionFormatter;
+import com.sutherland.helios.report.Report;
+import com.sutherland.hughes.datasources.DataSourceProvider;
+import com.sutherland.hughes.datasources.DataSources;
+import com.sutherland.hughes.metrics.ReportMetricSet;
+import com.sutherland.hughes.metrics.ReportMetrics;
+import com.sutherland.hughes.trace.ExecutionTrace;
+import com.sutherland.hughes.trace.Tracer;
+
+/**
+ * One request for reports, ie. an export, a background job or a batch, from when it's accepted to when it's answered: sets the request's
+ * budget, metrics and trace on the thread serving it, and on end cancels whatever it still has running, closes its reports and anything
+ * else it was given to close, records its latency and errors, and clears the thread for the next request.
+ *
+ * @author Jason Diamond
+ *
+ */
+public final class ReportRequest
+{
+	private final static Logger logger = Logger.getLogger(ReportRequest.class);
+
+	private final ResourceBudget budget;
+	private final ReportMetricSet metrics;
+	private final ExecutionTrace trace;
+	private final long startNanos;
+	private final ArrayList<Report> reports;
+	private final ArrayList<Closeable> resources;
+	private boolean providerSet;
+	private DataSourceProvider previousProvider;
+	private long rows;
+	private String errorMessage;
+
+	private ReportRequest(ResourceBudget budget, ReportMetricSet metrics, ExecutionTrace trace)
+	{
+		this.budget = budget;
+		this.metrics = metrics;
+		this.trace = trace;
+
+		startNanos = System.nanoTime();
+		reports = new ArrayList<Report>();
+		resources = new ArrayList<Closeable>();
+	}
+
+	/**
+	 * Start a request on this thread, with its report's configured budget.
+	 *
+	 * @param requestName	The request's name, ie. the report it runs.
+	 *
+	 * @return	The request, to be ended in a finally block once it's answered.
+	 */
+	public static ReportRequest begin(String requestName)
+	{
+		return begin(requestName, ResourceBudget.forReport(requestName));
+	}
+
+	/**
+	 * Start a request on this thread.
+	 *
+	 * @param requestName	The request's name, ie. the report it runs.
+	 * @param budget		The request's budget, if it was needed before the request started, ie. to cancel it while it was queued.
+	 *
+	 * @return	The request, to be ended in a finally block once it's answered.
+	 */
+	public static ReportRequest begin(String requestName, ResourceBudget budget)
+	{
+		ReportMetricSet metrics = ReportMetrics.getRequestMetrics(requestName);
+		ReportMetrics.setCurrentRequest(metrics);
+		ResourceBudget.setCurrent(budget);
+
+		return new ReportRequest(budget, metrics, Tracer.startRequest(requestName));
+	}
+
+	public ResourceBudget getBudget()
+	{
+		return budget;
+	}
+
+	/**
+	 * Accessor for the request's id, for cancelling it with RequestServlet.
+	 *
+	 * @return	The id.
+	 */
+	public String getId()
+	{
+		return budget.getId();
+	}
+
+	/**
+	 * Accessor for the request's trace id, for looking it up with TraceServlet.
+	 *
+	 * @return	The id, or null if tracing is disabled.
+	 */
+	public String getTraceId()
+	{
+		return trace == null ? null : trace.getId();
+	}
+
+	/**
+	 * Build one of the request's reports. It's closed when the request ends, if it hasn't been by closeReports.
+	 *
+	 * @param reportClass	The report class.
+	 *
+	 * @return	The report.
+	 *
+	 * @throws Exception	If the report cannot be built.
+	 */
+	public Report newReport(Class<?> reportClass) throws Exception
+	{
+		Report retval = buildReport(reportClass);
+
+		reports.add(retval);
+
+		return retval;
+	}
+
+	/**
+	 * Build a report with its no-argument constructor, whether or not it's for a request.
+	 *
+	 * @param reportClass	The report class.
+	 *
+	 * @return	The report. The caller is responsible for closing it.
+	 *
+	 * @throws Exception	If the report cannot be built, ie. what its constructor threw.
+	 */
+	public static Report buildReport(Class<?> reportClass) throws Exception
+	{
+		Report retval;
+
+		try
+		{
+			retval = (Report)reportClass.getDeclaredConstructor().newInstance();
+		}
+		catch(InvocationTargetException e)
+		{
+			//callers tell a cancelled or rejected request from a broken report by what the constructor threw
+			if(e.getCause() instanceof Exception)
+			{
+				throw (Exception)e.getCause();
+			}
+			else if(e.getCause() instanceof Error)
+			{
+				throw (Error)e.getCause();
+			}
+
+			throw e;
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Close the request's reports now, ie. once their results are buffered, so their connections are given back before the client is
+	 * served.
+	 */
+	public void closeReports()
+	{
+		for(Report report : reports)
+		{
+			report.close();
+		}
+
+		reports.clear();
+	}
+
+	/**
+	 * Close something once the request ends, after its reports. Resources are closed in the reverse of the order they're given.
+	 *
+	 * @param resource	The resource.
+	 */
+	public void closeOnEnd(Closeable resource)
+	{
+		resources.add(resource);
+	}
+
+	/**
+	 * Serve the request's queries from a provider of its own, ie. a capture. The thread's previous provider is put back when the request
+	 * ends.
+	 *
+	 * @param provider	The provider.
+	 */
+	public void setProvider(DataSourceProvider provider)
+	{
+		if(!providerSet)
+		{
+			previousProvider = DataSources.getRequestProvider();
+			providerSet = true;
+		}
+
+		DataSources.setRequestProvider(provider);
+	}
+
+	/**
+	 * Set the number of rows the request returned.
+	 *
+	 * @param rows	The row count.
+	 */
+	public void setRows(long rows)
+	{
+		this.rows = rows;
+	}
+
+	/**
+	 * Set why the request failed.
+	 *
+	 * @param errorMessage	The error. Null or empty if it succeeded.
+	 */
+	public void setErrorMessage(String errorMessage)
+	{
+		this.errorMessage = errorMessage;
+	}
+
+	/**
+	 * End the request.
+	 */
+	public void end()
+	{
+		//frees the connections of any child reports or queries still running, before the reports' own are closed
+		budget.getCancellation().cancel("Request finished");
+
+		closeReports();
+
+		for(int i = resources.size() - 1; i >= 0; i--)
+		{
+			try
+			{
+				resources.get(i).close();
+			}
+			catch(IOException e)
+			{
+				logger.warn("Could not close a request's resource: " + ExceptionFormatter.asString(e));
+			}
+		}
+
+		resources.clear();
+
+		if(providerSet)
+		{
+			DataSources.setRequestProvider(previousProvider);
+		}
+
+		metrics.addRun(System.nanoTime() - startNanos, errorMessage);
+		ReportMetrics.setCurrentRequest(null);
+		ResourceBudget.setCurrent(null);
+
+		Tracer.finishRequest(trace, rows, errorMessage);
+	}
+}
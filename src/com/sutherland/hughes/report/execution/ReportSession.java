@@ -0,0 +1,253 @@
+package com.sutherland.hughes.report.execution;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What a batch of reports run together with the same parameters share: each child report's results, the roster snapshot and the
+ * reference dictionaries are loaded once for the whole batch rather than once per report. Like the request's ResourceBudget, the session
+ * is inherited by the threads its reports start.
+ *
+ * Values are loaded by whichever report asks first. A report asking for a value that's still being loaded waits for it rather than
+ * loading it again, and one whose load failed leaves every waiting report to load its own.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class ReportSession
+{
+	private final static InheritableThreadLocal<ReportSession> currentSession = new InheritableThreadLocal<ReportSession>();
+
+	/**
+	 * How often a report waiting on another's load checks if its request was cancelled.
+	 */
+	private final static long WAIT_CHECK_MILLIS = 1000;
+
+	/**
+	 * Loads a shared value.
+	 */
+	public interface Loader<T>
+	{
+		/**
+		 * @return	The value, or null if it cannot be loaded.
+		 */
+		T load();
+	}
+
+	/**
+	 * One shared value, loaded once.
+	 */
+	final static class Memo
+	{
+		private final CountDownLatch loaded;
+		private volatile Object value;
+
+		private Memo()
+		{
+			loaded = new CountDownLatch(1);
+		}
+
+		/**
+		 * Hand the value to the reports waiting for it.
+		 *
+		 * @param value	The value, or null if it couldn't be loaded.
+		 */
+		void publish(Object value)
+		{
+			this.value = value;
+
+			loaded.countDown();
+		}
+
+		/**
+		 * @return	The value, or null if it couldn't be loaded.
+		 */
+		Object await()
+		{
+			ResourceBudget budget = ResourceBudget.getCurrent();
+
+			try
+			{
+				while(!loaded.await(WAIT_CHECK_MILLIS, TimeUnit.MILLISECONDS))
+				{
+					if(budget != null)
+					{
+						budget.check();
+					}
+				}
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+
+				throw new RequestCancelledException("Interrupted waiting for a shared result");
+			}
+
+			return value;
+		}
+	}
+
+	private final ConcurrentHashMap<String, Memo> memos;
+
+	public ReportSession()
+	{
+		memos = new ConcurrentHashMap<String, Memo>();
+	}
+
+	/**
+	 * Accessor for the session of the batch running on this thread.
+	 *
+	 * @return	The session, or null if no batch is running.
+	 */
+	public static ReportSession getCurrent()
+	{
+		return currentSession.get();
+	}
+
+	/**
+	 * Set the session of the batch running on this thread, and the threads it starts.
+	 *
+	 * @param session	The session, or null once the batch is done.
+	 */
+	public static void setCurrent(ReportSession session)
+	{
+		if(session == null)
+		{
+			currentSession.remove();
+		}
+		else
+		{
+			currentSession.set(session);
+		}
+	}
+
+	/**
+	 * Get a shared value, loading it if no report in the session has.
+	 *
+	 * @param key		The value's key.
+	 * @param loader	Loads the value.
+	 *
+	 * @return	The value, or null if it cannot be loaded. It's shared, so it must not be changed.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T get(String key, Loader<T> loader)
+	{
+		T retval = null;
+
+		Memo memo = new Memo();
+		Memo loading = memos.putIfAbsent(key, memo);
+
+		if(loading == null)
+		{
+			try
+			{
+				retval = loader.load();
+			}
+			finally
+			{
+				memo.publish(retval);
+
+				if(retval == null)
+				{
+					//failed, the next report to ask gets to try again
+					memos.remove(key, memo);
+				}
+			}
+		}
+		else
+		{
+			retval = (T)loading.await();
+
+			if(retval == null)
+			{
+				retval = loader.load();
+			}
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Claim a report's results for the caller to run and share.
+	 *
+	 * @param key	The report's key, its class and parameters.
+	 *
+	 * @return	The memo to publish the results to once the report is done, even if it fails, or null if another report in the session has
+	 * 			already claimed them.
+	 */
+	Memo claim(String key)
+	{
+		Memo retval = new Memo();
+
+		if(memos.putIfAbsent(key, retval) != null)
+		{
+			retval = null;
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Wait for the results another report in the session claimed.
+	 *
+	 * @param key	The report's key.
+	 *
+	 * @return	A copy of the results, or null if the report failed and the caller has to run its own.
+	 */
+	ArrayList<String[]> awaitResults(String key)
+	{
+		Memo memo = memos.get(key);
+
+		return memo == null ? null : copy(memo.await());
+	}
+
+	/**
+	 * Share a report's results, or give up sharing them if it failed.
+	 *
+	 * @param key		The report's key.
+	 * @param memo		The memo claimed for it.
+	 * @param results	The results, or null if the report failed.
+	 */
+	void publish(String key, Memo memo, ArrayList<String[]> results)
+	{
+		memo.publish(copy(results));
+
+		if(results == null)
+		{
+			memos.remove(key, memo);
+		}
+	}
+
+	/**
+	 * Copy results going in or out of the session, so a report that changes its results or their rows doesn't change another's.
+	 */
+	@SuppressWarnings("unchecked")
+	private static ArrayList<String[]> copy(Object results)
+	{
+		ArrayList<String[]> retval = null;
+
+		if(results != null)
+		{
+			ArrayList<String[]> rows = (ArrayList<String[]>)results;
+
+			retval = new ArrayList<String[]>(rows.size());
+
+			for(String[] row : rows)
+			{
+				retval.add(row.clone());
+			}
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Drop every shared value.
+	 */
+	public void clear()
+	{
+		memos.clear();
+	}
+}
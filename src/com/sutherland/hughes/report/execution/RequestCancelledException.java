@@ -0,0 +1,21 @@
+package com.sutherland.hughes.report.execution;
+
+/**
+ * Thrown when a request has been cancelled, because nobody is waiting for it any more or it ran past its time limit. It's unchecked for the
+ * same reason as BudgetExceededException.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class RequestCancelledException extends RuntimeException
+{
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * @param message	Why the request was cancelled.
+	 */
+	public RequestCancelledException(String message)
+	{
+		super(message);
+	}
+}
@@ -0,0 +1,69 @@
+package com.sutherland.hughes.report.execution;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sutherland.hughes.datasources.DataSources;
+import com.sutherland.hughes.metrics.ReportMetrics;
+import com.sutherland.hughes.trace.Tracer;
+
+/**
+ * The per-request state kept in inheritable thread locals: the request's budget, metrics, trace, data source provider and session. A
+ * thread started while a request is being served inherits all of it, which is what a report's child threads want, but not a pooled
+ * thread that outlives the request.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class RequestContext
+{
+	private RequestContext()
+	{
+	}
+
+	/**
+	 * Drop the request state this thread inherited, without finishing or unregistering any of it.
+	 */
+	public static void clear()
+	{
+		ResourceBudget.clearCurrent();
+		ReportMetrics.setCurrentRequest(null);
+		Tracer.clearCurrent();
+		DataSources.setRequestProvider(null);
+		ReportSession.setCurrent(null);
+	}
+
+	/**
+	 * Build a factory for a pool's threads. Each thread starts with no request state, whichever request happened to start it, and never
+	 * holds up a shutdown.
+	 *
+	 * @param namePrefix	The prefix of the threads' names, followed by a count.
+	 *
+	 * @return	The factory.
+	 */
+	public static ThreadFactory pooledThreads(final String namePrefix)
+	{
+		return new ThreadFactory()
+		{
+			private final AtomicInteger threadCount = new AtomicInteger();
+
+			@Override
+			public Thread newThread(final Runnable task)
+			{
+				Thread retval = new Thread(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						clear();
+						task.run();
+					}
+				}, namePrefix + threadCount.incrementAndGet());
+
+				retval.setDaemon(true);
+
+				return retval;
+			}
+		};
+	}
+}
@@ -0,0 +1,406 @@
+package com.sutherland.hughes.report.execution;
+
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.sutherland.hughes.config.ReportingConfig;
+import com.sutherland.hughes.metrics.AllocationCounter;
+import com.sutherland.hughes.trace.TraceNode;
+
+/**
+ * The rows fetched and heap allocated on behalf of one request, and the limits past which the request is aborted. A request is a top-level
+ * report, or an export of one, together with its roster and every child report it runs, so one budget is shared by all of their threads.
+ * It's inherited by the threads they start, the same as the request's metrics and trace.
+ *
+ * Allocation is taken from the thread allocation counters at checkpoints: each thread working for the request adds what it allocated
+ * since its previous checkpoint. Checkpoints are taken when a report starts and finishes, and every CHECK_INTERVAL_ROWS rows while a
+ * query is read, which is where a runaway request spends its memory.
+ *
+ * Limits are read from hughes.budget.maxRows and hughes.budget.maxAllocatedBytes, either of which can be set for a single report by
+ * suffixing the report's class name, ie. hughes.budget.maxRows.CallVolume. 0, the default, is no limit.
+ *
+ * The budget also carries the request's AdmissionLane. A request with a query turned away by admission control is shed: it fails its
+ * next check too, so the rest of its work stops and it can be reported as busy rather than broken.
+ *
+ * Each request also carries a Cancellation, with a deadline from hughes.budget.maxSeconds, which can be set per report the same way. There
+ * is no deadline unless one is set.
+ * Checks fail once it's cancelled, and its queries are cancelled on the database. Requests are registered by id while they run, so a
+ * client that gives up on one can cancel it rather than leave it running.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class ResourceBudget
+{
+	/**
+	 * How many rows are read between checks of the budget.
+	 */
+	public final static int CHECK_INTERVAL_ROWS = 1024;
+
+	private final static Logger logger = Logger.getLogger(ResourceBudget.class);
+
+	private final static InheritableThreadLocal<ResourceBudget> currentBudget = new InheritableThreadLocal<ResourceBudget>();
+
+	/**
+	 * The requests running, by id.
+	 */
+	private final static ConcurrentHashMap<String, ResourceBudget> activeBudgets = new ConcurrentHashMap<String, ResourceBudget>();
+
+	/**
+	 * Each thread's most recent checkpoint, and the budget it was taken for.
+	 */
+	private final static ThreadLocal<Checkpoint> lastCheckpoint = new ThreadLocal<Checkpoint>();
+
+	private final static class Checkpoint
+	{
+		private final ResourceBudget budget;
+		private long allocatedBytes;
+
+		private Checkpoint(ResourceBudget budget, long allocatedBytes)
+		{
+			this.budget = budget;
+			this.allocatedBytes = allocatedBytes;
+		}
+	}
+
+	private final String id;
+	private final String name;
+	private final long maxRows;
+	private final long maxAllocatedBytes;
+	private final long startMillis;
+	private final Cancellation cancellation;
+	private final AtomicLong rows;
+	private final AtomicLong allocatedBytes;
+	private volatile String exceededMessage;
+	private volatile String shedMessage;
+	private volatile AdmissionLane lane;
+
+	/**
+	 * Build a budget.
+	 *
+	 * @param name					The report the budget is for, to name in the error.
+	 * @param maxRows				The most rows the request can fetch, or 0 for no limit.
+	 * @param maxAllocatedBytes		The most heap the request can allocate, or 0 for no limit.
+	 */
+	public ResourceBudget(String name, long maxRows, long maxAllocatedBytes)
+	{
+		this(name, maxRows, maxAllocatedBytes, 0);
+	}
+
+	/**
+	 * Build a budget with a time limit.
+	 *
+	 * @param name					The report the budget is for, to name in the error.
+	 * @param maxRows				The most rows the request can fetch, or 0 for no limit.
+	 * @param maxAllocatedBytes		The most heap the request can allocate, or 0 for no limit.
+	 * @param maxMillis				How long the request can run before it's cancelled, or 0 for no limit.
+	 */
+	public ResourceBudget(String name, long maxRows, long maxAllocatedBytes, long maxMillis)
+	{
+		this.name = name;
+		this.maxRows = maxRows;
+		this.maxAllocatedBytes = maxAllocatedBytes;
+
+		id = UUID.randomUUID().toString();
+		startMillis = System.currentTimeMillis();
+		cancellation = new Cancellation(maxMillis);
+		rows = new AtomicLong();
+		allocatedBytes = new AtomicLong();
+		lane = AdmissionLane.INTERACTIVE;
+	}
+
+	/**
+	 * Build a budget with a report's configured limits.
+	 *
+	 * @param reportName	The report's class name, without the package.
+	 *
+	 * @return	The budget.
+	 */
+	public static ResourceBudget forReport(String reportName)
+	{
+		long maxRows = ReportingConfig.getLong(ReportingConfig.BUDGET_MAX_ROWS + "." + reportName, ReportingConfig.getLong(ReportingConfig.BUDGET_MAX_ROWS, 0));
+		long maxAllocatedBytes = ReportingConfig.getLong(ReportingConfig.BUDGET_MAX_ALLOCATED_BYTES + "." + reportName, ReportingConfig.getLong(ReportingConfig.BUDGET_MAX_ALLOCATED_BYTES, 0));
+		long maxSeconds = ReportingConfig.getLong(ReportingConfig.BUDGET_MAX_SECONDS + "." + reportName, ReportingConfig.getLong(ReportingConfig.BUDGET_MAX_SECONDS, 0));
+
+		return new ResourceBudget(reportName, maxRows, maxAllocatedBytes, maxSeconds * 1000);
+	}
+
+	/**
+	 * Accessor for the budget of the request running on this thread.
+	 *
+	 * @return	The budget, or null if no request is running.
+	 */
+	public static ResourceBudget getCurrent()
+	{
+		return currentBudget.get();
+	}
+
+	/**
+	 * Set the budget of the request running on this thread, and the threads it starts. A request's budget is registered as active from
+	 * when it's set until it's cleared, and clearing it cancels whatever the request left running, and gives back its admission slots.
+	 *
+	 * @param budget	The budget, or null once the request is done.
+	 */
+	public static void setCurrent(ResourceBudget budget)
+	{
+		if(budget == null)
+		{
+			ResourceBudget done = currentBudget.get();
+
+			if(done != null)
+			{
+				activeBudgets.remove(done.id, done);
+
+				done.getCancellation().cancel("Request finished");
+			}
+
+			currentBudget.remove();
+			lastCheckpoint.remove();
+		}
+		else
+		{
+			currentBudget.set(budget);
+			activeBudgets.put(budget.id, budget);
+		}
+	}
+
+	/**
+	 * Drop the budget this thread inherited, without unregistering it, since the request it belongs to is still running elsewhere.
+	 */
+	public static void clearCurrent()
+	{
+		currentBudget.remove();
+		lastCheckpoint.remove();
+	}
+
+	/**
+	 * Accessor for a running request's budget.
+	 *
+	 * @param id	The request's id.
+	 *
+	 * @return	The budget, or null if no request with the id is running.
+	 */
+	public static ResourceBudget getActive(String id)
+	{
+		return id == null ? null : activeBudgets.get(id);
+	}
+
+	/**
+	 * Accessor for the budgets of the requests running.
+	 *
+	 * @return	A copy of the budgets.
+	 */
+	public static ArrayList<ResourceBudget> getActive()
+	{
+		return new ArrayList<ResourceBudget>(activeBudgets.values());
+	}
+
+	/**
+	 * Record fetched rows. The limit isn't checked until the next call to check().
+	 *
+	 * @param rowCount	The number of rows.
+	 */
+	public void addRows(long rowCount)
+	{
+		rows.addAndGet(rowCount);
+	}
+
+	/**
+	 * Record what the calling thread has allocated since its last checkpoint for this budget. A thread's first checkpoint for the budget
+	 * only starts its count.
+	 */
+	public void checkpoint()
+	{
+		long threadAllocatedBytes = AllocationCounter.getCurrentThreadAllocatedBytes();
+
+		if(threadAllocatedBytes >= 0)
+		{
+			Checkpoint checkpoint = lastCheckpoint.get();
+
+			if(checkpoint == null || checkpoint.budget != this)
+			{
+				lastCheckpoint.set(new Checkpoint(this, threadAllocatedBytes));
+			}
+			else
+			{
+				allocatedBytes.addAndGet(threadAllocatedBytes - checkpoint.allocatedBytes);
+				checkpoint.allocatedBytes = threadAllocatedBytes;
+			}
+		}
+	}
+
+	/**
+	 * Abort the request if it's over budget, has been shed or has been cancelled. Once exceeded, every later check fails too, so each of
+	 * the request's threads stops at its next check.
+	 *
+	 * @throws RequestCancelledException	If the request was cancelled or ran out of time.
+	 * @throws BudgetExceededException		If the request has fetched or allocated more than it's allowed.
+	 * @throws AdmissionRejectedException	If one of the request's queries was turned away by admission control.
+	 */
+	public void check()
+	{
+		cancellation.check();
+
+		if(shedMessage != null)
+		{
+			throw new AdmissionRejectedException(shedMessage);
+		}
+
+		if(exceededMessage == null)
+		{
+			if(maxRows > 0 && rows.get() > maxRows)
+			{
+				exceed(name + " exceeded its budget of " + maxRows + " rows, " + rows.get() + " rows were fetched");
+			}
+			else if(maxAllocatedBytes > 0 && allocatedBytes.get() > maxAllocatedBytes)
+			{
+				exceed(name + " exceeded its budget of " + maxAllocatedBytes + " bytes of heap, " + allocatedBytes.get() + " bytes were allocated");
+			}
+		}
+
+		if(exceededMessage != null)
+		{
+			throw new BudgetExceededException(exceededMessage);
+		}
+	}
+
+	private synchronized void exceed(String message)
+	{
+		if(exceededMessage == null)
+		{
+			exceededMessage = message;
+
+			logger.warn("Aborting request: " + message);
+		}
+	}
+
+	/**
+	 * Shed the request, after one of its queries was turned away by admission control.
+	 *
+	 * @param message	Why the query was turned away.
+	 */
+	public synchronized void shed(String message)
+	{
+		if(shedMessage == null)
+		{
+			shedMessage = message;
+
+			logger.warn("Shedding request: " + message);
+		}
+	}
+
+	/**
+	 * Determine if the request has been shed.
+	 *
+	 * @return	True if one of its queries was turned away, false otherwise.
+	 */
+	public boolean isShed()
+	{
+		return shedMessage != null;
+	}
+
+	/**
+	 * Cancel the request, stopping its queries and the rest of its work.
+	 *
+	 * @param reason	Why it was cancelled.
+	 */
+	public void cancel(String reason)
+	{
+		if(!cancellation.isCancelled())
+		{
+			logger.info("Cancelling request " + id + " for " + name + ": " + reason);
+		}
+
+		cancellation.cancel(reason);
+	}
+
+	public Cancellation getCancellation()
+	{
+		return cancellation;
+	}
+
+	public String getId()
+	{
+		return id;
+	}
+
+	public long getStartMillis()
+	{
+		return startMillis;
+	}
+
+	public AdmissionLane getLane()
+	{
+		return lane;
+	}
+
+	/**
+	 * Set the lane the request's queries are admitted in.
+	 *
+	 * @param lane	The lane.
+	 */
+	public void setLane(AdmissionLane lane)
+	{
+		this.lane = lane;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public long getMaxRows()
+	{
+		return maxRows;
+	}
+
+	public long getMaxAllocatedBytes()
+	{
+		return maxAllocatedBytes;
+	}
+
+	public long getRows()
+	{
+		return rows.get();
+	}
+
+	public long getAllocatedBytes()
+	{
+		return allocatedBytes.get();
+	}
+
+	/**
+	 * Determine if the budget has been exceeded.
+	 *
+	 * @return	True if a check has failed, false otherwise.
+	 */
+	public boolean isExceeded()
+	{
+		return exceededMessage != null;
+	}
+
+	/**
+	 * Append the request's progress as a JSON object.
+	 *
+	 * @param out	Where to append it.
+	 */
+	public void appendJSON(StringBuilder out)
+	{
+		out.append("{\"id\":");
+		TraceNode.appendString(out, id);
+		out.append(",\"name\":");
+		TraceNode.appendString(out, name);
+		out.append(",\"lane\":");
+		TraceNode.appendString(out, lane.getLabel());
+		out.append(",\"elapsedMillis\":").append(System.currentTimeMillis() - startMillis);
+		out.append(",\"rows\":").append(rows.get());
+		out.append(",\"allocatedBytes\":").append(allocatedBytes.get());
+		out.append(",\"cancelled\":");
+		TraceNode.appendString(out, cancellation.getReason());
+		out.append('}');
+	}
+}
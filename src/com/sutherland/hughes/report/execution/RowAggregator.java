@@ -0,0 +1,19 @@
+package com.sutherland.hughes.report.execution;
+
+import com.sutherland.hughes.data.GrainPartials;
+
+/**
+ * Folds one query row into a set of partials. Called concurrently for different slices of a report's rows, each with its own partials, so
+ * must only read shared report state.
+ *
+ * @author Jason Diamond
+ *
+ */
+public interface RowAggregator
+{
+	/**
+	 * @param row		The query row.
+	 * @param partials	The partials of the slice the row belongs to.
+	 */
+	void aggregate(String[] row, GrainPartials partials);
+}
@@ -0,0 +1,141 @@
+/**
+ *
+ */
+package com.sutherland.hughes.report.execution.test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.sutherland.hughes.datasources.admission.AdmissionController;
+import com.sutherland.hughes.report.execution.AdmissionLane;
+import com.sutherland.hughes.report.execution.Cancellation;
+import com.sutherland.hughes.report.execution.RequestCancelledException;
+import com.sutherland.hughes.report.execution.ResourceBudget;
+
+/**
+ * @author Jason Diamond
+ *
+ */
+public class CancellationTest extends TestCase
+{
+	public void tearDown()
+	{
+		ResourceBudget.setCurrent(null);
+	}
+
+	@Test
+	public void testCancelRunsHooksOnce()
+	{
+		final AtomicInteger runs = new AtomicInteger();
+		Runnable hook = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				runs.incrementAndGet();
+			}
+		};
+
+		Cancellation cancellation = new Cancellation(0);
+		cancellation.addHook(hook);
+
+		assertFalse(cancellation.isCancelled());
+		assertEquals(0, cancellation.getRemainingMillis());
+
+		cancellation.cancel("Client went away");
+		cancellation.cancel("Request finished");
+
+		assertEquals(1, runs.get());
+		assertEquals("Client went away", cancellation.getReason());
+
+		//too late to register, it's stopped right away
+		cancellation.addHook(hook);
+
+		assertEquals(2, runs.get());
+
+		try
+		{
+			cancellation.check();
+			fail();
+		}
+		catch(RequestCancelledException e)
+		{
+			assertEquals("Client went away", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testRequestTimesOut() throws Exception
+	{
+		ResourceBudget budget = new ResourceBudget("Test", 0, 0, 20);
+		ResourceBudget.setCurrent(budget);
+
+		assertSame(budget, ResourceBudget.getActive(budget.getId()));
+
+		budget.check();
+
+		Thread.sleep(40);
+
+		try
+		{
+			budget.check();
+			fail();
+		}
+		catch(RequestCancelledException e)
+		{
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Timed out"));
+		}
+
+		ResourceBudget.setCurrent(null);
+
+		assertNull(ResourceBudget.getActive(budget.getId()));
+	}
+
+	@Test
+	public void testCancelStopsAdmissionWait() throws Exception
+	{
+		final AdmissionController controller = new AdmissionController("test", 1, 0, 1, new int[]{10, 10, 10}, new long[]{60000, 60000, 60000});
+		final ResourceBudget budget = new ResourceBudget("Test", 0, 0);
+		final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+
+		controller.acquire(AdmissionLane.INTERACTIVE);
+
+		Thread waiting = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					controller.acquire(AdmissionLane.INTERACTIVE, budget.getCancellation());
+				}
+				catch(RuntimeException e)
+				{
+					failure.set(e);
+				}
+			}
+		};
+		waiting.start();
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while(controller.getQueued() == 0 && System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(5);
+		}
+
+		long start = System.currentTimeMillis();
+
+		budget.cancel("Client went away");
+		waiting.join(5000);
+
+		assertTrue(System.currentTimeMillis() - start < 5000);
+		assertTrue(failure.get() instanceof RequestCancelledException);
+		assertEquals(0, controller.getQueued());
+		assertEquals(0, controller.getShed());
+		assertEquals(1, controller.getRunning());
+	}
+}
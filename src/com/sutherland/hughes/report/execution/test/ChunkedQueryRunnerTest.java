@@ -0,0 +1,56 @@
+/**
+ *
+ */
+package com.sutherland.hughes.report.execution.test;
+
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.sutherland.hughes.report.execution.ChunkedQueryRunner;
+
+/**
+ * @author Jason Diamond
+ *
+ */
+public class ChunkedQueryRunnerTest extends TestCase
+{
+	@Test
+	public void testChunksCoverRange()
+	{
+		ArrayList<String[]> chunks = ChunkedQueryRunner.splitDateRange("2014-01-01 00:00:00", "2014-02-01 00:00:00", 7);
+
+		assertEquals(5, chunks.size());
+		assertEquals("2014-01-01 00:00:00", chunks.get(0)[0]);
+		assertEquals("2014-01-08 00:00:00", chunks.get(0)[1]);
+		assertEquals("2014-01-29 00:00:00", chunks.get(4)[0]);
+		assertEquals("2014-02-01 00:00:00", chunks.get(4)[1]);
+
+		//contiguous, no gaps or overlaps
+		for(int i = 1; i < chunks.size(); i++)
+		{
+			assertEquals(chunks.get(i - 1)[1], chunks.get(i)[0]);
+		}
+	}
+
+	@Test
+	public void testShortRangeIsOneChunk()
+	{
+		ArrayList<String[]> chunks = ChunkedQueryRunner.splitDateRange("2014-01-01 00:00:00", "2014-01-03 12:00:00", 7);
+
+		assertEquals(1, chunks.size());
+		assertEquals("2014-01-01 00:00:00", chunks.get(0)[0]);
+		assertEquals("2014-01-03 12:00:00", chunks.get(0)[1]);
+	}
+
+	@Test
+	public void testUnparseableRangeIsOneChunk()
+	{
+		ArrayList<String[]> chunks = ChunkedQueryRunner.splitDateRange("yesterday", "today", 7);
+
+		assertEquals(1, chunks.size());
+		assertEquals("yesterday", chunks.get(0)[0]);
+	}
+}
@@ -0,0 +1,198 @@
+/**
+ *
+ */
+package com.sutherland.hughes.report.execution.test;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.sutherland.helios.data.Datum;
+import com.sutherland.helios.data.granularity.time.TimeGrains;
+import com.sutherland.helios.data.granularity.user.UserGrains;
+import com.sutherland.helios.date.formatting.DateFormatter;
+import com.sutherland.helios.exceptions.ReportSetupException;
+import com.sutherland.helios.report.ReportTypes;
+import com.sutherland.helios.roster.Roster;
+import com.sutherland.hughes.report.execution.GrainPushdown;
+
+/**
+ * @author Jason Diamond
+ *
+ */
+public class GrainPushdownTest extends TestCase
+{
+	private final static int[] TIME_GRAINS =
+	{
+		TimeGrains.YEARLY_GRANULARITY, TimeGrains.MONTHLY_GRANULARITY, TimeGrains.WEEKLY_GRANULARITY, TimeGrains.DAILY_GRANULARITY,
+		TimeGrains.QUARTERLY_GRANULARITY, TimeGrains.FISCAL_QUARTERLY_GRANULARITY, TimeGrains.FISCAL_YEARLY_GRANULARITY
+	};
+
+	/**
+	 * A roster that's filled in by hand, and doubles as the report.
+	 */
+	private static class TestRoster extends Roster
+	{
+		public TestRoster(String... userIDs) throws ReportSetupException
+		{
+			for(String userID : userIDs)
+			{
+				addUser(userID, new Datum(userID));
+			}
+		}
+
+		@Override
+		protected boolean setupDataSourceConnections()
+		{
+			return true;
+		}
+
+		@Override
+		protected boolean setupReport()
+		{
+			return true;
+		}
+
+		@Override
+		protected boolean setupLogger()
+		{
+			return true;
+		}
+
+		@Override
+		protected ArrayList<String[]> runReport()
+		{
+			return new ArrayList<String[]>();
+		}
+
+		@Override
+		public ArrayList<String> getReportSchema()
+		{
+			return new ArrayList<String>();
+		}
+
+		@Override
+		protected void logInfoMessage(String message)
+		{
+		}
+
+		@Override
+		protected void logWarnMessage(String message)
+		{
+		}
+
+		@Override
+		protected void logErrorMessage(String message)
+		{
+		}
+
+		@Override
+		public String getFullName(String userID)
+		{
+			return userID;
+		}
+
+		@Override
+		public void load()
+		{
+		}
+
+		@Override
+		public boolean isActiveUser(String userID)
+		{
+			return true;
+		}
+	}
+
+	/**
+	 * The bucket start the SQL expressions compute, worked out in Java.
+	 */
+	private static GregorianCalendar bucketStart(GregorianCalendar date, int timeGrain)
+	{
+		GregorianCalendar retval = new GregorianCalendar(date.get(Calendar.YEAR), date.get(Calendar.MONTH), date.get(Calendar.DAY_OF_MONTH));
+
+		switch(timeGrain)
+		{
+			case TimeGrains.YEARLY_GRANULARITY:
+				retval.set(Calendar.MONTH, Calendar.JANUARY);
+				retval.set(Calendar.DAY_OF_MONTH, 1);
+				break;
+			case TimeGrains.QUARTERLY_GRANULARITY:
+				retval.set(Calendar.MONTH, retval.get(Calendar.MONTH) / 3 * 3);
+				retval.set(Calendar.DAY_OF_MONTH, 1);
+				break;
+			case TimeGrains.WEEKLY_GRANULARITY:
+				while(retval.get(Calendar.DAY_OF_WEEK) != retval.getFirstDayOfWeek() && retval.get(Calendar.DAY_OF_MONTH) > 1)
+				{
+					retval.add(Calendar.DAY_OF_MONTH, -1);
+				}
+				break;
+			case TimeGrains.DAILY_GRANULARITY:
+				break;
+			default:
+				retval.set(Calendar.DAY_OF_MONTH, 1);
+				break;
+		}
+
+		return retval;
+	}
+
+	@Test
+	public void testBucketStartIsLabelledLikeTheBucket()
+	{
+		GregorianCalendar day = new GregorianCalendar(2011, Calendar.DECEMBER, 1, 13, 45, 10);
+		GregorianCalendar end = new GregorianCalendar(2016, Calendar.FEBRUARY, 1);
+
+		for(; day.before(end); day.add(Calendar.DAY_OF_MONTH, 1))
+		{
+			for(int timeGrain : TIME_GRAINS)
+			{
+				for(int dateFormat = 0; dateFormat < 2; dateFormat++)
+				{
+					assertEquals(day.getTime() + " " + timeGrain, DateFormatter.getFormattedDate((GregorianCalendar)day.clone(), timeGrain, dateFormat), DateFormatter.getFormattedDate(bucketStart(day, timeGrain), timeGrain, dateFormat));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testBucketedQuery()
+	{
+		assertEquals("DATEADD(month, DATEDIFF(month, CAST('1900-01-01' AS DATETIME), d), CAST('1900-01-01' AS DATETIME))", GrainPushdown.bucketStart("d", TimeGrains.MONTHLY_GRANULARITY));
+		assertEquals(GrainPushdown.bucketStart("d", TimeGrains.MONTHLY_GRANULARITY), GrainPushdown.bucketStart("d", TimeGrains.FISCAL_YEARLY_GRANULARITY));
+		assertTrue(GrainPushdown.bucketStart("d", TimeGrains.WEEKLY_GRANULARITY).startsWith("CASE WHEN "));
+		assertNull(GrainPushdown.bucketStart("d", 42));
+
+		assertEquals(1, GrainPushdown.getRowCount(null, new String[]{"user", "2014-10-08 00:00:00", "12"}));
+	}
+
+	@Test
+	public void testStackGroupedQuery() throws Exception
+	{
+		TestRoster roster = new TestRoster("jsmith", "o'neill");
+		roster.getParameters().setReportType(ReportTypes.STACK_REPORT);
+
+		roster.getParameters().setUserGrain(UserGrains.AGENT_GRANULARITY);
+		assertEquals("SELECT grain_rows.grain_col0, NULL, SUM(grain_rows.grain_col2), COUNT(*) FROM (q) AS grain_rows (grain_col0, grain_col1, grain_col2) GROUP BY grain_rows.grain_col0", GrainPushdown.forReport(roster, roster).group("q", 3, 0, 1, new int[]{2}));
+
+		assertTrue(GrainPushdown.isGrouped(GrainPushdown.forReport(roster, roster).group("q", 3, 0, 1, new int[]{2})));
+		assertFalse(GrainPushdown.isGrouped("q"));
+
+		roster.getParameters().setUserGrain(UserGrains.TEAM_GRANULARITY);
+		assertEquals("SELECT NULL, MIN(grain_rows.grain_col1), NULL, COUNT(*) FROM (q) AS grain_rows (grain_col0, grain_col1, grain_col2) INNER JOIN CRM_MST_USER AS grain_users ON grain_users.USER_USERID = grain_rows.grain_col1 WHERE grain_rows.grain_col1 IN ('jsmith','o''neill') GROUP BY grain_users.USER_TEAMID", GrainPushdown.forReport(roster, roster).group("q", 3, 1, 0, new int[0]));
+
+		roster.getParameters().setUserGrain(UserGrains.PROGRAM_GRANULARITY);
+		assertEquals("SELECT MIN(grain_rows.grain_col0), NULL, COUNT(*) FROM (q) AS grain_rows (grain_col0, grain_col1) WHERE grain_rows.grain_col0 IN ('jsmith','o''neill') HAVING COUNT(*) > 0", GrainPushdown.forReport(roster, roster).group("q", 2, 0, 1, new int[0]));
+
+		//no roster to filter on, so grouped by user
+		assertTrue(GrainPushdown.forReport(roster, null).group("q", 2, 0, 1, new int[0]).endsWith(" GROUP BY grain_rows.grain_col0"));
+
+		roster.getParameters().setReportType(ReportTypes.TIME_TREND_REPORT);
+		roster.getParameters().setTimeGrain(TimeGrains.DAILY_GRANULARITY);
+		assertTrue(GrainPushdown.forReport(roster, roster).group("q", 2, 0, 1, new int[0]).endsWith(" GROUP BY grain_rows.grain_col0, " + GrainPushdown.bucketStart("grain_rows.grain_col1", TimeGrains.DAILY_GRANULARITY)));
+	}
+}
@@ -0,0 +1,199 @@
+/**
+ *
+ */
+package com.sutherland.hughes.report.execution.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.sutherland.helios.data.Aggregation;
+import com.sutherland.helios.util.results.Filter;
+import com.sutherland.hughes.data.GrainPartials;
+import com.sutherland.hughes.metrics.ReportMetricSet;
+import com.sutherland.hughes.metrics.ReportMetrics;
+import com.sutherland.hughes.report.execution.ParallelAggregator;
+import com.sutherland.hughes.report.execution.RequestContext;
+import com.sutherland.hughes.report.execution.ResourceBudget;
+import com.sutherland.hughes.report.execution.RowAggregator;
+
+/**
+ * The parallel aggregation must give the same figures, in the same order, as a single pass over the rows into a Helios Aggregation.
+ * 
+ * @author Jason Diamond
+ *
+ */
+public class ParallelAggregatorTest extends TestCase
+{
+	private final static String COUNT_ATTR = "count";
+	private final static String DRIVERS_ATTR = "drivers";
+	private final static int ROW_COUNT = 50000;
+	private final static int BATCH_ROWS = 1000;
+	private final static int NUM_DRIVERS = 5;
+
+	private ArrayList<String[]> rows;
+	private RowAggregator aggregator;
+
+	public void setUp()
+	{
+		Random random = new Random(7);
+
+		rows = new ArrayList<String[]>(ROW_COUNT);
+
+		for(int i = 0; i < ROW_COUNT; i++)
+		{
+			rows.add(new String[]
+			{
+				"team " + random.nextInt(40),
+				"driver" + (int)Math.abs(random.nextGaussian() * 12)
+			});
+		}
+
+		aggregator = new RowAggregator()
+		{
+			@Override
+			public void aggregate(String[] row, GrainPartials partials)
+			{
+				partials.get(row[0], COUNT_ATTR).addOccurrence();
+				partials.get(row[0], DRIVERS_ATTR).addDriver(row[1]);
+			}
+		};
+	}
+
+	private Aggregation aggregateSerially()
+	{
+		Aggregation retval = new Aggregation();
+
+		for(String[] row : rows)
+		{
+			retval.addDatum(row[0]);
+			retval.getDatum(row[0]).addAttribute(COUNT_ATTR);
+			retval.getDatum(row[0]).addData(COUNT_ATTR, row[1]);
+			retval.getDatum(row[0]).addData(row[1], row[0]);
+		}
+
+		return retval;
+	}
+
+	private void assertMatches(Aggregation expected, GrainPartials actual)
+	{
+		String[] grains = actual.getGrainIDList();
+
+		assertEquals(Arrays.asList(expected.getDatumIDList()), Arrays.asList(grains));
+
+		ArrayList<String[]> expectedTop, actualTop;
+		for(String grain : grains)
+		{
+			assertEquals(expected.getDatum(grain).getAttributeData(COUNT_ATTR).size(), actual.get(grain, COUNT_ATTR).getCount());
+
+			expected.getDatum(grain).deleteAttributeData(COUNT_ATTR);
+
+			expectedTop = Filter.filterTopDrivers(expected.getDatum(grain), NUM_DRIVERS);
+			actualTop = actual.get(grain, DRIVERS_ATTR).filterTopDrivers(NUM_DRIVERS);
+
+			assertEquals(expectedTop.size(), actualTop.size());
+
+			for(int i = 0; i < expectedTop.size(); i++)
+			{
+				assertTrue(Arrays.equals(expectedTop.get(i), actualTop.get(i)));
+			}
+		}
+	}
+
+	@Test
+	public void testFetchedRowsMatchSerial() throws InterruptedException
+	{
+		assertMatches(aggregateSerially(), ParallelAggregator.aggregate(rows, aggregator));
+	}
+
+	@Test
+	public void testStreamedRowsMatchSerial() throws IOException
+	{
+		ParallelAggregator parallel = new ParallelAggregator(aggregator, BATCH_ROWS);
+
+		for(String[] row : rows)
+		{
+			parallel.handleRow(row);
+		}
+
+		assertMatches(aggregateSerially(), parallel.finish());
+	}
+
+	@Test
+	public void testAggregatorFailurePropagates() throws IOException
+	{
+		ParallelAggregator parallel = new ParallelAggregator(new RowAggregator()
+		{
+			@Override
+			public void aggregate(String[] row, GrainPartials partials)
+			{
+				Integer.parseInt(row[1]);
+			}
+		}, BATCH_ROWS);
+
+		try
+		{
+			for(String[] row : rows)
+			{
+				parallel.handleRow(row);
+			}
+
+			parallel.finish();
+
+			fail("Expected the aggregator's exception");
+		}
+		catch(NumberFormatException e)
+		{
+			//expected
+		}
+	}
+
+	@Test
+	public void testWorkersDontKeepRequestState() throws InterruptedException
+	{
+		final ResourceBudget budget = new ResourceBudget("Aggregation request", 0, 0);
+		final AtomicReference<Object> inherited = new AtomicReference<Object>();
+
+		ResourceBudget.setCurrent(budget);
+		ReportMetrics.setCurrentRequest(new ReportMetricSet("Aggregation request"));
+
+		try
+		{
+			Thread worker = RequestContext.pooledThreads("aggregation-test-").newThread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					if(ResourceBudget.getCurrent() != null)
+					{
+						inherited.set(ResourceBudget.getCurrent());
+					}
+					else if(ReportMetrics.getCurrentRequest() != null)
+					{
+						inherited.set(ReportMetrics.getCurrentRequest());
+					}
+				}
+			});
+
+			worker.start();
+			worker.join();
+
+			assertNull(inherited.get());
+
+			//the request's own thread, and its registration, are untouched
+			assertSame(budget, ResourceBudget.getCurrent());
+			assertSame(budget, ResourceBudget.getActive(budget.getId()));
+		}
+		finally
+		{
+			ReportMetrics.setCurrentRequest(null);
+			ResourceBudget.setCurrent(null);
+		}
+	}
+}
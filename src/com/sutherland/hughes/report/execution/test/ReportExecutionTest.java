@@ -0,0 +1,86 @@
+/**
+ *
+ */
+package com.sutherland.hughes.report.execution.test;
+
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.sutherland.hughes.api.warmup.WarmupTemplate;
+import com.sutherland.hughes.api.warmup.test.WarmupTest;
+import com.sutherland.hughes.metrics.ReportMetricSet;
+import com.sutherland.hughes.report.execution.ReportExecution;
+import com.sutherland.hughes.report.execution.ReportSession;
+
+/**
+ * @author Jason Diamond
+ *
+ */
+public class ReportExecutionTest extends TestCase
+{
+	public void tearDown()
+	{
+		ReportSession.setCurrent(null);
+	}
+
+	/**
+	 * Runs the report's startReport and counts how often it does.
+	 */
+	private static ArrayList<String[]> run(final WarmupTest.DailyReport report, ReportMetricSet metrics, final int[] runs)
+	{
+		return ReportExecution.run(report, metrics, new ReportExecution.Runner()
+		{
+			@Override
+			public ArrayList<String[]> run()
+			{
+				runs[0]++;
+
+				return report.startReport();
+			}
+		});
+	}
+
+	private static WarmupTest.DailyReport newReport() throws Exception
+	{
+		WarmupTest.DailyReport retval = new WarmupTest.DailyReport();
+		WarmupTemplate.YESTERDAY_BY_TEAM.apply(retval.getParameters(), System.currentTimeMillis());
+
+		return retval;
+	}
+
+	@Test
+	public void testRunsAreRecorded() throws Exception
+	{
+		ReportMetricSet metrics = new ReportMetricSet("ReportExecutionTest");
+		int[] runs = {0};
+
+		assertEquals(1, run(newReport(), metrics, runs).size());
+		assertEquals(1, run(newReport(), metrics, runs).size());
+
+		//outside of a batch every run runs the report
+		assertEquals(2, runs[0]);
+		assertEquals(2, metrics.getRuns());
+		assertEquals(0, metrics.getErrors());
+	}
+
+	@Test
+	public void testResultsAreSharedInABatch() throws Exception
+	{
+		ReportSession.setCurrent(new ReportSession());
+
+		ReportMetricSet metrics = new ReportMetricSet("ReportExecutionTest");
+		int[] runs = {0};
+
+		ArrayList<String[]> first = run(newReport(), metrics, runs);
+		ArrayList<String[]> second = run(newReport(), metrics, runs);
+
+		assertEquals(1, runs[0]);
+		assertEquals(2, metrics.getRuns());
+
+		assertEquals(first.size(), second.size());
+		assertEquals(first.get(0)[0], second.get(0)[0]);
+	}
+}
@@ -0,0 +1,137 @@
+/**
+ *
+ */
+package com.sutherland.hughes.report.execution.test;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
+import com.sutherland.helios.exceptions.ReportSetupException;
+import com.sutherland.hughes.api.warmup.test.WarmupTest;
+import com.sutherland.hughes.datasources.DataSourceProvider;
+import com.sutherland.hughes.datasources.DataSources;
+import com.sutherland.hughes.datasources.JDBCConnection;
+import com.sutherland.hughes.metrics.ReportMetricSet;
+import com.sutherland.hughes.metrics.ReportMetrics;
+import com.sutherland.hughes.report.execution.ReportRequest;
+import com.sutherland.hughes.report.execution.RequestCancelledException;
+import com.sutherland.hughes.report.execution.ResourceBudget;
+
+/**
+ * @author Jason Diamond
+ *
+ */
+public class ReportRequestTest extends TestCase
+{
+	private final static String REQUEST_NAME = "ReportRequestTest";
+
+	/**
+	 * Opens no connections, it's only compared by identity.
+	 */
+	private static class NamedProvider implements DataSourceProvider
+	{
+		@Override
+		public JDBCConnection getConnection(String dbPropFile) throws DatabaseConnectionCreationException
+		{
+			throw new DatabaseConnectionCreationException("Not a real provider");
+		}
+	}
+
+	/**
+	 * Cancelled while it's being built, ie. while opening its connections.
+	 */
+	public static class CancelledReport extends WarmupTest.DailyReport
+	{
+		public CancelledReport() throws ReportSetupException
+		{
+			super();
+
+			throw new RequestCancelledException("Cancelled while building");
+		}
+	}
+
+	public void tearDown()
+	{
+		DataSources.setRequestProvider(null);
+		ReportMetrics.setCurrentRequest(null);
+		ResourceBudget.setCurrent(null);
+	}
+
+	private static Closeable recordClose(final ArrayList<String> closed, final String name)
+	{
+		return new Closeable()
+		{
+			@Override
+			public void close()
+			{
+				closed.add(name);
+			}
+		};
+	}
+
+	@Test
+	public void testEndUndoesBegin()
+	{
+		DataSourceProvider outer = new NamedProvider();
+		DataSources.setRequestProvider(outer);
+
+		ReportMetricSet metrics = ReportMetrics.getRequestMetrics(REQUEST_NAME);
+		long runs = metrics.getRuns();
+
+		ReportRequest request = ReportRequest.begin(REQUEST_NAME);
+
+		assertSame(request.getBudget(), ResourceBudget.getCurrent());
+		assertSame(metrics, ReportMetrics.getCurrentRequest());
+
+		ArrayList<String> closed = new ArrayList<String>();
+		request.closeOnEnd(recordClose(closed, "capture"));
+		request.closeOnEnd(recordClose(closed, "results"));
+
+		request.setProvider(new NamedProvider());
+		request.setProvider(new NamedProvider());
+
+		request.setErrorMessage("");
+		request.end();
+
+		assertTrue(request.getBudget().getCancellation().isCancelled());
+
+		//the last opened is the first closed
+		assertEquals("[results, capture]", closed.toString());
+
+		assertSame(outer, DataSources.getRequestProvider());
+		assertNull(ResourceBudget.getCurrent());
+		assertNull(ResourceBudget.getActive(request.getId()));
+		assertNull(ReportMetrics.getCurrentRequest());
+
+		assertEquals(runs + 1, metrics.getRuns());
+		assertEquals(0, metrics.getErrors());
+	}
+
+	@Test
+	public void testNewReportThrowsWhatItsConstructorThrew() throws Exception
+	{
+		ReportRequest request = ReportRequest.begin(REQUEST_NAME);
+
+		try
+		{
+			assertNotNull(request.newReport(WarmupTest.DailyReport.class));
+
+			request.newReport(CancelledReport.class);
+
+			fail("Expected the constructor's exception");
+		}
+		catch(RequestCancelledException e)
+		{
+			assertEquals("Cancelled while building", e.getMessage());
+		}
+		finally
+		{
+			request.end();
+		}
+	}
+}
@@ -0,0 +1,139 @@
+/**
+ *
+ */
+package com.sutherland.hughes.report.execution.test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.sutherland.hughes.report.execution.ReportSession;
+
+/**
+ * @author Jason Diamond
+ *
+ */
+public class ReportSessionTest extends TestCase
+{
+	@Test
+	public void testConcurrentReportsLoadOnce() throws Exception
+	{
+		final ReportSession session = new ReportSession();
+		final AtomicInteger loads = new AtomicInteger();
+		final CountDownLatch loading = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+
+		final ReportSession.Loader<String> loader = new ReportSession.Loader<String>()
+		{
+			@Override
+			public String load()
+			{
+				loads.incrementAndGet();
+				loading.countDown();
+
+				try
+				{
+					release.await();
+				}
+				catch(InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+
+				return "roster";
+			}
+		};
+
+		final String[] waited = new String[1];
+
+		Thread first = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				session.get("roster", loader);
+			}
+		};
+		first.start();
+		loading.await();
+
+		Thread second = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				waited[0] = session.get("roster", loader);
+			}
+		};
+		second.start();
+
+		Thread.sleep(50);
+		release.countDown();
+
+		first.join(5000);
+		second.join(5000);
+
+		assertEquals(1, loads.get());
+		assertEquals("roster", waited[0]);
+		assertEquals("roster", session.get("roster", loader));
+		assertEquals(1, loads.get());
+	}
+
+	@Test
+	public void testFailedLoadIsRetried()
+	{
+		ReportSession session = new ReportSession();
+		final AtomicInteger loads = new AtomicInteger();
+
+		ReportSession.Loader<String> loader = new ReportSession.Loader<String>()
+		{
+			@Override
+			public String load()
+			{
+				return loads.incrementAndGet() == 1 ? null : "refvals";
+			}
+		};
+
+		assertNull(session.get("refvals", loader));
+		assertEquals("refvals", session.get("refvals", loader));
+		assertEquals("refvals", session.get("refvals", loader));
+		assertEquals(2, loads.get());
+
+		session.clear();
+		assertEquals("refvals", session.get("refvals", loader));
+		assertEquals(3, loads.get());
+	}
+
+	@Test
+	public void testSessionIsInheritedByChildThreads() throws Exception
+	{
+		ReportSession session = new ReportSession();
+		final ReportSession[] seen = new ReportSession[1];
+
+		ReportSession.setCurrent(session);
+
+		try
+		{
+			Thread child = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					seen[0] = ReportSession.getCurrent();
+				}
+			};
+			child.start();
+			child.join(5000);
+		}
+		finally
+		{
+			ReportSession.setCurrent(null);
+		}
+
+		assertSame(session, seen[0]);
+		assertNull(ReportSession.getCurrent());
+	}
+}
@@ -0,0 +1,160 @@
+/**
+ *
+ */
+package com.sutherland.hughes.report.execution.test;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.sutherland.helios.exceptions.DatabaseConnectionCreationException;
+import com.sutherland.hughes.datasources.JDBCConnection;
+import com.sutherland.hughes.datasources.RowHandler;
+import com.sutherland.hughes.metrics.AllocationCounter;
+import com.sutherland.hughes.metrics.MeteredConnection;
+import com.sutherland.hughes.metrics.ReportMetricSet;
+import com.sutherland.hughes.report.execution.BudgetExceededException;
+import com.sutherland.hughes.report.execution.ResourceBudget;
+
+/**
+ * @author Jason Diamond
+ *
+ */
+public class ResourceBudgetTest extends TestCase
+{
+	private final static int QUERY_ROWS = 10000;
+	private final static long MAX_ROWS = 3000;
+
+	/**
+	 * Streams as many rows as it's asked for, without a database.
+	 */
+	private static class RowSource extends JDBCConnection
+	{
+		private final int rowCount;
+
+		public RowSource(int rowCount) throws DatabaseConnectionCreationException
+		{
+			super("Row source");
+
+			this.rowCount = rowCount;
+		}
+
+		@Override
+		public long streamQuery(String query, RowHandler handler) throws SQLException, IOException
+		{
+			for(int i = 0; i < rowCount; i++)
+			{
+				handler.handleRow(new String[]{"agent" + i, "1"});
+			}
+
+			return rowCount;
+		}
+	}
+
+	public void tearDown()
+	{
+		ResourceBudget.setCurrent(null);
+	}
+
+	@Test
+	public void testRunawayQueryIsStopped() throws Exception
+	{
+		ResourceBudget budget = new ResourceBudget("TestReport", MAX_ROWS, 0);
+		ResourceBudget.setCurrent(budget);
+
+		MeteredConnection connection = new MeteredConnection(new RowSource(QUERY_ROWS), new ReportMetricSet("TestReport"));
+
+		final long[] handledRows = {0};
+
+		try
+		{
+			connection.streamQuery("SELECT rows", new RowHandler()
+			{
+				@Override
+				public void handleRow(String[] row)
+				{
+					handledRows[0]++;
+				}
+			});
+
+			fail("Expected the budget to stop the query");
+		}
+		catch(BudgetExceededException e)
+		{
+			assertTrue(e.getMessage().startsWith("TestReport exceeded its budget of " + MAX_ROWS + " rows"));
+		}
+
+		//stopped within a check interval of the limit
+		assertTrue(handledRows[0] <= MAX_ROWS + ResourceBudget.CHECK_INTERVAL_ROWS);
+		assertTrue(budget.isExceeded());
+
+		//every later check fails too
+		try
+		{
+			budget.check();
+
+			fail("Expected the budget to stay exceeded");
+		}
+		catch(BudgetExceededException e)
+		{
+		}
+	}
+
+	@Test
+	public void testQueryWithinBudgetRuns() throws Exception
+	{
+		ResourceBudget budget = new ResourceBudget("TestReport", QUERY_ROWS, 0);
+		ResourceBudget.setCurrent(budget);
+
+		MeteredConnection connection = new MeteredConnection(new RowSource(QUERY_ROWS), new ReportMetricSet("TestReport"));
+
+		assertEquals(QUERY_ROWS, connection.streamQuery("SELECT rows", new RowHandler()
+		{
+			@Override
+			public void handleRow(String[] row)
+			{
+			}
+		}));
+
+		assertEquals(QUERY_ROWS, budget.getRows());
+		budget.check();
+	}
+
+	@Test
+	public void testCheckpointsCountThreadAllocation()
+	{
+		if(AllocationCounter.isSupported())
+		{
+			ResourceBudget budget = new ResourceBudget("TestReport", 0, 1 << 20);
+
+			budget.checkpoint();
+			byte[] allocation = new byte[4 << 20];
+			budget.checkpoint();
+
+			assertTrue(allocation.length <= budget.getAllocatedBytes());
+
+			try
+			{
+				budget.check();
+
+				fail("Expected the allocation budget to be exceeded");
+			}
+			catch(BudgetExceededException e)
+			{
+				assertTrue(e.getMessage().startsWith("TestReport exceeded its budget of " + (1 << 20) + " bytes of heap"));
+			}
+		}
+	}
+
+	@Test
+	public void testNoDeadlineUnlessConfigured()
+	{
+		ResourceBudget budget = ResourceBudget.forReport("UnconfiguredReport");
+
+		assertEquals(0, budget.getCancellation().getRemainingMillis());
+		assertFalse(budget.getCancellation().isCancelled());
+	}
+}
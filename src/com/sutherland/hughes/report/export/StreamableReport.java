@@ -0,0 +1,31 @@
+package com.sutherland.hughes.report.export;
+
+import java.util.ArrayList;
+
+import com.sutherland.hughes.datasources.RowHandler;
+
+/**
+ * A report that can emit its output rows as they are produced, rather than returning them all at once from startReport. Meant for raw
+ * listings that can grow without bound with the date range.
+ * 
+ * @author Jason Diamond
+ *
+ */
+public interface StreamableReport 
+{
+	/**
+	 * Validate the report's parameters and run it, handing each output row to the handler as it is built.
+	 * 
+	 * @param handler	The receiver of the report's output rows.
+	 * 
+	 * @throws Exception	If the parameters are invalid, or the report fails while running.
+	 */
+	public void streamReport(RowHandler handler) throws Exception;
+	
+	/**
+	 * Accessor for the column names of the rows passed to streamReport's handler.
+	 * 
+	 * @return	The report schema.
+	 */
+	public ArrayList<String> getReportSchema();
+}
@@ -0,0 +1,94 @@
+package com.sutherland.hughes.report.roster;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.sutherland.helios.data.Datum;
+
+/**
+ * One load of the roster's users, before any report's team or agent filter is applied. A snapshot never changes once it's built: a
+ * refresh builds a new one, so any number of threads can read it without locking while the next is loaded.
+ *
+ * The users' Datums are shared by every roster filled from the snapshot, and must be treated as read only.
+ *
+ * @author Jason Diamond
+ *
+ */
+public final class RosterSnapshot
+{
+	private final Map<String, Datum> users;
+	private final String[] userIDs;
+	private final long version;
+	private final long loadedMillis;
+
+	/**
+	 * Build a snapshot.
+	 *
+	 * @param users			The users by user ID, in roster order. They're copied, later changes to the map aren't seen.
+	 * @param version		The snapshot's version, higher for each refresh.
+	 * @param loadedMillis	When the users were loaded.
+	 */
+	public RosterSnapshot(Map<String, Datum> users, long version, long loadedMillis)
+	{
+		this.users = Collections.unmodifiableMap(new LinkedHashMap<String, Datum>(users));
+		this.userIDs = this.users.keySet().toArray(new String[this.users.size()]);
+		this.version = version;
+		this.loadedMillis = loadedMillis;
+	}
+
+	/**
+	 * Accessor for the user IDs, in roster order.
+	 *
+	 * @return	A copy of the user IDs.
+	 */
+	public String[] getUserIDs()
+	{
+		return userIDs.clone();
+	}
+
+	public boolean hasUser(String userID)
+	{
+		return users.containsKey(userID);
+	}
+
+	/**
+	 * Accessor for a user.
+	 *
+	 * @param userID	The user ID.
+	 *
+	 * @return	The user, or null if it isn't in the snapshot.
+	 */
+	public Datum getUser(String userID)
+	{
+		return users.get(userID);
+	}
+
+	public int getSize()
+	{
+		return userIDs.length;
+	}
+
+	public long getVersion()
+	{
+		return version;
+	}
+
+	public long getLoadedMillis()
+	{
+		return loadedMillis;
+	}
+
+	/**
+	 * Check whether the snapshot is due for a refresh.
+	 *
+	 * @param maxAgeMillis	How long a snapshot is used for.
+	 * @param now			The current time.
+	 *
+	 * @return	True if it was loaded more than maxAgeMillis ago.
+	 */
+	public boolean isOlderThan(long maxAgeMillis, long now)
+	{
+		return now - loadedMillis > maxAgeMillis;
+	}
+}
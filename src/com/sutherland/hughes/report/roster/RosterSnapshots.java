@@ -0,0 +1,211 @@
+package com.sutherland.hughes.report.roster;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.log4j.Logger;
+
+import com.sutherland.helios.data.Datum;
+import com.sutherland.helios.exceptions.ExceptionFormatter;
+import com.sutherland.hughes.report.execution.RequestContext;
+
+/**
+ * Publishes the current RosterSnapshot. Readers get the current snapshot without locking. Once it's older than the maximum age, the first
+ * reader to ask for it hands the next load to a background thread, which swaps the new snapshot in when it's done, and every reader carries
+ * on with the old one meanwhile. Only the very first load, with no snapshot to fall back on, makes readers wait.
+ *
+ * A load that finds no users isn't published, the last good snapshot is kept until a later load finds some.
+ *
+ * @author Jason Diamond
+ *
+ */
+public final class RosterSnapshots
+{
+	/**
+	 * Loads the users for a new snapshot.
+	 */
+	public interface Loader
+	{
+		/**
+		 * Load the users.
+		 *
+		 * @return	The users by user ID, in roster order, or an empty map if they couldn't be loaded.
+		 */
+		Map<String, Datum> load();
+	}
+
+	private final static Logger logger = Logger.getLogger(RosterSnapshots.class);
+
+	/**
+	 * Runs every holder's background loads, without the state of the request that asked for them.
+	 */
+	private static ExecutorService refresher;
+
+	private final long maxAgeMillis;
+	private final AtomicReference<RosterSnapshot> current;
+	private final AtomicLong versions;
+	private final ReentrantLock loadLock;
+	private final AtomicBoolean refreshing;
+
+	/**
+	 * Build an empty holder.
+	 *
+	 * @param maxAgeMillis	How long a snapshot is used before it's refreshed. 0 or less loads a new one for every reader.
+	 */
+	public RosterSnapshots(long maxAgeMillis)
+	{
+		this.maxAgeMillis = maxAgeMillis;
+
+		current = new AtomicReference<RosterSnapshot>();
+		versions = new AtomicLong();
+		loadLock = new ReentrantLock();
+		refreshing = new AtomicBoolean();
+	}
+
+	/**
+	 * Accessor for the current snapshot, loading one if it's missing. If it's stale, it's returned as is, and the next one is loaded in the
+	 * background.
+	 *
+	 * @param loader	Loads the users if a new snapshot is needed. A background load runs it without the calling request's state.
+	 *
+	 * @return	The snapshot.
+	 */
+	public RosterSnapshot get(final Loader loader)
+	{
+		RosterSnapshot retval = current.get();
+
+		if(maxAgeMillis <= 0)
+		{
+			retval = load(loader);
+		}
+		else if(retval == null)
+		{
+			loadLock.lock();
+
+			try
+			{
+				//another reader may have loaded it while this one waited
+				retval = current.get();
+
+				if(retval == null)
+				{
+					retval = load(loader);
+				}
+			}
+			finally
+			{
+				loadLock.unlock();
+			}
+		}
+		else if(retval.isOlderThan(maxAgeMillis, System.currentTimeMillis()) && refreshing.compareAndSet(false, true))
+		{
+			final RosterSnapshot stale = retval;
+
+			getRefresher().execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					loadLock.lock();
+
+					try
+					{
+						//unless it was refreshed some other way while this waited
+						if(current.get() == stale)
+						{
+							load(loader);
+						}
+					}
+					catch(RuntimeException e)
+					{
+						logger.error("Roster refresh failed: " + ExceptionFormatter.asString(e));
+					}
+					finally
+					{
+						loadLock.unlock();
+						refreshing.set(false);
+					}
+				}
+			});
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Load and publish a new snapshot now, whatever the age of the current one.
+	 *
+	 * @param loader	Loads the users.
+	 *
+	 * @return	The new snapshot, or the current one if the load found no users.
+	 */
+	public RosterSnapshot refresh(Loader loader)
+	{
+		loadLock.lock();
+
+		try
+		{
+			return load(loader);
+		}
+		finally
+		{
+			loadLock.unlock();
+		}
+	}
+
+	private static synchronized ExecutorService getRefresher()
+	{
+		if(refresher == null)
+		{
+			refresher = Executors.newSingleThreadExecutor(RequestContext.pooledThreads("roster-refresh-"));
+		}
+
+		return refresher;
+	}
+
+	private RosterSnapshot load(Loader loader)
+	{
+		RosterSnapshot retval = new RosterSnapshot(loader.load(), versions.incrementAndGet(), System.currentTimeMillis());
+
+		if(retval.getSize() > 0)
+		{
+			current.set(retval);
+
+			if(logger.isDebugEnabled())
+			{
+				logger.debug("Published roster snapshot " + retval.getVersion() + " with " + retval.getSize() + " users");
+			}
+		}
+		else if(current.get() != null)
+		{
+			logger.warn("Roster load found no users, keeping snapshot " + current.get().getVersion());
+
+			retval = current.get();
+		}
+
+		return retval;
+	}
+
+	/**
+	 * Accessor for the current snapshot, without loading one.
+	 *
+	 * @return	The snapshot, or null if none has been loaded.
+	 */
+	public RosterSnapshot getCurrent()
+	{
+		return current.get();
+	}
+
+	/**
+	 * Drop the current snapshot, so the next reader loads a new one.
+	 */
+	public void clear()
+	{
+		current.set(null);
+	}
+}
@@ -0,0 +1,170 @@
+/**
+ *
+ */
+package com.sutherland.hughes.report.roster.test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.sutherland.helios.data.Datum;
+import com.sutherland.hughes.report.roster.RosterSnapshot;
+import com.sutherland.hughes.report.roster.RosterSnapshots;
+
+/**
+ * @author Jason Diamond
+ *
+ */
+public class RosterSnapshotsTest extends TestCase
+{
+	private static class CountingLoader implements RosterSnapshots.Loader
+	{
+		private final AtomicInteger loads = new AtomicInteger();
+		private volatile int users = 2;
+
+		@Override
+		public Map<String, Datum> load()
+		{
+			loads.incrementAndGet();
+
+			LinkedHashMap<String, Datum> retval = new LinkedHashMap<String, Datum>();
+			for(int i = 0; i < users; i++)
+			{
+				retval.put("user" + i, new Datum("user" + i));
+			}
+
+			return retval;
+		}
+	}
+
+	@Test
+	public void testSnapshotIsCopied()
+	{
+		LinkedHashMap<String, Datum> users = new LinkedHashMap<String, Datum>();
+		users.put("b", new Datum("b"));
+		users.put("a", new Datum("a"));
+
+		RosterSnapshot snapshot = new RosterSnapshot(users, 1, 1000);
+		users.put("c", new Datum("c"));
+		snapshot.getUserIDs()[0] = "c";
+
+		assertEquals(2, snapshot.getSize());
+		assertEquals("b", snapshot.getUserIDs()[0]);
+		assertFalse(snapshot.hasUser("c"));
+		assertNull(snapshot.getUser("c"));
+		assertTrue(snapshot.isOlderThan(10, 1011));
+		assertFalse(snapshot.isOlderThan(10, 1010));
+	}
+
+	@Test
+	public void testStaleSnapshotIsRefreshed() throws Exception
+	{
+		CountingLoader loader = new CountingLoader();
+		RosterSnapshots snapshots = new RosterSnapshots(50);
+
+		assertNull(snapshots.getCurrent());
+
+		RosterSnapshot first = snapshots.get(loader);
+		assertSame(first, snapshots.get(loader));
+		assertEquals(1, loader.loads.get());
+		assertEquals(2, first.getSize());
+
+		Thread.sleep(100);
+		loader.users = 3;
+
+		//the stale one is still served while the next one loads
+		assertSame(first, snapshots.get(loader));
+
+		RosterSnapshot second = awaitRefresh(snapshots, first);
+		assertTrue(second.getVersion() > first.getVersion());
+		assertEquals(3, second.getSize());
+
+		//the old snapshot is untouched for anyone still reading it
+		assertEquals(2, first.getSize());
+
+		//a load that finds nobody keeps the last good snapshot
+		loader.users = 0;
+		assertSame(second, snapshots.refresh(loader));
+		assertSame(second, snapshots.getCurrent());
+
+		snapshots.clear();
+		assertNull(snapshots.getCurrent());
+	}
+
+	@Test
+	public void testReadersDontWaitForRefresh() throws Exception
+	{
+		final CountDownLatch loading = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountingLoader loader = new CountingLoader();
+		final RosterSnapshots snapshots = new RosterSnapshots(1);
+
+		final RosterSnapshot first = snapshots.get(loader);
+		Thread.sleep(10);
+
+		Thread refresher = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				snapshots.get(new RosterSnapshots.Loader()
+				{
+					@Override
+					public Map<String, Datum> load()
+					{
+						loading.countDown();
+
+						try
+						{
+							release.await();
+						}
+						catch(InterruptedException e)
+						{
+						}
+
+						return loader.load();
+					}
+				});
+			}
+		};
+		refresher.start();
+
+		try
+		{
+			assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+			//the reader that found it stale didn't wait for the load either
+			refresher.join(5000);
+			assertFalse(refresher.isAlive());
+
+			//stale, but the next one is already loading
+			assertSame(first, snapshots.get(loader));
+			assertEquals(1, loader.loads.get());
+		}
+		finally
+		{
+			release.countDown();
+		}
+
+		assertNotSame(first, awaitRefresh(snapshots, first));
+		assertEquals(2, loader.loads.get());
+	}
+
+	private static RosterSnapshot awaitRefresh(RosterSnapshots snapshots, RosterSnapshot stale) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + 5000;
+
+		while(snapshots.getCurrent() == stale && System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(5);
+		}
+
+		return snapshots.getCurrent();
+	}
+}
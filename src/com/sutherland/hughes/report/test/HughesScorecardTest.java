@@ -0,0 +1,83 @@
+/**
+ *
+ */
+package com.sutherland.hughes.report.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.sutherland.helios.data.attributes.DataAttributes;
+import com.sutherland.hughes.data.GrainPartials;
+import com.sutherland.hughes.report.HughesScorecard;
+
+/**
+ * @author Jason Diamond
+ *
+ */
+public class HughesScorecardTest extends TestCase implements DataAttributes
+{
+	@Test
+	public void testRatiosAreTakenFromTotals()
+	{
+		GrainPartials partials = new GrainPartials();
+
+		//two agents' rows folded into one team
+		partials.get("Team 1", CALL_VOL_ATTR).addValues("10", 1);
+		partials.get("Team 1", CALL_VOL_ATTR).addValues("30", 1);
+		partials.get("Team 1", ACD_TIME_ATTR).addValues("1800", 2);
+		partials.get("Team 1", ACW_TIME_ATTR).addValues("600", 2);
+		partials.get("Team 1", SALES_COUNT_ATTR).addOccurrences(3);
+		partials.get("Team 1", SALES_AMTS_ATTR).addValues("90.30", 2);
+		partials.get("Team 1", SALES_AMTS_ATTR).addValues("60", 1);
+		partials.get("Team 1", REFUND_COUNT_ATTR).addOccurrences(1);
+		partials.get("Team 1", REFUNDS_AMTS_ATTR).addValues("20.10", 1);
+		partials.get("Team 1", CREATED_CASES_ATTR).addOccurrences(4);
+
+		ArrayList<String[]> rows = HughesScorecard.buildRows(partials);
+
+		assertEquals(1, rows.size());
+		assertEquals
+		(
+			Arrays.asList("Team 1", "40", "30", "10", "40", "1", "3", "150.3", "50.1", "7.5", "1", "20.1", "130.2", "4").toString(),
+			Arrays.asList(rows.get(0)).toString()
+		);
+	}
+
+	@Test
+	public void testGrainsMissingFromATableScoreZero()
+	{
+		GrainPartials partials = new GrainPartials();
+
+		partials.get("agent1", CALL_VOL_ATTR).addValues("5", 1);
+		partials.get("agent2", REFUND_COUNT_ATTR).addOccurrences(2);
+		partials.get("agent2", REFUNDS_AMTS_ATTR).addValues("15", 2);
+
+		ArrayList<String[]> rows = HughesScorecard.buildRows(partials);
+
+		assertEquals(2, rows.size());
+
+		for(String[] row : rows)
+		{
+			assertEquals(14, row.length);
+
+			if(row[0].equals("agent1"))
+			{
+				assertEquals("5", row[1]);
+				assertEquals("0", row[5]);
+				assertEquals("0", row[6]);
+				assertEquals("0", row[8]);
+			}
+			else
+			{
+				assertEquals("0", row[1]);
+				assertEquals("0", row[5]);
+				assertEquals("2", row[10]);
+				assertEquals("-15", row[12]);
+			}
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package com.sutherland.hughes.trace;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * The trace of one request, or of one report run outside of a traced request: a tree of TraceNodes, rooted at the request or top-level 
+ * report.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class ExecutionTrace 
+{
+	private final String id;
+	private final TraceNode root;
+	
+	/**
+	 * Build a trace.
+	 * 
+	 * @param id	The trace's id, to look it up by.
+	 * @param root	The root of the trace.
+	 */
+	public ExecutionTrace(String id, TraceNode root)
+	{
+		this.id = id;
+		this.root = root;
+	}
+	
+	public String getId()
+	{
+		return id;
+	}
+	
+	public TraceNode getRoot()
+	{
+		return root;
+	}
+	
+	/**
+	 * Accessor for the trace's duration.
+	 * 
+	 * @return	The duration in milliseconds, up to now if the root hasn't finished.
+	 */
+	public long getDurationMillis()
+	{
+		return root.getDurationNanos() / 1000000;
+	}
+	
+	/**
+	 * Write the trace as a JSON object.
+	 * 
+	 * @return	The JSON.
+	 */
+	public String toJSON()
+	{
+		StringBuilder retval = new StringBuilder();
+		
+		retval.append("{\"id\":");
+		TraceNode.appendString(retval, id);
+		retval.append(",\"name\":");
+		TraceNode.appendString(retval, root.getReportName());
+		retval.append(",\"started\":");
+		TraceNode.appendString(retval, new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date(root.getStartMillis())));
+		retval.append(",\"durationMillis\":").append(getDurationMillis());
+		retval.append(",\"root\":");
+		root.appendJSON(retval);
+		retval.append('}');
+		
+		return retval.toString();
+	}
+}
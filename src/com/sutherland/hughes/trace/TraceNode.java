@@ -0,0 +1,373 @@
+package com.sutherland.hughes.trace;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One report's part of an execution trace: when it ran, what it returned, the queries it ran on its own connection, the heap it allocated,
+ * and the child reports and rosters it ran. Children and queries can be added from any thread, since child reports run on the ReportRunner's threads.
+ *
+ * @author Jason Diamond
+ *
+ */
+public class TraceNode 
+{
+	/**
+	 * Most queries a node keeps. Past this they are only counted, so a report with an unusually long chunk list can't grow a trace 
+	 * without bound.
+	 */
+	public final static int MAX_QUERIES = 500;
+	
+	/**
+	 * One query run by a report.
+	 */
+	public final static class QueryTrace
+	{
+		private final String queryHash;
+		private final long durationNanos;
+		private final long rows;
+		
+		private QueryTrace(String queryHash, long durationNanos, long rows)
+		{
+			this.queryHash = queryHash;
+			this.durationNanos = durationNanos;
+			this.rows = rows;
+		}
+		
+		public String getQueryHash()
+		{
+			return queryHash;
+		}
+		
+		public long getDurationNanos()
+		{
+			return durationNanos;
+		}
+		
+		public long getRows()
+		{
+			return rows;
+		}
+	}
+	
+	private final String reportName;
+	private final String parametersHash;
+	private final TraceNode parent;
+	private final long startMillis;
+	private final long startNanos;
+	private long endNanos;
+	private long rows;
+	private String errorMessage;
+	private final ArrayList<TraceNode> children;
+	private final ArrayList<QueryTrace> queries;
+	private int droppedQueries;
+	private final AtomicInteger cacheHits;
+	private final AtomicLong allocatedBytes;
+	
+	/**
+	 * Start a node.
+	 * 
+	 * @param reportName		The report's class name.
+	 * @param parametersHash	A hash of the report's parameters, so runs with the same parameters can be recognized.
+	 * @param parent			The node of the report this one is running for, or null if it's the root of the trace.
+	 */
+	public TraceNode(String reportName, String parametersHash, TraceNode parent)
+	{
+		this.reportName = reportName;
+		this.parametersHash = parametersHash;
+		this.parent = parent;
+		
+		startMillis = System.currentTimeMillis();
+		startNanos = System.nanoTime();
+		endNanos = -1;
+		
+		children = new ArrayList<TraceNode>();
+		queries = new ArrayList<QueryTrace>();
+		cacheHits = new AtomicInteger();
+		allocatedBytes = new AtomicLong();
+		
+		if(parent != null)
+		{
+			parent.addChild(this);
+		}
+	}
+	
+	private synchronized void addChild(TraceNode child)
+	{
+		children.add(child);
+	}
+	
+	/**
+	 * Record a query run for this report.
+	 * 
+	 * @param query			The query text. Only its hash is kept.
+	 * @param durationNanos	How long the query took, including reading its results.
+	 * @param rows			The number of rows it returned.
+	 */
+	public synchronized void addQuery(String query, long durationNanos, long rows)
+	{
+		if(queries.size() < MAX_QUERIES)
+		{
+			queries.add(new QueryTrace(hash(query), durationNanos, rows));
+		}
+		else
+		{
+			droppedQueries++;
+		}
+	}
+	
+	/**
+	 * Record a result served from a cache rather than the database.
+	 */
+	public void addCacheHit()
+	{
+		cacheHits.incrementAndGet();
+	}
+	
+	/**
+	 * Record heap allocated for this report, by its own thread or a worker running one of its queries. Child reports count their own.
+	 * 
+	 * @param bytes	The number of bytes.
+	 */
+	public void addAllocatedBytes(long bytes)
+	{
+		allocatedBytes.addAndGet(bytes);
+	}
+	
+	/**
+	 * Mark the report as finished.
+	 * 
+	 * @param rows			The number of rows the report returned.
+	 * @param errorMessage	The report's error message. Null or empty if it succeeded.
+	 */
+	public synchronized void finish(long rows, String errorMessage)
+	{
+		endNanos = System.nanoTime();
+		
+		this.rows = rows;
+		
+		if(errorMessage != null && !errorMessage.isEmpty())
+		{
+			this.errorMessage = errorMessage;
+		}
+	}
+	
+	public String getReportName()
+	{
+		return reportName;
+	}
+	
+	public String getParametersHash()
+	{
+		return parametersHash;
+	}
+	
+	public TraceNode getParent()
+	{
+		return parent;
+	}
+	
+	public long getStartMillis()
+	{
+		return startMillis;
+	}
+	
+	public synchronized boolean isFinished()
+	{
+		return endNanos >= 0;
+	}
+	
+	/**
+	 * Accessor for the node's duration.
+	 * 
+	 * @return	The duration in nanoseconds, up to now if the report hasn't finished.
+	 */
+	public synchronized long getDurationNanos()
+	{
+		return (endNanos < 0 ? System.nanoTime() : endNanos) - startNanos;
+	}
+	
+	public synchronized long getRows()
+	{
+		return rows;
+	}
+	
+	public synchronized String getErrorMessage()
+	{
+		return errorMessage;
+	}
+	
+	public int getCacheHits()
+	{
+		return cacheHits.get();
+	}
+	
+	public long getAllocatedBytes()
+	{
+		return allocatedBytes.get();
+	}
+	
+	/**
+	 * Accessor for the heap allocated by this report and every report under it.
+	 * 
+	 * @return	The number of bytes.
+	 */
+	public long getTotalAllocatedBytes()
+	{
+		long retval = getAllocatedBytes();
+		
+		for(TraceNode child : getChildren())
+		{
+			retval += child.getTotalAllocatedBytes();
+		}
+		
+		return retval;
+	}
+	
+	public synchronized ArrayList<TraceNode> getChildren()
+	{
+		return new ArrayList<TraceNode>(children);
+	}
+	
+	public synchronized ArrayList<QueryTrace> getQueries()
+	{
+		return new ArrayList<QueryTrace>(queries);
+	}
+	
+	public synchronized int getDroppedQueries()
+	{
+		return droppedQueries;
+	}
+	
+	/**
+	 * Write the node and its children as a JSON object.
+	 * 
+	 * @param out	Where to write it.
+	 */
+	public void appendJSON(StringBuilder out)
+	{
+		out.append("{\"report\":");
+		appendString(out, reportName);
+		out.append(",\"parameters\":");
+		appendString(out, parametersHash);
+		out.append(",\"start\":").append(startMillis);
+		out.append(",\"durationMillis\":").append(getDurationNanos() / 1000000);
+		out.append(",\"finished\":").append(isFinished());
+		out.append(",\"rows\":").append(getRows());
+		out.append(",\"error\":");
+		appendString(out, getErrorMessage());
+		out.append(",\"cacheHits\":").append(getCacheHits());
+		out.append(",\"allocatedBytes\":").append(getAllocatedBytes());
+		out.append(",\"totalAllocatedBytes\":").append(getTotalAllocatedBytes());
+		
+		out.append(",\"queries\":[");
+		boolean first = true;
+		for(QueryTrace query : getQueries())
+		{
+			if(!first)
+			{
+				out.append(',');
+			}
+			
+			out.append("{\"hash\":");
+			appendString(out, query.getQueryHash());
+			out.append(",\"durationMillis\":").append(query.getDurationNanos() / 1000000);
+			out.append(",\"rows\":").append(query.getRows());
+			out.append('}');
+			
+			first = false;
+		}
+		out.append(']');
+		out.append(",\"droppedQueries\":").append(getDroppedQueries());
+		
+		out.append(",\"children\":[");
+		first = true;
+		for(TraceNode child : getChildren())
+		{
+			if(!first)
+			{
+				out.append(',');
+			}
+			
+			child.appendJSON(out);
+			
+			first = false;
+		}
+		out.append("]}");
+	}
+	
+	/**
+	 * A short hash of some text, ie. a query, to tell whether two are the same without keeping either.
+	 * 
+	 * @param text	The text.
+	 * 
+	 * @return	The hash, as hex.
+	 */
+	public static String hash(String text)
+	{
+		String retval = null;
+		
+		if(text != null)
+		{
+			retval = String.format("%08x", text.hashCode());
+		}
+		
+		return retval;
+	}
+	
+	/**
+	 * Write a string as a JSON string, quoted and escaped.
+	 * 
+	 * @param out		Where to write it.
+	 * @param value		The string, or null to write null.
+	 */
+	public static void appendString(StringBuilder out, String value)
+	{
+		if(value == null)
+		{
+			out.append("null");
+		}
+		else
+		{
+			out.append('"');
+			
+			char c;
+			for(int i = 0; i < value.length(); i++)
+			{
+				c = value.charAt(i);
+				
+				switch(c)
+				{
+					case '"':
+						out.append("\\\"");
+						break;
+					case '\\':
+						out.append("\\\\");
+						break;
+					case '\n':
+						out.append("\\n");
+						break;
+					case '\r':
+						out.append("\\r");
+						break;
+					case '\t':
+						out.append("\\t");
+						break;
+					default:
+						if(c < 0x20)
+						{
+							out.append(String.format("\\u%04x", (int)c));
+						}
+						else
+						{
+							out.append(c);
+						}
+						break;
+				}
+			}
+			
+			out.append('"');
+		}
+	}
+}
@@ -0,0 +1,296 @@
+package com.sutherland.hughes.trace;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.sutherland.helios.report.Report;
+import com.sutherland.helios.report.parameters.ReportParameters;
+import com.sutherland.hughes.config.ReportingConfig;
+
+/**
+ * Builds execution traces of requests and the reports they run. A report starting on a thread with no trace in progress starts a new
+ * trace; one started while another report, or a request, is running on the thread becomes its child. Like the request's data source 
+ * provider, the trace in progress is passed to threads started from the thread, so child reports run by a ReportRunner and the chunks 
+ * of a ChunkedQueryRunner land in the right node.
+ * 
+ * Finished traces are kept by id for a while, and the slowest recent ones in a ring buffer:
+ * 	hughes.trace.enabled	- false to not trace at all. Defaults to true.
+ * 	hughes.trace.recent		- how many finished traces to keep by id. Defaults to 100.
+ * 	hughes.trace.slowMillis	- how long a trace has to take to go into the slow buffer. Defaults to 5000.
+ * 	hughes.trace.slowCount	- how many slow traces to keep. Defaults to 50.
+ *
+ * @author Jason Diamond
+ *
+ */
+public final class Tracer 
+{
+	public final static int DEFAULT_RECENT = 100;
+	public final static long DEFAULT_SLOW_MILLIS = 5000;
+	public final static int DEFAULT_SLOW_COUNT = 50;
+	
+	private final static Logger logger = Logger.getLogger(Tracer.class);
+	
+	private final static boolean enabled = ReportingConfig.getBoolean(ReportingConfig.TRACE_ENABLED, true);
+	private final static int recentCount = Math.max(1, ReportingConfig.getInt(ReportingConfig.TRACE_RECENT, DEFAULT_RECENT));
+	private final static long slowMillis = ReportingConfig.getLong(ReportingConfig.TRACE_SLOW_MILLIS, DEFAULT_SLOW_MILLIS);
+	private final static int slowCount = Math.max(1, ReportingConfig.getInt(ReportingConfig.TRACE_SLOW_COUNT, DEFAULT_SLOW_COUNT));
+	
+	private final static InheritableThreadLocal<TraceNode> currentNode = new InheritableThreadLocal<TraceNode>();
+	
+	private final static AtomicLong nextID = new AtomicLong();
+	
+	@SuppressWarnings("serial")
+	private final static LinkedHashMap<String, ExecutionTrace> recentTraces = new LinkedHashMap<String, ExecutionTrace>()
+	{
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, ExecutionTrace> eldest)
+		{
+			return size() > recentCount;
+		}
+	};
+	
+	private final static ExecutionTrace[] slowTraces = new ExecutionTrace[slowCount];
+	private static int nextSlowTrace = 0;
+	
+	private Tracer()
+	{
+	}
+	
+	/**
+	 * Start tracing a request. The caller is responsible for finishing it, since servlet threads are reused.
+	 * 
+	 * @param requestName	The request's name, ie. the report it runs.
+	 * 
+	 * @return	The trace, or null if tracing is disabled.
+	 */
+	public static ExecutionTrace startRequest(String requestName)
+	{
+		ExecutionTrace retval = null;
+		
+		if(enabled)
+		{
+			TraceNode root = new TraceNode(requestName, null, null);
+			
+			//the id is needed up front, ie. for a response header
+			retval = new ExecutionTrace(newID(), root);
+			
+			currentNode.set(root);
+		}
+		
+		return retval;
+	}
+	
+	/**
+	 * Finish tracing a request.
+	 * 
+	 * @param trace			The request's trace. May be null.
+	 * @param rows			The number of rows the request returned.
+	 * @param errorMessage	The request's error message. Null or empty if it succeeded.
+	 */
+	public static void finishRequest(ExecutionTrace trace, long rows, String errorMessage)
+	{
+		if(trace != null)
+		{
+			trace.getRoot().finish(rows, errorMessage);
+			
+			currentNode.remove();
+			
+			store(trace);
+		}
+	}
+	
+	/**
+	 * Drop the node this thread inherited, without finishing it, ie. on a pooled thread started while a request was being traced.
+	 */
+	public static void clearCurrent()
+	{
+		currentNode.remove();
+	}
+	
+	/**
+	 * Start a report's node. It's a child of the report or request running on this thread, if any, otherwise the root of a new trace.
+	 * 
+	 * @param report	The report.
+	 * 
+	 * @return	The report's node, or null if tracing is disabled.
+	 */
+	public static TraceNode beginReport(Report report)
+	{
+		TraceNode retval = null;
+		
+		if(enabled)
+		{
+			TraceNode parent = currentNode.get();
+			
+			retval = new TraceNode(report.getClass().getSimpleName(), hashParameters(report.getParameters()), parent);
+			
+			currentNode.set(retval);
+		}
+		
+		return retval;
+	}
+	
+	/**
+	 * Finish a report's node, and its trace if it's the root.
+	 * 
+	 * @param node			The node from beginReport. May be null.
+	 * @param results		The report's results. May be null.
+	 * @param errorMessage	The report's error message. Null or empty if it succeeded.
+	 */
+	public static void endReport(TraceNode node, ArrayList<String[]> results, String errorMessage)
+	{
+		endReport(node, results == null ? 0 : results.size(), errorMessage);
+	}
+	
+	/**
+	 * Finish a report's node, and its trace if it's the root.
+	 * 
+	 * @param node			The node from beginReport. May be null.
+	 * @param rows			The number of rows the report returned.
+	 * @param errorMessage	The report's error message. Null or empty if it succeeded.
+	 */
+	public static void endReport(TraceNode node, long rows, String errorMessage)
+	{
+		if(node != null)
+		{
+			node.finish(rows, errorMessage);
+			
+			if(node.getParent() == null)
+			{
+				currentNode.remove();
+				
+				store(new ExecutionTrace(newID(), node));
+			}
+			else
+			{
+				currentNode.set(node.getParent());
+			}
+		}
+	}
+	
+	/**
+	 * Record a query against the report running on this thread, if any.
+	 * 
+	 * @param query			The query text. Only its hash is kept.
+	 * @param durationNanos	How long the query took, including reading its results.
+	 * @param rows			The number of rows it returned.
+	 */
+	public static void addQuery(String query, long durationNanos, long rows)
+	{
+		TraceNode node = currentNode.get();
+		
+		if(node != null)
+		{
+			node.addQuery(query, durationNanos, rows);
+		}
+	}
+	
+	/**
+	 * Record a cache hit against the report running on this thread, if any.
+	 */
+	public static void addCacheHit()
+	{
+		TraceNode node = currentNode.get();
+		
+		if(node != null)
+		{
+			node.addCacheHit();
+		}
+	}
+	
+	/**
+	 * Record heap allocated for the report running on this thread, if any.
+	 * 
+	 * @param bytes	The number of bytes.
+	 */
+	public static void addAllocatedBytes(long bytes)
+	{
+		TraceNode node = currentNode.get();
+		
+		if(node != null)
+		{
+			node.addAllocatedBytes(bytes);
+		}
+	}
+	
+	/**
+	 * Accessor for a recently finished trace.
+	 * 
+	 * @param id	The trace's id.
+	 * 
+	 * @return	The trace, or null if it's unknown or has been dropped.
+	 */
+	public static synchronized ExecutionTrace getTrace(String id)
+	{
+		return recentTraces.get(id);
+	}
+	
+	/**
+	 * Accessor for the recent slow traces.
+	 * 
+	 * @return	The traces, most recent first.
+	 */
+	public static synchronized ArrayList<ExecutionTrace> getSlowTraces()
+	{
+		ArrayList<ExecutionTrace> retval = new ArrayList<ExecutionTrace>(slowTraces.length);
+		
+		int slot;
+		for(int i = 1; i <= slowTraces.length; i++)
+		{
+			slot = (nextSlowTrace - i + slowTraces.length) % slowTraces.length;
+			
+			if(slowTraces[slot] != null)
+			{
+				retval.add(slowTraces[slot]);
+			}
+		}
+		
+		return retval;
+	}
+	
+	/**
+	 * Hash a report's parameters, so runs with the same parameters can be recognized in a trace without listing the agents and teams.
+	 * 
+	 * @param parameters	The parameters.
+	 * 
+	 * @return	The hash.
+	 */
+	public static String hashParameters(ReportParameters parameters)
+	{
+		StringBuilder key = new StringBuilder();
+		
+		key.append(parameters.getReportType()).append('|');
+		key.append(parameters.getStartDate()).append('|');
+		key.append(parameters.getEndDate()).append('|');
+		key.append(parameters.getTimeGrain()).append('|');
+		key.append(parameters.getUserGrain()).append('|');
+		key.append(parameters.getDateFormat()).append('|');
+		key.append(parameters.getNumDrivers()).append('|');
+		key.append(parameters.getTeamNames()).append('|');
+		key.append(parameters.getAgentNames());
+		
+		return TraceNode.hash(key.toString());
+	}
+	
+	private static String newID()
+	{
+		return Long.toString(System.currentTimeMillis(), 36) + "-" + nextID.incrementAndGet();
+	}
+	
+	private static synchronized void store(ExecutionTrace trace)
+	{
+		recentTraces.put(trace.getId(), trace);
+		
+		if(trace.getDurationMillis() >= slowMillis)
+		{
+			slowTraces[nextSlowTrace] = trace;
+			nextSlowTrace = (nextSlowTrace + 1) % slowTraces.length;
+			
+			logger.info("Slow trace " + trace.getId() + " of " + trace.getRoot().getReportName() + ": " + trace.getDurationMillis() + " ms");
+		}
+	}
+}
@@ -0,0 +1,192 @@
+/**
+ *
+ */
+package com.sutherland.hughes.trace.test;
+
+import java.util.ArrayList;
+import java.util.Map.Entry;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.sutherland.helios.data.granularity.user.UserGrains;
+import com.sutherland.helios.exceptions.ReportSetupException;
+import com.sutherland.helios.report.Report;
+import com.sutherland.helios.report.ReportTypes;
+import com.sutherland.helios.report.parameters.groups.ReportParameterGroups;
+import com.sutherland.hughes.trace.ExecutionTrace;
+import com.sutherland.hughes.trace.TraceNode;
+import com.sutherland.hughes.trace.Tracer;
+
+/**
+ * @author Jason Diamond
+ *
+ */
+public class TracerTest extends TestCase
+{
+	/**
+	 * Runs a child report on a thread of its own, as a ReportRunner does, and traces itself as the reports do.
+	 */
+	private static class TracedReport extends Report
+	{
+		private final boolean runsChild;
+
+		public TracedReport(boolean runsChild) throws ReportSetupException
+		{
+			super();
+
+			this.runsChild = runsChild;
+
+			getParameters().setStartDate("2014-10-01 00:00:00");
+			getParameters().setEndDate("2014-10-02 00:00:00");
+			getParameters().setReportType(ReportTypes.STACK_REPORT);
+			getParameters().setUserGrain(UserGrains.AGENT_GRANULARITY);
+			getParameters().addTeamName("Team 1");
+		}
+
+		@Override
+		public ArrayList<String[]> startReport()
+		{
+			ArrayList<String[]> retval = null;
+
+			TraceNode trace = Tracer.beginReport(this);
+
+			try
+			{
+				retval = super.startReport();
+			}
+			finally
+			{
+				Tracer.endReport(trace, retval, getErrorMessage());
+			}
+
+			return retval;
+		}
+
+		@Override
+		protected ArrayList<String[]> runReport() throws Exception
+		{
+			ArrayList<String[]> retval = new ArrayList<String[]>();
+
+			Tracer.addQuery("SELECT " + runsChild, 1000000, 2);
+
+			if(runsChild)
+			{
+				Thread childThread = new Thread(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						try
+						{
+							new TracedReport(false).startReport();
+						}
+						catch(ReportSetupException e)
+						{
+							throw new RuntimeException(e);
+						}
+					}
+				});
+
+				childThread.start();
+				childThread.join();
+			}
+
+			retval.add(new String[]{"grain", "1"});
+
+			return retval;
+		}
+
+		@Override
+		protected boolean setupDataSourceConnections()
+		{
+			return true;
+		}
+
+		@Override
+		protected boolean setupReport()
+		{
+			for(Entry<String, ArrayList<String>> reportType : ReportParameterGroups.BASIC_METRIC_REPORT_PARAMETERS.entrySet())
+			{
+				for(String paramName : reportType.getValue())
+				{
+					getParameters().addSupportedParameter(paramName);
+				}
+			}
+
+			return true;
+		}
+
+		@Override
+		protected boolean setupLogger()
+		{
+			return true;
+		}
+
+		@Override
+		public ArrayList<String> getReportSchema()
+		{
+			return new ArrayList<String>();
+		}
+
+		@Override
+		protected void logInfoMessage(String message)
+		{
+		}
+
+		@Override
+		protected void logWarnMessage(String message)
+		{
+		}
+
+		@Override
+		protected void logErrorMessage(String message)
+		{
+		}
+	}
+
+	@Test
+	public void testChildReportsNestUnderRequest() throws Exception
+	{
+		ExecutionTrace trace = Tracer.startRequest("TestRequest");
+
+		new TracedReport(true).startReport();
+
+		Tracer.finishRequest(trace, 1, null);
+
+		assertSame(trace, Tracer.getTrace(trace.getId()));
+
+		TraceNode root = trace.getRoot();
+		assertTrue(root.isFinished());
+		assertEquals(1, root.getChildren().size());
+
+		TraceNode parent = root.getChildren().get(0);
+		assertEquals("TracedReport", parent.getReportName());
+		assertEquals(1, parent.getRows());
+		assertEquals(1, parent.getQueries().size());
+		assertEquals(TraceNode.hash("SELECT true"), parent.getQueries().get(0).getQueryHash());
+		assertEquals(1, parent.getChildren().size());
+
+		TraceNode child = parent.getChildren().get(0);
+		assertTrue(child.isFinished());
+		assertEquals(TraceNode.hash("SELECT false"), child.getQueries().get(0).getQueryHash());
+		assertEquals(0, child.getChildren().size());
+
+		String json = trace.toJSON();
+		assertTrue(json.startsWith("{\"id\":\"" + trace.getId() + "\",\"name\":\"TestRequest\""));
+		assertTrue(json.contains("\"children\":[{\"report\":\"TracedReport\""));
+		assertTrue(json.contains("{\"hash\":\"" + TraceNode.hash("SELECT false") + "\",\"durationMillis\":1,\"rows\":2}"));
+	}
+
+	@Test
+	public void testTopLevelReportIsItsOwnTrace() throws Exception
+	{
+		new TracedReport(false).startReport();
+
+		//nothing left on the thread for the next report to attach to
+		TraceNode next = Tracer.beginReport(new TracedReport(false));
+		assertNull(next.getParent());
+		Tracer.endReport(next, 0, null);
+	}
+}
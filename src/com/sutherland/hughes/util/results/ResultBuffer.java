@@ -0,0 +1,386 @@
+package com.sutherland.hughes.util.results;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import com.sutherland.hughes.config.ReportingConfig;
+import com.sutherland.hughes.datasources.RowHandler;
+
+/**
+ * Holds a report's result rows on the heap up to a byte budget. Once the budget is exceeded every row is moved to a temp file of
+ * length-prefixed records and the rest are appended there, so a wide-open request can't exhaust the JVM. The rows can be replayed to a
+ * RowHandler (ie. a StreamingFormatter) or read back a page at a time in either case.
+ *
+ * Spill files are deleted by close().
+ *
+ * @author Jason Diamond
+ *
+ */
+public class ResultBuffer implements RowHandler, Closeable
+{
+	public final static long DEFAULT_MEMORY_BYTES = 64L * 1024 * 1024;
+
+	private final static String CHARSET = "UTF-8";
+	private final static String SPILL_FILE_PREFIX = "hughes-results-";
+	private final static String SPILL_FILE_SUFFIX = ".spill";
+	private final static int IO_BUFFER_SIZE = 64 * 1024;
+
+	//a file offset is kept for every INDEX_INTERVAL'th row, so paging doesn't read from the start of the file
+	private final static int INDEX_INTERVAL = 1024;
+
+	//rough heap cost of a String[] and of each String in it
+	private final static int ARRAY_OVERHEAD_BYTES = 16;
+	private final static int REFERENCE_BYTES = 4;
+	private final static int STRING_OVERHEAD_BYTES = 40;
+
+	private final long memoryBudget;
+	private final File spillDir;
+
+	private ArrayList<String[]> memoryRows;
+	private long memoryBytes;
+
+	private File spillFile;
+	private DataOutputStream spillOut;
+	private long spillBytes;
+	private ArrayList<Long> spillIndex;
+
+	private long rowCount;
+
+	/**
+	 * Build a buffer with the configured memory budget and spill directory.
+	 */
+	public ResultBuffer()
+	{
+		this(ReportingConfig.getLong(ReportingConfig.RESULT_BUFFER_MEMORY_BYTES, DEFAULT_MEMORY_BYTES), getConfiguredSpillDir());
+	}
+
+	/**
+	 * Build a buffer.
+	 *
+	 * @param memoryBudget	The approximate number of heap bytes to hold before spilling to disk.
+	 * @param spillDir		The directory for the spill file, or null for the system temp directory.
+	 */
+	public ResultBuffer(long memoryBudget, File spillDir)
+	{
+		this.memoryBudget = memoryBudget;
+		this.spillDir = spillDir;
+
+		memoryRows = new ArrayList<String[]>();
+		memoryBytes = 0;
+		spillBytes = 0;
+		rowCount = 0;
+	}
+
+	private static File getConfiguredSpillDir()
+	{
+		String dir = ReportingConfig.getString(ReportingConfig.RESULT_BUFFER_SPILL_DIR, null);
+
+		return dir == null ? null : new File(dir);
+	}
+
+	/**
+	 * Append a row.
+	 *
+	 * @param row	The row's column values.
+	 *
+	 * @throws IOException	If the row could not be written to the spill file.
+	 */
+	public void add(String[] row) throws IOException
+	{
+		if(spillOut != null)
+		{
+			indexRecord(rowCount);
+			writeRecord(row);
+		}
+		else
+		{
+			memoryRows.add(row);
+			memoryBytes += estimateHeapSize(row);
+
+			if(memoryBytes > memoryBudget)
+			{
+				spill();
+			}
+		}
+
+		rowCount++;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.sutherland.hughes.datasources.RowHandler#handleRow(java.lang.String[])
+	 */
+	@Override
+	public void handleRow(String[] row) throws IOException
+	{
+		add(row);
+	}
+
+	/**
+	 * Accessor for the number of rows held.
+	 *
+	 * @return	The row count.
+	 */
+	public long size()
+	{
+		return rowCount;
+	}
+
+	/**
+	 * Determine if the rows have been moved to disk.
+	 *
+	 * @return	True if the buffer has spilled, false otherwise.
+	 */
+	public boolean isSpilled()
+	{
+		return spillFile != null;
+	}
+
+	/**
+	 * Accessor for the size of the spill file.
+	 *
+	 * @return	The number of bytes spilled to disk, 0 if the buffer has not spilled.
+	 */
+	public long getSpilledBytes()
+	{
+		return spillBytes;
+	}
+
+	/**
+	 * Hand every row to a handler, in the order they were added.
+	 *
+	 * @param handler	The handler to receive the rows.
+	 *
+	 * @throws IOException	If the spill file could not be read, or the handler fails.
+	 */
+	public void replay(RowHandler handler) throws IOException
+	{
+		replay(handler, 0, rowCount);
+	}
+
+	/**
+	 * Hand a range of rows to a handler, in the order they were added.
+	 *
+	 * @param handler	The handler to receive the rows.
+	 * @param offset	The index of the first row to replay.
+	 * @param count		The maximum number of rows to replay.
+	 *
+	 * @throws IOException	If the spill file could not be read, or the handler fails.
+	 */
+	public void replay(RowHandler handler, long offset, long count) throws IOException
+	{
+		long end = (count > rowCount - offset) ? rowCount : offset + count;
+
+		if(offset < 0 || offset >= end)
+		{
+			return;
+		}
+
+		if(spillOut == null)
+		{
+			for(int i = (int)offset; i < end; i++)
+			{
+				handler.handleRow(memoryRows.get(i));
+			}
+		}
+		else
+		{
+			spillOut.flush();
+
+			int indexSlot = (int)(offset / INDEX_INTERVAL);
+
+			FileInputStream fileIn = new FileInputStream(spillFile);
+			try
+			{
+				fileIn.getChannel().position(spillIndex.get(indexSlot));
+
+				DataInputStream in = new DataInputStream(new BufferedInputStream(fileIn, IO_BUFFER_SIZE));
+
+				for(long i = (long)indexSlot * INDEX_INTERVAL; i < end; i++)
+				{
+					if(i < offset)
+					{
+						skipRecord(in);
+					}
+					else
+					{
+						handler.handleRow(readRecord(in));
+					}
+				}
+			}
+			finally
+			{
+				fileIn.close();
+			}
+		}
+	}
+
+	/**
+	 * Read back a page of rows.
+	 *
+	 * @param offset	The index of the first row of the page.
+	 * @param count		The page size.
+	 *
+	 * @return	The rows, fewer than count if the end of the buffer is reached.
+	 *
+	 * @throws IOException	If the spill file could not be read.
+	 */
+	public ArrayList<String[]> getRows(long offset, int count) throws IOException
+	{
+		final ArrayList<String[]> retval = new ArrayList<String[]>(Math.max(0, (int)Math.min(count, rowCount - offset)));
+
+		replay(new RowHandler()
+		{
+			@Override
+			public void handleRow(String[] row)
+			{
+				retval.add(row);
+			}
+		}, offset, count);
+
+		return retval;
+	}
+
+	/**
+	 * Release the buffered rows and delete the spill file, if any.
+	 */
+	@Override
+	public void close()
+	{
+		memoryRows = new ArrayList<String[]>();
+		memoryBytes = 0;
+		rowCount = 0;
+
+		if(spillOut != null)
+		{
+			try
+			{
+				spillOut.close();
+			}
+			catch(IOException e)
+			{
+				//deleting it regardless
+			}
+
+			spillOut = null;
+		}
+
+		if(spillFile != null)
+		{
+			spillFile.delete();
+		}
+	}
+
+	private void spill() throws IOException
+	{
+		spillFile = File.createTempFile(SPILL_FILE_PREFIX, SPILL_FILE_SUFFIX, spillDir);
+		spillOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile), IO_BUFFER_SIZE));
+		spillIndex = new ArrayList<Long>();
+
+		ArrayList<String[]> rows = memoryRows;
+
+		memoryRows = null;
+		memoryBytes = 0;
+
+		for(int i = 0; i < rows.size(); i++)
+		{
+			indexRecord(i);
+			writeRecord(rows.get(i));
+		}
+	}
+
+	private void indexRecord(long rowIndex)
+	{
+		if(rowIndex % INDEX_INTERVAL == 0)
+		{
+			spillIndex.add(spillBytes);
+		}
+	}
+
+	/*
+	 * Record layout: column count, then per column the UTF-8 byte length (-1 for null) followed by the bytes.
+	 */
+	private void writeRecord(String[] row) throws IOException
+	{
+		spillOut.writeInt(row.length);
+		spillBytes += 4;
+
+		byte[] bytes;
+		for(String value : row)
+		{
+			if(value == null)
+			{
+				spillOut.writeInt(-1);
+				spillBytes += 4;
+			}
+			else
+			{
+				bytes = value.getBytes(CHARSET);
+
+				spillOut.writeInt(bytes.length);
+				spillOut.write(bytes);
+				spillBytes += 4 + bytes.length;
+			}
+		}
+	}
+
+	private static String[] readRecord(DataInputStream in) throws IOException
+	{
+		String[] retval = new String[in.readInt()];
+
+		int length;
+		byte[] bytes;
+		for(int i = 0; i < retval.length; i++)
+		{
+			length = in.readInt();
+
+			if(length >= 0)
+			{
+				bytes = new byte[length];
+				in.readFully(bytes);
+				retval[i] = new String(bytes, CHARSET);
+			}
+		}
+
+		return retval;
+	}
+
+	private static void skipRecord(DataInputStream in) throws IOException
+	{
+		int columnCount = in.readInt();
+
+		int length;
+		for(int i = 0; i < columnCount; i++)
+		{
+			length = in.readInt();
+
+			if(length > 0 && in.skipBytes(length) != length)
+			{
+				throw new EOFException("Truncated spill file");
+			}
+		}
+	}
+
+	private static long estimateHeapSize(String[] row)
+	{
+		long retval = ARRAY_OVERHEAD_BYTES + REFERENCE_BYTES * row.length;
+
+		for(String value : row)
+		{
+			if(value != null)
+			{
+				retval += STRING_OVERHEAD_BYTES + 2 * value.length();
+			}
+		}
+
+		return retval;
+	}
+}
@@ -0,0 +1,134 @@
+/**
+ *
+ */
+package com.sutherland.hughes.util.results.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.sutherland.hughes.datasources.RowHandler;
+import com.sutherland.hughes.util.results.ResultBuffer;
+
+/**
+ * @author Jason Diamond
+ *
+ */
+public class ResultBufferTest extends TestCase
+{
+	private final static int ROW_COUNT = 5000;
+
+	private static String[] buildRow(int i)
+	{
+		return new String[]{"" + i, (i % 7 == 0) ? null : "agent\u00e9" + i, ""};
+	}
+
+	private static void fill(ResultBuffer buffer) throws IOException
+	{
+		for(int i = 0; i < ROW_COUNT; i++)
+		{
+			buffer.add(buildRow(i));
+		}
+	}
+
+	private static void assertRow(int i, String[] row)
+	{
+		String[] expected = buildRow(i);
+
+		assertEquals(expected.length, row.length);
+
+		for(int j = 0; j < expected.length; j++)
+		{
+			assertEquals(expected[j], row[j]);
+		}
+	}
+
+	@Test
+	public void testInMemory() throws IOException
+	{
+		ResultBuffer buffer = new ResultBuffer(Long.MAX_VALUE, null);
+
+		try
+		{
+			fill(buffer);
+
+			assertFalse(buffer.isSpilled());
+			assertEquals(ROW_COUNT, buffer.size());
+
+			ArrayList<String[]> page = buffer.getRows(1234, 10);
+
+			assertEquals(10, page.size());
+			assertRow(1234, page.get(0));
+			assertRow(1243, page.get(9));
+		}
+		finally
+		{
+			buffer.close();
+		}
+	}
+
+	@Test
+	public void testSpilledReplay() throws IOException
+	{
+		ResultBuffer buffer = new ResultBuffer(10 * 1024, null);
+
+		try
+		{
+			fill(buffer);
+
+			assertTrue(buffer.isSpilled());
+			assertTrue(buffer.getSpilledBytes() > 0);
+			assertEquals(ROW_COUNT, buffer.size());
+
+			final int[] next = new int[]{0};
+
+			buffer.replay(new RowHandler()
+			{
+				@Override
+				public void handleRow(String[] row)
+				{
+					assertRow(next[0]++, row);
+				}
+			});
+
+			assertEquals(ROW_COUNT, next[0]);
+		}
+		finally
+		{
+			buffer.close();
+		}
+	}
+
+	@Test
+	public void testSpilledPaging() throws IOException
+	{
+		ResultBuffer buffer = new ResultBuffer(10 * 1024, null);
+
+		try
+		{
+			fill(buffer);
+
+			ArrayList<String[]> page = buffer.getRows(3070, 10);
+
+			assertEquals(10, page.size());
+			assertRow(3070, page.get(0));
+			assertRow(3079, page.get(9));
+
+			//past the end
+			page = buffer.getRows(ROW_COUNT - 3, 10);
+
+			assertEquals(3, page.size());
+			assertRow(ROW_COUNT - 1, page.get(2));
+
+			assertEquals(0, buffer.getRows(ROW_COUNT, 10).size());
+			assertEquals(ROW_COUNT - 1, buffer.getRows(1, Integer.MAX_VALUE).size());
+		}
+		finally
+		{
+			buffer.close();
+		}
+	}
+}